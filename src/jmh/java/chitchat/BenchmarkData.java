@@ -0,0 +1,95 @@
+package chitchat;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Deterministic test data for the JMH benchmarks.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+final class BenchmarkData {
+
+    static final long SEED = 5121L;
+    private static final String[] WORDS = {
+        "hello", "are", "you", "coming", "tonight", "dinner", "is", "ready", "call", "me",
+        "later", "the", "meeting", "moved", "to", "friday", "thanks", "see", "you", "soon"
+    };
+    private static final String USERNAME_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Builds a mix of sent, stored and disregarded messages between a pool of cell numbers.
+     */
+    static ArrayList<Message> messages(int count) {
+        Random random = new Random(SEED);
+        int cells = Math.max(10, count / 20);
+        ArrayList<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = String.format("%010d", (long) (random.nextDouble() * 10000000000L));
+            Message msg = new Message(id, cell(random.nextInt(cells)), cell(random.nextInt(cells)),
+                    payload(random), 0, "", false, false, false);
+            int kind = random.nextInt(10);
+            if (kind < 7) {
+                msg.sendMessage(i + 1);
+            } else if (kind < 9) {
+                msg.storeMessage(i + 1);
+            } else {
+                msg.disregardMessage();
+            }
+            messages.add(msg);
+        }
+        return messages;
+    }
+
+    static String cell(int n) {
+        return String.format("+27%09d", n);
+    }
+
+    static String payload(Random random) {
+        int words = 1 + random.nextInt(12);
+        StringBuilder payload = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                payload.append(' ');
+            }
+            payload.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return payload.toString();
+    }
+
+    /**
+     * A valid username (at most five characters, with an underscore) unique for each n below 62^4.
+     */
+    static String username(int n) {
+        char[] name = new char[5];
+        name[0] = '_';
+        for (int i = 4; i >= 1; i--) {
+            name[i] = USERNAME_CHARS.charAt(n % USERNAME_CHARS.length());
+            n /= USERNAME_CHARS.length();
+        }
+        return new String(name);
+    }
+
+    /**
+     * Writes a users.json with count valid users straight to disk.
+     */
+    static void writeUsers(String file, int count) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write('[');
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write("{\"username\":\"" + username(i) + "\",\"password\":\"Passw0rd!\",\"cellphone\":\""
+                        + cell(i) + "\",\"firstName\":\"Bench\",\"lastName\":\"User\"}");
+            }
+            writer.write(']');
+        }
+    }
+}
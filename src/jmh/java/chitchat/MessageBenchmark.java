@@ -0,0 +1,47 @@
+package chitchat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message costs: Message.createMessageHash and Message.sendMessage.
+ * These do not depend on how many messages exist, so they are not parameterised by data size.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark {
+
+    @Param({"Hi", "Did you get the cake?", "Where are you? You are late! I have asked you to be on time."})
+    public String payload;
+
+    private Message message;
+    private int index;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        message = new Message("1234567890", "+27000000001", "+27834557896", payload, 1, "", false, false, false);
+    }
+
+    @Benchmark
+    public String createMessageHash() {
+        return message.createMessageHash();
+    }
+
+    @Benchmark
+    public String sendMessage() {
+        return message.sendMessage(++index);
+    }
+
+    @Benchmark
+    public String createAndSendMessage() {
+        return new Message("+27000000001", "+27834557896", payload).sendMessage(++index);
+    }
+}
@@ -0,0 +1,128 @@
+package chitchat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What payload deduplication costs and saves on a history generated by DatasetGenerator, where
+ * the given share of messages repeat broadcast texts: loading with every payload parsed separately
+ * against sharing them through a PayloadStore, and saving with payload references. Run with
+ * -prof gc to compare what each load allocates.
+ *
+ * Before the first iteration it prints what deduplication saves at this broadcast share: the live
+ * heap of each load (after forcing garbage collection, which the benchmark's own JVM allows), the
+ * messages.json size with every payload in full against with references, and the PayloadStore's
+ * dedup statistics.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PayloadDedupBenchmark {
+
+    private static final int USERS = 10_000;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"0.0", "0.6"})
+    public double broadcastShare;
+
+    private Path dir;
+    private Path plainFile;
+    private Path saveFile;
+    private ArrayList<Message> shared;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("chitchat-jmh");
+        plainFile = dir.resolve("messages-plain.json");
+        saveFile = dir.resolve("messages.json");
+        new DatasetGenerator(BenchmarkData.SEED, broadcastShare).writeMessages(plainFile, size, USERS);
+        report();
+        shared = MessageManager.loadAllMessages(plainFile.toString(), new PayloadStore());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(plainFile);
+        Files.deleteIfExists(saveFile);
+        Files.deleteIfExists(dir);
+    }
+
+    private void report() throws IOException {
+        long plainHeap = liveHeapOfLoad(null);
+        PayloadStore payloads = new PayloadStore();
+        long sharedHeap = liveHeapOfLoad(payloads);
+
+        MessageManager.saveAllMessages(MessageManager.loadAllMessages(plainFile.toString(), new PayloadStore()),
+                saveFile.toString());
+        long plainBytes = Files.size(plainFile);
+        long savedBytes = Files.size(saveFile);
+
+        System.out.printf("%n[broadcastShare %s] %,d messages%n", broadcastShare, size);
+        System.out.printf("Distinct payloads   : %,d (%,d hash collisions)%n", payloads.size(), payloads.getCollisionCount());
+        System.out.printf("Dedup ratio         : %.2f payloads per copy kept, %.1f%% of payload characters shared%n",
+                payloads.getDedupRatio(),
+                100.0 * payloads.getDuplicateChars() / Math.max(1, payloads.getUniqueChars() + payloads.getDuplicateChars()));
+        System.out.printf("Live heap           : %,d KB plain -> %,d KB shared (%.1f%% saved)%n",
+                plainHeap / 1024, sharedHeap / 1024, percentSaved(plainHeap, sharedHeap));
+        System.out.printf("messages.json       : %,d KB plain -> %,d KB with references (%.1f%% saved)%n",
+                plainBytes / 1024, savedBytes / 1024, percentSaved(plainBytes, savedBytes));
+    }
+
+    /**
+     * @return How much more heap is in use while the loaded list is held.
+     */
+    private long liveHeapOfLoad(PayloadStore payloads) {
+        long before = usedHeap();
+        ArrayList<Message> messages = MessageManager.loadAllMessages(plainFile.toString(), payloads);
+        long held = usedHeap() - before;
+        Reference.reachabilityFence(messages);
+        return held;
+    }
+
+    private static double percentSaved(long before, long after) {
+        return before == 0 ? 0 : 100.0 * (before - after) / before;
+    }
+
+    /**
+     * @return The least heap in use over several full garbage collections.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    @Benchmark
+    public ArrayList<Message> loadPlain() {
+        return MessageManager.loadAllMessages(plainFile.toString(), null);
+    }
+
+    @Benchmark
+    public ArrayList<Message> loadShared() {
+        return MessageManager.loadAllMessages(plainFile.toString(), new PayloadStore());
+    }
+
+    @Benchmark
+    public long saveWithReferences() throws IOException {
+        MessageManager.saveAllMessages(shared, saveFile.toString());
+        return Files.size(saveFile);
+    }
+}
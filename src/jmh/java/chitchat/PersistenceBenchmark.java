@@ -0,0 +1,57 @@
+package chitchat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageManager.loadAllMessages and saveAllMessages over message files of increasing size.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class PersistenceBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private ArrayList<Message> messages;
+    private File loadFile;
+    private File saveFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        messages = BenchmarkData.messages(size);
+        File dir = Files.createTempDirectory("chitchat-jmh").toFile();
+        loadFile = new File(dir, "messages.json");
+        saveFile = new File(dir, "messages-save.json");
+        MessageManager.saveAllMessages(messages, loadFile.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loadFile.delete();
+        saveFile.delete();
+        loadFile.getParentFile().delete();
+    }
+
+    @Benchmark
+    public ArrayList<Message> loadAllMessages() {
+        return MessageManager.loadAllMessages(loadFile.getPath());
+    }
+
+    @Benchmark
+    public long saveAllMessages() {
+        MessageManager.saveAllMessages(messages, saveFile.getPath());
+        return saveFile.length();
+    }
+}
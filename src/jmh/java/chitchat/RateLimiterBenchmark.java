@@ -0,0 +1,54 @@
+package chitchat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the per-sender rate limiter adds to an uncontended send: Message.sendMessage alone and
+ * with SendRateLimiter.checkSend in front of it, under a limit high enough that nothing is throttled.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final String SENDER = "+27000000001";
+    private static final String RECIPIENT = "+27834557896";
+    private static final String PAYLOAD = "Did you get the cake?";
+
+    private SendRateLimiter limiter;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        limiter = new SendRateLimiter(1e12, Integer.MAX_VALUE, SendRateLimiter.Mode.REJECT, 0);
+    }
+
+    @Benchmark
+    public String sendMessage() {
+        return new Message(SENDER, RECIPIENT, PAYLOAD).sendMessage(++index);
+    }
+
+    @Benchmark
+    public String checkSendAndSendMessage() {
+        String throttled = limiter.checkSend(SENDER);
+        return throttled != null ? throttled : new Message(SENDER, RECIPIENT, PAYLOAD).sendMessage(++index);
+    }
+
+    @Benchmark
+    public String checkSend() {
+        return limiter.checkSend(SENDER);
+    }
+
+    @Benchmark
+    public SendRateLimiter.Permit acquire() {
+        return limiter.acquire(SENDER);
+    }
+}
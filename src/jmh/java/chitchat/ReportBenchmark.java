@@ -0,0 +1,76 @@
+package chitchat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every ReportManager report over message lists of increasing size.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ReportBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private ReportManager reportManager;
+    private String lastId;
+    private String busyRecipient;
+    private String busySender;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ArrayList<Message> messages = BenchmarkData.messages(size);
+        lastId = messages.get(messages.size() - 1).getId();
+        busyRecipient = messages.get(0).getRecipient();
+        busySender = messages.get(0).getSender();
+        reportManager = new ReportManager(messages);
+        // Build the conversation index outside the measurement
+        reportManager.getConversationPage(busySender, busyRecipient, 0, 1);
+    }
+
+    @Benchmark
+    public String getSentMessagesDetails() {
+        return reportManager.getSentMessagesDetails();
+    }
+
+    @Benchmark
+    public String findLongestMessage() {
+        return reportManager.findLongestMessage();
+    }
+
+    @Benchmark
+    public String searchMessageById() {
+        return reportManager.searchMessageById(lastId);
+    }
+
+    @Benchmark
+    public String searchMessagesByRecipient() {
+        return reportManager.searchMessagesByRecipient(busyRecipient);
+    }
+
+    @Benchmark
+    public String deleteMessageByMissingHash() {
+        // A miss scans the whole list without changing it, so every invocation does the same work
+        return reportManager.deleteMessageByHash("00:0:MISSING");
+    }
+
+    @Benchmark
+    public String generateFullReport() {
+        return reportManager.generateFullReport();
+    }
+
+    @Benchmark
+    public String displayConversation() {
+        return reportManager.displayConversation(busySender, busyRecipient, 0, 25);
+    }
+}
@@ -0,0 +1,85 @@
+package chitchat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Block-compressed SegmentFile storage against plain messages.json: full load, and reading one
+ * message at a random position. With JSON a single message can only be read by loading the whole
+ * file, so loadJson is also the JSON lookup time. File sizes are printed when each trial starts.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SegmentBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private File dir;
+    private Path jsonFile;
+    private Path segmentFile;
+    private SegmentFile openSegment;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ArrayList<Message> messages = BenchmarkData.messages(size);
+        dir = Files.createTempDirectory("chitchat-jmh").toFile();
+        jsonFile = dir.toPath().resolve("messages.json");
+        segmentFile = dir.toPath().resolve("messages.seg");
+        MessageManager.saveAllMessages(messages, jsonFile.toString());
+        SegmentFile.write(segmentFile, messages);
+        openSegment = SegmentFile.open(segmentFile);
+        System.out.printf("%n%d messages: messages.json %,d KB, messages.seg %,d KB in %d blocks%n", size,
+                Files.size(jsonFile) / 1024, Files.size(segmentFile) / 1024, openSegment.getBlockCount());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        openSegment.close();
+        Files.delete(jsonFile);
+        Files.delete(segmentFile);
+        dir.delete();
+    }
+
+    @Benchmark
+    public ArrayList<Message> loadJson() {
+        return MessageManager.loadAllMessages(jsonFile.toString());
+    }
+
+    @Benchmark
+    public ArrayList<Message> loadSegment() {
+        return MessageManager.loadAllMessages(segmentFile.toString());
+    }
+
+    /**
+     * One message from a file that is already open, with its block index in memory.
+     */
+    @Benchmark
+    public Message lookupSegment() throws IOException {
+        return openSegment.get(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    /**
+     * One message including opening the file and reading its block index.
+     */
+    @Benchmark
+    public Message lookupSegmentCold() throws IOException {
+        try (SegmentFile segment = SegmentFile.open(segmentFile)) {
+            return segment.get(ThreadLocalRandom.current().nextInt(size));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package chitchat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The NIO selector server against the virtual-thread-per-connection server, over loopback: a
+ * send's round trip with each benchmark thread on its own logged-in connection (set the number of
+ * connections with -t), and opening, logging in and closing a connection. SampleTime reports the
+ * latency percentiles; run with -prof gc to see what a connection allocates.
+ *
+ * The server runs in the benchmark's JVM without persistence or a rate limit, so sent messages
+ * accumulate in memory for the length of a trial. ServerLoadBenchmark drives thousands of
+ * connections at once and reports the heap each one holds.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Threads(8)
+public class ServerBenchmark {
+
+    private static final String USERNAME = "kyl_1";
+    private static final String PASSWORD = "Passw0rd!";
+
+    @Param({"nio", "virtual"})
+    public String server;
+
+    private Path dir;
+    private Closeable running;
+    private int port;
+
+    /**
+     * One benchmark thread's connection, logged in for the whole trial.
+     */
+    @State(Scope.Thread)
+    public static class Connection {
+        ChatClient client;
+
+        @Setup(Level.Trial)
+        public void open(ServerBenchmark benchmark) throws IOException {
+            client = new ChatClient("localhost", benchmark.port);
+            client.login(USERNAME, PASSWORD);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            client.close();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("chitchat-jmh");
+        UserManager users = new UserManager(dir.resolve("users.json").toString());
+        ChatService service = new ChatService(users, new ArrayList<>(), false, null);
+        if (server.equals("virtual")) {
+            VirtualThreadChatServer virtual = new VirtualThreadChatServer(service, 0);
+            virtual.start();
+            port = virtual.getPort();
+            running = virtual;
+        } else {
+            NioChatServer nio = new NioChatServer(service, 0);
+            nio.start();
+            port = nio.getPort();
+            running = nio;
+        }
+        try (ChatClient admin = new ChatClient("localhost", port)) {
+            admin.register(USERNAME, PASSWORD, "+27123456789", "Kitso", "Litelu");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        running.close();
+        Files.deleteIfExists(dir.resolve("users.json"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public ChatProtocol.Frame send(Connection connection) throws IOException {
+        return connection.client.send("+27834557896", "Did you get the cake?");
+    }
+
+    @Benchmark
+    public ChatProtocol.Frame connectAndLogin() throws IOException {
+        try (ChatClient client = new ChatClient("localhost", port)) {
+            return client.login(USERNAME, PASSWORD);
+        }
+    }
+}
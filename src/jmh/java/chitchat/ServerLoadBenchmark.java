@@ -0,0 +1,177 @@
+package chitchat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The NIO selector server against the virtual-thread-per-connection server under thousands of
+ * concurrent clients. The server runs in a child JVM (fixed heap, empty working directory, no
+ * persistence, rate limit lifted), so its memory is not mixed up with the clients'.
+ *
+ * Before the first iteration it holds the given number of logged-in connections open and prints
+ * the live heap each one adds, from the server's OP_STATS heap reading. Each invocation is then one
+ * LoadGenerator run of every client sending back to back; the score is the run's length, and the
+ * run's throughput, latency percentiles and the heap per connection are printed after it.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@Threads(1)
+public class ServerLoadBenchmark {
+
+    private static final String CHILD_HEAP = "-Xmx1g";
+
+    @Param({"nio", "virtual"})
+    public String server;
+
+    @Param({"2000"})
+    public int clients;
+
+    @Param({"50"})
+    public int requestsPerClient;
+
+    private File workDir;
+    private Process child;
+    private int port;
+    private long heapPerConnection;
+    private LoadGenerator.Result result;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("chitchat-jmh").toFile();
+        port = freePort();
+        child = startServer(workDir, port, server.equals("virtual"));
+
+        // Register the load user, then take a baseline with a single connection open
+        try (ChatClient admin = new ChatClient("localhost", port)) {
+            admin.register(LoadGenerator.USERNAME, LoadGenerator.PASSWORD, LoadGenerator.CELLPHONE, "Load", "Generator");
+            admin.login(LoadGenerator.USERNAME, LoadGenerator.PASSWORD);
+            long baselineHeap = Long.parseLong(admin.call(ChatProtocol.OP_STATS).field(1));
+
+            // Hold the connections open and logged in, then measure again
+            List<ChatClient> idle = new ArrayList<>();
+            try {
+                for (int i = 0; i < clients; i++) {
+                    ChatClient client = new ChatClient("localhost", port);
+                    idle.add(client);
+                    client.login(LoadGenerator.USERNAME, LoadGenerator.PASSWORD);
+                }
+                ChatProtocol.Frame stats = admin.call(ChatProtocol.OP_STATS);
+                heapPerConnection = (Long.parseLong(stats.field(1)) - baselineHeap) / clients;
+                System.out.printf("%n[%s] %s open connections, ~%d bytes of heap per connection%n",
+                        server, stats.field(0), heapPerConnection);
+            } finally {
+                for (ChatClient client : idle) {
+                    client.close();
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        if (result != null) {
+            System.out.printf("%n[%s] %.0f req/s, p50 %.1f us, p95 %.1f us, p99 %.1f us, p99.9 %.1f us, %d B/conn, %d errors%n",
+                    server, result.throughputPerSecond(), result.percentileMicros(50), result.percentileMicros(95),
+                    result.percentileMicros(99), result.percentileMicros(99.9), heapPerConnection, result.errors());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        child.destroy();
+        child.waitFor();
+        File[] files = workDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        workDir.delete();
+    }
+
+    @Benchmark
+    public LoadGenerator.Result load() throws Exception {
+        result = LoadGenerator.run("localhost", port, clients, requestsPerClient);
+        return result;
+    }
+
+    private static Process startServer(File workDir, int port, boolean virtualThreads) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add(CHILD_HEAP);
+        // The load generator sends as a single user, so lift the per-sender limit
+        command.add("-Dchitchat.rateLimit.perSecond=1000000000");
+        command.add("-Dchitchat.rateLimit.burst=1000000");
+        command.add("-cp");
+        command.add(absoluteClassPath());
+        command.add(ChitChat.class.getName());
+        command.add("--server");
+        command.add(String.valueOf(port));
+        command.add("--no-persist");
+        if (virtualThreads) {
+            command.add("--virtual");
+        }
+        Process process = new ProcessBuilder(command).directory(workDir).redirectErrorStream(true).start();
+
+        // Wait for the server to report that it is listening
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = output.readLine()) != null) {
+            if (line.contains("listening")) {
+                break;
+            }
+        }
+        if (line == null) {
+            throw new IOException("Server exited before it started listening.");
+        }
+        // Keep draining the output so the child never blocks on a full pipe
+        Thread drain = new Thread(() -> {
+            try {
+                while (output.readLine() != null) {
+                    // discard
+                }
+            } catch (IOException e) {
+                // Process ended
+            }
+        });
+        drain.setDaemon(true);
+        drain.start();
+        return process;
+    }
+
+    /**
+     * The child runs in another directory, so relative class path entries must be made absolute.
+     */
+    private static String absoluteClassPath() {
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (classPath.length() > 0) {
+                classPath.append(File.pathSeparator);
+            }
+            classPath.append(new File(entry).getAbsolutePath());
+        }
+        return classPath.toString();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package chitchat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserManager.findUser over user directories of increasing size.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class UserManagerBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private UserManager userManager;
+    private String[] usernames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File file = Files.createTempFile("chitchat-users", ".json").toFile();
+        BenchmarkData.writeUsers(file.getPath(), size);
+        userManager = new UserManager(file.getPath());
+        file.delete();
+
+        // Look up a spread of existing users
+        usernames = new String[1024];
+        for (int i = 0; i < usernames.length; i++) {
+            usernames[i] = BenchmarkData.username((int) ((long) i * size / usernames.length));
+        }
+    }
+
+    @Benchmark
+    public RegistrationLogin findUser() {
+        return userManager.findUser(usernames[next++ & (usernames.length - 1)]);
+    }
+
+    @Benchmark
+    public RegistrationLogin findMissingUser() {
+        return userManager.findUser("none!");
+    }
+}
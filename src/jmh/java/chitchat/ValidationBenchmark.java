@@ -0,0 +1,51 @@
+package chitchat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RegistrationLogin validators (exercised through registerUser, since they are private),
+ * loginUser, and Message.checkCellNumber.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private RegistrationLogin registered;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        registered = new RegistrationLogin();
+        registered.registerUser("kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu");
+        message = new Message("+27000000001", "+27834557896", "Hello");
+    }
+
+    @Benchmark
+    public String registerValidUser() {
+        return new RegistrationLogin().registerUser("kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu");
+    }
+
+    @Benchmark
+    public String registerInvalidUser() {
+        return new RegistrationLogin().registerUser("kyle!!", "pass", "12345", "", "");
+    }
+
+    @Benchmark
+    public boolean loginUser() {
+        return registered.loginUser("kyl_1", "Passw0rd!");
+    }
+
+    @Benchmark
+    public int checkCellNumber() {
+        return message.checkCellNumber("+27834557896");
+    }
+}
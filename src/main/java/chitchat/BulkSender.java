@@ -0,0 +1,169 @@
+package chitchat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Sends one payload to many recipients at once (broadcasts and operator notices).
+ * The sender and payload are validated once and the recipients in a single pass,
+ * then one contiguous index range is allocated and all messages are built together,
+ * so the caller can add them to the list and save once.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class BulkSender {
+
+    /**
+     * A recipient that was not sent to, with the reason.
+     */
+    public static final class Failure {
+        private final String recipient;
+        private final String reason;
+
+        Failure(String recipient, String reason) {
+            this.recipient = recipient;
+            this.reason = reason;
+        }
+
+        public String getRecipient() { return recipient; }
+
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return recipient + ": " + reason;
+        }
+    }
+
+    /**
+     * The outcome of a bulk send.
+     */
+    public static final class Result {
+        private final List<Message> messages;
+        private final List<Failure> failures;
+        private final long elapsedNanos;
+
+        Result(List<Message> messages, List<Failure> failures, long elapsedNanos) {
+            this.messages = messages;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** The messages that were sent, in index order. */
+        public List<Message> getMessages() { return messages; }
+
+        /**
+         * Recipients that were not sent to, with the reason, in the order given.
+         * A recipient given more than once has an entry for every copy that was not sent.
+         */
+        public List<Failure> getFailures() { return failures; }
+
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        public double throughputPerSecond() {
+            return elapsedNanos == 0 ? 0 : messages.size() * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        /**
+         * @return A one-line summary, e.g. "Broadcast: 998 sent, 2 failed in 3 ms (332667 msg/s)".
+         */
+        public String summary() {
+            return String.format("Broadcast: %d sent, %d failed in %d ms (%.0f msg/s)",
+                messages.size(), failures.size(), elapsedNanos / 1_000_000, throughputPerSecond());
+        }
+    }
+
+    /**
+     * Builds a sent message for every valid recipient.
+     * If the sender or payload is invalid, nothing is sent and every recipient is reported with that reason.
+     *
+     * @param sender     The sender's cell number.
+     * @param recipients The recipients; duplicates and blanks are reported as failures.
+     * @param payload    The message sent to everyone.
+     * @param firstIndex The first index of the contiguous range allocated to the batch.
+     */
+    public static Result send(String sender, List<String> recipients, String payload, int firstIndex) {
+        long started = System.nanoTime();
+        ArrayList<Failure> failures = new ArrayList<>();
+        ArrayList<Message> messages = new ArrayList<>();
+
+        // Checks shared by every message are done once for the whole batch
+        String batchFailure = null;
+        if (sender == null || !Message.CELL_NUMBER_PATTERN.matcher(sender).matches()) {
+            batchFailure = "Failed: Invalid sender number.";
+        } else if (payload == null || payload.trim().isEmpty()) {
+            batchFailure = "Failed: Message content cannot be empty.";
+        } else if (payload.length() > Message.MAX_PAYLOAD_LENGTH) {
+            batchFailure = "Failed: Message is too long (max 250 chars).";
+        }
+
+        // One validation pass over the recipients
+        ArrayList<String> valid = new ArrayList<>(recipients.size());
+        HashSet<String> seen = new HashSet<>();
+        for (String raw : recipients) {
+            String recipient = raw == null ? "" : raw.trim();
+            if (batchFailure != null) {
+                failures.add(new Failure(recipient, batchFailure));
+            } else if (!Message.CELL_NUMBER_PATTERN.matcher(recipient).matches()) {
+                failures.add(new Failure(recipient, "Failed: Invalid recipient number."));
+            } else if (!seen.add(recipient)) {
+                failures.add(new Failure(recipient, "Skipped: Duplicate recipient."));
+            } else {
+                valid.add(recipient);
+            }
+        }
+
+        // Build the messages over a contiguous index range
+        messages.ensureCapacity(valid.size());
+        int index = firstIndex;
+        for (String recipient : valid) {
+            Message message = new Message(sender, recipient, payload);
+            if (!message.checkMessageID()) {
+                failures.add(new Failure(recipient, "Failed: Invalid message ID."));
+                continue;
+            }
+            message.markSent(index++);
+            messages.add(message);
+        }
+        return new Result(messages, failures, System.nanoTime() - started);
+    }
+
+    /**
+     * Reads recipients from a file: one or more per line, separated by commas or whitespace.
+     * Blank lines and lines starting with # are ignored.
+     */
+    public static List<String> readRecipients(Path file) throws IOException {
+        ArrayList<String> recipients = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                recipients.addAll(parseRecipients(line));
+            }
+        }
+        return recipients;
+    }
+
+    /**
+     * Splits recipients typed or pasted as text, separated by commas, semicolons or whitespace.
+     */
+    public static List<String> parseRecipients(String text) {
+        ArrayList<String> recipients = new ArrayList<>();
+        String trimmed = text.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return recipients;
+        }
+        for (String part : trimmed.split("[,;\\s]+")) {
+            if (!part.isEmpty()) {
+                recipients.add(part);
+            }
+        }
+        return recipients;
+    }
+}
@@ -0,0 +1,269 @@
+package chitchat;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * An ordered stream of the changes made to a message history, published by MessageStore as they
+ * are written (change data capture). Report windows, indexes and exporters subscribe to it and
+ * update themselves from each change instead of rescanning the whole history.
+ *
+ * Every change gets the next sequence number, and each subscriber sees changes in that order on
+ * its own thread, through a bounded queue. When a subscriber falls behind, the publisher waits up
+ * to the stream's blocking limit for room in its queue, which slows writers down to the speed of
+ * their readers. A subscriber still full after that is cut loose rather than left to stall every
+ * writer: its queued changes are dropped and it is sent one RESET, after which it must rebuild
+ * from the history itself, exactly as it does after a compaction by another instance.
+ *
+ * A listener is called on the publishing thread instead, before publish returns, so it never falls
+ * behind and sees every RESET with the history it replaces. It suits in-memory indexes that must
+ * match the list the writer holds; it must be quick, since the writer waits for it.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class ChangeStream implements Closeable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    /** How long a publish waits for room in a full subscriber's queue before resetting it. */
+    public static final long DEFAULT_MAX_BLOCK_MILLIS = 250;
+
+    private static final MetricsRegistry.Counter PUBLISHED_COUNT = MetricsRegistry.shared().counter("changes.published");
+    private static final MetricsRegistry.Counter RESET_COUNT = MetricsRegistry.shared().counter("changes.subscriberResets");
+
+    public enum Type {
+        /** A message was added that is not only stored, e.g. sent. */
+        APPENDED,
+        /** A stored message was added. */
+        STORED,
+        /** The message with the change's hash was deleted. */
+        DELETED,
+        /** The history was replaced (e.g. compacted by another instance), or the subscriber fell too far behind. */
+        RESET
+    }
+
+    /**
+     * One change to the history.
+     */
+    public static final class Change {
+        private final long sequence;
+        private final Type type;
+        private final Message message;
+        private final String hash;
+        private final List<Message> reloaded;
+
+        Change(long sequence, Type type, Message message, String hash, List<Message> reloaded) {
+            this.sequence = sequence;
+            this.type = type;
+            this.message = message;
+            this.hash = hash;
+            this.reloaded = reloaded;
+        }
+
+        public long getSequence() { return sequence; }
+        public Type getType() { return type; }
+
+        /** The added message, or null for DELETED and RESET. */
+        public Message getMessage() { return message; }
+
+        /** The hash of the added or deleted message, or null for RESET. */
+        public String getHash() { return hash; }
+
+        /**
+         * For RESET, the whole history it was replaced with, unmodifiable. Null otherwise, and for
+         * the RESET a subscriber gets when it fell behind, after which it reads the history itself.
+         */
+        public List<Message> getReloaded() { return reloaded; }
+
+        @Override
+        public String toString() {
+            return "#" + sequence + " " + type + (hash == null ? "" : " " + hash);
+        }
+    }
+
+    /**
+     * A subscriber's queue and the thread that hands its changes to it.
+     */
+    public final class Subscription implements Closeable {
+        private final ArrayBlockingQueue<Change> queue;
+        private final Consumer<Change> consumer;
+        private final Thread thread;
+        private volatile boolean closed;
+        private volatile long lastSequence;
+        private volatile long resets;
+
+        private Subscription(String name, int capacity, Consumer<Change> consumer) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.consumer = consumer;
+            this.thread = new Thread(this::run, "chitchat-changes-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            while (!closed) {
+                Change change;
+                try {
+                    change = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    consumer.accept(change);
+                } catch (RuntimeException e) {
+                    System.err.println("Change subscriber " + thread.getName() + " failed on " + change + ": " + e);
+                }
+                lastSequence = change.getSequence();
+            }
+        }
+
+        /**
+         * Called by the publisher, in sequence order.
+         */
+        private void offer(Change change) {
+            if (closed || queue.offer(change)) {
+                return;
+            }
+            try {
+                if (queue.offer(change, maxBlockMillis, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                // The writer is being stopped, so it cannot wait; the subscriber catches up with a RESET
+                Thread.currentThread().interrupt();
+            }
+            queue.clear();
+            queue.offer(new Change(change.getSequence(), Type.RESET, null, null, null));
+            resets++;
+            RESET_COUNT.increment();
+        }
+
+        /** @return The sequence number of the last change the subscriber has finished with. */
+        public long getLastSequence() { return lastSequence; }
+
+        /** @return How many times the subscriber fell too far behind and was sent a RESET. */
+        public long getResets() { return resets; }
+
+        /** @return The number of changes waiting for the subscriber. */
+        public int getBacklog() { return queue.size(); }
+
+        /**
+         * Stops delivering changes. Changes still queued are dropped.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            subscriptions.remove(this);
+            thread.interrupt();
+        }
+    }
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Consumer<Change>> listeners = new CopyOnWriteArrayList<>();
+    private final long maxBlockMillis;
+    private long sequence;
+
+    public ChangeStream() {
+        this(DEFAULT_MAX_BLOCK_MILLIS);
+    }
+
+    /**
+     * @param maxBlockMillis How long a publish waits for room in a full subscriber's queue.
+     */
+    public ChangeStream(long maxBlockMillis) {
+        this.maxBlockMillis = maxBlockMillis;
+    }
+
+    /**
+     * Starts delivering every change published from now on to the consumer, on a new daemon thread.
+     *
+     * @param name     Names the thread.
+     * @param capacity How many changes may wait for the consumer before publishing blocks.
+     */
+    public Subscription subscribe(String name, int capacity, Consumer<Change> consumer) {
+        Subscription subscription = new Subscription(name, capacity, consumer);
+        subscriptions.add(subscription);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    /**
+     * Calls the listener with every change published from now on, on the publishing thread.
+     */
+    public void listen(Consumer<Change> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops calling a listener added with listen().
+     */
+    public void unlisten(Consumer<Change> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return The sequence number of the last change published, or 0 if none has been.
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Publishes the addition of a message as APPENDED, or STORED if it is only stored.
+     */
+    void added(Message message) {
+        publish(message.isStored() ? Type.STORED : Type.APPENDED, message, message.getHash(), null);
+    }
+
+    void deleted(String hash) {
+        publish(Type.DELETED, null, hash, null);
+    }
+
+    /**
+     * @param reloaded The whole history now, copied once for every listener and subscriber.
+     */
+    void reset(List<Message> reloaded) {
+        publish(Type.RESET, null, null, List.copyOf(reloaded));
+    }
+
+    /**
+     * Publishes what a MessageStore read from other instances, in the order it applies them.
+     */
+    void publish(MessageStore.Changes changes) {
+        if (changes.isReload()) {
+            reset(changes.getReloaded());
+            return;
+        }
+        changes.getDeletedHashes().forEach(this::deleted);
+        changes.getAdded().forEach(this::added);
+    }
+
+    private synchronized void publish(Type type, Message message, String hash, List<Message> reloaded) {
+        Change change = new Change(++sequence, type, message, hash, reloaded);
+        PUBLISHED_COUNT.increment();
+        for (Consumer<Change> listener : listeners) {
+            try {
+                listener.accept(change);
+            } catch (RuntimeException e) {
+                System.err.println("Change listener failed on " + change + ": " + e);
+            }
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(change);
+        }
+    }
+
+    /**
+     * Closes every subscription and forgets every listener.
+     */
+    @Override
+    public void close() {
+        listeners.clear();
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package chitchat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * A minimal blocking client for the ChitChat server protocol.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class ChatClient implements Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public ChatClient(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Sends one request and waits for its response.
+     */
+    public ChatProtocol.Frame call(byte opcode, String... fields) throws IOException {
+        ChatProtocol.write(out, opcode, fields);
+        return ChatProtocol.read(in);
+    }
+
+    public ChatProtocol.Frame register(String username, String password, String cellphone,
+                                       String firstName, String lastName) throws IOException {
+        return call(ChatProtocol.OP_REGISTER, username, password, cellphone, firstName, lastName);
+    }
+
+    public ChatProtocol.Frame login(String username, String password) throws IOException {
+        return call(ChatProtocol.OP_LOGIN, username, password);
+    }
+
+    public ChatProtocol.Frame send(String recipient, String payload) throws IOException {
+        return call(ChatProtocol.OP_SEND, recipient, payload);
+    }
+
+    public ChatProtocol.Frame store(String recipient, String payload) throws IOException {
+        return call(ChatProtocol.OP_STORE, recipient, payload);
+    }
+
+    public ChatProtocol.Frame sendLater(String recipient, String payload, long deliverAt) throws IOException {
+        return call(ChatProtocol.OP_SEND_LATER, recipient, payload, String.valueOf(deliverAt));
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
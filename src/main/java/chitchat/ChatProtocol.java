@@ -0,0 +1,161 @@
+package chitchat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The framed wire protocol spoken by the ChitChat server and its clients.
+ *
+ * Every frame is a 4-byte big-endian body length followed by the body.
+ * A request body is a 1-byte opcode followed by its string fields.
+ * A response body is a 1-byte status (STATUS_OK or STATUS_ERROR) followed by its string fields.
+ * Each string field is a 4-byte length followed by that many UTF-8 bytes.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public final class ChatProtocol {
+
+    public static final int DEFAULT_PORT = 5121;
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    // Session
+    public static final byte OP_REGISTER = 1;   // username, password, cellphone, firstName, lastName
+    public static final byte OP_LOGIN = 2;      // username, password
+    // Messages
+    public static final byte OP_SEND = 10;      // recipient, payload
+    public static final byte OP_STORE = 11;     // recipient, payload
+    public static final byte OP_BROADCAST = 12; // payload, recipients (one per line) -> summary, failures (one per line)
+    public static final byte OP_SEND_LATER = 13; // recipient, payload, deliverAt (epoch milliseconds) -> status, id, hash
+    // ReportManager queries
+    public static final byte OP_REPORT_SENT = 20;
+    public static final byte OP_REPORT_LONGEST = 21;
+    public static final byte OP_REPORT_SEARCH_ID = 22;         // id
+    public static final byte OP_REPORT_SEARCH_RECIPIENT = 23;  // recipient
+    public static final byte OP_REPORT_DELETE_HASH = 24;       // hash
+    public static final byte OP_REPORT_FULL = 25;
+    public static final byte OP_REPORT_CONVERSATION = 26;      // otherCell, cursor, pageSize -> report, nextCursor
+    public static final byte OP_REPORT_WINDOW = 27;            // fromMillis, toMillis (epoch milliseconds)
+    public static final byte OP_REPORT_THROUGHPUT = 28;        // fromMillis, toMillis (epoch milliseconds)
+    public static final byte OP_REPORT_NUMBER_PREFIX = 29;     // prefix, afterCell ("" for the first page), pageSize -> report, nextCursor
+    // Diagnostics
+    public static final byte OP_STATS = 30;     // -> connections, heapUsedBytes, messageCount (logged in)
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    private ChatProtocol() {
+    }
+
+    /**
+     * A decoded frame body: the opcode (or status for responses) and its fields.
+     */
+    public static final class Frame {
+        private final byte code;
+        private final String[] fields;
+
+        public Frame(byte code, String... fields) {
+            this.code = code;
+            this.fields = fields;
+        }
+
+        public byte getCode() { return code; }
+        public String[] getFields() { return fields; }
+        public int fieldCount() { return fields.length; }
+        public String field(int i) { return i < fields.length ? fields[i] : null; }
+
+        /** For responses: true if the status is STATUS_OK. */
+        public boolean isOk() { return code == STATUS_OK; }
+    }
+
+    /**
+     * Encodes a frame, including its length prefix, ready to be written to a channel.
+     */
+    public static ByteBuffer encode(byte code, String... fields) {
+        byte[][] encoded = new byte[fields.length][];
+        int bodyLength = 1;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = (fields[i] == null ? "" : fields[i]).getBytes(StandardCharsets.UTF_8);
+            bodyLength += 4 + encoded[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.put(code);
+        for (byte[] field : encoded) {
+            buffer.putInt(field.length);
+            buffer.put(field);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes a frame body (without its length prefix).
+     *
+     * @throws IllegalArgumentException if the body is malformed.
+     */
+    public static Frame decode(ByteBuffer body) {
+        if (!body.hasRemaining()) {
+            throw new IllegalArgumentException("Empty frame");
+        }
+        byte code = body.get();
+        int count = 0;
+        int start = body.position();
+        // First pass counts the fields so no list has to be allocated
+        while (body.hasRemaining()) {
+            int length = readFieldLength(body);
+            body.position(body.position() + length);
+            count++;
+        }
+        body.position(start);
+        String[] fields = new String[count];
+        for (int i = 0; i < count; i++) {
+            int length = body.getInt();
+            fields[i] = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+            body.position(body.position() + length);
+        }
+        return new Frame(code, fields);
+    }
+
+    private static int readFieldLength(ByteBuffer body) {
+        if (body.remaining() < 4) {
+            throw new IllegalArgumentException("Truncated field length");
+        }
+        int length = body.getInt();
+        if (length < 0 || length > body.remaining()) {
+            throw new IllegalArgumentException("Invalid field length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Writes a frame to a blocking stream.
+     */
+    public static void write(DataOutputStream out, byte code, String... fields) throws IOException {
+        ByteBuffer frame = encode(code, fields);
+        out.write(frame.array(), 0, frame.limit());
+        out.flush();
+    }
+
+    /**
+     * Reads one frame from a blocking stream.
+     *
+     * @throws java.io.EOFException if the stream ends before a whole frame was read.
+     */
+    public static Frame read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        try {
+            return decode(ByteBuffer.wrap(body));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+}
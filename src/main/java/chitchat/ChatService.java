@@ -0,0 +1,515 @@
+package chitchat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The shared backend behind the network front ends.
+ * It serves protocol requests from many connections against one user directory and one message list.
+ * Requests are serialised on this object, and the message list is written back by flush().
+ * flush() also delivers scheduled messages that are due, so they go out within a flush interval.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class ChatService {
+
+    private final UserManager userManager;
+    private final ArrayList<Message> allMessages;
+    private final ReportManager reportManager;
+    // Updated here rather than from the store's stream, since the list runs ahead of the store until a flush
+    private final MessageIndexes indexes = new MessageIndexes();
+    private final boolean persist;
+    private final MessageStore store;
+    private final SendRateLimiter rateLimiter;
+    // Changes not yet written to the store, in order
+    private final ArrayList<Message> pendingAppends = new ArrayList<>();
+    private final ArrayList<String> pendingDeletes = new ArrayList<>();
+    // Hashes sent to clients before a flush renumbered the message, to the hash it has now
+    private final HashMap<String, String> renumberedHashes = new HashMap<>();
+    private final DeliveryScheduler scheduler = new DeliveryScheduler(System.currentTimeMillis());
+    private int nextIndex;
+    private boolean dirty;
+    private final AtomicInteger openSessions = new AtomicInteger();
+
+    /**
+     * Per-connection state: which user (if any) is logged in.
+     */
+    public static final class Session {
+        private RegistrationLogin user;
+
+        public RegistrationLogin getUser() { return user; }
+        public boolean isLoggedIn() { return user != null; }
+    }
+
+    /**
+     * Creates a service backed by the given stores.
+     *
+     * @param userManager The user directory.
+     * @param messages    The message list, usually from MessageManager.loadAllMessages().
+     * @param persist     Whether flush() should write the messages to messages.json.
+     */
+    public ChatService(UserManager userManager, ArrayList<Message> messages, boolean persist) {
+        this(userManager, messages, persist, SendRateLimiter.shared());
+    }
+
+    /**
+     * @param rateLimiter The per-sender limiter for sends, or null to allow unlimited sends.
+     */
+    public ChatService(UserManager userManager, ArrayList<Message> messages, boolean persist, SendRateLimiter rateLimiter) {
+        this(userManager, messages, persist, null, rateLimiter);
+    }
+
+    /**
+     * Creates a service that shares messages.json with other instances through a MessageStore.
+     * flush() appends only what changed and picks up what the other instances wrote.
+     *
+     * @param rateLimiter The per-sender limiter for sends, or null to allow unlimited sends.
+     */
+    public ChatService(UserManager userManager, MessageStore store, SendRateLimiter rateLimiter) throws IOException {
+        this(userManager, store.load(), true, store, rateLimiter);
+    }
+
+    private ChatService(UserManager userManager, ArrayList<Message> messages, boolean persist, MessageStore store,
+                        SendRateLimiter rateLimiter) {
+        this.userManager = userManager;
+        this.rateLimiter = rateLimiter;
+        this.store = store;
+        this.allMessages = messages;
+        this.indexes.build(messages);
+        this.reportManager = new ReportManager(messages, indexes, store);
+        this.persist = persist;
+        this.nextIndex = messages.stream().mapToInt(Message::getIndex).max().orElse(0) + 1;
+        if (store != null) {
+            // Archived messages still hold their indexes
+            this.nextIndex = Math.max(nextIndex, store.getMaxIndex() + 1);
+        }
+        scheduler.scheduleAll(messages, message -> true);
+        MetricsRegistry.shared().gauge("server.connections", openSessions::get);
+    }
+
+    /**
+     * Handles one decoded request for a connection.
+     * Sends are rate limited per sender before the service is locked. This never waits: in DELAY
+     * mode a send that would have to wait is refused, so a front end that can put a request off
+     * should use admit() and handleAdmitted() instead.
+     *
+     * @return The response frame to send back.
+     */
+    public ChatProtocol.Frame handle(Session session, ChatProtocol.Frame request) {
+        if (isRateLimited(session, request)) {
+            String throttled = rateLimiter.checkSend(session.user.getCellPhoneNumber());
+            if (throttled != null) {
+                return error(throttled);
+            }
+        }
+        return handleLocked(session, request);
+    }
+
+    /**
+     * Takes a rate-limit slot for a request without waiting for it. A delayed send's permit says
+     * how long to wait; the front end runs it with handleAdmitted() once that has passed, from a
+     * timer rather than by blocking, so a delayed sender never holds up anyone else.
+     * Requests that are not rate limited may go now.
+     */
+    public SendRateLimiter.Permit admit(Session session, ChatProtocol.Frame request) {
+        if (!isRateLimited(session, request)) {
+            return SendRateLimiter.Permit.now();
+        }
+        return rateLimiter.acquire(session.user.getCellPhoneNumber());
+    }
+
+    /**
+     * Handles a request admit() let through, once its wait is over.
+     *
+     * @return The response frame to send back.
+     */
+    public ChatProtocol.Frame handleAdmitted(Session session, ChatProtocol.Frame request) {
+        return handleLocked(session, request);
+    }
+
+    private boolean isRateLimited(Session session, ChatProtocol.Frame request) {
+        byte code = request.getCode();
+        return rateLimiter != null && session.isLoggedIn()
+                && (code == ChatProtocol.OP_SEND || code == ChatProtocol.OP_STORE || code == ChatProtocol.OP_BROADCAST
+                    || code == ChatProtocol.OP_SEND_LATER);
+    }
+
+    private synchronized ChatProtocol.Frame handleLocked(Session session, ChatProtocol.Frame request) {
+        switch (request.getCode()) {
+            case ChatProtocol.OP_REGISTER:
+                return register(request);
+            case ChatProtocol.OP_LOGIN:
+                return login(session, request);
+            default:
+                break;
+        }
+        if (!session.isLoggedIn()) {
+            return error("Failed: Please log in first.");
+        }
+        switch (request.getCode()) {
+            case ChatProtocol.OP_SEND:
+                return send(session, request, true);
+            case ChatProtocol.OP_STORE:
+                return send(session, request, false);
+            case ChatProtocol.OP_BROADCAST:
+                return broadcast(session, request);
+            case ChatProtocol.OP_SEND_LATER:
+                return sendLater(session, request);
+            case ChatProtocol.OP_REPORT_SENT:
+                return ok(reportManager.getSentMessagesDetails());
+            case ChatProtocol.OP_REPORT_LONGEST:
+                return ok(reportManager.findLongestMessage());
+            case ChatProtocol.OP_REPORT_SEARCH_ID:
+                return ok(reportManager.searchMessageById(request.field(0)));
+            case ChatProtocol.OP_REPORT_SEARCH_RECIPIENT:
+                return ok(reportManager.searchMessagesByRecipient(request.field(0)));
+            case ChatProtocol.OP_REPORT_DELETE_HASH:
+                return deleteByHash(request.field(0));
+            case ChatProtocol.OP_REPORT_FULL:
+                return ok(reportManager.generateFullReport());
+            case ChatProtocol.OP_REPORT_CONVERSATION:
+                return conversation(session, request);
+            case ChatProtocol.OP_REPORT_WINDOW:
+            case ChatProtocol.OP_REPORT_THROUGHPUT:
+                return timeReport(request);
+            case ChatProtocol.OP_REPORT_NUMBER_PREFIX:
+                return numberPrefix(request);
+            case ChatProtocol.OP_STATS:
+                return stats();
+            default:
+                return error("Failed: Unknown operation " + request.getCode() + ".");
+        }
+    }
+
+    private ChatProtocol.Frame register(ChatProtocol.Frame request) {
+        if (request.fieldCount() < 5) {
+            return error("Failed: Registration needs username, password, cellphone, first and last name.");
+        }
+        RegistrationLogin user = new RegistrationLogin();
+        String feedback = userManager.registerUser(user, request.field(0), request.field(1),
+                request.field(2), request.field(3), request.field(4));
+        return user.isRegistered() ? ok(feedback) : error(feedback);
+    }
+
+    private ChatProtocol.Frame login(Session session, ChatProtocol.Frame request) {
+        RegistrationLogin user = userManager.findUser(request.field(0));
+        if (user != null && user.loginUser(request.field(0), request.field(1))) {
+            session.user = user;
+            return ok(user.returnLoginStatus());
+        }
+        session.user = null;
+        return error("Username & Password do not match our records, please try again.");
+    }
+
+    private ChatProtocol.Frame send(Session session, ChatProtocol.Frame request, boolean sendNow) {
+        if (request.fieldCount() < 2) {
+            return error("Failed: A recipient and a message are required.");
+        }
+        Message message = new Message(session.user.getCellPhoneNumber(), request.field(0), request.field(1));
+        if (sendNow) {
+            String result = message.sendMessage(nextIndex);
+            if (!message.isSent()) {
+                return error(result);
+            }
+            nextIndex++;
+            added(message);
+            return ok(result, message.getId(), message.getHash());
+        }
+        if (request.field(1).trim().isEmpty() || request.field(0).trim().isEmpty()) {
+            return error("Recipient and message cannot be empty to store.");
+        }
+        message.storeMessage(nextIndex++);
+        added(message);
+        return ok("Message stored successfully!", message.getId(), message.getHash());
+    }
+
+    private ChatProtocol.Frame sendLater(Session session, ChatProtocol.Frame request) {
+        if (request.fieldCount() < 3) {
+            return error("Failed: A recipient, a message and a delivery time are required.");
+        }
+        long deliverAt;
+        try {
+            deliverAt = Long.parseLong(request.field(2));
+        } catch (NumberFormatException e) {
+            return error("Failed: The delivery time must be a number of milliseconds.");
+        }
+        Message message = new Message(session.user.getCellPhoneNumber(), request.field(0), request.field(1));
+        String result = message.scheduleMessage(nextIndex, deliverAt);
+        if (!message.isScheduled()) {
+            return error(result);
+        }
+        nextIndex++;
+        added(message);
+        scheduler.schedule(message);
+        return ok(result, message.getId(), message.getHash());
+    }
+
+    private ChatProtocol.Frame broadcast(Session session, ChatProtocol.Frame request) {
+        if (request.fieldCount() < 2) {
+            return error("Failed: A message and a list of recipients are required.");
+        }
+        BulkSender.Result result = BulkSender.send(session.user.getCellPhoneNumber(),
+                BulkSender.parseRecipients(request.field(1).replace('\n', ',')), request.field(0), nextIndex);
+        nextIndex += result.getMessages().size();
+        for (Message message : result.getMessages()) {
+            added(message);
+        }
+
+        StringBuilder failures = new StringBuilder();
+        for (BulkSender.Failure failure : result.getFailures()) {
+            failures.append(failure).append('\n');
+        }
+        return ok(result.summary(), failures.toString());
+    }
+
+    /**
+     * Deletes by the hash a send returned, which still finds the message if a flush has since renumbered it.
+     */
+    private ChatProtocol.Frame deleteByHash(String requested) {
+        String hash = requested == null ? null : renumberedHashes.getOrDefault(requested.toUpperCase(), requested);
+        String result = reportManager.deleteMessageByHash(hash);
+        if (result.contains("successfully deleted")) {
+            renumberedHashes.remove(requested.toUpperCase());
+            if (!result.endsWith(ReportManager.DELETED_FROM_ARCHIVE)) {
+                // The report manager has already taken it out of the indexes
+                scheduler.cancel(hash.toUpperCase());
+                deleted(hash);
+            }
+        }
+        return ok(result);
+    }
+
+    private void added(Message message) {
+        allMessages.add(message);
+        indexes.onMessageAdded(message);
+        if (store != null) {
+            pendingAppends.add(message);
+        }
+        dirty = true;
+    }
+
+    private void deleted(String hash) {
+        // A message that was never written only has to be forgotten
+        if (store != null && !MessageStore.removeByHash(pendingAppends, hash)) {
+            pendingDeletes.add(hash);
+        }
+        dirty = true;
+    }
+
+    private ChatProtocol.Frame conversation(Session session, ChatProtocol.Frame request) {
+        String me = session.user.getCellPhoneNumber();
+        try {
+            int cursor = request.fieldCount() > 1 ? Integer.parseInt(request.field(1)) : 0;
+            int pageSize = request.fieldCount() > 2 ? Integer.parseInt(request.field(2)) : 25;
+            ConversationIndex.Page page = reportManager.getConversationPage(me, request.field(0), cursor, pageSize);
+            return ok(reportManager.displayConversation(me, request.field(0), cursor, pageSize),
+                    String.valueOf(page.getNextCursor()));
+        } catch (NumberFormatException e) {
+            return error("Failed: Cursor and page size must be numbers.");
+        }
+    }
+
+    private ChatProtocol.Frame numberPrefix(ChatProtocol.Frame request) {
+        String prefix = request.field(0);
+        if (!NumberPrefixIndex.isValidPrefix(prefix)) {
+            return ok(reportManager.searchNumbersByPrefix(prefix, null, 0));
+        }
+        try {
+            String after = request.fieldCount() > 1 && !request.field(1).isEmpty() ? request.field(1) : null;
+            int pageSize = request.fieldCount() > 2 ? Integer.parseInt(request.field(2)) : 25;
+            NumberPrefixIndex.Page page = reportManager.getNumberPage(prefix, after, pageSize);
+            return ok(reportManager.searchNumbersByPrefix(prefix, after, pageSize),
+                    page.hasMore() ? page.getNextCursor() : "");
+        } catch (NumberFormatException e) {
+            return error("Failed: The page size must be a number.");
+        }
+    }
+
+    private ChatProtocol.Frame timeReport(ChatProtocol.Frame request) {
+        if (request.fieldCount() < 2) {
+            return error("Failed: A start and an end time are required.");
+        }
+        try {
+            long from = Long.parseLong(request.field(0));
+            long to = Long.parseLong(request.field(1));
+            return ok(request.getCode() == ChatProtocol.OP_REPORT_WINDOW
+                    ? reportManager.getMessagesInWindow(from, to)
+                    : reportManager.getThroughputPerMinute(from, to));
+        } catch (NumberFormatException e) {
+            return error("Failed: Times must be numbers of milliseconds.");
+        }
+    }
+
+    /**
+     * Reports open connections and heap in use, used by the server benchmarks.
+     * The heap figure includes garbage not yet collected; callers compare readings taken the same way.
+     */
+    private ChatProtocol.Frame stats() {
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        return ok(String.valueOf(openSessions.get()), String.valueOf(heapUsed), String.valueOf(allMessages.size()));
+    }
+
+    /**
+     * Called by a front end when a connection is accepted.
+     */
+    public Session openSession() {
+        openSessions.incrementAndGet();
+        return new Session();
+    }
+
+    /**
+     * Called by a front end when a connection is closed.
+     */
+    public void closeSession(Session session) {
+        openSessions.decrementAndGet();
+    }
+
+    /**
+     * Writes the messages to messages.json if anything changed since the last flush.
+     * With a MessageStore, only the changes are appended and what other instances wrote is picked up.
+     */
+    public synchronized void flush() {
+        if (store != null) {
+            flushToStore();
+            return;
+        }
+        deliverDue(System.currentTimeMillis());
+        if (dirty && persist) {
+            MessageManager.saveAllMessages(allMessages);
+        }
+        dirty = false;
+    }
+
+    private void flushToStore() {
+        try {
+            if (pendingAppends.isEmpty()) {
+                applyStoreChanges(store.poll(), false);
+            } else {
+                // Pending messages may be renumbered if another instance used their indexes first
+                String[] hashes = new String[pendingAppends.size()];
+                for (int i = 0; i < hashes.length; i++) {
+                    hashes[i] = pendingAppends.get(i).getHash();
+                }
+                MessageStore.Changes changes = store.append(pendingAppends);
+                applyStoreChanges(changes, true);
+                for (int i = 0; i < hashes.length; i++) {
+                    Message message = pendingAppends.get(i);
+                    if (hashes[i] != null && !hashes[i].equals(message.getHash())) {
+                        // The sender was given the old hash, so deleting by it must still work
+                        renumberedHashes.put(hashes[i].toUpperCase(), message.getHash());
+                        if (!changes.isReload()) {
+                            indexes.onMessageRenumbered(message, hashes[i]);
+                        }
+                    }
+                }
+            }
+            pendingAppends.clear();
+            // After the appends, so a message scheduled since the last flush is written before it is replaced
+            deliverDue(System.currentTimeMillis());
+            for (String hash : pendingDeletes) {
+                applyStoreChanges(store.delete(hash), false);
+            }
+            pendingDeletes.clear();
+            dirty = false;
+            nextIndex = Math.max(nextIndex, store.getMaxIndex() + 1);
+        } catch (IOException e) {
+            System.err.println("Error saving messages: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends the scheduled messages that are due, replacing each stored original with its sent copy.
+     * With a store the replacements are written straight away; otherwise the next save writes them.
+     */
+    synchronized void deliverDue(long nowMillis) {
+        List<Message> due = DeliveryScheduler.stillScheduled(scheduler.takeDue(nowMillis), indexes::contains);
+        if (due.isEmpty()) {
+            return;
+        }
+        ArrayList<Message> originals = new ArrayList<>();
+        ArrayList<Message> delivered = new ArrayList<>();
+        for (Message message : due) {
+            Message copy = DeliveryScheduler.deliveredCopy(message, nextIndex);
+            if (copy != null) {
+                nextIndex++;
+                originals.add(message);
+                delivered.add(copy);
+            }
+        }
+        if (store != null) {
+            try {
+                // Anything another instance already delivered is removed from our list here and skipped
+                applyStoreChanges(store.deliver(originals, delivered), false);
+                nextIndex = Math.max(nextIndex, store.getMaxIndex() + 1);
+            } catch (IOException e) {
+                System.err.println("Error delivering scheduled messages: " + e.getMessage());
+                // Try again on the next flush
+                originals.forEach(scheduler::schedule);
+                return;
+            }
+        }
+        // A reload above may have scheduled the originals again
+        originals.forEach(message -> scheduler.cancel(message.getHash()));
+        if (DeliveryScheduler.replaceDelivered(allMessages, originals, delivered) > 0) {
+            for (int i = 0; i < originals.size(); i++) {
+                // An original another instance delivered first has already left the list and the indexes
+                if (indexes.onMessageDeleted(originals.get(i).getHash()) != null) {
+                    indexes.onMessageAdded(delivered.get(i));
+                }
+            }
+            dirty = true;
+        }
+    }
+
+    /**
+     * @return The number of scheduled messages waiting to be delivered.
+     */
+    public synchronized int scheduledCount() {
+        return scheduler.size();
+    }
+
+    private void applyStoreChanges(MessageStore.Changes changes, boolean appended) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        changes.applyTo(allMessages);
+        if (changes.isReload()) {
+            if (appended) {
+                // The reload was read before our messages were written, so they go back on the end
+                allMessages.addAll(pendingAppends);
+            }
+            indexes.build(allMessages);
+        } else {
+            changes.getDeletedHashes().forEach(indexes::onMessageDeleted);
+            changes.getAdded().forEach(indexes::onMessageAdded);
+        }
+        // Other instances schedule messages too; the first to deliver one wins (see MessageStore.deliver)
+        if (changes.isReload()) {
+            scheduler.clear();
+            scheduler.scheduleAll(allMessages, message -> true);
+        } else {
+            changes.getDeletedHashes().forEach(scheduler::cancel);
+            scheduler.scheduleAll(changes.getAdded(), message -> true);
+        }
+    }
+
+    /**
+     * @return The number of messages currently held.
+     */
+    public synchronized int messageCount() {
+        return allMessages.size();
+    }
+
+    private static ChatProtocol.Frame ok(String... fields) {
+        return new ChatProtocol.Frame(ChatProtocol.STATUS_OK, fields);
+    }
+
+    private static ChatProtocol.Frame error(String message) {
+        return new ChatProtocol.Frame(ChatProtocol.STATUS_ERROR, message);
+    }
+}
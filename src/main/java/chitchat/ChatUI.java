@@ -4,7 +4,15 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The main chat interface, shown after a user successfully logs in.
@@ -24,16 +32,81 @@ public class ChatUI extends JFrame {
     private RegistrationLogin currentUser;
     private ArrayList<Message> allMessages;
 
+    // Message history is loaded in the background so the window can appear immediately
+    private SwingWorker<ArrayList<Message>, Void> historyLoader;
+    private boolean historyLoaded;
+    private final ArrayList<Runnable> afterHistoryLoaded = new ArrayList<>();
+    private final long loginStartedNanos;
+    private static final LatencyHistogram LOGIN_TO_INTERACTIVE = MetricsRegistry.shared().histogram("ui.loginToInteractive");
+    private static final LatencyHistogram HISTORY_LOAD_LATENCY = MetricsRegistry.shared().histogram("ui.historyLoad");
+    private static final MetricsRegistry.Counter HISTORY_LOADED_COUNT = MetricsRegistry.shared().counter("ui.historyMessages");
+
+    // Per-recipient inbox over allMessages, so the inbox panel never scans the whole history
+    private static final int INBOX_PAGE_SIZE = 50;
+    private final InboxIndex inboxIndex;
+    // The inbox and the report indexes, following everything the store writes and reads
+    private final MessageIndexes indexes;
+
+    // Shared with any other ChitChat instance in this directory; polled for what they write
+    private static final int STORE_POLL_MILLIS = 2000;
+    private final MessageStore messageStore = new MessageStore();
+    private Timer storePollTimer;
+    private boolean pollPending;
+    // Messages this window created that the store failed to write, retried with the next poll; on the EDT
+    private final ArrayList<Message> unsaved = new ArrayList<>();
+    // Open reports windows, closed before the store is, since they write deletions through it
+    private final ArrayList<ReportsUI> reportWindows = new ArrayList<>();
+    // Store reads and writes run here, one at a time and in order, so the EDT never waits for the
+    // journal lock or the disk; what each returns is applied to the list back on the EDT
+    private final ExecutorService storeThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chitchat-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The highest message index seen or used, kept on the EDT; the store renumbers ours if another instance used it first
+    private int lastIndex;
+    // The store's highest index once the history has loaded, read by finishHistoryLoad() after the loader finishes
+    private int loadedMaxIndex;
+
+    /**
+     * A store call whose result is applied on the EDT.
+     */
+    private interface StoreCall {
+        MessageStore.Changes call() throws IOException;
+    }
+
+    // This user's "Send Later" messages, delivered by this window while it is open
+    private static final int DELIVERY_CHECK_MILLIS = 1000;
+    private final DeliveryScheduler deliveryScheduler = new DeliveryScheduler(System.currentTimeMillis());
+    private Timer deliveryTimer;
+
     private JTextField recipientField;
     private JTextArea payloadArea;
     private JLabel feedbackLabel;
+    private JLabel inboxTitleLabel;
+    private JTextArea inboxArea;
 
     public ChatUI(RegistrationLogin user) {
+        this(user, System.nanoTime());
+    }
+
+    /**
+     * Creates the chat window and starts loading the message history in the background.
+     *
+     * @param user              The logged in user.
+     * @param loginStartedNanos The System.nanoTime() at which the login was submitted, used for the
+     *                          ui.loginToInteractive metric.
+     */
+    public ChatUI(RegistrationLogin user, long loginStartedNanos) {
         super("ChitChat - Messenger");
         this.currentUser = user;
+        this.loginStartedNanos = loginStartedNanos;
         
-        // Load all messages from the JSON file on startup
-        this.allMessages = MessageManager.loadAllMessages();
+        // Start with an empty list; messages sent before the history arrives are merged in later
+        this.allMessages = new ArrayList<>();
+        this.inboxIndex = new InboxIndex();
+        this.indexes = new MessageIndexes(inboxIndex);
+        messageStore.getChangeStream().listen(indexes);
 
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(1280, 720);
@@ -41,9 +114,16 @@ public class ChatUI extends JFrame {
         
         // Add a window listener to save messages when the user closes the app
         addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                LOGIN_TO_INTERACTIVE.recordSince(ChatUI.this.loginStartedNanos);
+            }
+
             @Override
             public void windowClosing(WindowEvent e) {
-                MessageManager.saveAllMessages(allMessages);
+                // Every message was written when it was sent, wait for the history so nothing is pending
+                finishHistoryLoad();
+                closeStore();
                 System.out.println("All messages saved. Exiting.");
             }
         });
@@ -111,13 +191,43 @@ public class ChatUI extends JFrame {
         
         mainPanel.add(messagePanel, BorderLayout.CENTER);
 
+        // Inbox Panel showing the newest messages sent to this user
+        JPanel inboxPanel = new JPanel(new BorderLayout(5, 5));
+        inboxPanel.setOpaque(false);
+        inboxPanel.setPreferredSize(new Dimension(400, 0));
+        inboxTitleLabel = createStyledLabel("Inbox");
+        inboxArea = new JTextArea();
+        inboxArea.setEditable(false);
+        inboxArea.setLineWrap(true);
+        inboxArea.setWrapStyleWord(true);
+        inboxArea.setBackground(FIELD_BG_COLOR);
+        inboxArea.setForeground(TEXT_COLOR);
+        inboxArea.setFont(new Font("SansSerif", Font.PLAIN, 13));
+        inboxArea.setMargin(new Insets(5, 5, 5, 5));
+        inboxArea.setText("Loading inbox...");
+        JScrollPane inboxScroll = new JScrollPane(inboxArea);
+        inboxScroll.setBorder(BorderFactory.createLineBorder(SECONDARY_COLOR));
+        JButton markReadButton = new JButton("Mark all read");
+        styleSecondaryButton(markReadButton);
+        markReadButton.addActionListener(e -> {
+            inboxIndex.markAllRead(currentUser.getCellPhoneNumber());
+            refreshInbox();
+        });
+        inboxPanel.add(inboxTitleLabel, BorderLayout.NORTH);
+        inboxPanel.add(inboxScroll, BorderLayout.CENTER);
+        inboxPanel.add(markReadButton, BorderLayout.SOUTH);
+        mainPanel.add(inboxPanel, BorderLayout.EAST);
+
         // Footer Panel for buttons
         JPanel footerPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 5));
         footerPanel.setOpaque(false);
         
         JButton sendButton = createStyledButton("Send Message");
         JButton storeButton = createStyledButton("Store for Later");
+        JButton sendLaterButton = createStyledButton("Send Later...");
+        JButton broadcastButton = createStyledButton("Broadcast...");
         JButton reportsButton = createStyledButton("View Reports");
+        JButton diagnosticsButton = createStyledButton("Diagnostics");
         
         feedbackLabel = new JLabel(" ", SwingConstants.CENTER);
         feedbackLabel.setFont(new Font("SansSerif", Font.ITALIC, 14));
@@ -125,7 +235,10 @@ public class ChatUI extends JFrame {
         
         footerPanel.add(sendButton);
         footerPanel.add(storeButton);
+        footerPanel.add(sendLaterButton);
+        footerPanel.add(broadcastButton);
         footerPanel.add(reportsButton);
+        footerPanel.add(diagnosticsButton);
 
         JPanel bottomContainer = new JPanel(new BorderLayout());
         bottomContainer.setOpaque(false);
@@ -139,30 +252,304 @@ public class ChatUI extends JFrame {
         // --- Action Listeners ---
         sendButton.addActionListener(e -> handleSendMessage());
         storeButton.addActionListener(e -> handleStoreMessage());
+        sendLaterButton.addActionListener(e -> handleSendLater());
+        broadcastButton.addActionListener(e -> handleBroadcast());
         reportsButton.addActionListener(e -> openReportsWindow());
+        diagnosticsButton.addActionListener(e -> new DiagnosticsUI(MetricsRegistry.shared()).setVisible(true));
+
+        startHistoryLoad();
     }
-    
+
+    /**
+     * Loads messages.json on a background thread. The result is merged on the EDT in finishHistoryLoad().
+     */
+    private void startHistoryLoad() {
+        feedbackLabel.setText("Loading message history...");
+        historyLoader = new SwingWorker<>() {
+            @Override
+            protected ArrayList<Message> doInBackground() throws IOException {
+                long started = System.nanoTime();
+                // The indexes are built from the RESET the load publishes
+                ArrayList<Message> loaded = messageStore.load();
+                loadedMaxIndex = messageStore.getMaxIndex();
+                HISTORY_LOAD_LATENCY.recordSince(started);
+                HISTORY_LOADED_COUNT.add(loaded.size());
+                return loaded;
+            }
+
+            @Override
+            protected void done() {
+                finishHistoryLoad();
+            }
+        };
+        historyLoader.execute();
+    }
+
+    /**
+     * Merges the loaded history with any messages sent while it was loading.
+     * Must be called on the EDT. Blocks if the history has not finished loading yet.
+     */
+    private void finishHistoryLoad() {
+        if (historyLoaded) {
+            return;
+        }
+        ArrayList<Message> loaded;
+        try {
+            loaded = historyLoader.get();
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("Error loading message history: " + e.getMessage());
+            loaded = new ArrayList<>();
+        }
+
+        // Keep the same list instance, open windows hold a reference to it.
+        // Messages created before the history arrived are written now, which renumbers them after it.
+        ArrayList<Message> sentWhileLoading = new ArrayList<>(allMessages);
+        allMessages.clear();
+        allMessages.addAll(loaded);
+        lastIndex = Math.max(lastIndex, loadedMaxIndex);
+        historyLoaded = true;
+        if (!sentWhileLoading.isEmpty()) {
+            saveNewMessages(sentWhileLoading);
+        }
+        refreshInbox();
+
+        storePollTimer = new Timer(STORE_POLL_MILLIS, e -> pollStore());
+        storePollTimer.start();
+        deliveryScheduler.scheduleAll(allMessages, this::isOwnMessage);
+        deliveryTimer = new Timer(DELIVERY_CHECK_MILLIS, e -> deliverDueMessages());
+        deliveryTimer.start();
+
+        if (feedbackLabel.getText().equals("Loading message history...")) {
+            feedbackLabel.setText(" ");
+        }
+        for (Runnable action : afterHistoryLoaded) {
+            action.run();
+        }
+        afterHistoryLoaded.clear();
+    }
+
+    /**
+     * Appends a batch of new messages, refreshing the inbox once at the end.
+     * The store has already published them to the indexes.
+     */
+    private void recordMessages(List<Message> messages) {
+        allMessages.addAll(messages);
+        if (historyLoaded) {
+            refreshInbox();
+        }
+    }
+
+    /**
+     * @return The index for a message this window creates.
+     */
+    private int nextIndex() {
+        return ++lastIndex;
+    }
+
+    /**
+     * Writes messages this window created to the shared store and adds them to the list once written.
+     * Until the history is loaded they are only added; finishHistoryLoad() writes them.
+     * If the write fails they are kept aside and retried with the next poll.
+     */
+    private void saveNewMessages(List<Message> messages) {
+        if (!historyLoaded) {
+            recordMessages(messages);
+            return;
+        }
+        // Whatever other instances wrote first goes before ours, and ours may be renumbered after it
+        callStore(() -> messageStore.append(messages), "Error saving messages: ",
+                () -> recordMessages(messages), () -> keepUnsaved(messages));
+    }
+
+    private void keepUnsaved(List<Message> messages) {
+        unsaved.addAll(messages);
+        feedbackLabel.setForeground(Color.RED);
+        feedbackLabel.setText(unsaved.size() == 1 ? "A message could not be saved yet, retrying..."
+                : unsaved.size() + " messages could not be saved yet, retrying...");
+    }
+
+    /**
+     * Writes the messages kept aside by a failed save again.
+     */
+    private void retryUnsaved() {
+        if (unsaved.isEmpty()) {
+            return;
+        }
+        ArrayList<Message> retry = new ArrayList<>(unsaved);
+        unsaved.clear();
+        saveNewMessages(retry);
+    }
+
+    /**
+     * Picks up messages other instances have sent or deleted since the last poll.
+     * A poll is skipped while the last one is still waiting for the store.
+     */
+    private void pollStore() {
+        retryUnsaved();
+        if (pollPending) {
+            return;
+        }
+        pollPending = true;
+        callStore(messageStore::poll, "Error reading new messages: ",
+                () -> pollPending = false, () -> pollPending = false);
+    }
+
+    /**
+     * Runs a store call on the store thread. Back on the EDT the changes it returns are applied and
+     * then runs; if it failed, the error is logged and failed runs instead. Once the store is
+     * closed nothing more is written, and failed runs straight away.
+     */
+    private void callStore(StoreCall call, String error, Runnable then, Runnable failed) {
+        if (storeThread.isShutdown()) {
+            System.err.println(error + "the message store is closed.");
+            failed.run();
+            return;
+        }
+        storeThread.execute(() -> {
+            MessageStore.Changes changes = null;
+            try {
+                changes = call.call();
+            } catch (IOException e) {
+                System.err.println(error + e.getMessage());
+            }
+            MessageStore.Changes result = changes;
+            int maxIndex = messageStore.getMaxIndex();
+            SwingUtilities.invokeLater(() -> {
+                lastIndex = Math.max(lastIndex, maxIndex);
+                if (result == null) {
+                    failed.run();
+                    return;
+                }
+                applyStoreChanges(result);
+                then.run();
+            });
+        });
+    }
+
+    private void applyStoreChanges(MessageStore.Changes changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        // The store has already published them to the indexes
+        changes.applyTo(allMessages);
+        refreshInbox();
+        if (changes.isReload()) {
+            deliveryScheduler.clear();
+            deliveryScheduler.scheduleAll(allMessages, this::isOwnMessage);
+        } else {
+            changes.getDeletedHashes().forEach(deliveryScheduler::cancel);
+            deliveryScheduler.scheduleAll(changes.getAdded(), this::isOwnMessage);
+        }
+    }
+
+    private boolean isOwnMessage(Message message) {
+        return currentUser.getCellPhoneNumber().equals(message.getSender());
+    }
+
+    /**
+     * Sends this user's scheduled messages that are due. Each stored original is replaced by its
+     * sent copy in the shared store, unless another instance has delivered it first.
+     */
+    private void deliverDueMessages() {
+        List<Message> due = DeliveryScheduler.stillScheduled(deliveryScheduler.takeDue(System.currentTimeMillis()), indexes::contains);
+        if (due.isEmpty()) {
+            return;
+        }
+        ArrayList<Message> originals = new ArrayList<>();
+        ArrayList<Message> delivered = new ArrayList<>();
+        for (Message message : due) {
+            Message copy = DeliveryScheduler.deliveredCopy(message, lastIndex + 1);
+            if (copy != null) {
+                lastIndex++;
+                originals.add(message);
+                delivered.add(copy);
+            }
+        }
+        callStore(() -> messageStore.deliver(originals, delivered), "Error delivering scheduled messages: ", () -> {
+            originals.forEach(message -> deliveryScheduler.cancel(message.getHash()));
+            int count = DeliveryScheduler.replaceDelivered(allMessages, originals, delivered);
+            if (count > 0) {
+                refreshInbox();
+                feedbackLabel.setForeground(Color.GREEN);
+                feedbackLabel.setText(count == 1 ? "Your scheduled message was sent." : count + " scheduled messages were sent.");
+            }
+        }, () -> originals.forEach(deliveryScheduler::schedule));
+    }
+
+    private void closeStore() {
+        if (storePollTimer != null) {
+            storePollTimer.stop();
+        }
+        if (deliveryTimer != null) {
+            deliveryTimer.stop();
+        }
+        for (ReportsUI reports : new ArrayList<>(reportWindows)) {
+            reports.dispose();
+        }
+        // A last try for messages that failed to save; their failure can only be logged now
+        if (!unsaved.isEmpty()) {
+            ArrayList<Message> retry = new ArrayList<>(unsaved);
+            unsaved.clear();
+            callStore(() -> messageStore.append(retry), "Error saving messages: ", () -> { },
+                    () -> System.err.println(retry.size() + " unsaved messages were lost."));
+        }
+        // The one wait for the store on the EDT: messages already sent must be written before we go
+        storeThread.shutdown();
+        try {
+            storeThread.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            messageStore.close();
+        } catch (IOException e) {
+            System.err.println("Error closing the message store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Shows the newest page of the user's inbox. Unread messages are marked with a star.
+     */
+    private void refreshInbox() {
+        String cell = currentUser.getCellPhoneNumber();
+        inboxTitleLabel.setText("Inbox (" + inboxIndex.unreadCount(cell) + " unread of " + inboxIndex.size(cell) + ")");
+        StringBuilder text = new StringBuilder();
+        int offset = 0;
+        for (Message msg : inboxIndex.getNewest(cell, 0, INBOX_PAGE_SIZE)) {
+            text.append(inboxIndex.isUnread(cell, offset++) ? "* " : "  ")
+                .append("From ").append(msg.getSender()).append(": ")
+                .append(msg.getPayload()).append("\n");
+        }
+        inboxArea.setText(text.length() == 0 ? "No messages yet." : text.toString());
+        inboxArea.setCaretPosition(0);
+    }
+
     private void handleSendMessage() {
         String recipient = recipientField.getText();
         String payload = payloadArea.getText();
         
+        // Stop a single sender from flooding the store
+        String throttled = SendRateLimiter.shared().checkSend(currentUser.getCellPhoneNumber());
+        if (throttled != null) {
+            feedbackLabel.setForeground(Color.ORANGE);
+            feedbackLabel.setText(throttled);
+            return;
+        }
+
         Message message = new Message(currentUser.getCellPhoneNumber(), recipient, payload);
         
-        // Find the highest current index to determine the next one
-        int nextIndex = allMessages.stream().mapToInt(Message::getIndex).max().orElse(0) + 1;
-        
-        String result = message.sendMessage(nextIndex);
+        String result = message.sendMessage(lastIndex + 1);
         
         if (result.contains("successfully")) {
+            lastIndex++;
             feedbackLabel.setForeground(Color.GREEN);
-            allMessages.add(message);
-            
+
+            // Save immediately after a successful action
+            saveNewMessages(List.of(message));
+
             // Clear fields for next message
             recipientField.setText("");
             payloadArea.setText("");
-            
-            // Save immediately after a successful action
-            MessageManager.saveAllMessages(allMessages);
         } else {
             feedbackLabel.setForeground(Color.ORANGE);
         }
@@ -181,31 +568,151 @@ public class ChatUI extends JFrame {
         }
 
         Message message = new Message(currentUser.getCellPhoneNumber(), recipient, payload);
-        int nextIndex = allMessages.stream().mapToInt(Message::getIndex).max().orElse(0) + 1;
-        
-        message.storeMessage(nextIndex);
-        allMessages.add(message);
-        
+        message.storeMessage(nextIndex());
+
+        // Save immediately
+        saveNewMessages(List.of(message));
+
         feedbackLabel.setForeground(Color.CYAN);
         feedbackLabel.setText("Message stored successfully!");
         
         recipientField.setText("");
         payloadArea.setText("");
-        
-        // Save immediately
-        MessageManager.saveAllMessages(allMessages);
+    }
+
+    /**
+     * Stores the message with a delivery time picked by the user. This window sends it when it is
+     * due; if no ChitChat instance is open then, it is sent by the next one to start.
+     */
+    private void handleSendLater() {
+        String recipient = recipientField.getText();
+        String payload = payloadArea.getText();
+
+        String throttled = SendRateLimiter.shared().checkSend(currentUser.getCellPhoneNumber());
+        if (throttled != null) {
+            feedbackLabel.setForeground(Color.ORANGE);
+            feedbackLabel.setText(throttled);
+            return;
+        }
+
+        JSpinner timeSpinner = new JSpinner(new SpinnerDateModel(
+                new Date(System.currentTimeMillis() + 5 * 60_000), null, null, Calendar.MINUTE));
+        timeSpinner.setEditor(new JSpinner.DateEditor(timeSpinner, "yyyy-MM-dd HH:mm"));
+        Object[] fields = {"Deliver at:", timeSpinner};
+        int choice = JOptionPane.showConfirmDialog(this, fields, "Send Later", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION) {
+            return;
+        }
+        long deliverAt = ((Date) timeSpinner.getValue()).getTime();
+
+        Message message = new Message(currentUser.getCellPhoneNumber(), recipient, payload);
+        String result = message.scheduleMessage(lastIndex + 1, deliverAt);
+        if (!message.isScheduled()) {
+            feedbackLabel.setForeground(Color.ORANGE);
+            feedbackLabel.setText(result);
+            return;
+        }
+        lastIndex++;
+
+        // Written now, so the schedule survives this window closing
+        saveNewMessages(List.of(message));
+        deliveryScheduler.schedule(message);
+
+        feedbackLabel.setForeground(Color.CYAN);
+        feedbackLabel.setText(result);
+        recipientField.setText("");
+        payloadArea.setText("");
+    }
+
+    /**
+     * Sends the message in the payload area to a list of recipients, typed in or loaded from a file,
+     * and saves once for the whole batch.
+     */
+    private void handleBroadcast() {
+        String payload = payloadArea.getText();
+        if (payload.trim().isEmpty()) {
+            feedbackLabel.setForeground(Color.ORANGE);
+            feedbackLabel.setText("Type the broadcast message first.");
+            return;
+        }
+
+        JTextArea recipientsArea = new JTextArea(10, 30);
+        recipientsArea.setText(recipientField.getText());
+        JButton loadFileButton = new JButton("Load recipients from file...");
+        loadFileButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    List<String> fromFile = BulkSender.readRecipients(chooser.getSelectedFile().toPath());
+                    recipientsArea.append((recipientsArea.getText().isEmpty() ? "" : "\n") + String.join("\n", fromFile));
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(this, "Could not read file: " + ex.getMessage());
+                }
+            }
+        });
+        Object[] fields = {"Recipients (comma or one per line):", new JScrollPane(recipientsArea), loadFileButton};
+        int choice = JOptionPane.showConfirmDialog(this, fields, "Broadcast", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        List<String> recipients = BulkSender.parseRecipients(recipientsArea.getText().replace('\n', ','));
+        BulkSender.Result result = BulkSender.send(currentUser.getCellPhoneNumber(), recipients, payload, lastIndex + 1);
+        lastIndex += result.getMessages().size();
+
+        if (!result.getMessages().isEmpty()) {
+            saveNewMessages(result.getMessages());
+            payloadArea.setText("");
+            recipientField.setText("");
+        }
+        feedbackLabel.setForeground(result.getFailures().isEmpty() ? Color.GREEN : Color.ORANGE);
+        feedbackLabel.setText(result.summary());
+
+        if (!result.getFailures().isEmpty()) {
+            StringBuilder report = new StringBuilder();
+            int shown = 0;
+            for (BulkSender.Failure failure : result.getFailures()) {
+                if (shown++ == 20) {
+                    report.append("... and ").append(result.getFailures().size() - 20).append(" more");
+                    break;
+                }
+                report.append(failure).append("\n");
+            }
+            JOptionPane.showMessageDialog(this, report.toString(), "Broadcast failures", JOptionPane.WARNING_MESSAGE);
+        }
     }
 
     private void openReportsWindow() {
+        // Reports need the full history, so wait for it if it is still loading
+        if (!historyLoaded) {
+            feedbackLabel.setForeground(Color.LIGHT_GRAY);
+            feedbackLabel.setText("Reports will open once the message history has loaded...");
+            afterHistoryLoaded.add(this::openReportsWindow);
+            return;
+        }
         // We pass the current list of messages to the reports UI
-        ReportsUI reportsUI = new ReportsUI(this.allMessages);
+        ReportsUI reportsUI = new ReportsUI(this.allMessages, indexes, messageStore);
+        // The reports take deleted messages out of the indexes they share, the inbox among them,
+        // and the deletion is written on the store thread like everything else this window writes
+        reportsUI.setDeletionSaver(hash -> callStore(() -> messageStore.delete(hash), "Error saving the deletion: ",
+                this::refreshInbox, () -> JOptionPane.showMessageDialog(reportsUI,
+                        "The deletion could not be saved; the message will come back when the history is next loaded.",
+                        "Delete by Hash", JOptionPane.ERROR_MESSAGE)));
+        reportWindows.add(reportsUI);
+        reportsUI.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                reportWindows.remove(reportsUI);
+            }
+        });
         reportsUI.setVisible(true);
         // We don't close the chat window, just open the reports on top.
     }
     
     private void handleLogout() {
-        // Save any pending changes before logging out
-        MessageManager.saveAllMessages(allMessages);
+        // Every message is already saved, just make sure nothing sent while loading is left over
+        finishHistoryLoad();
+        closeStore();
         
         // Open a new login window
         SwingUtilities.invokeLater(() -> new LoginUI().setVisible(true));
@@ -1,20 +1,189 @@
 package chitchat;
 
 import javax.swing.SwingUtilities;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main class for the ChitChat application.
- * It launches the graphical user interface.
+ * It launches the graphical user interface, or with --server a headless message server.
+ *
+ * Usage:
+ *   ChitChat                      launch the GUI
+ *   ChitChat --server [port] [--virtual] [--no-persist]
+ *                                 run the headless server, on NIO or with a virtual thread per connection
+ *   ChitChat --broadcast <senderCell> <recipientsFile> <message>
+ *                                 send one message to every recipient in the file
+ *   ChitChat --import <dumpFile> [--batch N]
+ *                                 import a CSV or .jsonl dump from another system into messages.json
+ *   ChitChat --loadgen [host] [port] [clients] [requestsPerClient]
+ *   ChitChat --generate [--users N] [--messages N] [--seed S] [--broadcast-share F] [--out dir]
+ *                                 write a large synthetic users.json and messages.json
+ *
+ * Any mode can be run with -Dchitchat.jfr=chitchat.jfr to capture a Flight Recording of it.
+ * -Dchitchat.retention=count:N or age:N moves older messages to an archive next to messages.json
+ * (see RetentionPolicy).
+ *
  * * @author Kitso Litelu (Updated by me for Finale)
  * @version 2025-06-13
  */
 public class ChitChat {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        String jfrFile = System.getProperty("chitchat.jfr");
+        if (jfrFile != null) {
+            // Flight recording with the bundled low-overhead settings, written out when the JVM exits
+            JfrEvents.startRecording(Path.of(jfrFile));
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = ChatProtocol.DEFAULT_PORT;
+            boolean virtualThreads = false;
+            boolean persist = true;
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--virtual")) {
+                    virtualThreads = true;
+                } else if (args[i].equals("--no-persist")) {
+                    persist = false;
+                } else {
+                    port = Integer.parseInt(args[i]);
+                }
+            }
+            runServer(port, virtualThreads, persist);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--broadcast")) {
+            if (args.length < 4) {
+                System.err.println("Usage: ChitChat --broadcast <senderCell> <recipientsFile> <message>");
+                return;
+            }
+            runBroadcast(args[1], Path.of(args[2]), args[3]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--import")) {
+            if (args.length != 2 && !(args.length == 4 && args[2].equals("--batch"))) {
+                System.err.println("Usage: ChitChat --import <dumpFile> [--batch N]");
+                return;
+            }
+            runImport(Path.of(args[1]), args.length == 4 ? Integer.parseInt(args[3]) : MessageImporter.DEFAULT_BATCH_SIZE);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--loadgen")) {
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            LoadGenerator.main(rest);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--generate")) {
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            DatasetGenerator.main(rest);
+            return;
+        }
+
         // Run the GUI on the Event Dispatch Thread for thread safety
         SwingUtilities.invokeLater(() -> {
             // Create and show the Login UI, which is the new entry point
             new LoginUI().setVisible(true);
         });
     }
+
+    /**
+     * Sends one message to every recipient listed in a file and appends them to the shared store in one write.
+     */
+    private static void runBroadcast(String sender, Path recipientsFile, String payload) throws IOException {
+        List<String> recipients = BulkSender.readRecipients(recipientsFile);
+        long saveStarted;
+        BulkSender.Result result;
+        try (MessageStore store = new MessageStore()) {
+            store.load();
+            result = BulkSender.send(sender, recipients, payload, store.getMaxIndex() + 1);
+            saveStarted = System.nanoTime();
+            if (!result.getMessages().isEmpty()) {
+                store.append(result.getMessages());
+            }
+        }
+
+        for (BulkSender.Failure failure : result.getFailures()) {
+            System.out.println(failure);
+        }
+        System.out.println(result.summary() + ", saved in " + (System.nanoTime() - saveStarted) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Imports a dump into the shared store, a batch at a time, and lists the records it rejected.
+     */
+    private static void runImport(Path dumpFile, int batchSize) throws IOException {
+        MessageImporter.Result result;
+        try (MessageStore store = new MessageStore()) {
+            store.load();
+            result = new MessageImporter(store, batchSize).importFile(dumpFile);
+        }
+
+        for (Map.Entry<Long, String> rejection : result.getRejections().entrySet()) {
+            System.out.println("Record " + rejection.getKey() + ": " + rejection.getValue());
+        }
+        if (result.getRejected() > result.getRejections().size()) {
+            System.out.println("... and " + (result.getRejected() - result.getRejections().size()) + " more rejected.");
+        }
+        System.out.println(result.summary());
+    }
+
+    /**
+     * Runs the headless server against users.json and messages.json in the working directory.
+     */
+    private static void runServer(int port, boolean virtualThreads, boolean persist) throws Exception {
+        // The store lets the server share messages.json with chat windows and other servers.
+        // Without persistence the history is only read, and no store is opened: opening one can
+        // write its journal, compact and archive.
+        MessageStore store = persist ? new MessageStore() : null;
+        ChatService service = persist
+                ? new ChatService(UserManager.getInstance(), store, SendRateLimiter.shared())
+                : new ChatService(UserManager.getInstance(), MessageManager.loadAllMessages(MessageManager.MESSAGES_FILE), false);
+        Closeable server;
+        int boundPort;
+        Runnable acceptLoop;
+        if (virtualThreads) {
+            VirtualThreadChatServer vtServer = new VirtualThreadChatServer(service, port);
+            server = vtServer;
+            boundPort = vtServer.getPort();
+            acceptLoop = vtServer::run;
+        } else {
+            NioChatServer nioServer = new NioChatServer(service, port);
+            server = nioServer;
+            boundPort = nioServer.getPort();
+            acceptLoop = nioServer::run;
+        }
+
+        // Write changes back once a second rather than on every request
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+        flusher.scheduleWithFixedDelay(service::flush, 1, 1, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Error stopping server: " + e.getMessage());
+            }
+            flusher.shutdown();
+            service.flush();
+            if (store == null) {
+                return;
+            }
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the message store: " + e.getMessage());
+            }
+        }));
+
+        System.out.println("ChitChat server listening on port " + boundPort
+                + (virtualThreads ? " (virtual threads)" : " (NIO)")
+                + " with " + service.messageCount() + " messages.");
+        acceptLoop.run();
+    }
 }
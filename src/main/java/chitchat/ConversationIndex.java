@@ -0,0 +1,159 @@
+package chitchat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Groups messages into conversations keyed by the unordered {sender, recipient} pair.
+ * Each conversation is kept ordered by Message.getIndex(), so a page of it can be found
+ * with a binary search on the cursor instead of scanning every message.
+ * Sent and stored messages are indexed; disregarded messages are not.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class ConversationIndex {
+
+    private final HashMap<String, ArrayList<Message>> conversations = new HashMap<>();
+
+    /**
+     * One page of a conversation, newest first.
+     */
+    public static final class Page {
+        private final List<Message> messages;
+        private final int nextCursor;
+
+        Page(List<Message> messages, int nextCursor) {
+            this.messages = messages;
+            this.nextCursor = nextCursor;
+        }
+
+        /** The messages on this page, newest first. */
+        public List<Message> getMessages() { return messages; }
+
+        /** The cursor for the next (older) page, or 0 if this is the oldest page. */
+        public int getNextCursor() { return nextCursor; }
+
+        public boolean hasMore() { return nextCursor > 0; }
+    }
+
+    /**
+     * The key for a pair of cell numbers, the same whichever way round they are given.
+     */
+    static String pairKey(String cellA, String cellB) {
+        return cellA.compareTo(cellB) <= 0 ? cellA + "|" + cellB : cellB + "|" + cellA;
+    }
+
+    /**
+     * Rebuilds the index from a full message list.
+     */
+    public synchronized void build(List<Message> messages) {
+        conversations.clear();
+        for (Message msg : messages) {
+            add(msg);
+        }
+    }
+
+    /**
+     * Adds a newly sent or stored message to its conversation.
+     */
+    public synchronized void onMessageAdded(Message message) {
+        add(message);
+    }
+
+    /**
+     * Takes a deleted message out of its conversation.
+     */
+    public synchronized void onMessageDeleted(Message message) {
+        if (!indexed(message)) {
+            return;
+        }
+        String key = pairKey(message.getSender(), message.getRecipient());
+        ArrayList<Message> conversation = conversations.get(key);
+        if (conversation == null) {
+            return;
+        }
+        int position = firstAtOrAfter(conversation, message.getIndex());
+        while (position < conversation.size() && conversation.get(position) != message
+                && conversation.get(position).getIndex() == message.getIndex()) {
+            position++;
+        }
+        if (position == conversation.size() || conversation.get(position) != message) {
+            // Renumbered since it was added, so it is not where its index says
+            position = conversation.indexOf(message);
+        }
+        if (position >= 0) {
+            conversation.remove(position);
+            if (conversation.isEmpty()) {
+                conversations.remove(key);
+            }
+        }
+    }
+
+    private static boolean indexed(Message message) {
+        return (message.isSent() || message.isStored()) && message.getSender() != null && message.getRecipient() != null;
+    }
+
+    private void add(Message message) {
+        if (!indexed(message)) {
+            return;
+        }
+        ArrayList<Message> conversation = conversations.computeIfAbsent(
+                pairKey(message.getSender(), message.getRecipient()), key -> new ArrayList<>());
+        int size = conversation.size();
+        if (size == 0 || conversation.get(size - 1).getIndex() <= message.getIndex()) {
+            conversation.add(message);
+        } else {
+            // Out of order (e.g. merged history), insert in place
+            conversation.add(firstAtOrAfter(conversation, message.getIndex()), message);
+        }
+    }
+
+    /**
+     * @return The number of messages exchanged between the two cell numbers.
+     */
+    public synchronized int size(String cellA, String cellB) {
+        ArrayList<Message> conversation = conversations.get(pairKey(cellA, cellB));
+        return conversation == null ? 0 : conversation.size();
+    }
+
+    /**
+     * Returns the newest messages with an index below the cursor.
+     *
+     * @param beforeIndex Only messages with a smaller Message.getIndex() are returned; 0 or less means the newest page.
+     * @param pageSize    The maximum number of messages on the page.
+     */
+    public synchronized Page getPage(String cellA, String cellB, int beforeIndex, int pageSize) {
+        ArrayList<Message> conversation = conversations.get(pairKey(cellA, cellB));
+        if (conversation == null || pageSize <= 0) {
+            return new Page(Collections.emptyList(), 0);
+        }
+        int end = beforeIndex <= 0 ? conversation.size() : firstAtOrAfter(conversation, beforeIndex);
+        int start = Math.max(0, end - pageSize);
+        ArrayList<Message> page = new ArrayList<>(end - start);
+        for (int i = end - 1; i >= start; i--) {
+            page.add(conversation.get(i));
+        }
+        int nextCursor = start > 0 ? conversation.get(start).getIndex() : 0;
+        return new Page(page, nextCursor);
+    }
+
+    /**
+     * Binary search for the first position whose message index is at least the given index.
+     */
+    private static int firstAtOrAfter(ArrayList<Message> conversation, int index) {
+        int low = 0;
+        int high = conversation.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (conversation.get(mid).getIndex() < index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,95 @@
+package chitchat;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * A threaded view of the messages exchanged between two cell numbers.
+ * It shows the newest page first and loads older pages on request, one page at a time.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class ConversationUI extends JFrame {
+
+    // Consistent me for Finale-inspired theme
+    private static final Color PRIMARY_COLOR = new Color(26, 28, 59);
+    private static final Color SECONDARY_COLOR = new Color(80, 101, 218);
+    private static final Color TEXT_COLOR = new Color(230, 230, 255);
+    private static final Color FIELD_BG_COLOR = new Color(40, 43, 84);
+
+    private static final int PAGE_SIZE = 25;
+
+    private final ReportManager reportManager;
+    private final String cellA;
+    private final String cellB;
+    private final JTextArea threadArea;
+    private final JButton olderButton;
+    private int cursor;
+
+    public ConversationUI(ReportManager reportManager, String cellA, String cellB) {
+        super("ChitChat - Conversation " + cellA + " <-> " + cellB);
+        this.reportManager = reportManager;
+        this.cellA = cellA;
+        this.cellB = cellB;
+
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setSize(800, 600);
+        setLocationRelativeTo(null);
+
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+        mainPanel.setBackground(PRIMARY_COLOR);
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+
+        JLabel titleLabel = new JLabel(cellA + "  <->  " + cellB, SwingConstants.CENTER);
+        titleLabel.setFont(new Font("SansSerif", Font.BOLD, 20));
+        titleLabel.setForeground(TEXT_COLOR);
+        mainPanel.add(titleLabel, BorderLayout.NORTH);
+
+        threadArea = new JTextArea();
+        threadArea.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        threadArea.setEditable(false);
+        threadArea.setLineWrap(true);
+        threadArea.setWrapStyleWord(true);
+        threadArea.setBackground(FIELD_BG_COLOR);
+        threadArea.setForeground(TEXT_COLOR);
+        threadArea.setMargin(new Insets(10, 10, 10, 10));
+        JScrollPane scrollPane = new JScrollPane(threadArea);
+        scrollPane.setBorder(BorderFactory.createLineBorder(SECONDARY_COLOR));
+        mainPanel.add(scrollPane, BorderLayout.CENTER);
+
+        olderButton = new JButton("Load older messages");
+        olderButton.setFont(new Font("SansSerif", Font.BOLD, 14));
+        olderButton.setBackground(SECONDARY_COLOR);
+        olderButton.setForeground(Color.WHITE);
+        olderButton.setFocusPainted(false);
+        olderButton.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
+        olderButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        olderButton.addActionListener(e -> loadNextPage());
+        mainPanel.add(olderButton, BorderLayout.SOUTH);
+
+        add(mainPanel);
+        loadNextPage();
+    }
+
+    /**
+     * Appends the next older page. Only that page is fetched from the index.
+     */
+    private void loadNextPage() {
+        ConversationIndex.Page page = reportManager.getConversationPage(cellA, cellB, cursor, PAGE_SIZE);
+        StringBuilder text = new StringBuilder();
+        for (Message msg : page.getMessages()) {
+            boolean fromA = msg.getSender().equals(cellA);
+            text.append(fromA ? "" : "                ")
+                .append(fromA ? cellA : cellB)
+                .append(msg.isStored() ? " (stored)" : "")
+                .append(": ").append(msg.getPayload()).append("\n");
+        }
+        if (cursor == 0 && page.getMessages().isEmpty()) {
+            text.append("No messages between these numbers.");
+        }
+        threadArea.append(text.toString());
+        cursor = page.getNextCursor();
+        olderButton.setEnabled(page.hasMore());
+    }
+}
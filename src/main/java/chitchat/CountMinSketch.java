@@ -0,0 +1,244 @@
+package chitchat;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how often each key has been added, in a fixed amount of memory however many distinct
+ * keys there are, and keeps a short list of the most frequent ones (the heavy hitters).
+ *
+ * Each key is counted in one cell of each of DEPTH rows of WIDTH counters, and its estimate is the
+ * smallest of those cells. An estimate is never low, and it is more than e / WIDTH of the total
+ * count too high with probability at most e^-DEPTH: with the defaults, within 0.14% of all adds
+ * in more than 98% of cases.
+ *
+ * The heavy hitters are the keys with the highest estimates seen so far: a key that becomes
+ * frequent enters the list as soon as its estimate passes the smallest one on it, and its entry
+ * is kept up to date from then on. Removing a key that was added takes it off again, and the
+ * estimates stay never low. Two sketches of the same size merge into the sketch of both streams,
+ * and a sketch can be written out and read back.
+ * A CountMinSketch is not thread-safe.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class CountMinSketch {
+
+    public static final int DEFAULT_WIDTH = 2048;
+    public static final int DEPTH = 4;
+
+    private final int width;
+    private final long[][] counts;
+    private final int capacity;
+    private final HashMap<String, Long> heavyHitters = new HashMap<>();
+    private long total;
+    // The smallest estimate on the heavy hitter list once it is full, so most adds skip the scan
+    private long smallestHeavyHitter;
+
+    /**
+     * @param width    Counters per row, a power of two; the error bound is e / width of the total.
+     * @param capacity How many heavy hitters to keep.
+     */
+    public CountMinSketch(int width, int capacity) {
+        if (width < 1 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("The width must be a power of two");
+        }
+        this.width = width;
+        this.counts = new long[DEPTH][width];
+        this.capacity = capacity;
+    }
+
+    public void add(String key) {
+        add(key, 1);
+    }
+
+    public void add(String key, long count) {
+        long hash = PayloadStore.hash64(key);
+        total += count;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = cell(hash, row);
+            counts[row][cell] += count;
+            estimate = Math.min(estimate, counts[row][cell]);
+        }
+        offerHeavyHitter(key, estimate);
+    }
+
+    /**
+     * Takes back one add of a key that was added before, e.g. for a deleted message.
+     * A heavy hitter whose estimate falls to zero leaves the list.
+     */
+    public void remove(String key) {
+        long hash = PayloadStore.hash64(key);
+        total--;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = cell(hash, row);
+            counts[row][cell]--;
+            estimate = Math.min(estimate, counts[row][cell]);
+        }
+        Long listed = heavyHitters.get(key);
+        if (listed == null) {
+            return;
+        }
+        if (estimate <= 0) {
+            heavyHitters.remove(key);
+        } else {
+            heavyHitters.put(key, estimate);
+        }
+        if (listed == smallestHeavyHitter || estimate < smallestHeavyHitter) {
+            smallestHeavyHitter = heavyHitters.size() < capacity ? 0 : smallestEntry().getValue();
+        }
+    }
+
+    /**
+     * @return How many times the key was added, never less than the truth.
+     */
+    public long estimate(String key) {
+        long hash = PayloadStore.hash64(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counts[row][cell(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /** @return The number of adds, counting each add's count. */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The most an estimate is likely to be too high: e / width of the total.
+     */
+    public long getErrorBound() {
+        return (long) Math.ceil(Math.E / width * total);
+    }
+
+    /**
+     * @return The probability that an estimate is off by more than getErrorBound(): e^-DEPTH.
+     */
+    public double getErrorProbability() {
+        return Math.exp(-DEPTH);
+    }
+
+    /**
+     * @return Up to limit of the heavy hitters with their estimates, most frequent first.
+     */
+    public List<Map.Entry<String, Long>> getHeavyHitters(int limit) {
+        ArrayList<Map.Entry<String, Long>> top = new ArrayList<>(heavyHitters.entrySet());
+        top.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        return new ArrayList<>(top.subList(0, Math.min(limit, top.size())));
+    }
+
+    /**
+     * Adds another sketch of the same width to this one.
+     */
+    public void merge(CountMinSketch other) {
+        if (other.width != width) {
+            throw new IllegalArgumentException("Only sketches of the same width can be merged");
+        }
+        for (int row = 0; row < DEPTH; row++) {
+            for (int cell = 0; cell < width; cell++) {
+                counts[row][cell] += other.counts[row][cell];
+            }
+        }
+        total += other.total;
+        // Both lists are candidates; their estimates are read again from the merged counters
+        ArrayList<String> candidates = new ArrayList<>(heavyHitters.keySet());
+        candidates.addAll(other.heavyHitters.keySet());
+        heavyHitters.clear();
+        smallestHeavyHitter = 0;
+        for (String key : candidates) {
+            offerHeavyHitter(key, estimate(key));
+        }
+    }
+
+    /**
+     * Writes the sketch: its size, total and counters, then its heavy hitters.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(capacity);
+        out.writeLong(total);
+        for (long[] row : counts) {
+            for (long count : row) {
+                out.writeLong(count);
+            }
+        }
+        out.writeInt(heavyHitters.size());
+        for (Map.Entry<String, Long> entry : heavyHitters.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a sketch written by writeTo().
+     */
+    static CountMinSketch readFrom(DataInput in) throws IOException {
+        int width = in.readInt();
+        int capacity = in.readInt();
+        if (width < 1 || width > 1 << 20 || Integer.bitCount(width) != 1 || capacity < 0) {
+            throw new IOException("Invalid CountMinSketch size: " + width + " x " + capacity);
+        }
+        CountMinSketch sketch = new CountMinSketch(width, capacity);
+        sketch.total = in.readLong();
+        for (long[] row : sketch.counts) {
+            for (int cell = 0; cell < row.length; cell++) {
+                row[cell] = in.readLong();
+            }
+        }
+        int hitters = in.readInt();
+        if (hitters < 0 || hitters > sketch.capacity) {
+            throw new IOException("Invalid heavy hitter count: " + hitters);
+        }
+        for (int i = 0; i < hitters; i++) {
+            sketch.heavyHitters.put(in.readUTF(), in.readLong());
+        }
+        if (hitters == sketch.capacity && hitters > 0) {
+            sketch.smallestHeavyHitter = sketch.smallestEntry().getValue();
+        }
+        return sketch;
+    }
+
+    private int cell(long hash, int row) {
+        // Double hashing: each row uses a different mix of the two halves of one hash
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return (h1 + row * h2) & (width - 1);
+    }
+
+    private void offerHeavyHitter(String key, long estimate) {
+        Long listed = heavyHitters.get(key);
+        if (listed != null || heavyHitters.size() < capacity) {
+            heavyHitters.put(key, estimate);
+            // Only a new entry or a change to the smallest one can move the smallest estimate
+            if (heavyHitters.size() == capacity && (listed == null || listed == smallestHeavyHitter)) {
+                smallestHeavyHitter = smallestEntry().getValue();
+            }
+            return;
+        }
+        if (capacity == 0 || estimate <= smallestHeavyHitter) {
+            return;
+        }
+        heavyHitters.remove(smallestEntry().getKey());
+        heavyHitters.put(key, estimate);
+        smallestHeavyHitter = smallestEntry().getValue();
+    }
+
+    private Map.Entry<String, Long> smallestEntry() {
+        Map.Entry<String, Long> smallest = null;
+        for (Map.Entry<String, Long> entry : heavyHitters.entrySet()) {
+            if (smallest == null || entry.getValue() < smallest.getValue()) {
+                smallest = entry;
+            }
+        }
+        return smallest;
+    }
+}
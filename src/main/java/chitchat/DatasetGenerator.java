@@ -0,0 +1,291 @@
+package chitchat;
+
+import org.json.simple.JSONValue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Generates large, realistic users.json and messages.json files for performance work.
+ *
+ * Records are streamed straight to disk one at a time, so memory stays bounded however many are written.
+ * Every user passes the RegistrationLogin rules, every message uses valid +27 numbers of generated users,
+ * payload lengths follow a skewed distribution capped at 250 characters, about 70% of messages are sent,
+ * 20% stored and 10% disregarded, and hashes come from Message.createMessageHash.
+ * The same seed always produces the same files.
+ *
+ * With a broadcast share, that fraction of messages instead reuses one of a small pool of broadcast
+ * and template texts, a few of them far more often than the rest, as on a system used for notices.
+ *
+ * Usage: DatasetGenerator [--users N] [--messages N] [--seed S] [--broadcast-share F] [--out dir]
+ *        (defaults: 10,000 users, 1,000,000 messages, seed 5121, no broadcasts, current directory)
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class DatasetGenerator {
+
+    /** Usernames are four base-62 characters plus an underscore, which allows this many distinct users. */
+    public static final int MAX_USERS = 62 * 62 * 62 * 62;
+
+    private static final String USERNAME_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final String[] FIRST_NAMES = {
+        "Kitso", "Thabo", "Lerato", "Sipho", "Naledi", "Pieter", "Anele", "Zanele", "Johan", "Ayanda", "Mpho", "Fatima"
+    };
+    private static final String[] LAST_NAMES = {
+        "Litelu", "Nkosi", "Dlamini", "Naidoo", "Botha", "Mokoena", "Khumalo", "Pillay", "Smith", "Mahlangu"
+    };
+    private static final String[] WORDS = {
+        "hi", "hello", "are", "you", "coming", "tonight", "dinner", "is", "ready", "call", "me", "later",
+        "the", "meeting", "moved", "to", "friday", "thanks", "see", "you", "soon", "where", "late", "on",
+        "time", "cake", "ok", "I", "am", "leaving", "without", "at", "your", "gate", "please", "send",
+        "report", "tomorrow", "morning", "running", "traffic", "home", "work", "lunch", "yes", "no"
+    };
+
+    /** How many distinct broadcast and template texts a broadcast share draws from. */
+    static final int BROADCAST_TEXTS = 200;
+
+    private final long seed;
+    private final double broadcastShare;
+
+    public DatasetGenerator(long seed) {
+        this(seed, 0);
+    }
+
+    /**
+     * @param broadcastShare The fraction of messages, 0 to 1, whose payload is a repeated broadcast text.
+     */
+    public DatasetGenerator(long seed, double broadcastShare) {
+        if (broadcastShare < 0 || broadcastShare > 1) {
+            throw new IllegalArgumentException("The broadcast share must be between 0 and 1");
+        }
+        this.seed = seed;
+        this.broadcastShare = broadcastShare;
+    }
+
+    /**
+     * @return The username of user n: four base-62 characters followed by an underscore.
+     */
+    public static String username(int n) {
+        char[] name = new char[5];
+        for (int i = 3; i >= 0; i--) {
+            name[i] = USERNAME_CHARS.charAt(n % USERNAME_CHARS.length());
+            n /= USERNAME_CHARS.length();
+        }
+        name[4] = '_';
+        return new String(name);
+    }
+
+    /**
+     * @return The cell number of user n, unique for every n below one billion.
+     */
+    public static String cellNumber(int n) {
+        // Spread users over the number space instead of +27000000001, +27000000002, ...
+        long spread = (n * 387_420_489L + 123_456_789L) % 1_000_000_000L;
+        return "+27" + zeroPadded(spread, 9);
+    }
+
+    /**
+     * Formats a non-negative number with leading zeros, without the cost of String.format on every record.
+     */
+    private static String zeroPadded(long value, int width) {
+        char[] digits = new char[width];
+        for (int i = width - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Writes users.json with the given number of valid users.
+     */
+    public void writeUsers(Path file, int count) throws IOException {
+        if (count > MAX_USERS) {
+            throw new IllegalArgumentException("At most " + MAX_USERS + " unique usernames are possible");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write('[');
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                String password = "Pass" + (1000 + random.nextInt(9000)) + "!";
+                writer.write("{\"username\":\"");
+                writer.write(username(i));
+                writer.write("\",\"password\":\"");
+                writer.write(password);
+                writer.write("\",\"cellphone\":\"");
+                writer.write(cellNumber(i));
+                writer.write("\",\"firstName\":\"");
+                writer.write(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+                writer.write("\",\"lastName\":\"");
+                writer.write(LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+                writer.write("\"}");
+            }
+            writer.write(']');
+        }
+    }
+
+    /**
+     * Writes messages.json with the given number of messages between the first userCount users.
+     */
+    public void writeMessages(Path file, long count, int userCount) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write('[');
+            boolean[] first = {true};
+            forEachMessage(count, userCount, msg -> {
+                try {
+                    if (!first[0]) {
+                        writer.write(',');
+                    }
+                    first[0] = false;
+                    writeMessage(writer, msg);
+                } catch (IOException e) {
+                    throw new GeneratorException(e);
+                }
+            });
+            writer.write(']');
+        } catch (GeneratorException e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    /**
+     * Generates messages one at a time and hands each to the consumer without keeping them.
+     */
+    public void forEachMessage(long count, int userCount, Consumer<Message> consumer) {
+        SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        int nextIndex = 1;
+        StringBuilder payload = new StringBuilder(256);
+
+        // A separate stream, so datasets without broadcasts are the same as before they existed
+        SplittableRandom broadcastRandom = new SplittableRandom(seed ^ 0xB0ADCA57L);
+        String[] broadcastTexts = new String[broadcastShare > 0 ? BROADCAST_TEXTS : 0];
+        for (int i = 0; i < broadcastTexts.length; i++) {
+            broadcastTexts[i] = nextPayload(broadcastRandom, payload);
+        }
+
+        for (long i = 0; i < count; i++) {
+            String id = zeroPadded(random.nextLong(10_000_000_000L), 10);
+            String sender = cellNumber(pickUser(random, userCount));
+            String recipient = cellNumber(pickUser(random, userCount));
+            String text;
+            if (broadcastTexts.length > 0 && broadcastRandom.nextDouble() < broadcastShare) {
+                double r = broadcastRandom.nextDouble();
+                text = broadcastTexts[(int) (broadcastTexts.length * r * r)];
+            } else {
+                text = nextPayload(random, payload);
+            }
+            Message msg = new Message(id, sender, recipient, text, 0, "", false, false, false);
+
+            int kind = random.nextInt(10);
+            if (kind < 7) {
+                msg.markSent(nextIndex++);
+            } else if (kind < 9) {
+                msg.storeMessage(nextIndex++);
+            } else {
+                msg.disregardMessage();
+            }
+            consumer.accept(msg);
+        }
+    }
+
+    /**
+     * Picks a user with a skew towards low numbers, so some users are much busier than others.
+     */
+    private static int pickUser(SplittableRandom random, int userCount) {
+        double r = random.nextDouble();
+        return (int) (userCount * r * r * r);
+    }
+
+    /**
+     * Builds a payload whose length is roughly log-normal: mostly short texts, a long tail up to 250 characters.
+     */
+    private static String nextPayload(SplittableRandom random, StringBuilder payload) {
+        int target = (int) Math.round(Math.exp(3.4 + 0.8 * random.nextGaussian()));
+        target = Math.max(2, Math.min(Message.MAX_PAYLOAD_LENGTH, target));
+
+        payload.setLength(0);
+        while (payload.length() < target) {
+            if (payload.length() > 0) {
+                payload.append(' ');
+            }
+            payload.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        if (payload.length() > Message.MAX_PAYLOAD_LENGTH) {
+            payload.setLength(Message.MAX_PAYLOAD_LENGTH);
+        }
+        return payload.toString().trim();
+    }
+
+    /**
+     * Writes one message in the same format as MessageManager.saveAllMessages.
+     */
+    static void writeMessage(Writer writer, Message msg) throws IOException {
+        writer.write("{\"id\":\"");
+        writer.write(msg.getId());
+        writer.write("\",\"sender\":\"");
+        writer.write(msg.getSender());
+        writer.write("\",\"recipient\":\"");
+        writer.write(msg.getRecipient());
+        writer.write("\",\"payload\":\"");
+        writer.write(JSONValue.escape(msg.getPayload()));
+        writer.write("\",\"index\":");
+        writer.write(Integer.toString(msg.getIndex()));
+        writer.write(",\"hash\":\"");
+        writer.write(JSONValue.escape(msg.getHash()));
+        writer.write("\",\"sent\":");
+        writer.write(Boolean.toString(msg.isSent()));
+        writer.write(",\"stored\":");
+        writer.write(Boolean.toString(msg.isStored()));
+        writer.write(",\"disregarded\":");
+        writer.write(Boolean.toString(msg.isDisregarded()));
+        writer.write('}');
+    }
+
+    /**
+     * Carries an IOException out of the message consumer.
+     */
+    private static final class GeneratorException extends RuntimeException {
+        GeneratorException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int users = 10_000;
+        long messages = 1_000_000;
+        long seed = 5121;
+        double broadcastShare = 0;
+        Path out = Path.of(".");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--users": users = Integer.parseInt(args[i + 1]); break;
+                case "--messages": messages = Long.parseLong(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                case "--broadcast-share": broadcastShare = Double.parseDouble(args[i + 1]); break;
+                case "--out": out = Path.of(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Files.createDirectories(out);
+        DatasetGenerator generator = new DatasetGenerator(seed, broadcastShare);
+
+        long started = System.nanoTime();
+        generator.writeUsers(out.resolve("users.json"), users);
+        System.out.printf("Wrote %d users in %d ms%n", users, (System.nanoTime() - started) / 1_000_000);
+
+        started = System.nanoTime();
+        generator.writeMessages(out.resolve("messages.json"), messages, users);
+        System.out.printf("Wrote %d messages (%d MB) in %d ms%n", messages,
+                Files.size(out.resolve("messages.json")) / (1024 * 1024), (System.nanoTime() - started) / 1_000_000);
+    }
+}
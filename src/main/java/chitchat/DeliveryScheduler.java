@@ -0,0 +1,192 @@
+package chitchat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Delivers stored messages that have a delivery time ("Send Later").
+ *
+ * A scheduled message is an ordinary stored message with getDeliverAt() set, so it is saved with
+ * the rest of the history and the schedule survives a restart: the owner schedules every such
+ * message again after loading. Pending messages wait in a TimingWheel keyed by their hash, so
+ * millions of them cost O(1) each to schedule, cancel and expire.
+ *
+ * When a message is due it is not changed in place. A sent copy with a new index is made, and the
+ * owner replaces the stored original with it, through MessageStore.deliver() when the history is
+ * shared so that two instances never deliver the same message twice.
+ * A DeliveryScheduler is not thread-safe; ChatService and ChatUI only use it under their own lock
+ * or on the EDT.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class DeliveryScheduler {
+
+    /** Deliveries are checked against the wheel at this granularity. */
+    public static final long DEFAULT_TICK_MILLIS = 100;
+
+    private static final MetricsRegistry.Counter DELIVERED_COUNT = MetricsRegistry.shared().counter("messages.delivered");
+
+    /**
+     * A pending message and the hash it was scheduled under, which a renumbering may since have changed.
+     */
+    private static final class Pending {
+        final String hash;
+        final Message message;
+
+        Pending(String hash, Message message) {
+            this.hash = hash;
+            this.message = message;
+        }
+    }
+
+    private final TimingWheel<Pending> wheel;
+    private final HashMap<String, TimingWheel.Timer<Pending>> byHash = new HashMap<>();
+
+    public DeliveryScheduler(long nowMillis) {
+        this(DEFAULT_TICK_MILLIS, nowMillis);
+    }
+
+    public DeliveryScheduler(long tickMillis, long nowMillis) {
+        this.wheel = new TimingWheel<>(tickMillis, nowMillis);
+    }
+
+    /**
+     * Schedules a stored message with a delivery time, replacing any timer for the same hash.
+     *
+     * @return true if the message is scheduled.
+     */
+    public boolean schedule(Message message) {
+        if (!message.isScheduled()) {
+            return false;
+        }
+        cancel(message.getHash());
+        byHash.put(message.getHash(), wheel.schedule(new Pending(message.getHash(), message), message.getDeliverAt()));
+        return true;
+    }
+
+    /**
+     * Schedules every scheduled message in the list that passes the filter, e.g. after loading.
+     *
+     * @return How many were scheduled.
+     */
+    public int scheduleAll(List<Message> messages, Predicate<Message> filter) {
+        int scheduled = 0;
+        for (Message message : messages) {
+            if (message.isScheduled() && filter.test(message) && schedule(message)) {
+                scheduled++;
+            }
+        }
+        return scheduled;
+    }
+
+    /**
+     * @return true if a message with the hash was pending.
+     */
+    public boolean cancel(String hash) {
+        TimingWheel.Timer<Pending> timer = byHash.remove(hash);
+        return timer != null && wheel.cancel(timer);
+    }
+
+    /**
+     * Forgets every pending message, e.g. before scheduling a reloaded history.
+     */
+    public void clear() {
+        for (TimingWheel.Timer<Pending> timer : byHash.values()) {
+            wheel.cancel(timer);
+        }
+        byHash.clear();
+    }
+
+    /**
+     * @return The messages whose delivery time has come, earliest tick first. They are no longer pending.
+     */
+    public List<Message> takeDue(long nowMillis) {
+        ArrayList<Message> due = new ArrayList<>();
+        wheel.advanceTo(nowMillis, pending -> {
+            byHash.remove(pending.hash);
+            due.add(pending.message);
+        });
+        return due;
+    }
+
+    /** @return The number of messages waiting to be delivered. */
+    public int size() {
+        return wheel.size();
+    }
+
+    /**
+     * Keeps the due messages that are still scheduled and still in the list, in their order.
+     * A message deleted or delivered elsewhere since it was scheduled is dropped.
+     *
+     * @param inList Whether a message is still in the list, answered without scanning it (e.g. MessageIndexes::contains).
+     */
+    static List<Message> stillScheduled(List<Message> due, Predicate<Message> inList) {
+        ArrayList<Message> kept = new ArrayList<>();
+        for (Message message : due) {
+            if (message.isScheduled() && inList.test(message)) {
+                kept.add(message);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Makes the sent copy of a due message, keeping its id.
+     *
+     * @param index The index the copy is sent with.
+     * @return The copy, or null if the message can no longer be sent.
+     */
+    static Message deliveredCopy(Message scheduled, int index) {
+        Message copy = new Message(scheduled.getId(), scheduled.getSender(), scheduled.getRecipient(),
+                scheduled.getPayload(), 0, "", false, false, false);
+        copy.setTimestamps(scheduled.getCreatedAt(), 0);
+        String result = copy.sendMessage(index);
+        if (!copy.isSent()) {
+            System.err.println("Could not deliver scheduled message " + scheduled.getHash() + ": " + result);
+            return null;
+        }
+        return copy;
+    }
+
+    /**
+     * Replaces each original that is still in the list with its delivered copy, which goes on the end.
+     * Originals are matched by hash, so one reloaded since it was scheduled is still replaced. Due
+     * messages are usually recent, so the list is searched from the end, and only as far back as
+     * the oldest original; one that is no longer in the list costs a search of the whole list.
+     *
+     * @param originals The scheduled messages, paired by position with delivered.
+     * @return How many messages were replaced.
+     */
+    static int replaceDelivered(List<Message> messages, List<Message> originals, List<Message> delivered) {
+        HashMap<String, Message> copies = new HashMap<>();
+        for (int i = 0; i < originals.size(); i++) {
+            copies.put(originals.get(i).getHash(), delivered.get(i));
+        }
+        int oldest = messages.size();
+        int found = 0;
+        for (int i = messages.size() - 1; i >= 0 && found < copies.size(); i--) {
+            if (copies.containsKey(messages.get(i).getHash())) {
+                oldest = i;
+                found++;
+            }
+        }
+        if (found == 0) {
+            return 0;
+        }
+        ArrayList<Message> replaced = new ArrayList<>();
+        messages.subList(oldest, messages.size()).removeIf(message -> {
+            Message copy = copies.remove(message.getHash());
+            if (copy != null) {
+                replaced.add(copy);
+                return true;
+            }
+            return false;
+        });
+        messages.addAll(replaced);
+        DELIVERED_COUNT.add(replaced.size());
+        return replaced.size();
+    }
+}
@@ -0,0 +1,95 @@
+package chitchat;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+/**
+ * Shows the application's metrics: latency percentiles, counters and gauges.
+ * The view refreshes itself every second while the window is open.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class DiagnosticsUI extends JFrame {
+
+    // Consistent me for Finale-inspired theme
+    private static final Color PRIMARY_COLOR = new Color(26, 28, 59);
+    private static final Color SECONDARY_COLOR = new Color(80, 101, 218);
+    private static final Color TEXT_COLOR = new Color(230, 230, 255);
+    private static final Color FIELD_BG_COLOR = new Color(40, 43, 84);
+
+    private static final int REFRESH_MILLIS = 1000;
+
+    private final MetricsRegistry registry;
+    private final JTextArea metricsArea;
+    private final Timer refreshTimer;
+
+    public DiagnosticsUI(MetricsRegistry registry) {
+        super("ChitChat - Diagnostics");
+        this.registry = registry;
+
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setSize(1000, 600);
+        setLocationRelativeTo(null);
+
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+        mainPanel.setBackground(PRIMARY_COLOR);
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+
+        JLabel titleLabel = new JLabel("Diagnostics", SwingConstants.CENTER);
+        titleLabel.setFont(new Font("SansSerif", Font.BOLD, 24));
+        titleLabel.setForeground(TEXT_COLOR);
+        mainPanel.add(titleLabel, BorderLayout.NORTH);
+
+        metricsArea = new JTextArea();
+        metricsArea.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        metricsArea.setEditable(false);
+        metricsArea.setBackground(FIELD_BG_COLOR);
+        metricsArea.setForeground(TEXT_COLOR);
+        metricsArea.setMargin(new Insets(10, 10, 10, 10));
+        JScrollPane scrollPane = new JScrollPane(metricsArea);
+        scrollPane.setBorder(BorderFactory.createLineBorder(SECONDARY_COLOR));
+        mainPanel.add(scrollPane, BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 5));
+        buttonPanel.setOpaque(false);
+        JButton resetButton = createStyledButton("Reset Latencies");
+        resetButton.addActionListener(e -> {
+            registry.resetHistograms();
+            refresh();
+        });
+        buttonPanel.add(resetButton);
+        mainPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        add(mainPanel);
+
+        refreshTimer = new Timer(REFRESH_MILLIS, e -> refresh());
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
+        refresh();
+        refreshTimer.start();
+    }
+
+    private void refresh() {
+        int caret = metricsArea.getCaretPosition();
+        metricsArea.setText(registry.generateReport());
+        metricsArea.setCaretPosition(Math.min(caret, metricsArea.getDocument().getLength()));
+    }
+
+    private JButton createStyledButton(String text) {
+        JButton button = new JButton(text);
+        button.setFont(new Font("SansSerif", Font.BOLD, 14));
+        button.setBackground(SECONDARY_COLOR);
+        button.setForeground(Color.WHITE);
+        button.setFocusPainted(false);
+        button.setBorder(BorderFactory.createEmptyBorder(12, 20, 12, 20));
+        button.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        return button;
+    }
+}
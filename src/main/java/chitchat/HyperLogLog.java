@@ -0,0 +1,186 @@
+package chitchat;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Estimates how many distinct keys have been added, in a fixed amount of memory however many
+ * there are. Keys are hashed with PayloadStore.hash64; the first bits of the hash pick one of
+ * 2^precision registers, and each register keeps the longest run of leading zeros seen in the
+ * rest. The estimate's standard error is about 1.04 / sqrt(2^precision), e.g. 0.8% at precision 14.
+ *
+ * Small sets are kept exactly as a list of their hashes and only switch to registers once that
+ * list would outgrow them, so the many senders who only ever write to a few people stay cheap.
+ * Two sketches of the same precision merge into the sketch of the union of their keys, and a
+ * sketch can be written out and read back (e.g. with an archive's summary).
+ * A HyperLogLog is not thread-safe.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class HyperLogLog {
+
+    private static final int MAX_SPARSE = 256;
+
+    private final int precision;
+    private final int registerCount;
+    // Either sparse holds the distinct hashes seen so far, or registers is in use
+    private long[] sparse = new long[4];
+    private int sparseSize;
+    private byte[] registers;
+
+    /**
+     * @param precision Between 4 and 18; each step up doubles the memory and divides the error by sqrt(2).
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18");
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+    }
+
+    public void add(String key) {
+        addHash(PayloadStore.hash64(key));
+    }
+
+    void addHash(long hash) {
+        if (registers != null) {
+            addToRegisters(hash);
+            return;
+        }
+        for (int i = 0; i < sparseSize; i++) {
+            if (sparse[i] == hash) {
+                return;
+            }
+        }
+        // An eighth as many hashes as registers take the same memory, and a longer scan gets slow
+        if (sparseSize == Math.min(registerCount / 8, MAX_SPARSE)) {
+            toRegisters();
+            addToRegisters(hash);
+            return;
+        }
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, sparse.length * 2);
+        }
+        sparse[sparseSize++] = hash;
+    }
+
+    /**
+     * @return The estimated number of distinct keys added; exact while the set is small.
+     */
+    public long estimate() {
+        if (registers == null) {
+            return sparseSize;
+        }
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double m = registerCount;
+        double alpha = registerCount == 16 ? 0.673 : registerCount == 32 ? 0.697 : registerCount == 64 ? 0.709
+                : 0.7213 / (1 + 1.079 / m);
+        double raw = alpha * m * m / sum;
+        if (raw <= 2.5 * m && zeros > 0) {
+            // Linear counting is more accurate while many registers are still empty
+            return Math.round(m * Math.log(m / zeros));
+        }
+        return Math.round(raw);
+    }
+
+    /**
+     * @return The estimate's relative standard error once the set is no longer kept exactly.
+     */
+    public double getStandardError() {
+        return 1.04 / Math.sqrt(registerCount);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Adds every key of another sketch of the same precision to this one.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Only sketches of the same precision can be merged");
+        }
+        if (other.registers == null) {
+            for (int i = 0; i < other.sparseSize; i++) {
+                addHash(other.sparse[i]);
+            }
+            return;
+        }
+        if (registers == null) {
+            toRegisters();
+        }
+        for (int i = 0; i < registerCount; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    /**
+     * Writes the sketch: its precision, then its hashes while exact, otherwise its registers.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte(precision);
+        out.writeBoolean(registers != null);
+        if (registers != null) {
+            out.write(registers);
+            return;
+        }
+        out.writeInt(sparseSize);
+        for (int i = 0; i < sparseSize; i++) {
+            out.writeLong(sparse[i]);
+        }
+    }
+
+    /**
+     * Reads a sketch written by writeTo().
+     */
+    static HyperLogLog readFrom(DataInput in) throws IOException {
+        HyperLogLog sketch = new HyperLogLog(in.readByte());
+        if (in.readBoolean()) {
+            sketch.registers = new byte[sketch.registerCount];
+            in.readFully(sketch.registers);
+            sketch.sparse = null;
+            return sketch;
+        }
+        int size = in.readInt();
+        if (size < 0 || size > Math.min(sketch.registerCount / 8, MAX_SPARSE)) {
+            throw new IOException("Invalid HyperLogLog size: " + size);
+        }
+        sketch.sparse = new long[Math.max(4, size)];
+        for (int i = 0; i < size; i++) {
+            sketch.sparse[i] = in.readLong();
+        }
+        sketch.sparseSize = size;
+        return sketch;
+    }
+
+    private void toRegisters() {
+        registers = new byte[registerCount];
+        for (int i = 0; i < sparseSize; i++) {
+            addToRegisters(sparse[i]);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private void addToRegisters(long hash) {
+        int register = (int) (hash >>> (64 - precision));
+        // A stop bit bounds the rank if every remaining bit is zero
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[register]) {
+            registers[register] = rank;
+        }
+    }
+}
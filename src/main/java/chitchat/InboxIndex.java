@@ -0,0 +1,229 @@
+package chitchat;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A per-recipient inbox over the message list, keyed by cell number.
+ * Each inbox is an array of the recipient's messages, oldest first, plus a read cursor, so unread
+ * counts and the newest page of an inbox are available without scanning all messages. The inbox
+ * holds the messages themselves rather than positions in the list, so deleting a message from the
+ * list only has to take it out of its recipient's inbox. Only sent messages are delivered to an inbox.
+ *
+ * The read position is saved per cell number in inbox_cursors.json as the index of the last read message.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class InboxIndex {
+
+    private static final String CURSORS_FILE = "inbox_cursors.json";
+
+    private final String cursorsFile;
+    private final HashMap<String, Inbox> inboxes = new HashMap<>();
+    // Last read Message.getIndex() per cell number, as saved in the cursors file
+    private final HashMap<String, Long> lastReadIndexes = new HashMap<>();
+
+    /**
+     * One recipient's inbox: their messages, oldest first, and how many have been read.
+     */
+    private static final class Inbox {
+        Message[] messages = new Message[8];
+        int size;
+        int readCursor;
+
+        void append(Message message) {
+            if (size == messages.length) {
+                messages = Arrays.copyOf(messages, size * 2);
+            }
+            messages[size++] = message;
+        }
+
+        /**
+         * @return Where the message is, searching from the newest, or -1.
+         */
+        int find(Message message) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (messages[i] == message) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void remove(int position) {
+            System.arraycopy(messages, position + 1, messages, position, size - position - 1);
+            messages[--size] = null;
+            if (position < readCursor) {
+                readCursor--;
+            }
+        }
+    }
+
+    public InboxIndex() {
+        this(CURSORS_FILE);
+    }
+
+    InboxIndex(String cursorsFile) {
+        this.cursorsFile = cursorsFile;
+        loadCursors();
+    }
+
+    /**
+     * Rebuilds every inbox from a full message list.
+     */
+    public synchronized void build(List<Message> source) {
+        inboxes.clear();
+        for (Message message : source) {
+            add(message);
+        }
+        // Restore read cursors from the saved last-read index
+        for (Map.Entry<String, Inbox> entry : inboxes.entrySet()) {
+            Long lastRead = lastReadIndexes.get(entry.getKey());
+            Inbox inbox = entry.getValue();
+            inbox.readCursor = 0;
+            if (lastRead != null) {
+                while (inbox.readCursor < inbox.size
+                        && inbox.messages[inbox.readCursor].getIndex() <= lastRead) {
+                    inbox.readCursor++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a message that was appended to the message list.
+     */
+    public synchronized void onMessageAdded(Message message) {
+        add(message);
+    }
+
+    /**
+     * Takes a deleted message out of its recipient's inbox. A read message stays read.
+     */
+    public synchronized void onMessageDeleted(Message message) {
+        if (!delivered(message)) {
+            return;
+        }
+        Inbox inbox = inboxes.get(message.getRecipient());
+        int position = inbox == null ? -1 : inbox.find(message);
+        if (position >= 0) {
+            inbox.remove(position);
+        }
+    }
+
+    private void add(Message message) {
+        if (delivered(message)) {
+            inboxes.computeIfAbsent(message.getRecipient(), cell -> new Inbox()).append(message);
+        }
+    }
+
+    private static boolean delivered(Message message) {
+        return message.isSent() && message.getRecipient() != null;
+    }
+
+    /**
+     * @return The number of messages in the cell number's inbox.
+     */
+    public synchronized int size(String cellNumber) {
+        Inbox inbox = inboxes.get(cellNumber);
+        return inbox == null ? 0 : inbox.size;
+    }
+
+    /**
+     * @return The number of messages in the cell number's inbox that have not been read.
+     */
+    public synchronized int unreadCount(String cellNumber) {
+        Inbox inbox = inboxes.get(cellNumber);
+        return inbox == null ? 0 : inbox.size - inbox.readCursor;
+    }
+
+    /**
+     * Returns one page of the inbox, newest first. Only the requested page is touched.
+     *
+     * @param offset How many of the newest messages to skip.
+     * @param limit  The maximum number of messages to return.
+     */
+    public synchronized List<Message> getNewest(String cellNumber, int offset, int limit) {
+        ArrayList<Message> page = new ArrayList<>();
+        Inbox inbox = inboxes.get(cellNumber);
+        if (inbox == null) {
+            return page;
+        }
+        for (int i = inbox.size - 1 - offset; i >= 0 && page.size() < limit; i--) {
+            page.add(inbox.messages[i]);
+        }
+        return page;
+    }
+
+    /**
+     * @return true if the message at this position in the inbox (0 = newest) has not been read.
+     */
+    public synchronized boolean isUnread(String cellNumber, int offsetFromNewest) {
+        Inbox inbox = inboxes.get(cellNumber);
+        return inbox != null && inbox.size - 1 - offsetFromNewest >= inbox.readCursor;
+    }
+
+    /**
+     * Moves the read cursor to the end of the inbox and saves it.
+     */
+    public synchronized void markAllRead(String cellNumber) {
+        Inbox inbox = inboxes.get(cellNumber);
+        if (inbox == null || inbox.readCursor == inbox.size) {
+            return;
+        }
+        inbox.readCursor = inbox.size;
+        lastReadIndexes.put(cellNumber, (long) inbox.messages[inbox.size - 1].getIndex());
+        saveCursors();
+    }
+
+    private void loadCursors() {
+        JSONParser parser = new JSONParser();
+        try (Reader reader = Files.newBufferedReader(Path.of(cursorsFile), StandardCharsets.UTF_8)) {
+            JSONObject cursors = (JSONObject) parser.parse(reader);
+            for (Object key : cursors.keySet()) {
+                lastReadIndexes.put((String) key, (Long) cursors.get(key));
+            }
+        } catch (NoSuchFileException e) {
+            // No cursors saved yet, every message starts unread
+        } catch (IOException | ParseException e) {
+            System.err.println("Error loading inbox cursors, every message starts unread: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the cursor file: written to a temporary file, then moved into place, so a crash
+     * leaves either the old cursors or the new ones.
+     */
+    @SuppressWarnings("unchecked")
+    private void saveCursors() {
+        JSONObject cursors = new JSONObject();
+        cursors.putAll(lastReadIndexes);
+        Path file = Path.of(cursorsFile).toAbsolutePath();
+        try {
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                Files.writeString(temp, cursors.toJSONString(), StandardCharsets.UTF_8);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving inbox cursors: " + e.getMessage());
+        }
+    }
+}
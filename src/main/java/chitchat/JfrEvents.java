@@ -0,0 +1,155 @@
+package chitchat;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.HashMap;
+
+/**
+ * Java Flight Recorder events for ChitChat's own operations, so a recording shows them next to GC and I/O.
+ *
+ * Each event is created, begun and ended around the operation, and its fields are only filled in
+ * when shouldCommit() says the recording wants it. When JFR is off the JIT removes the event entirely.
+ * The bundled chitchat.jfc enables them with thresholds suited to production; use it together with the
+ * JDK's default settings, e.g.
+ *   java -XX:StartFlightRecording:settings=default,settings=chitchat.jfc,filename=chitchat.jfr ...
+ * or run with -Dchitchat.jfr=chitchat.jfr to have ChitChat start such a recording itself.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public final class JfrEvents {
+
+    /** The settings profile bundled as a resource. */
+    public static final String SETTINGS_RESOURCE = "/chitchat.jfc";
+
+    private JfrEvents() {
+    }
+
+    @Name("chitchat.MessagesLoad")
+    @Label("Messages Load")
+    @Description("messages.json read and parsed into memory")
+    @Category({"ChitChat", "Persistence"})
+    @StackTrace(false)
+    public static final class MessagesLoadEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Message Count")
+        int messageCount;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+    }
+
+    @Name("chitchat.MessagesSave")
+    @Label("Messages Save")
+    @Description("All messages written to messages.json")
+    @Category({"ChitChat", "Persistence"})
+    @StackTrace(false)
+    public static final class MessagesSaveEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Message Count")
+        int messageCount;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+    @Name("chitchat.UsersLoad")
+    @Label("Users Load")
+    @Description("users.json read, with changed records validated again")
+    @Category({"ChitChat", "Persistence"})
+    @StackTrace(false)
+    public static final class UsersLoadEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("User Count")
+        int userCount;
+
+        @Label("Revalidated")
+        @Description("Records that were new or changed and had to be validated")
+        int revalidated;
+    }
+
+    @Name("chitchat.UsersSave")
+    @Label("Users Save")
+    @Description("All users written to users.json")
+    @Category({"ChitChat", "Persistence"})
+    @StackTrace(false)
+    public static final class UsersSaveEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("User Count")
+        int userCount;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+    @Name("chitchat.Login")
+    @Label("Login")
+    @Category({"ChitChat", "Users"})
+    @StackTrace(false)
+    public static final class LoginEvent extends Event {
+        @Label("Username")
+        String username;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("chitchat.Report")
+    @Label("Report")
+    @Description("One ReportManager report or query")
+    @Category({"ChitChat", "Reports"})
+    @StackTrace(false)
+    public static final class ReportEvent extends Event {
+        @Label("Report")
+        String report;
+
+        @Label("Messages Scanned")
+        int messageCount;
+    }
+
+    /**
+     * Starts a recording with the JDK's default settings plus the bundled ChitChat settings,
+     * dumped to the given file when the JVM exits.
+     */
+    public static Recording startRecording(Path destination) throws IOException, ParseException {
+        HashMap<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        try (InputStream in = JfrEvents.class.getResourceAsStream(SETTINGS_RESOURCE)) {
+            if (in == null) {
+                throw new IOException(SETTINGS_RESOURCE + " is missing from the classpath");
+            }
+            settings.putAll(Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8)).getSettings());
+        }
+        Recording recording = new Recording(settings);
+        recording.setName("ChitChat");
+        recording.setDestination(destination);
+        recording.setToDisk(true);
+        recording.setDumpOnExit(true);
+        recording.start();
+        return recording;
+    }
+}
@@ -0,0 +1,179 @@
+package chitchat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local load generator for the ChitChat server.
+ * Each simulated client opens its own connection, logs in and sends messages back to back,
+ * recording the round-trip latency of every request.
+ *
+ * Every client sends as the same user, so a server with the default per-sender rate limit (see
+ * SendRateLimiter) rejects most of the load. Rejected sends are counted as errors and also reported
+ * on their own; start the server with -Dchitchat.rateLimit.perSecond=1000000000 and
+ * -Dchitchat.rateLimit.burst=1000000 to measure it without the limit.
+ *
+ * Usage: ChitChat --loadgen [host] [port] [clients] [requestsPerClient]
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class LoadGenerator {
+
+    static final String USERNAME = "lg_1";
+    static final String PASSWORD = "Loadg3n!";
+    static final String CELLPHONE = "+27000000001";
+    // The start of SendRateLimiter's rejection
+    private static final String RATE_LIMITED = "Failed: Too many messages";
+
+    /**
+     * The outcome of one load run.
+     */
+    public static final class Result {
+        private final long[] latenciesNanos;
+        private final long errors;
+        private final long throttled;
+        private final long elapsedNanos;
+
+        Result(long[] latenciesNanos, long errors, long throttled, long elapsedNanos) {
+            this.latenciesNanos = latenciesNanos;
+            this.errors = errors;
+            this.throttled = throttled;
+            this.elapsedNanos = elapsedNanos;
+            Arrays.sort(this.latenciesNanos);
+        }
+
+        public int requests() { return latenciesNanos.length; }
+        public long errors() { return errors; }
+
+        /** Sends the server's rate limit rejected, also counted in errors(). */
+        public long throttled() { return throttled; }
+        public long elapsedNanos() { return elapsedNanos; }
+
+        public double throughputPerSecond() {
+            return elapsedNanos == 0 ? 0 : latenciesNanos.length * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        /**
+         * @param percentile A percentile between 0 and 100.
+         * @return The latency at that percentile in microseconds.
+         */
+        public double percentileMicros(double percentile) {
+            if (latenciesNanos.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * latenciesNanos.length) - 1;
+            return latenciesNanos[Math.max(0, Math.min(rank, latenciesNanos.length - 1))] / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests (%d errors, %d rate limited) in %.2f s: %.0f req/s, p50 %.1f us, p99 %.1f us, max %.1f us",
+                    requests(), errors, throttled, elapsedNanos / 1e9, throughputPerSecond(),
+                    percentileMicros(50), percentileMicros(99), percentileMicros(100));
+        }
+    }
+
+    /**
+     * Runs the load: every client connects, logs in, then sends requestsPerClient messages.
+     * The clients run on virtual threads so thousands of them can be simulated cheaply.
+     */
+    public static Result run(String host, int port, int clients, int requestsPerClient) throws Exception {
+        // Make sure the load user exists (fails harmlessly if it already does)
+        try (ChatClient setup = new ChatClient(host, port)) {
+            setup.register(USERNAME, PASSWORD, CELLPHONE, "Load", "Generator");
+        }
+
+        AtomicLong errors = new AtomicLong();
+        AtomicLong throttled = new AtomicLong();
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        long started;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                final int clientNumber = c;
+                futures.add(executor.submit(() -> runClient(host, port, clientNumber, requestsPerClient,
+                        connected, go, errors, throttled)));
+            }
+            // Time only the request phase, not connection setup
+            connected.await();
+            started = System.nanoTime();
+            go.countDown();
+        }
+        long elapsed = System.nanoTime() - started;
+
+        long[] all = new long[0];
+        int filled = 0;
+        for (Future<long[]> future : futures) {
+            long[] latencies = future.get();
+            if (filled + latencies.length > all.length) {
+                all = Arrays.copyOf(all, Math.max(all.length * 2, filled + latencies.length));
+            }
+            System.arraycopy(latencies, 0, all, filled, latencies.length);
+            filled += latencies.length;
+        }
+        return new Result(Arrays.copyOf(all, filled), errors.get(), throttled.get(), elapsed);
+    }
+
+    private static long[] runClient(String host, int port, int clientNumber, int requests,
+                                    CountDownLatch connected, CountDownLatch go, AtomicLong errors,
+                                    AtomicLong throttled) throws Exception {
+        long[] latencies = new long[requests];
+        ChatClient client;
+        try {
+            client = new ChatClient(host, port);
+            if (!client.login(USERNAME, PASSWORD).isOk()) {
+                errors.incrementAndGet();
+            }
+        } catch (IOException e) {
+            errors.addAndGet(requests);
+            connected.countDown();
+            return new long[0];
+        }
+        connected.countDown();
+        go.await();
+
+        String recipient = String.format("+27%09d", clientNumber);
+        int completed = 0;
+        try (client) {
+            for (int i = 0; i < requests; i++) {
+                long start = System.nanoTime();
+                ChatProtocol.Frame response = client.send(recipient, "Load test message " + i);
+                latencies[completed++] = System.nanoTime() - start;
+                if (!response.isOk()) {
+                    errors.incrementAndGet();
+                    if (response.field(0) != null && response.field(0).startsWith(RATE_LIMITED)) {
+                        throttled.incrementAndGet();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            errors.addAndGet(requests - completed);
+        }
+        return completed == requests ? latencies : Arrays.copyOf(latencies, completed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : ChatProtocol.DEFAULT_PORT;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+        System.out.println("Load: " + clients + " clients x " + requests + " requests against " + host + ":" + port);
+        Result result = run(host, port, clients, requests);
+        System.out.println(result);
+        if (result.throttled() > 0) {
+            System.out.println("Warning: " + result.throttled() + " sends were rejected by the server's per-sender rate limit"
+                    + " and are counted as errors. Every client sends as one user; to measure without the limit,"
+                    + " start the server with -Dchitchat.rateLimit.perSecond=1000000000 -Dchitchat.rateLimit.burst=1000000.");
+        }
+    }
+}
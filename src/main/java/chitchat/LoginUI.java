@@ -35,7 +35,9 @@ public class LoginUI extends JFrame {
 
     public LoginUI() {
         super("ChitChat - Welcome");
-        this.userManager = new UserManager();
+        // The user directory is shared across login screens, only re-read if users.json changed
+        this.userManager = UserManager.getInstance();
+        this.userManager.refreshIfChanged();
 
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(1280, 720);
@@ -165,13 +167,15 @@ public class LoginUI extends JFrame {
     }
     
     private void handleLogin() {
+        long loginStarted = System.nanoTime();
         String username = loginUsernameField.getText();
         String password = new String(loginPasswordField.getPassword());
+        userManager.refreshIfChanged();
         RegistrationLogin user = userManager.findUser(username);
 
         if (user != null && user.loginUser(username, password)) {
             SwingUtilities.invokeLater(() -> {
-                new ChatUI(user).setVisible(true);
+                new ChatUI(user, loginStarted).setVisible(true);
                 this.dispose();
             });
         } else {
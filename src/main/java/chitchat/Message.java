@@ -1,5 +1,7 @@
 package chitchat;
 
+import java.util.regex.Pattern;
+
 /**
  * Represents a message in the ChitChat system.
  * This class holds all information about a message and handles its validation and hash generation.
@@ -9,6 +11,17 @@ package chitchat;
  */
 public class Message {
 
+    // Compiled once, cell numbers are checked on every send
+    static final Pattern CELL_NUMBER_PATTERN = Pattern.compile("^\\+27\\d{9}$");
+    static final int MAX_PAYLOAD_LENGTH = 250;
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.shared();
+    private static final LatencyHistogram SEND_LATENCY = METRICS.histogram("send");
+    private static final LatencyHistogram STORE_LATENCY = METRICS.histogram("store");
+    private static final MetricsRegistry.Counter SENT_COUNT = METRICS.counter("messages.sent");
+    private static final MetricsRegistry.Counter SEND_FAILED_COUNT = METRICS.counter("messages.sendFailed");
+    private static final MetricsRegistry.Counter STORED_COUNT = METRICS.counter("messages.stored");
+
     private final String id;
     private final String sender;
     private final String recipient;
@@ -20,6 +33,12 @@ public class Message {
     private boolean sent;
     private boolean stored;
     private boolean disregarded;
+    // When a stored message should be sent (epoch milliseconds), or 0 if it just waits
+    private long deliverAt;
+    // When the message was written and when it was sent (epoch milliseconds), or 0 if not known.
+    // Messages saved before timestamps were added load with 0.
+    private long createdAt;
+    private long sentAt;
 
     /**
      * Creates a new message with a randomly generated 10-digit ID.
@@ -38,6 +57,7 @@ public class Message {
         this.sent = false;
         this.stored = false;
         this.disregarded = false;
+        this.createdAt = System.currentTimeMillis();
     }
 
     /**
@@ -69,7 +89,7 @@ public class Message {
      * Validates a cell number (+27 followed by 9 digits).
      */
     public int checkCellNumber(String cellNumber) {
-        if (cellNumber != null && cellNumber.matches("^\\+27\\d{9}$")) {
+        if (cellNumber != null && CELL_NUMBER_PATTERN.matcher(cellNumber).matches()) {
             return 1;
         }
         return 403; // Invalid
@@ -108,32 +128,110 @@ public class Message {
      * @return A status message.
      */
     public String sendMessage(int messageIndex) {
+        long started = System.nanoTime();
+        String failure = validateForSending();
+        if (failure != null) {
+            SEND_FAILED_COUNT.increment();
+            SEND_LATENCY.recordSince(started);
+            return failure;
+        }
+
+        markSent(messageIndex);
+        SENT_COUNT.increment();
+        SEND_LATENCY.recordSince(started);
+        return "Message sent successfully!";
+    }
+
+    /**
+     * @return The reason the message cannot be sent, or null if it is valid.
+     */
+    private String validateForSending() {
         if (!checkMessageID()) return "Failed: Invalid message ID.";
         if (checkCellNumber(this.recipient) != 1) return "Failed: Invalid recipient number.";
         if (checkCellNumber(this.sender) != 1) return "Failed: Invalid sender number.";
         if (this.payload == null || this.payload.trim().isEmpty()) return "Failed: Message content cannot be empty.";
-        if (this.payload.length() > 250) return "Failed: Message is too long (max 250 chars).";
+        if (this.payload.length() > MAX_PAYLOAD_LENGTH) return "Failed: Message is too long (max 250 chars).";
+        return null;
+    }
 
+    /**
+     * Marks a message as sent without validating it again.
+     * Only for callers that have already validated the sender, recipient and payload (e.g. BulkSender).
+     *
+     * @param messageIndex The index allocated to this message.
+     */
+    void markSent(int messageIndex) {
         this.index = messageIndex;
         this.hash = createMessageHash();
         this.sent = true;
         this.stored = false;
         this.disregarded = false;
-
-        return "Message sent successfully!";
+        this.deliverAt = 0;
+        this.sentAt = System.currentTimeMillis();
     }
     
+    /**
+     * Gives the message a new index and the matching hash, keeping its state.
+     * Used when another instance has already taken the index (see MessageStore.append).
+     *
+     * @param messageIndex The new index.
+     */
+    void renumber(int messageIndex) {
+        this.index = messageIndex;
+        this.hash = createMessageHash();
+    }
+
     /**
      * Processes a message to be stored. Updates its state and generates the hash.
      *
      * @param messageIndex The next available index for messages.
      */
     public void storeMessage(int messageIndex) {
+        long started = System.nanoTime();
         this.index = messageIndex;
         this.hash = createMessageHash(); // Create hash even for stored messages
         this.sent = false;
         this.stored = true;
         this.disregarded = false;
+        this.deliverAt = 0;
+        STORED_COUNT.increment();
+        STORE_LATENCY.recordSince(started);
+    }
+
+    /**
+     * Stores a message to be sent later by a DeliveryScheduler. It is checked now as if it were
+     * being sent, so it cannot fail when it is due.
+     *
+     * @param messageIndex The next available index for messages.
+     * @param deliverAt    When to send it, in epoch milliseconds.
+     * @return A status message.
+     */
+    public String scheduleMessage(int messageIndex, long deliverAt) {
+        String failure = validateForSending();
+        if (failure != null) {
+            return failure;
+        }
+        if (deliverAt <= 0) {
+            return "Failed: Invalid delivery time.";
+        }
+        storeMessage(messageIndex);
+        this.deliverAt = deliverAt;
+        return "Message scheduled successfully!";
+    }
+
+    /**
+     * Restores the delivery time of a message read from storage.
+     */
+    void setDeliverAt(long deliverAt) {
+        this.deliverAt = deliverAt;
+    }
+
+    /**
+     * Restores the creation and send times of a message read from storage, or carries them over to a copy.
+     */
+    void setTimestamps(long createdAt, long sentAt) {
+        this.createdAt = createdAt;
+        this.sentAt = sentAt;
     }
     
     /**
@@ -143,6 +241,7 @@ public class Message {
         this.sent = false;
         this.stored = false;
         this.disregarded = true;
+        this.deliverAt = 0;
     }
 
 
@@ -156,4 +255,13 @@ public class Message {
     public boolean isSent() { return sent; }
     public boolean isStored() { return stored; }
     public boolean isDisregarded() { return disregarded; }
+    public long getDeliverAt() { return deliverAt; }
+    public long getCreatedAt() { return createdAt; }
+    public long getSentAt() { return sentAt; }
+
+    /** @return When the message was sent, or else when it was written; 0 if neither is known. */
+    public long getTimestamp() { return sentAt > 0 ? sentAt : createdAt; }
+
+    /** @return true if the message is stored with a delivery time and not sent yet. */
+    public boolean isScheduled() { return stored && deliverAt > 0; }
 }
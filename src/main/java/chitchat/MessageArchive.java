@@ -0,0 +1,513 @@
+package chitchat;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The cold tier: old messages moved out of messages.json by a RetentionPolicy.
+ *
+ * The archive is a block-compressed SegmentFile next to the messages file and is never loaded
+ * at startup. Next to it is a small summary: counts, the index and time ranges, the longest sent
+ * message, the MessageSketches of the sent messages and a Bloom filter over message ids, hashes,
+ * recipients and conversations. Queries check
+ * the summary first and only read the archive if it could hold a match, so most report queries
+ * never touch cold data.
+ *
+ * The archive is only written by MessageStore while it holds the write lock. Readers notice a new
+ * archive by its size and modification time; if the summary does not belong to the segment they
+ * see (e.g. another instance is part way through replacing both), the summary is rebuilt from the
+ * segment instead of being trusted.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class MessageArchive {
+
+    /**
+     * What the archive holds, read without opening the archive itself.
+     */
+    public static final class Summary {
+        static final Summary EMPTY = new Summary(0, 0, 0, 0, 0, 0, 0, null, new BloomFilter(1), new MessageSketches(), 0);
+
+        private final int messageCount;
+        private final int sentCount;
+        private final int storedCount;
+        private final int minIndex;
+        private final int maxIndex;
+        private final long minTime;
+        private final long maxTime;
+        private final Message longestSent;
+        private final BloomFilter keys;
+        private final MessageSketches sketches;
+        private final long segmentBytes;
+
+        Summary(int messageCount, int sentCount, int storedCount, int minIndex, int maxIndex, long minTime,
+                long maxTime, Message longestSent, BloomFilter keys, MessageSketches sketches, long segmentBytes) {
+            this.messageCount = messageCount;
+            this.sentCount = sentCount;
+            this.storedCount = storedCount;
+            this.minIndex = minIndex;
+            this.maxIndex = maxIndex;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.longestSent = longestSent;
+            this.keys = keys;
+            this.sketches = sketches;
+            this.segmentBytes = segmentBytes;
+        }
+
+        public int getMessageCount() { return messageCount; }
+        public int getSentCount() { return sentCount; }
+        public int getStoredCount() { return storedCount; }
+        public int getMinIndex() { return minIndex; }
+        public int getMaxIndex() { return maxIndex; }
+
+        /** The range of Message.getTimestamp() over archived messages that have one, or 0 if none do. */
+        public long getMinTime() { return minTime; }
+        public long getMaxTime() { return maxTime; }
+
+        /** @return true if an archived message might have a timestamp from fromMillis up to toMillis. */
+        public boolean mightContainTime(long fromMillis, long toMillis) {
+            return maxTime > 0 && fromMillis <= maxTime && toMillis > minTime;
+        }
+
+        /** The first of the longest sent messages in the archive, or null if none were sent. */
+        public Message getLongestSent() { return longestSent; }
+
+        /**
+         * The sketches of the archived sent messages, to combine with those of the messages in
+         * memory (see MessageSketches.combinedWith). Read them only; they are shared.
+         */
+        public MessageSketches getSketches() { return sketches; }
+
+        public boolean mightContainId(String id) { return id != null && keys.mightContain("i:" + id); }
+        public boolean mightContainHash(String hash) { return hash != null && keys.mightContain(hashKey(hash)); }
+        public boolean mightContainRecipient(String cell) { return cell != null && keys.mightContain("r:" + cell); }
+
+        public boolean mightContainConversation(String cellA, String cellB) {
+            return cellA != null && cellB != null && keys.mightContain("c:" + ConversationIndex.pairKey(cellA, cellB));
+        }
+    }
+
+    /**
+     * Builds a Summary while messages are written in order.
+     */
+    private static final class SummaryBuilder {
+        private final ArrayList<String> keys = new ArrayList<>();
+        private final HashSet<String> repeatedKeys = new HashSet<>();
+        private final MessageSketches sketches = new MessageSketches();
+        private int messageCount;
+        private int sentCount;
+        private int storedCount;
+        private int minIndex = Integer.MAX_VALUE;
+        private int maxIndex;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime;
+        private Message longestSent;
+
+        void add(Message message) {
+            messageCount++;
+            if (message.getIndex() > 0) {
+                minIndex = Math.min(minIndex, message.getIndex());
+                maxIndex = Math.max(maxIndex, message.getIndex());
+            }
+            if (message.getTimestamp() > 0) {
+                minTime = Math.min(minTime, message.getTimestamp());
+                maxTime = Math.max(maxTime, message.getTimestamp());
+            }
+            if (message.isSent()) {
+                sentCount++;
+                if (message.getPayload() != null && (longestSent == null
+                        || message.getPayload().length() > longestSent.getPayload().length())) {
+                    longestSent = message;
+                }
+            }
+            if (message.isStored()) {
+                storedCount++;
+            }
+            sketches.onMessageAdded(message);
+            // Ids and hashes are nearly always unique; recipients and conversations repeat a lot
+            addKey(message.getId() == null ? null : "i:" + message.getId(), false);
+            addKey(message.getHash() == null ? null : hashKey(message.getHash()), false);
+            addKey(message.getRecipient() == null ? null : "r:" + message.getRecipient(), true);
+            if (message.getSender() != null && message.getRecipient() != null) {
+                addKey("c:" + ConversationIndex.pairKey(message.getSender(), message.getRecipient()), true);
+            }
+        }
+
+        private void addKey(String key, boolean repeats) {
+            if (key != null && (!repeats || repeatedKeys.add(key))) {
+                keys.add(key);
+            }
+        }
+
+        Summary build(long segmentBytes) {
+            BloomFilter filter = new BloomFilter(keys.size());
+            keys.forEach(filter::add);
+            return new Summary(messageCount, sentCount, storedCount, messageCount == 0 || maxIndex == 0 ? 0 : minIndex,
+                    maxIndex, maxTime == 0 ? 0 : minTime, maxTime, longestSent, filter, sketches, segmentBytes);
+        }
+    }
+
+    /**
+     * A Bloom filter with about a 1% false positive rate at the size it was created for.
+     */
+    static final class BloomFilter {
+        private static final int BITS_PER_KEY = 10;
+        private static final int PROBES = 7;
+
+        private final long[] bits;
+
+        BloomFilter(int expectedKeys) {
+            this(new long[Math.max(1, (int) (((long) Math.max(expectedKeys, 64) * BITS_PER_KEY + 63) / 64))]);
+        }
+
+        BloomFilter(long[] bits) {
+            this.bits = bits;
+        }
+
+        void add(String key) {
+            long hash = PayloadStore.hash64(key);
+            long step = (hash >>> 32) | 1;
+            long bitCount = bits.length * 64L;
+            for (int i = 0; i < PROBES; i++) {
+                long bit = Long.remainderUnsigned(hash + i * step, bitCount);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(String key) {
+            long hash = PayloadStore.hash64(key);
+            long step = (hash >>> 32) | 1;
+            long bitCount = bits.length * 64L;
+            for (int i = 0; i < PROBES; i++) {
+                long bit = Long.remainderUnsigned(hash + i * step, bitCount);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String encode() {
+            ByteBuffer buffer = ByteBuffer.allocate(bits.length * 8);
+            buffer.asLongBuffer().put(bits);
+            return Base64.getEncoder().encodeToString(buffer.array());
+        }
+
+        static BloomFilter decode(String encoded) {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+            long[] bits = new long[buffer.remaining() / 8];
+            buffer.asLongBuffer().get(bits);
+            return new BloomFilter(bits);
+        }
+    }
+
+    private final Path segmentFile;
+    private final Path summaryFile;
+
+    // The summary and the segment attributes it was read for
+    private Summary summary;
+    private long summaryForBytes = -1;
+    private FileTime summaryForModified;
+
+    /**
+     * @param messagesFile The hot messages file; the archive is kept next to it.
+     */
+    public MessageArchive(String messagesFile) {
+        this.segmentFile = Path.of(messagesFile + ".archive" + SegmentFile.FILE_SUFFIX).toAbsolutePath();
+        this.summaryFile = Path.of(messagesFile + ".archive.json").toAbsolutePath();
+    }
+
+    private static String hashKey(String hash) {
+        // Hashes are compared ignoring case
+        return "h:" + hash.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * @return The summary of the current archive, or an empty summary if nothing has been archived.
+     */
+    public synchronized Summary getSummary() throws IOException {
+        long bytes;
+        FileTime modified;
+        try {
+            bytes = Files.size(segmentFile);
+            modified = Files.getLastModifiedTime(segmentFile);
+        } catch (NoSuchFileException e) {
+            return Summary.EMPTY;
+        }
+        if (summary == null || bytes != summaryForBytes || !modified.equals(summaryForModified)) {
+            Summary read = readSummaryFile();
+            if (read == null || read.segmentBytes != bytes) {
+                read = rebuildSummary(bytes);
+            }
+            summary = read;
+            summaryForBytes = bytes;
+            summaryForModified = modified;
+        }
+        return summary;
+    }
+
+    /**
+     * @return true if no messages have been archived.
+     */
+    public boolean isEmpty() throws IOException {
+        return getSummary().getMessageCount() == 0;
+    }
+
+    /**
+     * Hands every archived message to the consumer, oldest first, one block at a time.
+     */
+    public void forEach(Consumer<Message> consumer) throws IOException {
+        if (isEmpty()) {
+            return;
+        }
+        try (SegmentFile segment = SegmentFile.open(segmentFile)) {
+            segment.forEach(consumer);
+        }
+    }
+
+    /**
+     * @return The sent messages in the archive, oldest first; empty without reading the archive if none were sent.
+     */
+    public List<Message> getSentMessages() throws IOException {
+        ArrayList<Message> sent = new ArrayList<>();
+        if (getSummary().getSentCount() > 0) {
+            forEach(message -> {
+                if (message.isSent()) {
+                    sent.add(message);
+                }
+            });
+        }
+        return sent;
+    }
+
+    /**
+     * @return The first archived message with the given id, or null. The archive is only read if it might hold one.
+     */
+    public Message findById(String id) throws IOException {
+        if (!getSummary().mightContainId(id)) {
+            return null;
+        }
+        return findFirst(message -> id.equals(message.getId()));
+    }
+
+    /**
+     * @return The first archived message with the given hash, ignoring case, or null.
+     */
+    public Message findByHash(String hash) throws IOException {
+        if (!getSummary().mightContainHash(hash)) {
+            return null;
+        }
+        return findFirst(message -> message.getHash() != null && message.getHash().equalsIgnoreCase(hash));
+    }
+
+    /**
+     * @return The sent or stored archived messages for the recipient, oldest first.
+     */
+    public List<Message> findByRecipient(String recipientCell) throws IOException {
+        ArrayList<Message> found = new ArrayList<>();
+        if (getSummary().mightContainRecipient(recipientCell)) {
+            forEach(message -> {
+                if (recipientCell.equals(message.getRecipient()) && (message.isSent() || message.isStored())) {
+                    found.add(message);
+                }
+            });
+        }
+        return found;
+    }
+
+    /**
+     * @return The sent or stored archived messages with a timestamp from fromMillis (inclusive) to
+     *         toMillis (exclusive), oldest first; empty without reading the archive if none can match.
+     */
+    public List<Message> findBetween(long fromMillis, long toMillis) throws IOException {
+        ArrayList<Message> found = new ArrayList<>();
+        if (getSummary().mightContainTime(fromMillis, toMillis)) {
+            forEach(message -> {
+                long time = message.getTimestamp();
+                if (time > 0 && time >= fromMillis && time < toMillis && (message.isSent() || message.isStored())) {
+                    found.add(message);
+                }
+            });
+        }
+        return found;
+    }
+
+    /**
+     * Returns archived messages between two cell numbers with an index below the cursor, newest first.
+     *
+     * @param beforeIndex Only messages with a smaller index; 0 or less for the newest.
+     * @param limit       The maximum number returned.
+     */
+    public List<Message> getConversationBefore(String cellA, String cellB, int beforeIndex, int limit) throws IOException {
+        if (limit <= 0 || !getSummary().mightContainConversation(cellA, cellB)) {
+            return new ArrayList<>();
+        }
+        String pair = ConversationIndex.pairKey(cellA, cellB);
+        ConversationIndex matches = new ConversationIndex();
+        forEach(message -> {
+            if (message.getSender() != null && message.getRecipient() != null
+                    && pair.equals(ConversationIndex.pairKey(message.getSender(), message.getRecipient()))) {
+                matches.onMessageAdded(message);
+            }
+        });
+        return new ArrayList<>(matches.getPage(cellA, cellB, beforeIndex, limit).getMessages());
+    }
+
+    private Message findFirst(Predicate<Message> test) throws IOException {
+        Message[] found = new Message[1];
+        forEach(message -> {
+            if (found[0] == null && test.test(message)) {
+                found[0] = message;
+            }
+        });
+        return found[0];
+    }
+
+    // --- Writing, only called by MessageStore with its write lock held ---
+
+    /**
+     * Appends messages to the end of the archive. They must be older than everything still hot.
+     */
+    synchronized void append(List<Message> older) throws IOException {
+        rewrite(older, null);
+    }
+
+    /**
+     * Removes the first archived message with the given hash.
+     *
+     * @return The removed message, or null if the archive did not hold it.
+     */
+    synchronized Message delete(String hash) throws IOException {
+        Message found = findByHash(hash);
+        if (found != null) {
+            rewrite(List.of(), hash);
+        }
+        return found;
+    }
+
+    /**
+     * Writes a new archive from the current one plus the given messages, without the message with
+     * the skipped hash, then moves the summary and the segment into place.
+     */
+    private void rewrite(List<Message> added, String skipHash) throws IOException {
+        Path tempSegment = segmentFile.resolveSibling(segmentFile.getFileName() + ".tmp");
+        Path tempSummary = summaryFile.resolveSibling(summaryFile.getFileName() + ".tmp");
+        SummaryBuilder builder = new SummaryBuilder();
+        long bytes;
+        try (SegmentFile.Writer writer = new SegmentFile.Writer(tempSegment, SegmentFile.DEFAULT_MESSAGES_PER_BLOCK)) {
+            IOException[] failure = new IOException[1];
+            boolean[] skipped = {skipHash == null};
+            forEach(message -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                if (!skipped[0] && message.getHash() != null && message.getHash().equalsIgnoreCase(skipHash)) {
+                    skipped[0] = true;
+                    return;
+                }
+                try {
+                    writer.add(message);
+                    builder.add(message);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            for (Message message : added) {
+                writer.add(message);
+                builder.add(message);
+            }
+            writer.finish();
+            writer.sync();
+            bytes = writer.getBytesWritten();
+        }
+        writeSummaryFile(tempSummary, builder.build(bytes));
+        // Summary first: a reader that sees it with the old segment notices the size differs
+        Files.move(tempSummary, summaryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(tempSegment, segmentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        summary = null;
+    }
+
+    private Summary rebuildSummary(long bytes) throws IOException {
+        SummaryBuilder builder = new SummaryBuilder();
+        try (SegmentFile segment = SegmentFile.open(segmentFile)) {
+            segment.forEach(builder::add);
+        }
+        return builder.build(bytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeSummaryFile(Path file, Summary summary) throws IOException {
+        JSONObject json = new JSONObject();
+        json.put("messageCount", summary.messageCount);
+        json.put("sentCount", summary.sentCount);
+        json.put("storedCount", summary.storedCount);
+        json.put("minIndex", summary.minIndex);
+        json.put("maxIndex", summary.maxIndex);
+        json.put("minTime", summary.minTime);
+        json.put("maxTime", summary.maxTime);
+        json.put("segmentBytes", summary.segmentBytes);
+        if (summary.longestSent != null) {
+            json.put("longestSent", MessageManager.toJson(summary.longestSent));
+        }
+        json.put("keys", summary.keys.encode());
+        json.put("sketches", summary.sketches.encode());
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            json.writeJSONString(writer);
+        }
+    }
+
+    /**
+     * @return The summary file's contents, or null if it is missing or unreadable.
+     */
+    @SuppressWarnings("unchecked")
+    private Summary readSummaryFile() {
+        try (Reader reader = Files.newBufferedReader(summaryFile, StandardCharsets.UTF_8)) {
+            JSONObject json = (JSONObject) new JSONParser().parse(reader);
+            JSONObject longest = (JSONObject) json.get("longestSent");
+            String sketches = (String) json.get("sketches");
+            if (sketches == null) {
+                // From before the summary kept sketches, so it is rebuilt from the archive once
+                return null;
+            }
+            return new Summary(
+                    ((Long) json.get("messageCount")).intValue(),
+                    ((Long) json.get("sentCount")).intValue(),
+                    ((Long) json.get("storedCount")).intValue(),
+                    ((Long) json.get("minIndex")).intValue(),
+                    ((Long) json.get("maxIndex")).intValue(),
+                    // Summaries from before timestamps were kept belong to archives without them
+                    (Long) json.getOrDefault("minTime", 0L),
+                    (Long) json.getOrDefault("maxTime", 0L),
+                    longest == null ? null : MessageManager.fromJson(longest),
+                    BloomFilter.decode((String) json.get("keys")),
+                    MessageSketches.decode(sketches),
+                    (Long) json.get("segmentBytes"));
+        } catch (IOException | ParseException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package chitchat;
+
+import org.json.simple.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Writes messages, or the text of a report, to CSV or JSON-lines files for offline analysis.
+ *
+ * An export streams: archived messages are read one block at a time and hot messages are taken
+ * from the list one by one, and each row is encoded straight into a fixed CHUNK_BYTES buffer that
+ * is written to a FileChannel whenever it fills. Memory use does not grow with the number of
+ * messages exported. The file is written beside the target and moved into place when complete,
+ * so a cancelled or failed export never leaves a half-written file behind.
+ *
+ * The exporter takes the hot messages as given; callers that keep changing their list hand over
+ * a copy (see ReportManager.newExporter()). Exports run on the caller's thread, which may be
+ * interrupted to cancel them.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class MessageExporter {
+
+    public static final int CHUNK_BYTES = 64 * 1024;
+    /** How many messages are scanned between progress updates. */
+    static final int PROGRESS_INTERVAL = 10_000;
+
+    static final String CSV_HEADER = "index,id,hash,status,sender,recipient,payload,createdAt,sentAt,deliverAt";
+
+    private static final MetricsRegistry.Counter EXPORTED_COUNT = MetricsRegistry.shared().counter("export.messages");
+    private static final LatencyHistogram EXPORT_LATENCY = MetricsRegistry.shared().histogram("export.latency");
+
+    public enum Format {
+        CSV("csv"),
+        /** One JSON object per line, with the same fields as messages.json. */
+        JSONL("jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * @return The format a file name's extension asks for, or CSV if it names neither.
+         */
+        public static Format forFileName(String fileName) {
+            return fileName.toLowerCase(Locale.ROOT).endsWith("." + JSONL.extension) ? JSONL : CSV;
+        }
+    }
+
+    /**
+     * Told how an export is getting on, from the exporting thread.
+     */
+    public interface Progress {
+        /**
+         * @param scanned  Messages looked at so far.
+         * @param total    Messages that will be looked at in all.
+         * @param exported Messages written so far.
+         */
+        void update(long scanned, long total, long exported);
+    }
+
+    /**
+     * Which messages to export. Every condition set must hold; a new filter matches everything.
+     * Filters are built on one thread and then only read.
+     */
+    public static final class Filter implements Predicate<Message> {
+        private boolean sent = true;
+        private boolean stored = true;
+        private boolean disregarded = true;
+        private String id;
+        private String sender;
+        private String recipient;
+        private String cellA;
+        private String cellB;
+        private long fromMillis = Long.MIN_VALUE;
+        private long toMillis = Long.MAX_VALUE;
+        private String text;
+
+        public static Filter all() {
+            return new Filter();
+        }
+
+        /** Only sent messages. */
+        public Filter sentOnly() {
+            stored = false;
+            disregarded = false;
+            return this;
+        }
+
+        /** Sent and stored messages, leaving out disregarded ones. */
+        public Filter sentOrStored() {
+            disregarded = false;
+            return this;
+        }
+
+        public Filter withId(String id) {
+            this.id = id;
+            return this;
+        }
+
+        public Filter from(String sender) {
+            this.sender = sender;
+            return this;
+        }
+
+        public Filter to(String recipient) {
+            this.recipient = recipient;
+            return this;
+        }
+
+        /** Messages between two cell numbers, in either direction. */
+        public Filter conversation(String cellA, String cellB) {
+            this.cellA = cellA;
+            this.cellB = cellB;
+            return this;
+        }
+
+        /**
+         * Messages timestamped from fromMillis (inclusive) to toMillis (exclusive). Messages saved
+         * before timestamps were kept never match.
+         */
+        public Filter window(long fromMillis, long toMillis) {
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            return this;
+        }
+
+        /** Messages whose payload contains the text, ignoring case. */
+        public Filter containing(String text) {
+            this.text = text == null || text.isEmpty() ? null : text.toLowerCase(Locale.ROOT);
+            return this;
+        }
+
+        @Override
+        public boolean test(Message message) {
+            if (message.isSent() ? !sent : message.isStored() ? !stored : !disregarded) {
+                return false;
+            }
+            if (id != null && !id.equals(message.getId())) {
+                return false;
+            }
+            if (sender != null && !sender.equals(message.getSender())) {
+                return false;
+            }
+            if (recipient != null && !recipient.equals(message.getRecipient())) {
+                return false;
+            }
+            if (cellA != null && !(cellA.equals(message.getSender()) && cellB.equals(message.getRecipient()))
+                    && !(cellB.equals(message.getSender()) && cellA.equals(message.getRecipient()))) {
+                return false;
+            }
+            if (fromMillis != Long.MIN_VALUE || toMillis != Long.MAX_VALUE) {
+                long time = message.getTimestamp();
+                if (time <= 0 || time < fromMillis || time >= toMillis) {
+                    return false;
+                }
+            }
+            return text == null || (message.getPayload() != null
+                    && message.getPayload().toLowerCase(Locale.ROOT).contains(text));
+        }
+
+        /**
+         * @return false if the archive's summary rules out every match, so the archive need not be read.
+         */
+        boolean mightMatch(MessageArchive.Summary summary) {
+            if (summary.getMessageCount() == 0) {
+                return false;
+            }
+            if (!sent && !disregarded && summary.getStoredCount() == 0) {
+                return false;
+            }
+            if (!stored && !disregarded && summary.getSentCount() == 0) {
+                return false;
+            }
+            if (id != null && !summary.mightContainId(id)) {
+                return false;
+            }
+            if (recipient != null && !summary.mightContainRecipient(recipient)) {
+                return false;
+            }
+            if (cellA != null && !summary.mightContainConversation(cellA, cellB)) {
+                return false;
+            }
+            return (fromMillis == Long.MIN_VALUE && toMillis == Long.MAX_VALUE)
+                    || summary.mightContainTime(fromMillis, toMillis);
+        }
+    }
+
+    private final List<Message> messages;
+    private final MessageArchive archive;
+
+    /**
+     * @param messages The hot messages, which must not change during an export.
+     * @param archive  The archive exported ahead of them, or null for the messages alone.
+     */
+    public MessageExporter(List<Message> messages, MessageArchive archive) {
+        this.messages = messages;
+        this.archive = archive;
+    }
+
+    /**
+     * Writes the messages that match the filter to the file, archived messages first, replacing
+     * the file if it exists.
+     *
+     * @param progress Told how the export is going every PROGRESS_INTERVAL messages, or null.
+     * @return The number of messages written.
+     * @throws InterruptedIOException if the thread was interrupted; the file is left as it was.
+     */
+    public long export(Filter filter, Format format, Path file, Progress progress) throws IOException {
+        long started = System.nanoTime();
+        MessageArchive.Summary archived = archive == null ? MessageArchive.Summary.EMPTY : archive.getSummary();
+        boolean readArchive = filter.mightMatch(archived);
+        long total = messages.size() + (readArchive ? archived.getMessageCount() : 0);
+        long[] counts = new long[2]; // scanned, exported
+        StringBuilder row = new StringBuilder(512);
+
+        Path temp = tempFile(file);
+        try (ChunkedWriter out = new ChunkedWriter(temp)) {
+            if (format == Format.CSV) {
+                out.write(CSV_HEADER + "\n");
+            }
+            Consumer<Message> writeIfMatching = message -> {
+                try {
+                    if (filter.test(message)) {
+                        row.setLength(0);
+                        if (format == Format.CSV) {
+                            appendCsv(row, message);
+                        } else {
+                            row.append(MessageManager.toJson(message).toJSONString()).append('\n');
+                        }
+                        out.write(row);
+                        counts[1]++;
+                    }
+                    if (++counts[0] % PROGRESS_INTERVAL == 0) {
+                        checkInterrupted();
+                        if (progress != null) {
+                            progress.update(counts[0], total, counts[1]);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            try {
+                // Skipped without reading when its summary rules out every match
+                if (readArchive) {
+                    archive.forEach(writeIfMatching);
+                }
+                messages.forEach(writeIfMatching);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } catch (ClosedByInterruptException e) {
+            // Interrupted part way through a write, which closed the channel
+            Files.deleteIfExists(temp);
+            InterruptedIOException cancelled = new InterruptedIOException("Export cancelled");
+            cancelled.initCause(e);
+            throw cancelled;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (progress != null) {
+            progress.update(counts[0], total, counts[1]);
+        }
+        EXPORTED_COUNT.add(counts[1]);
+        EXPORT_LATENCY.recordSince(started);
+        return counts[1];
+    }
+
+    /**
+     * Writes the text of a report one line per record, for reports that are not a list of messages:
+     * a CSV column "line", or JSON objects with a "line" field.
+     *
+     * @return The number of lines written.
+     */
+    @SuppressWarnings("unchecked")
+    public static long exportLines(String text, Format format, Path file) throws IOException {
+        long lines = 0;
+        Path temp = tempFile(file);
+        try (ChunkedWriter out = new ChunkedWriter(temp)) {
+            if (format == Format.CSV) {
+                out.write("line\n");
+            }
+            StringBuilder row = new StringBuilder();
+            for (String line : text.split("\n")) {
+                row.setLength(0);
+                if (format == Format.CSV) {
+                    appendCsvCell(row, line);
+                    row.append('\n');
+                } else {
+                    JSONObject json = new JSONObject();
+                    json.put("line", line);
+                    row.append(json.toJSONString()).append('\n');
+                }
+                out.write(row);
+                lines++;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return lines;
+    }
+
+    private static Path tempFile(Path file) {
+        return file.toAbsolutePath().resolveSibling(file.getFileName() + ".part");
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Export cancelled");
+        }
+    }
+
+    static void appendCsv(StringBuilder row, Message message) {
+        row.append(message.getIndex()).append(',');
+        appendCsvCell(row, message.getId());
+        row.append(',');
+        appendCsvCell(row, message.getHash());
+        row.append(',');
+        row.append(message.isSent() ? "sent" : message.isStored() ? "stored" : "disregarded").append(',');
+        appendCsvCell(row, message.getSender());
+        row.append(',');
+        appendCsvCell(row, message.getRecipient());
+        row.append(',');
+        appendCsvCell(row, message.getPayload());
+        row.append(',');
+        appendTime(row, message.getCreatedAt());
+        row.append(',');
+        appendTime(row, message.getSentAt());
+        row.append(',');
+        appendTime(row, message.getDeliverAt());
+        row.append('\n');
+    }
+
+    private static void appendTime(StringBuilder row, long millis) {
+        // Left empty rather than 0 for messages from before timestamps were kept
+        if (millis > 0) {
+            row.append(millis);
+        }
+    }
+
+    /**
+     * Appends a CSV cell (RFC 4180), quoting it if it holds a comma, quote or line break.
+     */
+    static void appendCsvCell(StringBuilder row, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            row.append(value);
+            return;
+        }
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append('"');
+    }
+
+    /**
+     * Encodes text as UTF-8 into one reused buffer and writes the buffer to the channel each time it fills.
+     */
+    private static final class ChunkedWriter implements Closeable {
+        private final FileChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+
+        ChunkedWriter(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void write(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    flush();
+                } else {
+                    break;
+                }
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
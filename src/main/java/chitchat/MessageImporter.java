@@ -0,0 +1,459 @@
+package chitchat;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Imports message history from another system's dump into a MessageStore.
+ *
+ * A dump is CSV with a header row, or JSON lines, in the layout MessageExporter writes. Other
+ * systems' names for the fields are accepted too: from/to for sender/recipient, and
+ * message/text/body for payload. Only sender, recipient and payload are required. Each message
+ * keeps its id if it is a valid one and gets a new one otherwise. Its status defaults to sent,
+ * and its timestamps are kept if the dump has them.
+ *
+ * The import is a pipeline of three threads joined by bounded queues of batches:
+ *
+ *   parse     reads records from the file, one batch at a time
+ *   validate  checks the cell numbers as Message.checkCellNumber does, and the payload as
+ *             sending does, and builds the messages
+ *   persist   gives each batch a contiguous range of indexes, and with them their hashes, and
+ *             appends it to the store in one write
+ *
+ * A stage that gets ahead waits for the next one, so at most a few batches are in memory
+ * however large the dump is. Records that fail validation are counted and the first
+ * MAX_REPORTED_REJECTIONS are reported with their record number. A malformed JSON line is
+ * rejected and the import carries on; a file that cannot be read stops the import, keeping
+ * the batches already written.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class MessageImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+    /** Batches that may wait between two stages. */
+    static final int QUEUE_BATCHES = 4;
+    static final int MAX_REPORTED_REJECTIONS = 100;
+
+    private static final MetricsRegistry.Counter IMPORTED_COUNT = MetricsRegistry.shared().counter("import.messages");
+    private static final MetricsRegistry.Counter REJECTED_COUNT = MetricsRegistry.shared().counter("import.rejected");
+    private static final LatencyHistogram BATCH_LATENCY = MetricsRegistry.shared().histogram("import.batch");
+
+    /** Ends the stream of batches between two stages. */
+    private static final List<?> END = new ArrayList<>();
+
+    /**
+     * The outcome of an import.
+     */
+    public static final class Result {
+        private long imported;
+        private long rejected;
+        private final Map<Long, String> rejections = new LinkedHashMap<>();
+        private long elapsedNanos;
+
+        /** The number of messages written to the store. */
+        public long getImported() { return imported; }
+
+        /** The number of records that were not imported. */
+        public long getRejected() { return rejected; }
+
+        /** The first MAX_REPORTED_REJECTIONS rejected records by record number (from 1), with the reason. */
+        public Map<Long, String> getRejections() { return rejections; }
+
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        public double throughputPerSecond() {
+            return elapsedNanos == 0 ? 0 : imported * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        private void reject(long record, String reason) {
+            rejected++;
+            REJECTED_COUNT.increment();
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                rejections.put(record, reason);
+            }
+        }
+
+        /**
+         * @return A one-line summary, e.g. "Import: 99998 imported, 2 rejected in 812 ms (123150 msg/s)".
+         */
+        public String summary() {
+            return String.format("Import: %d imported, %d rejected in %d ms (%.0f msg/s)",
+                imported, rejected, elapsedNanos / 1_000_000, throughputPerSecond());
+        }
+    }
+
+    /**
+     * One record as read from the dump, before it is checked.
+     */
+    static final class Record {
+        final long number;
+        final Map<String, String> fields;
+        final String error;
+
+        Record(long number, Map<String, String> fields, String error) {
+            this.number = number;
+            this.fields = fields;
+            this.error = error;
+        }
+
+        /** @return The first of the named fields that is present and not blank, or null. */
+        String get(String... names) {
+            for (String name : names) {
+                String value = fields.get(name);
+                if (value != null && !value.isBlank()) {
+                    return value.trim();
+                }
+            }
+            return null;
+        }
+    }
+
+    private final MessageStore store;
+    private final int batchSize;
+
+    public MessageImporter(MessageStore store) {
+        this(store, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize How many messages are appended to the store in one write.
+     */
+    public MessageImporter(MessageStore store, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1");
+        }
+        this.store = store;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports a dump, reading it as JSON lines if its name ends in .jsonl and as CSV otherwise.
+     */
+    public Result importFile(Path file) throws IOException {
+        return importFile(file, MessageExporter.Format.forFileName(file.getFileName().toString()));
+    }
+
+    /**
+     * Imports a dump, returning once every batch is written or the import has failed.
+     *
+     * @throws InterruptedIOException if the calling thread was interrupted; batches already written are kept.
+     */
+    public Result importFile(Path file, MessageExporter.Format format) throws IOException {
+        long started = System.nanoTime();
+        Result result = new Result();
+        BlockingQueue<List<Record>> parsed = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        BlockingQueue<List<Message>> validated = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Thread parser = new Thread(() -> {
+                try {
+                    parse(reader, format, parsed);
+                } catch (IOException | RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                putQuietly(parsed, end());
+            }, "chitchat-import-parse");
+            Thread validator = new Thread(() -> {
+                try {
+                    validate(parsed, validated, result);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Ends the import after a failure too, so persisting never waits for batches that will not come
+                putQuietly(validated, end());
+            }, "chitchat-import-validate");
+            parser.setDaemon(true);
+            validator.setDaemon(true);
+            parser.start();
+            validator.start();
+            try {
+                persist(validated, result);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Import cancelled");
+            } finally {
+                // Stops the other stages if persisting failed; after a clean finish they have already ended
+                parser.interrupt();
+                validator.interrupt();
+            }
+        }
+        if (failure.get() instanceof IOException e) {
+            throw e;
+        }
+        if (failure.get() != null) {
+            throw new IOException("Import failed: " + failure.get(), failure.get());
+        }
+        result.elapsedNanos = System.nanoTime() - started;
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> end() {
+        return (List<T>) END;
+    }
+
+    private static <T> void putQuietly(BlockingQueue<List<T>> queue, List<T> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            // Only interrupted when the import is being stopped, so nobody is waiting for the end
+        }
+    }
+
+    // --- Parse ---
+
+    private void parse(BufferedReader reader, MessageExporter.Format format, BlockingQueue<List<Record>> out)
+            throws IOException, InterruptedException {
+        ArrayList<Record> batch = new ArrayList<>(batchSize);
+        long number = 0;
+        if (format == MessageExporter.Format.JSONL) {
+            JSONParser json = new JSONParser();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                batch.add(parseJsonLine(json, line, ++number));
+                if (batch.size() == batchSize) {
+                    out.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        } else {
+            List<String> header = readCsvRecord(reader);
+            if (header == null) {
+                return;
+            }
+            for (int i = 0; i < header.size(); i++) {
+                header.set(i, header.get(i).trim().toLowerCase(Locale.ROOT));
+            }
+            List<String> cells;
+            while ((cells = readCsvRecord(reader)) != null) {
+                if (cells.size() == 1 && cells.get(0).isBlank()) {
+                    continue;
+                }
+                HashMap<String, String> fields = new HashMap<>();
+                for (int i = 0; i < header.size() && i < cells.size(); i++) {
+                    fields.put(header.get(i), cells.get(i));
+                }
+                batch.add(new Record(++number, fields,
+                        cells.size() > header.size() ? "Failed: More cells than the header names." : null));
+                if (batch.size() == batchSize) {
+                    out.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            out.put(batch);
+        }
+    }
+
+    static Record parseJsonLine(JSONParser json, String line, long number) {
+        Object parsed;
+        try {
+            parsed = json.parse(line);
+        } catch (ParseException e) {
+            return new Record(number, Map.of(), "Failed: Not valid JSON.");
+        }
+        if (!(parsed instanceof JSONObject object)) {
+            return new Record(number, Map.of(), "Failed: Not a JSON object.");
+        }
+        HashMap<String, String> fields = new HashMap<>();
+        for (Object key : object.keySet()) {
+            Object value = object.get(key);
+            if (value != null) {
+                fields.put(key.toString().toLowerCase(Locale.ROOT), value.toString());
+            }
+        }
+        return new Record(number, fields, null);
+    }
+
+    /**
+     * Reads one CSV record (RFC 4180): quoted cells may hold commas, doubled quotes and line breaks.
+     *
+     * @return The record's cells, or null at the end of the input.
+     */
+    static List<String> readCsvRecord(BufferedReader reader) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        ArrayList<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        cell.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    cell.append((char) c);
+                }
+            } else if (c == '"' && cell.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                cell.append((char) c);
+            }
+            c = reader.read();
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+
+    // --- Validate ---
+
+    private static void validate(BlockingQueue<List<Record>> in, BlockingQueue<List<Message>> out, Result result)
+            throws InterruptedException {
+        while (true) {
+            List<Record> records = in.take();
+            if (records == END) {
+                return;
+            }
+            ArrayList<Message> messages = new ArrayList<>(records.size());
+            for (Record record : records) {
+                Message message = toMessage(record, result);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            out.put(messages);
+        }
+    }
+
+    /**
+     * @return The record as an unnumbered message, or null if it was rejected.
+     */
+    static Message toMessage(Record record, Result result) {
+        if (record.error != null) {
+            result.reject(record.number, record.error);
+            return null;
+        }
+        String sender = record.get("sender", "from");
+        String recipient = record.get("recipient", "to");
+        String payload = record.get("payload", "message", "text", "body");
+        String status = status(record);
+        // A new message supplies a fresh id and creation time for records without them
+        Message fresh = new Message(sender, recipient, payload);
+
+        String failure = null;
+        if ("disregarded".equals(status)) {
+            failure = "Skipped: Disregarded message.";
+        } else if (status == null) {
+            failure = "Failed: Unknown status.";
+        } else if (fresh.checkCellNumber(sender) != 1) {
+            failure = "Failed: Invalid sender number.";
+        } else if (fresh.checkCellNumber(recipient) != 1) {
+            failure = "Failed: Invalid recipient number.";
+        } else if (payload == null) {
+            failure = "Failed: Message content cannot be empty.";
+        } else if (payload.length() > Message.MAX_PAYLOAD_LENGTH) {
+            failure = "Failed: Message is too long (max 250 chars).";
+        }
+        if (failure != null) {
+            result.reject(record.number, failure);
+            return null;
+        }
+
+        String id = record.get("id");
+        if (id == null || !id.matches("\\d{10}")) {
+            id = fresh.getId();
+        }
+        boolean sent = "sent".equals(status);
+        Message message = new Message(id, sender, recipient, payload, 0, "", sent, !sent, false);
+        long createdAt = millis(record.get("createdat", "timestamp", "time"));
+        long sentAt = sent ? millis(record.get("sentat", "timestamp", "time")) : 0;
+        message.setTimestamps(createdAt > 0 ? createdAt : fresh.getCreatedAt(), sentAt);
+        return message;
+    }
+
+    /**
+     * @return "sent", "stored" or "disregarded", sent if the record does not say, or null if it says something else.
+     */
+    private static String status(Record record) {
+        String status = record.get("status");
+        if (status != null) {
+            status = status.toLowerCase(Locale.ROOT);
+            return status.equals("sent") || status.equals("stored") || status.equals("disregarded") ? status : null;
+        }
+        // messages.json and its exports keep the status as flags
+        if ("true".equalsIgnoreCase(record.get("disregarded"))) {
+            return "disregarded";
+        }
+        if ("true".equalsIgnoreCase(record.get("stored"))) {
+            return "stored";
+        }
+        return "sent";
+    }
+
+    private static long millis(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // --- Persist ---
+
+    private void persist(BlockingQueue<List<Message>> in, Result result) throws IOException, InterruptedException {
+        while (true) {
+            List<Message> messages = in.take();
+            if (messages == END) {
+                return;
+            }
+            if (messages.isEmpty()) {
+                continue;
+            }
+            long started = System.nanoTime();
+            // One contiguous range per batch; append renumbers it if another instance got there first
+            int index = store.getMaxIndex() + 1;
+            for (Message message : messages) {
+                message.renumber(index++);
+            }
+            store.append(messages);
+            result.imported += messages.size();
+            IMPORTED_COUNT.add(messages.size());
+            BATCH_LATENCY.recordSince(started);
+        }
+    }
+}
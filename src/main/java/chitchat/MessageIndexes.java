@@ -0,0 +1,157 @@
+package chitchat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * The indexes the reports are answered from, kept together so every change to a message list
+ * reaches all of them: conversations, times, sketches, number prefixes and, for a chat window,
+ * the inbox. They are built once from the list and then follow it one change at a time.
+ *
+ * As a ChangeStream listener it follows a MessageStore's stream: each addition and deletion is
+ * applied as it is published and a RESET rebuilds from the history it carries. A DELETED change
+ * only has a hash, so the indexed messages are also kept by hash; a message that is not indexed
+ * (e.g. an archived one) is ignored, as is a message added a second time.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class MessageIndexes implements Consumer<ChangeStream.Change> {
+
+    private final ConversationIndex conversations = new ConversationIndex();
+    private final TimeIndex timeline = new TimeIndex();
+    private final MessageSketches sketches = new MessageSketches();
+    private final NumberPrefixIndex numbers = new NumberPrefixIndex();
+    private final InboxIndex inbox;
+    private final HashMap<String, Message> byHash = new HashMap<>();
+
+    public MessageIndexes() {
+        this(null);
+    }
+
+    /**
+     * @param inbox An inbox to keep up to date along with the report indexes, or null.
+     */
+    public MessageIndexes(InboxIndex inbox) {
+        this.inbox = inbox;
+    }
+
+    public ConversationIndex getConversations() { return conversations; }
+    public TimeIndex getTimeline() { return timeline; }
+    public MessageSketches getSketches() { return sketches; }
+    public NumberPrefixIndex getNumbers() { return numbers; }
+
+    /** The inbox, or null if there is none. */
+    public InboxIndex getInbox() { return inbox; }
+
+    /**
+     * @return true if this very message is indexed, i.e. still in the list the indexes follow.
+     */
+    public synchronized boolean contains(Message message) {
+        return message.getHash() != null && byHash.get(key(message.getHash())) == message;
+    }
+
+    /**
+     * Rebuilds every index from a full message list.
+     */
+    public synchronized void build(List<Message> messages) {
+        byHash.clear();
+        for (Message message : messages) {
+            if (message.getHash() != null) {
+                byHash.put(key(message.getHash()), message);
+            }
+        }
+        conversations.build(messages);
+        timeline.build(messages);
+        sketches.build(messages);
+        numbers.build(messages);
+        if (inbox != null) {
+            inbox.build(messages);
+        }
+    }
+
+    /**
+     * Adds a message appended to the list, unless it is already indexed.
+     */
+    public synchronized void onMessageAdded(Message message) {
+        if (message.getHash() == null || byHash.putIfAbsent(key(message.getHash()), message) != null) {
+            return;
+        }
+        addToAll(message);
+    }
+
+    /**
+     * Takes the message with the hash out of every index.
+     *
+     * @return The message, or null if none was indexed under the hash.
+     */
+    public synchronized Message onMessageDeleted(String hash) {
+        Message message = hash == null ? null : byHash.remove(key(hash));
+        if (message != null) {
+            removeFromAll(message);
+        }
+        return message;
+    }
+
+    /**
+     * Moves a message the store renumbered (see MessageStore.append) to where its new index puts it.
+     *
+     * @param oldHash The hash it was added under.
+     */
+    public synchronized void onMessageRenumbered(Message message, String oldHash) {
+        if (byHash.remove(key(oldHash)) != message) {
+            return;
+        }
+        removeFromAll(message);
+        byHash.put(key(message.getHash()), message);
+        addToAll(message);
+    }
+
+    /**
+     * Applies one published change.
+     */
+    @Override
+    public void accept(ChangeStream.Change change) {
+        switch (change.getType()) {
+            case APPENDED:
+            case STORED:
+                onMessageAdded(change.getMessage());
+                break;
+            case DELETED:
+                onMessageDeleted(change.getHash());
+                break;
+            case RESET:
+                if (change.getReloaded() != null) {
+                    build(change.getReloaded());
+                }
+                break;
+        }
+    }
+
+    private void addToAll(Message message) {
+        conversations.onMessageAdded(message);
+        timeline.onMessageAdded(message);
+        sketches.onMessageAdded(message);
+        numbers.onMessageAdded(message);
+        if (inbox != null) {
+            inbox.onMessageAdded(message);
+        }
+    }
+
+    private void removeFromAll(Message message) {
+        conversations.onMessageDeleted(message);
+        timeline.onMessageDeleted(message);
+        sketches.onMessageDeleted(message);
+        numbers.onMessageDeleted(message);
+        if (inbox != null) {
+            inbox.onMessageDeleted(message);
+        }
+    }
+
+    // Hashes are matched ignoring case, as deleteMessageByHash() and the store do
+    private static String key(String hash) {
+        return hash.toUpperCase(Locale.ROOT);
+    }
+}
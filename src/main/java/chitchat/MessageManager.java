@@ -2,97 +2,501 @@ package chitchat;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 /**
  * Manages loading and saving messages to a single JSON file.
  * This approach is more efficient than storing each message in a separate file.
  *
+ * A payload is written in full the first time it appears in the file. Later messages with the same
+ * text store "payloadRef", its PayloadStore hash in hex, instead, and share one String once loaded.
+ * Files without references, as written by older versions, load as before.
+ *
+ * A file whose name ends in ".seg" is written as a block-compressed SegmentFile instead, and
+ * segment files are recognised by their header when loading.
+ *
+ * Files are never rewritten in place: a snapshot is written to a temporary file, synced and then
+ * moved over the old one, so a crash leaves either the old or the new file. The last element of a
+ * JSON snapshot is a trailer, {"snapshot":1,"messages":N,"crc32":"..."}, holding a CRC-32 of every
+ * byte before it. A file that exists but is empty, cannot be parsed or fails its checksum is never
+ * treated as a fresh start: it is copied to "<file>.damaged" and every complete message before the
+ * damage is recovered.
+ *
  * @author Kitso Litelu (Updated by me for Finale)
  * @version 2025-06-13
  */
 public class MessageManager {
 
-    private static final String MESSAGES_FILE = "messages.json";
+    // -Dchitchat.messagesFile=messages.seg keeps messages in a block-compressed SegmentFile instead
+    static final String MESSAGES_FILE = System.getProperty("chitchat.messagesFile", "messages.json");
+    // A reference ("payloadRef":"<16 hex digits>") only saves space over payloads longer than this
+    private static final int MIN_REFERENCED_PAYLOAD_LENGTH = 20;
+    // Written in this order so the trailer can be found without parsing the whole file
+    private static final String TRAILER_START = "{\"snapshot\":1,";
+    private static final Pattern TRAILER = Pattern.compile(
+            "\\{\"snapshot\":1,\"messages\":(\\d+),\"crc32\":\"([0-9a-f]{8})\"\\}\\]\\s*$");
+    private static final int TRAILER_SEARCH_BYTES = 128;
+    static final String DAMAGED_SUFFIX = ".damaged";
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.shared();
+    private static final LatencyHistogram LOAD_LATENCY = METRICS.histogram("load");
+    private static final LatencyHistogram SAVE_LATENCY = METRICS.histogram("save");
+    private static final MetricsRegistry.Counter LOADED_COUNT = METRICS.counter("messages.loaded");
+    private static final MetricsRegistry.Counter SAVED_COUNT = METRICS.counter("messages.saved");
+    private static final MetricsRegistry.Counter SAVE_ERROR_COUNT = METRICS.counter("save.errors");
+    private static final MetricsRegistry.Counter DAMAGED_COUNT = METRICS.counter("load.damaged");
 
     /**
      * Loads all messages from the messages.json file.
      *
      * @return An ArrayList of all Message objects.
      */
-    @SuppressWarnings("unchecked")
     public static ArrayList<Message> loadAllMessages() {
-        ArrayList<Message> allMessages = new ArrayList<>();
-        JSONParser parser = new JSONParser();
-
-        // Try to read the existing file
-        try (FileReader reader = new FileReader(MESSAGES_FILE)) {
-            JSONArray messagesArray = (JSONArray) parser.parse(reader);
-
-            for (Object obj : messagesArray) {
-                JSONObject jsonMessage = (JSONObject) obj;
-
-                String id = (String) jsonMessage.get("id");
-                String sender = (String) jsonMessage.get("sender");
-                String recipient = (String) jsonMessage.get("recipient");
-                String payload = (String) jsonMessage.get("payload");
-                long indexLong = (Long) jsonMessage.getOrDefault("index", 0L);
-                int index = (int) indexLong;
-                String hash = (String) jsonMessage.get("hash");
-                boolean sent = (Boolean) jsonMessage.getOrDefault("sent", false);
-                boolean stored = (Boolean) jsonMessage.getOrDefault("stored", false);
-                boolean disregarded = (Boolean) jsonMessage.getOrDefault("disregarded", false);
-
-
-                // Create Message object using the constructor that takes all fields
-                Message message = new Message(id, sender, recipient, payload, index, hash, sent, stored, disregarded);
-                allMessages.add(message);
-            }
-        } catch (IOException | ParseException e) {
-            // If the file doesn't exist or is empty, it's not an error.
-            // We'll just start with an empty list.
-            System.out.println("Info: messages.json not found or is empty. Starting fresh.");
-        } catch (Exception e) {
-            System.err.println("An unexpected error occurred while loading messages: " + e.getMessage());
+        return loadAllMessages(MESSAGES_FILE);
+    }
+
+    /**
+     * Loads all messages from the given JSON file.
+     *
+     * @param messagesFile The path of the file to read.
+     * @return An ArrayList of all Message objects.
+     */
+    public static ArrayList<Message> loadAllMessages(String messagesFile) {
+        return loadAllMessages(messagesFile, new PayloadStore());
+    }
+
+    /**
+     * Loads all messages from the given JSON file.
+     *
+     * @param messagesFile The path of the file to read.
+     * @param payloads     Resolves payload references and shares repeated payloads, or null to keep
+     *                     every payload as parsed (only for files without references).
+     * @return An ArrayList of all Message objects.
+     */
+    static ArrayList<Message> loadAllMessages(String messagesFile, PayloadStore payloads) {
+        long started = System.nanoTime();
+        JfrEvents.MessagesLoadEvent event = new JfrEvents.MessagesLoadEvent();
+        event.begin();
+        ArrayList<Message> allMessages;
+        Path file = Path.of(messagesFile);
+
+        if (SegmentFile.isSegmentFile(file)) {
+            allMessages = loadSegment(messagesFile, payloads);
+        } else {
+            allMessages = loadJson(file, payloads);
         }
 
+        LOADED_COUNT.add(allMessages.size());
+        LOAD_LATENCY.recordSince(started);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = messagesFile;
+            event.messageCount = allMessages.size();
+            event.bytesRead = new File(messagesFile).length();
+            event.commit();
+        }
         return allMessages;
     }
 
+    private static ArrayList<Message> loadSegment(String messagesFile, PayloadStore payloads) {
+        try (SegmentFile segment = SegmentFile.open(Path.of(messagesFile))) {
+            return segment.readAll(payloads);
+        } catch (IOException e) {
+            keepDamagedCopy(Path.of(messagesFile), e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private static ArrayList<Message> loadJson(Path file, PayloadStore payloads) {
+        long length;
+        try {
+            length = Files.size(file);
+        } catch (NoSuchFileException e) {
+            System.out.println("Info: " + file.getFileName() + " not found. Starting fresh.");
+            return new ArrayList<>();
+        } catch (IOException e) {
+            System.err.println("Error reading " + file + ": " + e.getMessage());
+            return new ArrayList<>();
+        }
+        if (length == 0) {
+            // What an interrupted rewrite in place used to leave behind, not an empty history
+            keepDamagedCopy(file, "the file is empty");
+            return new ArrayList<>();
+        }
+
+        String damage = null;
+        try {
+            Trailer trailer = readTrailer(file, length);
+            if (trailer != null && crcOf(file, trailer.offset) != trailer.crc) {
+                damage = "the snapshot checksum does not match";
+            } else {
+                ArrayList<Message> allMessages = new ArrayList<>();
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    JSONArray messagesArray = (JSONArray) new JSONParser().parse(reader);
+                    int count = trailer == null ? messagesArray.size() : messagesArray.size() - 1;
+                    for (int i = 0; i < count; i++) {
+                        allMessages.add(fromJson((JSONObject) messagesArray.get(i), payloads));
+                    }
+                }
+                if (trailer == null || trailer.messages == allMessages.size()) {
+                    return allMessages;
+                }
+                damage = "the snapshot should hold " + trailer.messages + " messages, not " + allMessages.size();
+            }
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            System.out.println("Info: " + file.getFileName() + " not found. Starting fresh.");
+            return new ArrayList<>();
+        } catch (IOException | ParseException | RuntimeException e) {
+            damage = e.getMessage() == null ? e.toString() : e.getMessage();
+        }
+
+        keepDamagedCopy(file, damage);
+        if (payloads != null) {
+            // The failed attempt may have interned payloads the salvage would then see twice
+            payloads.clear();
+        }
+        ArrayList<Message> salvaged = salvage(file, payloads);
+        System.err.println("Recovered " + salvaged.size() + " complete messages from " + file);
+        return salvaged;
+    }
+
+    /**
+     * Copies a file that could not be read next to it, before anything can overwrite it.
+     */
+    static void keepDamagedCopy(Path file, String damage) {
+        DAMAGED_COUNT.increment();
+        Path copy = file.resolveSibling(file.getFileName() + DAMAGED_SUFFIX);
+        try {
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            System.err.println("Error: " + file + " is damaged (" + damage + "). A copy was kept as " + copy);
+        } catch (IOException e) {
+            System.err.println("Error: " + file + " is damaged (" + damage + ") and could not be copied: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads every complete message from the start of a damaged JSON file, stopping where it breaks.
+     */
+    private static ArrayList<Message> salvage(Path file, PayloadStore payloads) {
+        ArrayList<Message> salvaged = new ArrayList<>();
+        SalvageHandler handler = new SalvageHandler();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            new JSONParser().parse(reader, handler);
+        } catch (IOException | ParseException | RuntimeException e) {
+            // Expected: this is where the damage starts
+        }
+        for (JSONObject jsonMessage : handler.objects) {
+            if (jsonMessage.containsKey("snapshot")) {
+                continue;
+            }
+            try {
+                salvaged.add(fromJson(jsonMessage, payloads));
+            } catch (RuntimeException e) {
+                System.err.println("Skipping unreadable message: " + e.getMessage());
+            }
+        }
+        return salvaged;
+    }
+
+    /**
+     * Collects the flat objects directly inside the top-level array as the parser reaches their end.
+     */
+    private static final class SalvageHandler implements ContentHandler {
+        private final ArrayList<JSONObject> objects = new ArrayList<>();
+        private JSONObject current;
+        private String key;
+        private int depth;
+
+        @Override public void startJSON() { }
+        @Override public void endJSON() { }
+        @Override public boolean startArray() { depth++; return true; }
+        @Override public boolean endArray() { depth--; return true; }
+        @Override public boolean startObjectEntry(String key) { this.key = key; return true; }
+        @Override public boolean endObjectEntry() { return true; }
+
+        @Override
+        public boolean startObject() {
+            depth++;
+            current = depth == 2 ? new JSONObject() : null;
+            return true;
+        }
+
+        @Override
+        public boolean endObject() {
+            if (depth == 2 && current != null) {
+                objects.add(current);
+            }
+            current = null;
+            depth--;
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean primitive(Object value) {
+            if (depth == 2 && current != null) {
+                current.put(key, value);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Where the snapshot trailer starts and what it says.
+     */
+    private static final class Trailer {
+        final long offset;
+        final int messages;
+        final long crc;
+
+        Trailer(long offset, int messages, long crc) {
+            this.offset = offset;
+            this.messages = messages;
+            this.crc = crc;
+        }
+    }
+
+    /**
+     * @return The trailer at the end of the file, or null for a file written before snapshots had one.
+     */
+    private static Trailer readTrailer(Path file, long length) throws IOException {
+        int tailLength = (int) Math.min(length, TRAILER_SEARCH_BYTES);
+        ByteBuffer tail = ByteBuffer.allocate(tailLength);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (tail.hasRemaining() && channel.read(tail, length - tailLength + tail.position()) >= 0) {
+                // keep reading until the tail is complete
+            }
+        }
+        // Quotes inside payloads are escaped, so the trailer's text cannot appear in a message
+        String text = new String(tail.array(), 0, tail.position(), StandardCharsets.UTF_8);
+        int start = text.lastIndexOf(TRAILER_START);
+        if (start < 0) {
+            return null;
+        }
+        Matcher matcher = TRAILER.matcher(text.substring(start));
+        if (!matcher.matches()) {
+            return null;
+        }
+        long offset = length - text.substring(start).getBytes(StandardCharsets.UTF_8).length;
+        return new Trailer(offset, Integer.parseInt(matcher.group(1)), Long.parseLong(matcher.group(2), 16));
+    }
+
+    /**
+     * @return The CRC-32 of the first bytes of the file.
+     */
+    private static long crcOf(Path file, long bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = bytes;
+        try (InputStream in = Files.newInputStream(file)) {
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("the file ends before its checksummed part");
+                }
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return crc.getValue();
+    }
+
     /**
      * Saves a list of messages to the messages.json file.
      * This will overwrite the existing file with the new list.
      *
      * @param messages The ArrayList of Message objects to save.
      */
-    @SuppressWarnings("unchecked")
     public static void saveAllMessages(ArrayList<Message> messages) {
-        JSONArray messagesArray = new JSONArray();
-        for (Message msg : messages) {
-            JSONObject jsonMessage = new JSONObject();
-            jsonMessage.put("id", msg.getId());
-            jsonMessage.put("sender", msg.getSender());
-            jsonMessage.put("recipient", msg.getRecipient());
-            jsonMessage.put("payload", msg.getPayload());
-            jsonMessage.put("index", msg.getIndex());
-            jsonMessage.put("hash", msg.getHash());
-            jsonMessage.put("sent", msg.isSent());
-            jsonMessage.put("stored", msg.isStored());
-            jsonMessage.put("disregarded", msg.isDisregarded());
-            messagesArray.add(jsonMessage);
-        }
-
-        try (FileWriter file = new FileWriter(MESSAGES_FILE)) {
-            file.write(messagesArray.toJSONString());
-            file.flush();
+        saveAllMessages(messages, MESSAGES_FILE);
+    }
+
+    /**
+     * Saves a list of messages to the given JSON file, overwriting it.
+     *
+     * @param messages     The ArrayList of Message objects to save.
+     * @param messagesFile The path of the file to write.
+     */
+    public static void saveAllMessages(ArrayList<Message> messages, String messagesFile) {
+        long started = System.nanoTime();
+        JfrEvents.MessagesSaveEvent event = new JfrEvents.MessagesSaveEvent();
+        event.begin();
+        try {
+            writeSnapshot(messages, Path.of(messagesFile));
+            SAVED_COUNT.add(messages.size());
         } catch (IOException e) {
+            SAVE_ERROR_COUNT.increment();
             System.err.println("Error saving messages: " + e.getMessage());
         }
+        SAVE_LATENCY.recordSince(started);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = messagesFile;
+            event.messageCount = messages.size();
+            event.bytesWritten = new File(messagesFile).length();
+            event.commit();
+        }
+    }
+
+    /**
+     * Replaces the file with the messages: written to a temporary file, synced, then moved into place.
+     * Used by saveAllMessages and by MessageStore when it compacts.
+     */
+    static void writeSnapshot(List<Message> messages, Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            if (file.toString().endsWith(SegmentFile.FILE_SUFFIX)) {
+                try (SegmentFile.Writer writer = new SegmentFile.Writer(temp, SegmentFile.DEFAULT_MESSAGES_PER_BLOCK)) {
+                    for (Message message : messages) {
+                        writer.add(message);
+                    }
+                    writer.finish();
+                    writer.sync();
+                }
+            } else {
+                writeJson(messages, temp);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeJson(List<Message> messages, Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileOutputStream out = new FileOutputStream(file.toFile());
+             Writer writer = new BufferedWriter(new OutputStreamWriter(new CheckedOutputStream(out, crc), StandardCharsets.UTF_8))) {
+            writer.write('[');
+            PayloadStore payloads = new PayloadStore();
+            for (Message msg : messages) {
+                writer.write(toJson(msg, payloads).toJSONString());
+                writer.write(',');
+            }
+            // Everything up to here is covered by the checksum
+            writer.flush();
+            writer.write(TRAILER_START + "\"messages\":" + messages.size()
+                    + ",\"crc32\":\"" + String.format("%08x", crc.getValue()) + "\"}]");
+            writer.flush();
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Converts one message to its JSON object with the payload written in full.
+     */
+    static JSONObject toJson(Message msg) {
+        return toJson(msg, null);
+    }
+
+    /**
+     * Converts one message to its JSON object, as stored in messages.json.
+     *
+     * @param payloads The payloads already written to the same file, or null to write the payload in full.
+     *                 A payload seen before is written as a reference, otherwise it is added.
+     */
+    @SuppressWarnings("unchecked")
+    static JSONObject toJson(Message msg, PayloadStore payloads) {
+        JSONObject jsonMessage = new JSONObject();
+        jsonMessage.put("id", msg.getId());
+        jsonMessage.put("sender", msg.getSender());
+        jsonMessage.put("recipient", msg.getRecipient());
+        String payload = msg.getPayload();
+        if (payloads == null || payload == null) {
+            jsonMessage.put("payload", payload);
+        } else {
+            long payloadHash = payloads.hashOf(payload);
+            if (payload.length() > MIN_REFERENCED_PAYLOAD_LENGTH && payloads.isReferenceable(payload, payloadHash)) {
+                jsonMessage.put("payloadRef", Long.toHexString(payloadHash));
+            } else {
+                payloads.intern(payload, payloadHash);
+                jsonMessage.put("payload", payload);
+            }
+        }
+        jsonMessage.put("index", msg.getIndex());
+        jsonMessage.put("hash", msg.getHash());
+        jsonMessage.put("sent", msg.isSent());
+        jsonMessage.put("stored", msg.isStored());
+        jsonMessage.put("disregarded", msg.isDisregarded());
+        if (msg.getDeliverAt() > 0) {
+            // Only scheduled messages have it, so older files and readers are unaffected
+            jsonMessage.put("deliverAt", msg.getDeliverAt());
+        }
+        // Likewise absent for messages from before timestamps were kept
+        if (msg.getCreatedAt() > 0) {
+            jsonMessage.put("createdAt", msg.getCreatedAt());
+        }
+        if (msg.getSentAt() > 0) {
+            jsonMessage.put("sentAt", msg.getSentAt());
+        }
+        return jsonMessage;
+    }
+
+    /**
+     * Creates a message from a JSON object whose payload is written in full.
+     */
+    static Message fromJson(JSONObject jsonMessage) {
+        return fromJson(jsonMessage, null);
+    }
+
+    /**
+     * Creates a message from its JSON object in messages.json.
+     *
+     * @param payloads The payloads read so far from the same file, used to resolve references and
+     *                 share repeated payloads; or null when the object cannot hold a reference.
+     */
+    @SuppressWarnings("unchecked")
+    static Message fromJson(JSONObject jsonMessage, PayloadStore payloads) {
+        String id = (String) jsonMessage.get("id");
+        String sender = (String) jsonMessage.get("sender");
+        String recipient = (String) jsonMessage.get("recipient");
+        String payload = (String) jsonMessage.get("payload");
+        String payloadRef = (String) jsonMessage.get("payloadRef");
+        if (payloadRef != null) {
+            payload = payloads == null ? null : payloads.get(Long.parseUnsignedLong(payloadRef, 16));
+            if (payload == null) {
+                throw new IllegalArgumentException("Message " + id + " refers to unknown payload " + payloadRef);
+            }
+        } else if (payloads != null) {
+            payload = payloads.intern(payload);
+        }
+        long indexLong = (Long) jsonMessage.getOrDefault("index", 0L);
+        int index = (int) indexLong;
+        String hash = (String) jsonMessage.get("hash");
+        boolean sent = (Boolean) jsonMessage.getOrDefault("sent", false);
+        boolean stored = (Boolean) jsonMessage.getOrDefault("stored", false);
+        boolean disregarded = (Boolean) jsonMessage.getOrDefault("disregarded", false);
+
+        // Create Message object using the constructor that takes all fields
+        Message message = new Message(id, sender, recipient, payload, index, hash, sent, stored, disregarded);
+        message.setDeliverAt((Long) jsonMessage.getOrDefault("deliverAt", 0L));
+        message.setTimestamps((Long) jsonMessage.getOrDefault("createdAt", 0L), (Long) jsonMessage.getOrDefault("sentAt", 0L));
+        return message;
     }
 }
@@ -0,0 +1,285 @@
+package chitchat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming analytics over sent messages, kept up to date as messages are sent so the analytics
+ * reports answer in constant time instead of scanning the history:
+ *
+ *   distinct senders and recipients, overall and per sender   HyperLogLog, exact while small,
+ *                                                              then about 0.8% error overall
+ *                                                              and 3.3% per sender
+ *   payload length percentiles                                 exact: a payload is at most
+ *                                                              Message.MAX_PAYLOAD_LENGTH long,
+ *                                                              so a count per length is as small
+ *                                                              as any quantile sketch
+ *   the most frequent recipients                               CountMinSketch and its heavy
+ *                                                              hitters, see its error bound
+ *
+ * Every part merges, so the sketches of two histories merge into the sketch of both; the archive
+ * keeps the sketches of its messages in its summary, and the reports combine them with these. A deleted
+ * message is taken off the message count, the length counts and the recipient counts. A
+ * HyperLogLog cannot forget a number, so the distinct counts still include one whose messages were
+ * all deleted until the next build(). Stored and disregarded messages are not counted.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class MessageSketches {
+
+    static final int OVERALL_PRECISION = 14;
+    static final int PER_SENDER_PRECISION = 10;
+    static final int HEAVY_HITTERS = 20;
+
+    private HyperLogLog senders;
+    private HyperLogLog recipients;
+    private HashMap<String, HyperLogLog> recipientsBySender;
+    private CountMinSketch recipientCounts;
+    private long[] lengthCounts;
+    private long sentCount;
+
+    public MessageSketches() {
+        reset();
+    }
+
+    private void reset() {
+        senders = new HyperLogLog(OVERALL_PRECISION);
+        recipients = new HyperLogLog(OVERALL_PRECISION);
+        recipientsBySender = new HashMap<>();
+        recipientCounts = new CountMinSketch(CountMinSketch.DEFAULT_WIDTH, HEAVY_HITTERS);
+        lengthCounts = new long[Message.MAX_PAYLOAD_LENGTH + 1];
+        sentCount = 0;
+    }
+
+    /**
+     * Rebuilds the sketches from a full message list.
+     */
+    public synchronized void build(List<Message> messages) {
+        reset();
+        for (Message message : messages) {
+            add(message);
+        }
+    }
+
+    /**
+     * Counts a newly sent message; anything else is ignored.
+     */
+    public synchronized void onMessageAdded(Message message) {
+        add(message);
+    }
+
+    /**
+     * Takes a deleted sent message off the counts that can forget it; anything else is ignored.
+     */
+    public synchronized void onMessageDeleted(Message message) {
+        if (!counted(message) || sentCount == 0) {
+            return;
+        }
+        sentCount--;
+        recipientCounts.remove(message.getRecipient());
+        int length = lengthOf(message);
+        if (lengthCounts[length] > 0) {
+            lengthCounts[length]--;
+        }
+    }
+
+    private static boolean counted(Message message) {
+        return message.isSent() && message.getSender() != null && message.getRecipient() != null;
+    }
+
+    private static int lengthOf(Message message) {
+        int length = message.getPayload() == null ? 0 : message.getPayload().length();
+        // Messages from before the limit was checked go in with the longest
+        return Math.min(length, Message.MAX_PAYLOAD_LENGTH);
+    }
+
+    private void add(Message message) {
+        if (!counted(message)) {
+            return;
+        }
+        sentCount++;
+        senders.add(message.getSender());
+        recipients.add(message.getRecipient());
+        recipientsBySender.computeIfAbsent(message.getSender(), sender -> new HyperLogLog(PER_SENDER_PRECISION))
+                .add(message.getRecipient());
+        recipientCounts.add(message.getRecipient());
+        lengthCounts[lengthOf(message)]++;
+    }
+
+    /**
+     * Adds everything another set of sketches has counted to this one.
+     */
+    public void merge(MessageSketches other) {
+        // Lock in a fixed order, so two sketches merging into each other cannot deadlock
+        MessageSketches first = System.identityHashCode(this) <= System.identityHashCode(other) ? this : other;
+        MessageSketches second = first == this ? other : this;
+        synchronized (first) {
+            synchronized (second) {
+                senders.merge(other.senders);
+                recipients.merge(other.recipients);
+                for (Map.Entry<String, HyperLogLog> entry : other.recipientsBySender.entrySet()) {
+                    recipientsBySender.computeIfAbsent(entry.getKey(), sender -> new HyperLogLog(PER_SENDER_PRECISION))
+                            .merge(entry.getValue());
+                }
+                recipientCounts.merge(other.recipientCounts);
+                for (int length = 0; length < lengthCounts.length; length++) {
+                    lengthCounts[length] += other.lengthCounts[length];
+                }
+                sentCount += other.sentCount;
+            }
+        }
+    }
+
+    /**
+     * Combines these sketches with another's for one report, e.g. the messages in memory with the
+     * archived ones. Only the overall sketches and one sender's are copied, so it takes the same
+     * time however many senders there are; the result only knows that sender's distinct recipients.
+     *
+     * @param sender The sender whose distinct recipients are wanted, or null for none.
+     */
+    public MessageSketches combinedWith(MessageSketches other, String sender) {
+        MessageSketches combined = new MessageSketches();
+        for (MessageSketches part : new MessageSketches[] {this, other}) {
+            synchronized (part) {
+                combined.senders.merge(part.senders);
+                combined.recipients.merge(part.recipients);
+                HyperLogLog bySender = sender == null ? null : part.recipientsBySender.get(sender);
+                if (bySender != null) {
+                    combined.recipientsBySender.computeIfAbsent(sender, key -> new HyperLogLog(PER_SENDER_PRECISION))
+                            .merge(bySender);
+                }
+                combined.recipientCounts.merge(part.recipientCounts);
+                for (int length = 0; length < combined.lengthCounts.length; length++) {
+                    combined.lengthCounts[length] += part.lengthCounts[length];
+                }
+                combined.sentCount += part.sentCount;
+            }
+        }
+        return combined;
+    }
+
+    /**
+     * @return The sketches as text, for the archive summary.
+     */
+    public synchronized String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(sentCount);
+            for (long count : lengthCounts) {
+                out.writeLong(count);
+            }
+            senders.writeTo(out);
+            recipients.writeTo(out);
+            recipientCounts.writeTo(out);
+            out.writeInt(recipientsBySender.size());
+            for (Map.Entry<String, HyperLogLog> entry : recipientsBySender.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().writeTo(out);
+            }
+        } catch (IOException e) {
+            // A ByteArrayOutputStream does not fail
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Reads sketches written by encode().
+     *
+     * @throws IOException If the text is not encoded sketches.
+     */
+    public static MessageSketches decode(String encoded) throws IOException {
+        MessageSketches sketches = new MessageSketches();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            sketches.sentCount = in.readLong();
+            for (int length = 0; length < sketches.lengthCounts.length; length++) {
+                sketches.lengthCounts[length] = in.readLong();
+            }
+            sketches.senders = HyperLogLog.readFrom(in);
+            sketches.recipients = HyperLogLog.readFrom(in);
+            sketches.recipientCounts = CountMinSketch.readFrom(in);
+            int senderCount = in.readInt();
+            for (int i = 0; i < senderCount; i++) {
+                sketches.recipientsBySender.put(in.readUTF(), HyperLogLog.readFrom(in));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Not encoded sketches: " + e.getMessage(), e);
+        }
+        return sketches;
+    }
+
+    /** @return The number of sent messages counted. */
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /** @return The estimated number of distinct senders. */
+    public synchronized long getDistinctSenders() {
+        return senders.estimate();
+    }
+
+    /** @return The estimated number of distinct recipients. */
+    public synchronized long getDistinctRecipients() {
+        return recipients.estimate();
+    }
+
+    /** @return The estimated number of distinct recipients the sender has sent to. */
+    public synchronized long getDistinctRecipients(String sender) {
+        HyperLogLog sketch = recipientsBySender.get(sender);
+        return sketch == null ? 0 : sketch.estimate();
+    }
+
+    /** @return The relative standard error of the overall distinct counts. */
+    public double getDistinctError() {
+        return 1.04 / Math.sqrt(1 << OVERALL_PRECISION);
+    }
+
+    /** @return The relative standard error of a sender's distinct recipients, once past a few hundred. */
+    public double getPerSenderDistinctError() {
+        return 1.04 / Math.sqrt(1 << PER_SENDER_PRECISION);
+    }
+
+    /**
+     * @param percentile Between 0 and 100.
+     * @return The payload length at the percentile (nearest rank), or -1 if nothing was sent.
+     */
+    public synchronized int getLengthPercentile(double percentile) {
+        if (sentCount == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * sentCount));
+        long seen = 0;
+        for (int length = 0; length < lengthCounts.length; length++) {
+            seen += lengthCounts[length];
+            if (seen >= rank) {
+                return length;
+            }
+        }
+        return Message.MAX_PAYLOAD_LENGTH;
+    }
+
+    /**
+     * @return Up to limit of the most frequent recipients with their estimated message counts, most first.
+     */
+    public synchronized List<Map.Entry<String, Long>> getTopRecipients(int limit) {
+        return recipientCounts.getHeavyHitters(limit);
+    }
+
+    /** @return How much a recipient's count may be too high, with probability 1 - getRecipientErrorProbability(). */
+    public synchronized long getRecipientErrorBound() {
+        return recipientCounts.getErrorBound();
+    }
+
+    public double getRecipientErrorProbability() {
+        return Math.exp(-CountMinSketch.DEPTH);
+    }
+}
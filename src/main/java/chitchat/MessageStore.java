@@ -0,0 +1,778 @@
+package chitchat;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Shared storage for messages.json that several ChitChat instances can use at the same time.
+ *
+ * Rewriting messages.json from each instance's own list loses whatever the other instances added.
+ * Instead, new messages and deletions are appended as JSON lines to messages.json.journal, and
+ * messages.json only changes when the journal is compacted into it. Every read or write holds a
+ * FileChannel lock on messages.json.lock, shared for reads and exclusive for writes, so an instance
+ * never sees half of another's records.
+ *
+ * The journal starts with a fixed-width header holding a generation number. Each instance remembers
+ * how far into the journal it has read, so poll() only compares the header and the file length and
+ * then reads just the records appended since. Compaction bumps the generation, which tells the other
+ * instances to reload once.
+ *
+ * messages.json is the snapshot and the journal its write-ahead log. Each record starts with a
+ * CRC-32 of its JSON and ends with a newline. A last record without its newline is the torn tail a
+ * writer left when it died, and load() and the next write cut it off. A complete record that fails
+ * its checksum is damage to what was already written: replay stops there, the journal is copied to
+ * "<journal>.damaged" and nothing more is written to it, so the records after the damage are kept
+ * until someone repairs it. Once the journal grows past the snapshot threshold the next write folds
+ * it into a new snapshot first, so a restart replays at most that much of the journal however long
+ * the history is.
+ *
+ * Instances allocate indexes without asking each other, so append() renumbers any new message whose
+ * index another instance has already used.
+ *
+ * Compaction also applies the RetentionPolicy: the oldest messages move to the MessageArchive next
+ * to messages.json, which is not loaded at startup. load() compacts straight away when enough
+ * messages are due, so the hot list stays bounded however long the history grows.
+ *
+ * Every change this store writes or reads from other instances is published on its ChangeStream
+ * once the journal lock is released, in the order it was applied; a reload is published as RESET.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class MessageStore implements Closeable {
+
+    /** Writes and close() compact the journal into messages.json once it is bigger than this. */
+    static final long COMPACT_THRESHOLD_BYTES = 16L * 1024 * 1024;
+
+    private static final String HEADER_PREFIX = "CHITCHAT-JOURNAL v2 generation ";
+    // Journals from before records had checksums; their records are read without one
+    private static final String V1_HEADER_PREFIX = "CHITCHAT-JOURNAL v1 generation ";
+    // "<8 hex digits of CRC-32> " in front of each record's JSON
+    private static final int CHECKSUM_LENGTH = 9;
+
+    private static final MetricsRegistry.Counter REPLAYED_COUNT = MetricsRegistry.shared().counter("journal.replayed");
+    private static final MetricsRegistry.Counter TORN_BYTES = MetricsRegistry.shared().counter("journal.tornBytes");
+    private static final int HEADER_LENGTH = HEADER_PREFIX.length() + 19 + 1;
+
+    // File locks belong to the whole process, so stores in the same JVM take turns on these first
+    private static final ConcurrentHashMap<Path, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * What other instances changed since this store last read the journal.
+     */
+    public static final class Changes {
+        static final Changes NONE = new Changes(null, List.of(), List.of());
+
+        private final ArrayList<Message> reloaded;
+        private final List<Message> added;
+        private final List<String> deletedHashes;
+
+        Changes(ArrayList<Message> reloaded, List<Message> added, List<String> deletedHashes) {
+            this.reloaded = reloaded;
+            this.added = added;
+            this.deletedHashes = deletedHashes;
+        }
+
+        /** true if the journal was compacted and the whole list was read again. */
+        public boolean isReload() { return reloaded != null; }
+
+        /** The complete message list after a reload, otherwise null. */
+        public ArrayList<Message> getReloaded() { return reloaded; }
+
+        /** Messages appended by other instances, in order. */
+        public List<Message> getAdded() { return added; }
+
+        /** Hashes of messages other instances deleted. */
+        public List<String> getDeletedHashes() { return deletedHashes; }
+
+        public boolean isEmpty() {
+            return reloaded == null && added.isEmpty() && deletedHashes.isEmpty();
+        }
+
+        /**
+         * Applies the changes to a message list: replaces it after a reload, otherwise removes the
+         * deleted messages and appends the added ones.
+         *
+         * @return true if messages were removed or replaced, so positions in the list have changed.
+         */
+        public boolean applyTo(List<Message> messages) {
+            if (reloaded != null) {
+                messages.clear();
+                messages.addAll(reloaded);
+                return true;
+            }
+            for (String hash : deletedHashes) {
+                removeByHash(messages, hash);
+            }
+            messages.addAll(added);
+            return !deletedHashes.isEmpty();
+        }
+    }
+
+    private final Path messagesFile;
+    private final Path journalFile;
+    private final Path lockFile;
+    private final ReentrantLock processLock;
+    private final MessageArchive archive;
+    private final ChangeStream changeStream = new ChangeStream();
+    private RetentionPolicy retention = RetentionPolicy.fromSystemProperty();
+    private long snapshotThreshold = Long.getLong("chitchat.snapshotBytes", COMPACT_THRESHOLD_BYTES);
+    private FileChannel journal;
+    private FileChannel lockChannel;
+
+    // How much of the journal this instance has seen
+    private long generation = -1;
+    private long offset;
+    private int maxIndex;
+    // Where replay stopped at a damaged complete record, or -1; writes are refused while it is there
+    private long damagedAt = -1;
+    // The damage last copied and reported, so it is only done once
+    private long reportedDamageAt = -1;
+
+    public MessageStore() {
+        this(MessageManager.MESSAGES_FILE);
+    }
+
+    /**
+     * @param messagesFile The messages file; the journal and lock file are kept next to it.
+     */
+    public MessageStore(String messagesFile) {
+        this.messagesFile = Path.of(messagesFile).toAbsolutePath();
+        this.journalFile = Path.of(messagesFile + ".journal").toAbsolutePath();
+        this.lockFile = Path.of(messagesFile + ".lock").toAbsolutePath();
+        this.processLock = PROCESS_LOCKS.computeIfAbsent(this.lockFile, key -> new ReentrantLock());
+        this.archive = new MessageArchive(messagesFile);
+    }
+
+    /**
+     * @return The cold tier behind this store, for queries that have to include old messages.
+     */
+    public MessageArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * @return The stream of changes to the history, for subscribers that keep their own view of it up to date.
+     */
+    public ChangeStream getChangeStream() {
+        return changeStream;
+    }
+
+    /**
+     * Sets which messages compaction moves to the archive. The default comes from -Dchitchat.retention.
+     */
+    public synchronized void setRetentionPolicy(RetentionPolicy retention) {
+        this.retention = retention;
+    }
+
+    /**
+     * Sets how large the journal may grow before a write folds it into a new snapshot.
+     * The default is 16 MB, or -Dchitchat.snapshotBytes.
+     */
+    public synchronized void setSnapshotThreshold(long bytes) {
+        this.snapshotThreshold = bytes;
+    }
+
+    /**
+     * Reads messages.json and replays the journal over it, cutting off a torn tail.
+     * If a complete record is damaged, the messages before it are returned and the journal is left as it is.
+     *
+     * @return Every message, in order. The list belongs to the caller.
+     */
+    public synchronized ArrayList<Message> load() throws IOException {
+        ArrayList<Message> messages;
+        FileLock lock = lock(false);
+        try {
+            createJournalIfEmpty();
+            messages = reload();
+            if (damagedAt < 0) {
+                // No writer can be part way through a record while we hold the exclusive lock
+                cutTornTail();
+            }
+            if (damagedAt < 0 && (retention.archiveCount(messages) > 0 || journal.size() > snapshotThreshold)) {
+                messages = compactLocked().getReloaded();
+            }
+        } finally {
+            unlock(lock);
+        }
+        changeStream.reset(messages);
+        return messages;
+    }
+
+    /**
+     * Picks up what other instances have written since the last call.
+     * When nothing changed this costs one small read and no lock.
+     */
+    public synchronized Changes poll() throws IOException {
+        try {
+            if (journal != null && journal.size() == offset && readGeneration() == generation) {
+                return Changes.NONE;
+            }
+        } catch (IOException e) {
+            // A header caught mid-write, look again under the lock
+        }
+        Changes changes;
+        FileLock lock = lock(true);
+        try {
+            changes = catchUp();
+        } finally {
+            unlock(lock);
+        }
+        changeStream.publish(changes);
+        return changes;
+    }
+
+    /**
+     * Appends new messages to the journal. Messages whose index is already taken are renumbered first.
+     *
+     * @param newMessages Messages this instance created; they are not added to any list here.
+     * @return What other instances had written before these messages, to be applied before adding them.
+     */
+    public synchronized Changes append(List<Message> newMessages) throws IOException {
+        Changes changes;
+        FileLock lock = lock(false);
+        try {
+            createJournalIfEmpty();
+            changes = snapshotIfDue(catchUp());
+            StringBuilder records = new StringBuilder();
+            for (Message message : newMessages) {
+                if (!message.isDisregarded() && message.getIndex() <= maxIndex) {
+                    message.renumber(maxIndex + 1);
+                }
+                maxIndex = Math.max(maxIndex, message.getIndex());
+                JSONObject record = MessageManager.toJson(message);
+                putOp(record, "add");
+                appendRecord(records, record);
+            }
+            writeRecords(records);
+        } finally {
+            unlock(lock);
+        }
+        changeStream.publish(changes);
+        newMessages.forEach(changeStream::added);
+        return changes;
+    }
+
+    /**
+     * Records that the message with the given hash was deleted.
+     *
+     * @return What other instances had written before the deletion.
+     */
+    public synchronized Changes delete(String hash) throws IOException {
+        Changes changes;
+        FileLock lock = lock(false);
+        try {
+            createJournalIfEmpty();
+            changes = snapshotIfDue(catchUp());
+            JSONObject record = new JSONObject();
+            putOp(record, "delete");
+            putHash(record, hash);
+            writeRecords(appendRecord(new StringBuilder(), record));
+        } finally {
+            unlock(lock);
+        }
+        changeStream.publish(changes);
+        changeStream.deleted(hash);
+        return changes;
+    }
+
+    /**
+     * Replaces scheduled messages with their delivered copies, one journal record each, so a crash
+     * never leaves both or neither. A message another instance has already delivered or deleted
+     * since this store last read the journal is skipped; the returned changes remove it from the
+     * caller's list, which is how the caller can tell.
+     *
+     * @param scheduled The originals, all in the caller's list as of its last applied changes.
+     * @param delivered Their sent copies, paired by position. Copies may be renumbered like appends.
+     * @return What other instances had written before the deliveries.
+     */
+    public synchronized Changes deliver(List<Message> scheduled, List<Message> delivered) throws IOException {
+        Changes changes;
+        ArrayList<Integer> replaced = new ArrayList<>();
+        FileLock lock = lock(false);
+        try {
+            createJournalIfEmpty();
+            changes = snapshotIfDue(catchUp());
+            HashSet<String> gone = new HashSet<>(changes.getDeletedHashes());
+            if (changes.isReload()) {
+                HashSet<String> present = new HashSet<>();
+                for (Message message : changes.getReloaded()) {
+                    present.add(message.getHash());
+                }
+                for (Message message : scheduled) {
+                    if (!present.contains(message.getHash())) {
+                        gone.add(message.getHash());
+                    }
+                }
+            }
+            StringBuilder records = new StringBuilder();
+            for (int i = 0; i < scheduled.size(); i++) {
+                String hash = scheduled.get(i).getHash();
+                if (gone.contains(hash)) {
+                    continue;
+                }
+                Message copy = delivered.get(i);
+                if (copy.getIndex() <= maxIndex) {
+                    copy.renumber(maxIndex + 1);
+                }
+                maxIndex = Math.max(maxIndex, copy.getIndex());
+                JSONObject record = MessageManager.toJson(copy);
+                putOp(record, "replace");
+                putReplaces(record, hash);
+                appendRecord(records, record);
+                replaced.add(i);
+            }
+            writeRecords(records);
+        } finally {
+            unlock(lock);
+        }
+        changeStream.publish(changes);
+        for (int i : replaced) {
+            changeStream.deleted(scheduled.get(i).getHash());
+            changeStream.added(delivered.get(i));
+        }
+        return changes;
+    }
+
+    /**
+     * Removes a message from the archive. Messages in the hot list are deleted with delete().
+     *
+     * @return The deleted message, or null if the archive held no message with the hash.
+     */
+    public synchronized Message deleteArchived(String hash) throws IOException {
+        Message deleted;
+        FileLock lock = lock(false);
+        try {
+            deleted = archive.delete(hash);
+        } finally {
+            unlock(lock);
+        }
+        if (deleted != null) {
+            changeStream.deleted(deleted.getHash());
+        }
+        return deleted;
+    }
+
+    /**
+     * Folds the journal into messages.json and starts a new, empty generation of the journal.
+     * Messages the retention policy no longer keeps hot are moved to the archive first.
+     * messages.json is replaced atomically, so other instances see either the old or the new file.
+     *
+     * @return The complete hot list as a reload, since this store has now read everything.
+     */
+    public synchronized Changes compact() throws IOException {
+        Changes changes;
+        FileLock lock = lock(false);
+        try {
+            changes = compactLocked();
+        } finally {
+            unlock(lock);
+        }
+        changeStream.publish(changes);
+        return changes;
+    }
+
+    /**
+     * Compacts before a write once the journal has outgrown the snapshot threshold.
+     *
+     * @param changes What catchUp() found, returned unless a compaction replaces it with a reload.
+     */
+    private Changes snapshotIfDue(Changes changes) throws IOException {
+        if (journal.size() <= snapshotThreshold) {
+            return changes;
+        }
+        return compactLocked();
+    }
+
+    private Changes compactLocked() throws IOException {
+        ArrayList<Message> all = reload();
+        // The snapshot would lose the records after the damage
+        checkNotDamaged();
+        int archiveCount = retention.archiveCount(all);
+        if (archiveCount > 0) {
+            // Messages still waiting to be delivered stay hot, where the scheduler can find them
+            ArrayList<Message> archived = new ArrayList<>();
+            ArrayList<Message> hot = new ArrayList<>();
+            for (Message message : all.subList(0, archiveCount)) {
+                (message.isScheduled() ? hot : archived).add(message);
+            }
+            hot.addAll(all.subList(archiveCount, all.size()));
+            // Archive before rewriting messages.json: stopping in between leaves copies, which reload() drops
+            archive.append(archived);
+            all = hot;
+        }
+        writeMessagesFile(all);
+        // If we stop between these two steps, the replay skips the journal records already in messages.json
+        journal.truncate(HEADER_LENGTH);
+        writeHeader(generation + 1);
+        generation++;
+        offset = HEADER_LENGTH;
+        return new Changes(all, List.of(), List.of());
+    }
+
+    /**
+     * @return The highest message index this instance has seen from any instance.
+     */
+    public synchronized int getMaxIndex() {
+        return maxIndex;
+    }
+
+    /**
+     * Releases the files, compacting the journal first if it has grown large.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        try {
+            if (generation >= 0 && damagedAt < 0 && journal.size() > snapshotThreshold) {
+                compact();
+            }
+        } finally {
+            changeStream.close();
+            journal.close();
+            lockChannel.close();
+            journal = null;
+            lockChannel = null;
+        }
+    }
+
+    // --- Journal internals, all called with the lock held ---
+
+    private FileLock lock(boolean shared) throws IOException {
+        if (journal == null) {
+            journal = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            lockChannel = FileChannel.open(lockFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        processLock.lock();
+        try {
+            return lockChannel.lock(0, Long.MAX_VALUE, shared);
+        } catch (IOException | RuntimeException e) {
+            processLock.unlock();
+            throw e;
+        }
+    }
+
+    private void unlock(FileLock lock) throws IOException {
+        try {
+            lock.release();
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * Reads messages.json and the whole journal from scratch.
+     */
+    private ArrayList<Message> reload() throws IOException {
+        generation = readGeneration();
+        offset = HEADER_LENGTH;
+        damagedAt = -1;
+        ArrayList<Message> messages = MessageManager.loadAllMessages(messagesFile.toString());
+        maxIndex = 0;
+        for (Message message : messages) {
+            maxIndex = Math.max(maxIndex, message.getIndex());
+        }
+        int compactedMaxIndex = maxIndex;
+        for (JSONObject record : readNewRecords()) {
+            if (isDelete(record)) {
+                removeByHash(messages, (String) record.get("hash"));
+            } else {
+                if (isReplace(record)) {
+                    removeByHash(messages, (String) record.get("replaces"));
+                }
+                Message message = MessageManager.fromJson(record);
+                // Only left over if a compaction stopped before resetting the journal
+                if (message.getIndex() > 0 && message.getIndex() <= compactedMaxIndex) {
+                    continue;
+                }
+                messages.add(message);
+                maxIndex = Math.max(maxIndex, message.getIndex());
+            }
+        }
+        MessageArchive.Summary archived = archive.getSummary();
+        if (archived.getMessageCount() > 0) {
+            dropArchivedCopies(messages, archived);
+            maxIndex = Math.max(maxIndex, archived.getMaxIndex());
+        }
+        return messages;
+    }
+
+    /**
+     * Removes hot messages that are also in the archive, left behind if a compaction stopped
+     * after archiving them but before rewriting messages.json. The archive is only read if the
+     * summary says some of them might be there.
+     */
+    private void dropArchivedCopies(ArrayList<Message> messages, MessageArchive.Summary archived) throws IOException {
+        HashSet<String> candidates = new HashSet<>();
+        for (Message message : messages) {
+            if (message.getIndex() > 0 && message.getIndex() <= archived.getMaxIndex()
+                    && archived.mightContainHash(message.getHash())) {
+                candidates.add(message.getId() + "|" + message.getHash());
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        HashSet<String> copies = new HashSet<>();
+        archive.forEach(message -> {
+            String key = message.getId() + "|" + message.getHash();
+            if (candidates.contains(key)) {
+                copies.add(key);
+            }
+        });
+        if (!copies.isEmpty()) {
+            messages.removeIf(message -> copies.contains(message.getId() + "|" + message.getHash()));
+        }
+    }
+
+    /**
+     * Reads the records appended since the last read, or everything if the journal was compacted.
+     */
+    private Changes catchUp() throws IOException {
+        if (readGeneration() != generation) {
+            return new Changes(reload(), List.of(), List.of());
+        }
+        ArrayList<Message> added = new ArrayList<>();
+        ArrayList<String> deleted = new ArrayList<>();
+        for (JSONObject record : readNewRecords()) {
+            if (isDelete(record)) {
+                String hash = (String) record.get("hash");
+                if (!removeByHash(added, hash)) {
+                    deleted.add(hash);
+                }
+            } else {
+                if (isReplace(record)) {
+                    String replaced = (String) record.get("replaces");
+                    if (!removeByHash(added, replaced)) {
+                        deleted.add(replaced);
+                    }
+                }
+                Message message = MessageManager.fromJson(record);
+                added.add(message);
+                maxIndex = Math.max(maxIndex, message.getIndex());
+            }
+        }
+        return added.isEmpty() && deleted.isEmpty() ? Changes.NONE : new Changes(null, added, deleted);
+    }
+
+    /**
+     * Reads the complete records after the offset. Reading stops before a partial last line, left
+     * by a writer that died part way, which the next writer overwrites. It also stops before a
+     * complete record that fails its checksum; the offset stays there and the damage is kept.
+     */
+    private List<JSONObject> readNewRecords() throws IOException {
+        ArrayList<JSONObject> records = new ArrayList<>();
+        long size = journal.size();
+        if (size <= offset) {
+            return records;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size - offset));
+        while (buffer.hasRemaining() && journal.read(buffer, offset + buffer.position()) >= 0) {
+            // keep reading until the buffer is full
+        }
+        byte[] bytes = buffer.array();
+        JSONParser parser = new JSONParser();
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            JSONObject record = parseRecord(parser, bytes, lineStart, i);
+            if (record == null) {
+                keepDamagedJournal(offset + lineStart, size);
+                break;
+            }
+            if (!record.isEmpty()) {
+                records.add(record);
+            }
+            lineStart = i + 1;
+        }
+        offset += lineStart;
+        REPLAYED_COUNT.add(records.size());
+        return records;
+    }
+
+    /**
+     * @return The record on the line, an empty object for a blank line, or null if the record is damaged.
+     */
+    private static JSONObject parseRecord(JSONParser parser, byte[] bytes, int start, int end) {
+        if (start == end) {
+            return new JSONObject();
+        }
+        int jsonStart = start;
+        if (bytes[start] != '{') {
+            if (end - start <= CHECKSUM_LENGTH || bytes[start + CHECKSUM_LENGTH - 1] != ' ') {
+                return null;
+            }
+            jsonStart = start + CHECKSUM_LENGTH;
+            CRC32 crc = new CRC32();
+            crc.update(bytes, jsonStart, end - jsonStart);
+            try {
+                String written = new String(bytes, start, CHECKSUM_LENGTH - 1, StandardCharsets.US_ASCII);
+                if (Long.parseLong(written, 16) != crc.getValue()) {
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        try {
+            return (JSONObject) parser.parse(new String(bytes, jsonStart, end - jsonStart, StandardCharsets.UTF_8));
+        } catch (ParseException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stops writing at a damaged record, copying the journal to "<journal>.damaged" the first time it is seen.
+     */
+    private void keepDamagedJournal(long at, long size) {
+        damagedAt = at;
+        if (reportedDamageAt != at) {
+            reportedDamageAt = at;
+            MessageManager.keepDamagedCopy(journalFile, "a record at byte " + at + " fails its checksum, "
+                    + (size - at) + " bytes from there on are not replayed");
+        }
+    }
+
+    private void checkNotDamaged() throws IOException {
+        if (damagedAt >= 0) {
+            throw new IOException("Journal " + journalFile + " is damaged at byte " + damagedAt
+                    + " and is not written until it is repaired; a copy was kept as " + journalFile + MessageManager.DAMAGED_SUFFIX);
+        }
+    }
+
+    /**
+     * Drops a partial last record left by a writer that died, so the next record starts on a line of its own.
+     */
+    private void cutTornTail() throws IOException {
+        long size = journal.size();
+        if (size > offset) {
+            TORN_BYTES.add(size - offset);
+            journal.truncate(offset);
+            journal.force(true);
+        }
+    }
+
+    /**
+     * Adds one record to the batch: its checksum, its JSON and a newline.
+     */
+    private static StringBuilder appendRecord(StringBuilder records, JSONObject record) {
+        String json = record.toJSONString();
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        return records.append(String.format("%08x ", crc.getValue())).append(json).append('\n');
+    }
+
+    private void writeRecords(CharSequence records) throws IOException {
+        checkNotDamaged();
+        // Anything else after our offset is a partial record from a writer that died, drop it
+        cutTornTail();
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(records.toString());
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            journal.write(buffer, offset + length - buffer.remaining());
+        }
+        journal.force(false);
+        offset += length;
+    }
+
+    private void createJournalIfEmpty() throws IOException {
+        if (journal.size() < HEADER_LENGTH) {
+            journal.truncate(0);
+            writeHeader(1);
+        }
+    }
+
+    private long readGeneration() throws IOException {
+        if (journal.size() < HEADER_LENGTH) {
+            throw new IOException("Journal " + journalFile + " has no header");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        while (buffer.hasRemaining() && journal.read(buffer, buffer.position()) >= 0) {
+            // keep reading until the header is complete
+        }
+        String header = new String(buffer.array(), StandardCharsets.US_ASCII);
+        if (!(header.startsWith(HEADER_PREFIX) || header.startsWith(V1_HEADER_PREFIX))
+                || header.charAt(HEADER_LENGTH - 1) != '\n') {
+            throw new IOException("Journal " + journalFile + " has an unreadable header");
+        }
+        try {
+            return Long.parseLong(header.substring(HEADER_PREFIX.length(), HEADER_LENGTH - 1));
+        } catch (NumberFormatException e) {
+            throw new IOException("Journal " + journalFile + " has an unreadable header", e);
+        }
+    }
+
+    private void writeHeader(long newGeneration) throws IOException {
+        String header = HEADER_PREFIX + String.format("%019d", newGeneration) + "\n";
+        ByteBuffer buffer = ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            journal.write(buffer, buffer.position());
+        }
+        journal.force(true);
+    }
+
+    /**
+     * Writes the messages to a temporary file and moves it over messages.json.
+     */
+    private void writeMessagesFile(List<Message> messages) throws IOException {
+        MessageManager.writeSnapshot(messages, messagesFile);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putOp(JSONObject record, String op) {
+        record.put("op", op);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putHash(JSONObject record, String hash) {
+        record.put("hash", hash);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putReplaces(JSONObject record, String hash) {
+        record.put("replaces", hash);
+    }
+
+    private static boolean isDelete(JSONObject record) {
+        return "delete".equals(record.get("op"));
+    }
+
+    /** A delivered message: removes the scheduled original, then adds itself. */
+    private static boolean isReplace(JSONObject record) {
+        return "replace".equals(record.get("op"));
+    }
+
+    /**
+     * Removes the first message with the given hash, matching ReportManager.deleteMessageByHash.
+     */
+    static boolean removeByHash(List<Message> messages, String hash) {
+        for (int i = 0; i < messages.size(); i++) {
+            String candidate = messages.get(i).getHash();
+            if (candidate != null && candidate.equalsIgnoreCase(hash)) {
+                messages.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+}
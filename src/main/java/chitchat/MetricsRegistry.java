@@ -0,0 +1,197 @@
+package chitchat;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and latency histograms for the whole application.
+ *
+ * Metrics are created once by name and kept in static fields by the code they measure, so
+ * recording is a LongAdder increment or a LatencyHistogram.record() with no lookups or allocation.
+ * The shared registry also publishes every metric as an MXBean under the "chitchat" JMX domain,
+ * e.g. chitchat:type=Latency,name=send, so they can be watched with JConsole or VisualVM.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class MetricsRegistry {
+
+    /** JMX view of a counter. */
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    /** JMX view of a gauge. */
+    public interface GaugeMXBean {
+        long getValue();
+    }
+
+    /** JMX view of a latency histogram. */
+    public interface LatencyMXBean {
+        long getCount();
+        double getMeanMicros();
+        double getP50Micros();
+        double getP90Micros();
+        double getP99Micros();
+        double getP999Micros();
+        double getMaxMicros();
+    }
+
+    /**
+     * A monotonically increasing count, e.g. messages sent.
+     */
+    public static final class Counter implements CounterMXBean {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        @Override
+        public long getCount() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * A value read on demand, e.g. heap in use or open connections.
+     */
+    public static final class Gauge implements GaugeMXBean {
+        private volatile LongSupplier supplier;
+
+        Gauge(LongSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public long getValue() {
+            return supplier.getAsLong();
+        }
+    }
+
+    private static MetricsRegistry sharedInstance;
+
+    private final boolean registerMBeans;
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * @param registerMBeans Whether to publish the metrics through the platform MBean server.
+     */
+    MetricsRegistry(boolean registerMBeans) {
+        this.registerMBeans = registerMBeans;
+    }
+
+    /**
+     * Returns the registry used by the whole application, publishing to JMX.
+     */
+    public static synchronized MetricsRegistry shared() {
+        if (sharedInstance == null) {
+            sharedInstance = new MetricsRegistry(true);
+            sharedInstance.gauge("heap.usedBytes",
+                    () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * @return The counter with the given name, created on first use.
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> register("Counter", key, new Counter()));
+    }
+
+    /**
+     * @return The latency histogram with the given name, created on first use.
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> register("Latency", key, new LatencyHistogram(key)));
+    }
+
+    /**
+     * Registers a gauge, or points an existing gauge of the same name at a new supplier.
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        Gauge existing = gauges.putIfAbsent(name, new Gauge(supplier));
+        if (existing != null) {
+            existing.supplier = supplier;
+        } else {
+            register("Gauge", name, gauges.get(name));
+        }
+    }
+
+    private <T> T register(String type, String name, T metric) {
+        if (registerMBeans) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName objectName = new ObjectName("chitchat:type=" + type + ",name=" + ObjectName.quote(name));
+                if (!server.isRegistered(objectName)) {
+                    server.registerMBean(metric, objectName);
+                }
+            } catch (JMException e) {
+                System.err.println("Could not publish metric " + name + " over JMX: " + e.getMessage());
+            }
+        }
+        return metric;
+    }
+
+    /**
+     * @return Every counter's current value, sorted by name.
+     */
+    public Map<String, Long> getCounterValues() {
+        TreeMap<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.getCount()));
+        return values;
+    }
+
+    /**
+     * @return Every gauge's current value, sorted by name.
+     */
+    public Map<String, Long> getGaugeValues() {
+        TreeMap<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getValue()));
+        return values;
+    }
+
+    /**
+     * @return Every latency histogram, sorted by name.
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    /**
+     * Clears all latency histograms. Counters and gauges are left alone.
+     */
+    public void resetHistograms() {
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+    /**
+     * @return A plain-text report of every metric, as shown in the Diagnostics window.
+     */
+    public String generateReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("--- Latency (microseconds) ---\n");
+        for (LatencyHistogram histogram : getHistograms().values()) {
+            report.append(histogram).append('\n');
+        }
+        report.append("\n--- Counters ---\n");
+        getCounterValues().forEach((name, value) -> report.append(String.format("%-24s %,d%n", name, value)));
+        report.append("\n--- Gauges ---\n");
+        getGaugeValues().forEach((name, value) -> report.append(String.format("%-24s %,d%n", name, value)));
+        return report.toString();
+    }
+}
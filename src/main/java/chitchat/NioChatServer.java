@@ -0,0 +1,335 @@
+package chitchat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A headless ChitChat server built on a single non-blocking NIO selector loop.
+ * Each connection reads ChatProtocol frames, which are handled by the shared ChatService.
+ *
+ * A send the rate limiter delays (see ChatService.admit) is not waited for on the selector thread:
+ * its connection is parked until the slot comes up, with the select timeout as the timer, and its
+ * later requests queue behind it so responses stay in order. Other connections carry on meanwhile.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class NioChatServer implements Closeable {
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final ChatProtocol.Frame MALFORMED = new ChatProtocol.Frame(ChatProtocol.STATUS_ERROR, "Failed: Malformed request.");
+
+    private final ChatService service;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    // Connections waiting for a delayed send's slot, soonest first; only used on the selector thread
+    private final PriorityQueue<Connection> delayed = new PriorityQueue<>(Comparator.comparingLong(c -> c.resumeAt));
+    private volatile boolean running;
+    private volatile boolean started;
+
+    /**
+     * Per-connection state, attached to its SelectionKey.
+     */
+    private static final class Connection {
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+        // Decoded requests not yet answered, in order
+        final ArrayDeque<ChatProtocol.Frame> requests = new ArrayDeque<>();
+        final ChatService.Session session;
+        SelectionKey key;
+        // Whether the first request is admitted and waiting until resumeAt (System.nanoTime)
+        boolean waiting;
+        long resumeAt;
+
+        Connection(ChatService.Session session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * Binds the server socket. Use port 0 to pick a free port.
+     */
+    public NioChatServer(ChatService service, int port) throws IOException {
+        this.service = service;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Runs the selector loop on a new daemon thread.
+     */
+    public Thread start() {
+        Thread thread = new Thread(this::run, "chitchat-nio-server");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Runs the selector loop on the calling thread until close() is called.
+     */
+    public void run() {
+        started = true;
+        running = true;
+        try {
+            selectLoop();
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void selectLoop() {
+        while (running) {
+            try {
+                if (delayed.isEmpty()) {
+                    selector.select();
+                } else {
+                    long untilNanos = delayed.peek().resumeAt - System.nanoTime();
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(untilNanos + 999_999)));
+                }
+            } catch (IOException e) {
+                System.err.println("Selector failed: " + e.getMessage());
+                break;
+            }
+            if (!selector.isOpen()) {
+                break;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    // The server's own key: accept() handles its errors, so the listening socket stays open
+                    accept();
+                    continue;
+                }
+                try {
+                    if (key.isReadable()) {
+                        read(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(key);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    closeConnection(key);
+                }
+            }
+            resumeDelayed();
+        }
+    }
+
+    /**
+     * Runs the delayed sends whose slots have come up, and whatever their connections sent after them.
+     */
+    private void resumeDelayed() {
+        long now = System.nanoTime();
+        while (!delayed.isEmpty() && delayed.peek().resumeAt - now <= 0) {
+            Connection connection = delayed.poll();
+            SelectionKey key = connection.key;
+            if (!key.isValid()) {
+                continue;
+            }
+            try {
+                handleRequests(connection);
+                if (!connection.writeQueue.isEmpty()) {
+                    write(key);
+                }
+            } catch (IOException | RuntimeException e) {
+                closeConnection(key);
+            }
+        }
+    }
+
+    /**
+     * Accepts every pending connection. A connection that cannot be set up is closed on its own,
+     * and a failed accept (e.g. out of file descriptors) waits for the next select.
+     */
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                System.err.println("Error accepting a connection: " + e.getMessage());
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Connection connection = new Connection(service.openSession());
+                try {
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException | RuntimeException e) {
+                    service.closeSession(connection.session);
+                    throw e;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error setting up a connection: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException closeFailed) {
+                    // Already closed
+                }
+            }
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        int read = channel.read(connection.readBuffer);
+        if (read < 0) {
+            closeConnection(key);
+            return;
+        }
+
+        // Decode every complete frame in the buffer
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (length <= 0 || length > ChatProtocol.MAX_FRAME_LENGTH) {
+                throw new IOException("Invalid frame length: " + length);
+            }
+            if (buffer.remaining() < 4 + length) {
+                break;
+            }
+            buffer.position(buffer.position() + 4);
+            ByteBuffer body = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+
+            try {
+                connection.requests.add(ChatProtocol.decode(body));
+            } catch (IllegalArgumentException e) {
+                connection.requests.add(MALFORMED);
+            }
+        }
+
+        // Keep any partial frame, growing the buffer if a single frame does not fit
+        if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+            int needed = buffer.remaining() >= 4 ? 4 + buffer.getInt(0) : buffer.capacity() * 2;
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, buffer.capacity() * 2));
+            larger.put(buffer);
+            connection.readBuffer = larger;
+        } else {
+            buffer.compact();
+        }
+
+        if (!connection.waiting) {
+            handleRequests(connection);
+        }
+        if (!connection.writeQueue.isEmpty()) {
+            write(key);
+        }
+    }
+
+    /**
+     * Answers the connection's requests in order, stopping at a send that has to wait for its slot.
+     */
+    private void handleRequests(Connection connection) {
+        while (!connection.requests.isEmpty()) {
+            ChatProtocol.Frame request = connection.requests.peek();
+            ChatProtocol.Frame response;
+            if (request == MALFORMED) {
+                response = MALFORMED;
+            } else if (connection.waiting) {
+                connection.waiting = false;
+                response = service.handleAdmitted(connection.session, request);
+            } else {
+                SendRateLimiter.Permit permit = service.admit(connection.session, request);
+                if (permit.isRejected()) {
+                    response = new ChatProtocol.Frame(ChatProtocol.STATUS_ERROR, permit.getRejection());
+                } else if (permit.getWaitNanos() > 0) {
+                    connection.waiting = true;
+                    connection.resumeAt = System.nanoTime() + permit.getWaitNanos();
+                    delayed.add(connection);
+                    return;
+                } else {
+                    response = service.handleAdmitted(connection.session, request);
+                }
+            }
+            connection.requests.poll();
+            connection.writeQueue.add(ChatProtocol.encode(response.getCode(), response.getFields()));
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        while (!connection.writeQueue.isEmpty()) {
+            ByteBuffer next = connection.writeQueue.peek();
+            channel.write(next);
+            if (next.hasRemaining()) {
+                // Socket buffer is full, wait until it is writable again
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            connection.writeQueue.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void closeConnection(SelectionKey key) {
+        if (key.attachment() instanceof Connection connection && key.isValid()) {
+            service.closeSession(connection.session);
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    private void closeAll() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+            serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the selector loop, which then closes all connections.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (started) {
+            selector.wakeup();
+        } else {
+            closeAll();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package chitchat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts the messages each cell number has sent and received, ordered by number, so the numbers
+ * starting with a prefix (e.g. "+2782") are found with a binary search instead of a scan.
+ *
+ * Every cell number is "+27" and nine digits, so a number is kept as those nine digits in an int,
+ * and a prefix is the range of ints between its digits padded with zeros and with nines. The
+ * numbers and their two counts are parallel primitive arrays: about 12 bytes per distinct number
+ * and no objects. Sent and stored messages are counted; disregarded messages and numbers in any
+ * other format are not. A number seen for the first time is inserted in place, which is rare once
+ * the people in a history have all been seen.
+ *
+ * A deleted message is taken off its numbers' counts, and a number left with no messages is removed.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class NumberPrefixIndex {
+
+    static final String COUNTRY_CODE = "+27";
+    static final int DIGITS = 9;
+
+    private int[] numbers = new int[16];
+    private int[] sentCounts = new int[16];
+    private int[] receivedCounts = new int[16];
+    private int size;
+
+    /**
+     * A number with how many messages it has sent and received.
+     */
+    public static final class Entry {
+        private final String number;
+        private final int sent;
+        private final int received;
+
+        Entry(String number, int sent, int received) {
+            this.number = number;
+            this.sent = sent;
+            this.received = received;
+        }
+
+        public String getNumber() { return number; }
+
+        /** Messages from this number. */
+        public int getSent() { return sent; }
+
+        /** Messages to this number. */
+        public int getReceived() { return received; }
+    }
+
+    /**
+     * One page of the numbers matching a prefix, in number order.
+     */
+    public static final class Page {
+        private final List<Entry> entries;
+        private final int matching;
+        private final String nextCursor;
+
+        Page(List<Entry> entries, int matching, String nextCursor) {
+            this.entries = entries;
+            this.matching = matching;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Entry> getEntries() { return entries; }
+
+        /** How many numbers match the prefix in all, on every page. */
+        public int getMatching() { return matching; }
+
+        /** The number the next page starts after, or null if this is the last page. */
+        public String getNextCursor() { return nextCursor; }
+
+        public boolean hasMore() { return nextCursor != null; }
+    }
+
+    /**
+     * @return true if the text is the start of a cell number: part of "+27", or "+27" and up to nine digits.
+     */
+    public static boolean isValidPrefix(String prefix) {
+        if (prefix == null) {
+            return false;
+        }
+        if (prefix.length() <= COUNTRY_CODE.length()) {
+            return COUNTRY_CODE.startsWith(prefix);
+        }
+        if (!prefix.startsWith(COUNTRY_CODE) || prefix.length() > COUNTRY_CODE.length() + DIGITS) {
+            return false;
+        }
+        for (int i = COUNTRY_CODE.length(); i < prefix.length(); i++) {
+            if (prefix.charAt(i) < '0' || prefix.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number's nine digits as an int, or -1 if it is not "+27" and nine digits.
+     */
+    static int key(String cell) {
+        if (cell == null || cell.length() != COUNTRY_CODE.length() + DIGITS || !cell.startsWith(COUNTRY_CODE)) {
+            return -1;
+        }
+        int key = 0;
+        for (int i = COUNTRY_CODE.length(); i < cell.length(); i++) {
+            char c = cell.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    static String cell(int key) {
+        StringBuilder cell = new StringBuilder(COUNTRY_CODE.length() + DIGITS).append(COUNTRY_CODE);
+        String digits = Integer.toString(key);
+        for (int i = digits.length(); i < DIGITS; i++) {
+            cell.append('0');
+        }
+        return cell.append(digits).toString();
+    }
+
+    /**
+     * Rebuilds the index from a full message list.
+     */
+    public synchronized void build(List<Message> messages) {
+        // Each sender and recipient as (number << 1 | received), sorted, then counted in runs
+        long[] roles = new long[messages.size() * 2];
+        int count = 0;
+        for (Message message : messages) {
+            if (!indexed(message)) {
+                continue;
+            }
+            int sender = key(message.getSender());
+            int recipient = key(message.getRecipient());
+            if (sender >= 0) {
+                roles[count++] = (long) sender << 1;
+            }
+            if (recipient >= 0) {
+                roles[count++] = (long) recipient << 1 | 1;
+            }
+        }
+        Arrays.sort(roles, 0, count);
+
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            int number = (int) (roles[i] >>> 1);
+            if (size == 0 || numbers[size - 1] != number) {
+                ensureCapacity(size + 1);
+                numbers[size] = number;
+                sentCounts[size] = 0;
+                receivedCounts[size] = 0;
+                size++;
+            }
+            if ((roles[i] & 1) == 0) {
+                sentCounts[size - 1]++;
+            } else {
+                receivedCounts[size - 1]++;
+            }
+        }
+    }
+
+    /**
+     * Counts a newly sent or stored message; anything else is ignored.
+     */
+    public synchronized void onMessageAdded(Message message) {
+        if (!indexed(message)) {
+            return;
+        }
+        // slot() may grow the arrays, so it runs before they are read
+        int sender = key(message.getSender());
+        if (sender >= 0) {
+            int position = slot(sender);
+            sentCounts[position]++;
+        }
+        int recipient = key(message.getRecipient());
+        if (recipient >= 0) {
+            int position = slot(recipient);
+            receivedCounts[position]++;
+        }
+    }
+
+    /**
+     * Takes a deleted message off its sender's and recipient's counts.
+     */
+    public synchronized void onMessageDeleted(Message message) {
+        if (!indexed(message)) {
+            return;
+        }
+        int sender = Arrays.binarySearch(numbers, 0, size, key(message.getSender()));
+        if (sender >= 0 && sentCounts[sender] > 0) {
+            sentCounts[sender]--;
+            removeIfUnused(sender);
+        }
+        int recipient = Arrays.binarySearch(numbers, 0, size, key(message.getRecipient()));
+        if (recipient >= 0 && receivedCounts[recipient] > 0) {
+            receivedCounts[recipient]--;
+            removeIfUnused(recipient);
+        }
+    }
+
+    private void removeIfUnused(int position) {
+        if (sentCounts[position] > 0 || receivedCounts[position] > 0) {
+            return;
+        }
+        System.arraycopy(numbers, position + 1, numbers, position, size - position - 1);
+        System.arraycopy(sentCounts, position + 1, sentCounts, position, size - position - 1);
+        System.arraycopy(receivedCounts, position + 1, receivedCounts, position, size - position - 1);
+        size--;
+    }
+
+    private static boolean indexed(Message message) {
+        return message.isSent() || message.isStored();
+    }
+
+    /**
+     * @return Where the number is, after inserting it with no messages if it is new.
+     */
+    private int slot(int number) {
+        int position = Arrays.binarySearch(numbers, 0, size, number);
+        if (position >= 0) {
+            return position;
+        }
+        position = -position - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(numbers, position, numbers, position + 1, size - position);
+        System.arraycopy(sentCounts, position, sentCounts, position + 1, size - position);
+        System.arraycopy(receivedCounts, position, receivedCounts, position + 1, size - position);
+        numbers[position] = number;
+        sentCounts[position] = 0;
+        receivedCounts[position] = 0;
+        size++;
+        return position;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > numbers.length) {
+            int length = Math.max(capacity, numbers.length * 2);
+            numbers = Arrays.copyOf(numbers, length);
+            sentCounts = Arrays.copyOf(sentCounts, length);
+            receivedCounts = Arrays.copyOf(receivedCounts, length);
+        }
+    }
+
+    /** @return The number of distinct numbers indexed. */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets one page of the numbers starting with a prefix, in number order.
+     *
+     * @param prefix   A valid prefix (see isValidPrefix); "+27" or shorter matches every number.
+     * @param after    The cursor from the previous page, or null for the first page.
+     * @param pageSize The most numbers on the page.
+     */
+    public synchronized Page getPage(String prefix, String after, int pageSize) {
+        if (!isValidPrefix(prefix)) {
+            throw new IllegalArgumentException("Not the start of a cell number: " + prefix);
+        }
+        String digits = prefix.length() > COUNTRY_CODE.length() ? prefix.substring(COUNTRY_CODE.length()) : "";
+        long scale = 1;
+        for (int i = digits.length(); i < DIGITS; i++) {
+            scale *= 10;
+        }
+        long low = digits.isEmpty() ? 0 : Long.parseLong(digits) * scale;
+        long high = low + scale; // Exclusive, and one past the last nine-digit number for an empty prefix
+        int first = lowerBound(low);
+        int end = lowerBound(high);
+
+        int start = first;
+        int cursor = key(after);
+        if (cursor >= 0) {
+            start = Math.max(first, lowerBound(cursor + 1L));
+        }
+        int stop = (int) Math.min(end, (long) start + Math.max(pageSize, 0));
+        ArrayList<Entry> entries = new ArrayList<>(stop - start);
+        for (int i = start; i < stop; i++) {
+            entries.add(new Entry(cell(numbers[i]), sentCounts[i], receivedCounts[i]));
+        }
+        String next = stop < end && !entries.isEmpty() ? entries.get(entries.size() - 1).getNumber() : null;
+        return new Page(entries, end - first, next);
+    }
+
+    /**
+     * @return The position of the first number at or above the value.
+     */
+    private int lowerBound(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (numbers[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,192 @@
+package chitchat;
+
+import java.util.Arrays;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps one copy of each distinct message payload, keyed by a 64-bit hash of its content.
+ *
+ * Broadcasts and template replies give thousands of messages the same text. Passing payloads
+ * through intern() makes those messages share one String on the heap, and messages.json stores
+ * a payload only the first time it appears and refers to it by hash afterwards.
+ *
+ * A hash is only trusted after the payloads are compared, so two different payloads with the same
+ * hash are both kept. The first one owns the hash; the other is never deduplicated or referenced.
+ * The table is open-addressed over plain arrays and is not thread-safe.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class PayloadStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ToLongFunction<String> hashFunction;
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private String[] payloads = new String[INITIAL_CAPACITY];
+    private int size;
+
+    // Statistics for the dedup report
+    private long lookups;
+    private long duplicates;
+    private long collisions;
+    private long uniqueChars;
+    private long duplicateChars;
+
+    public PayloadStore() {
+        this(PayloadStore::hash64);
+    }
+
+    /**
+     * @param hashFunction Replaces hash64, so tests can force collisions. Must never return 0.
+     */
+    PayloadStore(ToLongFunction<String> hashFunction) {
+        this.hashFunction = hashFunction;
+    }
+
+    /**
+     * A fast 64-bit content hash: FNV-1a over the UTF-16 characters, then the MurmurHash3 finaliser
+     * so that short, similar payloads still spread over the whole table. Never returns 0.
+     */
+    public static long hash64(String payload) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < payload.length(); i++) {
+            h ^= payload.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * @return The hash this store uses for the payload.
+     */
+    public long hashOf(String payload) {
+        return hashFunction.applyAsLong(payload);
+    }
+
+    /**
+     * Returns the shared copy of the payload, adding it if this is the first time it is seen.
+     *
+     * @return An equal String, the same instance for every equal payload (except after a collision).
+     */
+    public String intern(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        return intern(payload, hashOf(payload));
+    }
+
+    /**
+     * intern() for a caller that has already hashed the payload with hashOf().
+     */
+    String intern(String payload, long hash) {
+        lookups++;
+        int slot = find(hash);
+        if (hashes[slot] == 0) {
+            add(slot, hash, payload);
+            uniqueChars += payload.length();
+            return payload;
+        }
+        String existing = payloads[slot];
+        if (existing.equals(payload)) {
+            duplicates++;
+            duplicateChars += payload.length();
+            return existing;
+        }
+        // Same hash, different text: keep this payload as it is
+        collisions++;
+        uniqueChars += payload.length();
+        return payload;
+    }
+
+    /**
+     * @return The payload that owns the hash, or null if no payload with that hash has been interned.
+     */
+    public String get(long hash) {
+        int slot = find(hash);
+        return hashes[slot] == hash ? payloads[slot] : null;
+    }
+
+    /**
+     * @return true if a reference to the payload's hash would resolve to this exact text,
+     *         i.e. it has been interned before and does not collide with the payload owning its hash.
+     */
+    boolean isReferenceable(String payload, long hash) {
+        String owner = get(hash);
+        return owner != null && owner.equals(payload);
+    }
+
+    private int find(long hash) {
+        int mask = hashes.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (hashes[slot] != 0 && hashes[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void add(int slot, long hash, String payload) {
+        hashes[slot] = hash;
+        payloads[slot] = payload;
+        size++;
+        // Keep the table at most half full so probe sequences stay short
+        if (size * 2 > hashes.length) {
+            long[] oldHashes = hashes;
+            String[] oldPayloads = payloads;
+            hashes = new long[oldHashes.length * 2];
+            payloads = new String[oldHashes.length * 2];
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    int newSlot = find(oldHashes[i]);
+                    hashes[newSlot] = oldHashes[i];
+                    payloads[newSlot] = oldPayloads[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets every payload and resets the statistics.
+     */
+    public void clear() {
+        Arrays.fill(hashes, 0);
+        Arrays.fill(payloads, null);
+        size = 0;
+        lookups = 0;
+        duplicates = 0;
+        collisions = 0;
+        uniqueChars = 0;
+        duplicateChars = 0;
+    }
+
+    /** @return Distinct payloads held, not counting colliding ones. */
+    public int size() { return size; }
+
+    /** @return Payloads passed to intern(). */
+    public long getLookupCount() { return lookups; }
+
+    /** @return Payloads that were replaced by an existing copy. */
+    public long getDuplicateCount() { return duplicates; }
+
+    /** @return Payloads whose hash was owned by a different payload. */
+    public long getCollisionCount() { return collisions; }
+
+    /** @return Characters in the payloads that were kept. */
+    public long getUniqueChars() { return uniqueChars; }
+
+    /** @return Characters in the payloads that were replaced by an existing copy. */
+    public long getDuplicateChars() { return duplicateChars; }
+
+    /**
+     * @return Payloads seen per payload kept, e.g. 4.0 when every text was sent four times on average.
+     */
+    public double getDedupRatio() {
+        long kept = lookups - duplicates;
+        return kept == 0 ? 1 : lookups / (double) kept;
+    }
+}
@@ -3,6 +3,11 @@ package chitchat;
 import java.util.regex.Pattern;
 
 public class RegistrationLogin {
+    private static final MetricsRegistry METRICS = MetricsRegistry.shared();
+    private static final LatencyHistogram LOGIN_LATENCY = METRICS.histogram("login");
+    private static final MetricsRegistry.Counter LOGIN_SUCCESS_COUNT = METRICS.counter("login.success");
+    private static final MetricsRegistry.Counter LOGIN_FAILED_COUNT = METRICS.counter("login.failed");
+
     private String storedUserName, storedPassword, storedCellPhoneNumber, storedFirstName, storedLastName;
     private boolean accessGranted;
 
@@ -76,9 +81,20 @@ public class RegistrationLogin {
      * @return true if login is successful, false otherwise
      */
     public boolean loginUser(String userNameAttempt, String passwordAttempt) {
+        long started = System.nanoTime();
+        JfrEvents.LoginEvent event = new JfrEvents.LoginEvent();
+        event.begin();
         accessGranted = userNameAttempt != null && passwordAttempt != null &&
                         userNameAttempt.equals(storedUserName) &&
                         passwordAttempt.equals(storedPassword);
+        (accessGranted ? LOGIN_SUCCESS_COUNT : LOGIN_FAILED_COUNT).increment();
+        LOGIN_LATENCY.recordSince(started);
+        event.end();
+        if (event.shouldCommit()) {
+            event.username = userNameAttempt;
+            event.success = accessGranted;
+            event.commit();
+        }
         return accessGranted;
     }
 
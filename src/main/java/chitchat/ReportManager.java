@@ -1,27 +1,126 @@
 package chitchat;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Handles all business logic for generating reports based on the POE Part 3 requirements.
  *
+ * Given a MessageStore, reports also cover the messages it has moved to its archive. The archive's
+ * summary is checked first, so a query only reads cold messages when they could change its answer.
+ *
  * @author Kitso Litelu (Created by me for Finale)
  * @version 2025-06-13
  */
 public class ReportManager {
 
+    private static final MetricsRegistry METRICS = MetricsRegistry.shared();
+    private static final LatencyHistogram SENT_DETAILS_LATENCY = METRICS.histogram("report.sentDetails");
+    private static final LatencyHistogram LONGEST_LATENCY = METRICS.histogram("report.longest");
+    private static final LatencyHistogram SEARCH_ID_LATENCY = METRICS.histogram("report.searchId");
+    private static final LatencyHistogram SEARCH_RECIPIENT_LATENCY = METRICS.histogram("report.searchRecipient");
+    private static final LatencyHistogram DELETE_HASH_LATENCY = METRICS.histogram("report.deleteHash");
+    private static final LatencyHistogram FULL_REPORT_LATENCY = METRICS.histogram("report.full");
+    private static final LatencyHistogram CONVERSATION_LATENCY = METRICS.histogram("report.conversation");
+    private static final LatencyHistogram WINDOW_LATENCY = METRICS.histogram("report.window");
+    private static final LatencyHistogram THROUGHPUT_LATENCY = METRICS.histogram("report.throughput");
+    private static final LatencyHistogram DISTINCT_LATENCY = METRICS.histogram("report.distinct");
+    private static final LatencyHistogram LENGTHS_LATENCY = METRICS.histogram("report.lengths");
+    private static final LatencyHistogram TOP_RECIPIENTS_LATENCY = METRICS.histogram("report.topRecipients");
+    private static final LatencyHistogram NUMBER_PREFIX_LATENCY = METRICS.histogram("report.numberPrefix");
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter MINUTE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    /** The most messages getMessagesInWindow lists; the rest of the window is only counted. */
+    public static final int WINDOW_REPORT_LIMIT = 500;
+    /** The longest window getThroughputPerMinute covers: one week. */
+    public static final long MAX_THROUGHPUT_WINDOW_MILLIS = 7L * 24 * 60 * TimeIndex.MINUTE_MILLIS;
+
+    /** The end of deleteMessageByHash's reply for an archived message, which is not in the message list. */
+    public static final String DELETED_FROM_ARCHIVE = "successfully deleted from the archive.";
+
     private ArrayList<Message> allMessages;
+    private MessageIndexes indexes;
+    private MessageStore store;
 
     public ReportManager(ArrayList<Message> allMessages) {
         this.allMessages = allMessages;
     }
+
+    /**
+     * Creates a report manager whose reports include the store's archived messages.
+     *
+     * @param indexes Indexes over the message list kept up to date by the caller, or null to build them.
+     * @param store   The store the message list was loaded from, or null for the list alone.
+     */
+    public ReportManager(ArrayList<Message> allMessages, MessageIndexes indexes, MessageStore store) {
+        this.allMessages = allMessages;
+        this.indexes = indexes;
+        this.store = store;
+    }
+
+    /**
+     * @return The indexes, built from the message list on first use if none were supplied.
+     */
+    private MessageIndexes indexes() {
+        if (indexes == null) {
+            indexes = new MessageIndexes();
+            indexes.build(allMessages);
+        }
+        return indexes;
+    }
+
+    /**
+     * @return The archive summary, or null if there is no archive or it could not be read.
+     */
+    private MessageArchive.Summary archiveSummary() {
+        if (store == null) {
+            return null;
+        }
+        try {
+            MessageArchive.Summary summary = store.getArchive().getSummary();
+            return summary.getMessageCount() == 0 ? null : summary;
+        } catch (IOException e) {
+            System.err.println("Error reading the message archive: " + e.getMessage());
+            return null;
+        }
+    }
     
+    /**
+     * Records a report's latency in the metrics registry and, if JFR wants it, a Report event.
+     */
+    private void finishReport(JfrEvents.ReportEvent event, String report, LatencyHistogram latency, long started) {
+        latency.recordSince(started);
+        event.end();
+        if (event.shouldCommit()) {
+            event.report = report;
+            event.messageCount = allMessages.size();
+            event.commit();
+        }
+    }
+
     /**
      * Gets the list of all sent messages (not stored or disregarded).
      */
     private ArrayList<Message> getSentMessages() {
         ArrayList<Message> sent = new ArrayList<>();
+        MessageArchive.Summary archived = archiveSummary();
+        if (archived != null && archived.getSentCount() > 0) {
+            try {
+                sent.addAll(store.getArchive().getSentMessages());
+            } catch (IOException e) {
+                System.err.println("Error reading the message archive: " + e.getMessage());
+            }
+        }
         for (Message msg : allMessages) {
             if (msg.isSent()) {
                 sent.add(msg);
@@ -34,100 +133,512 @@ public class ReportManager {
      * (POE 2a) Displays the sender and recipient of all sent messages.
      */
     public String getSentMessagesDetails() {
-        StringBuilder report = new StringBuilder("--- Sent Messages ---\n");
-        ArrayList<Message> sent = getSentMessages();
-        if (sent.isEmpty()) {
-            return "No messages have been sent.";
-        }
-        for (Message msg : sent) {
-            report.append(String.format("From: %s, To: %s, Message: \"%s\"\n",
-                msg.getSender(), msg.getRecipient(), msg.getPayload()));
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            StringBuilder report = new StringBuilder("--- Sent Messages ---\n");
+            ArrayList<Message> sent = getSentMessages();
+            if (sent.isEmpty()) {
+                return "No messages have been sent.";
+            }
+            for (Message msg : sent) {
+                report.append(String.format("From: %s, To: %s, Message: \"%s\"\n",
+                    msg.getSender(), msg.getRecipient(), msg.getPayload()));
+            }
+            return report.toString();
+        } finally {
+            finishReport(event, "sentDetails", SENT_DETAILS_LATENCY, started);
         }
-        return report.toString();
     }
 
     /**
      * (POE 2b) Finds and displays the longest sent message.
      */
     public String findLongestMessage() {
-        ArrayList<Message> sent = getSentMessages();
-        if (sent.isEmpty()) {
-            return "No sent messages to compare.";
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            // The archive summary already knows its longest message, so only hot messages are compared
+            Message longest = allMessages.stream()
+                .filter(Message::isSent)
+                .max(Comparator.comparingInt(msg -> msg.getPayload().length()))
+                .orElse(null);
+            MessageArchive.Summary archived = archiveSummary();
+            Message archivedLongest = archived == null ? null : archived.getLongestSent();
+            // The archive holds older messages, so it wins a tie like the first message in the list would
+            if (archivedLongest != null && (longest == null
+                    || archivedLongest.getPayload().length() >= longest.getPayload().length())) {
+                longest = archivedLongest;
+            }
+            if (longest == null) {
+                return "No sent messages to compare.";
+            }
+            return "Longest Message: \"" + longest.getPayload() + "\"";
+        } finally {
+            finishReport(event, "longest", LONGEST_LATENCY, started);
         }
-        
-        Message longest = sent.stream()
-            .max(Comparator.comparingInt(msg -> msg.getPayload().length()))
-            .orElse(null);
-
-        return longest != null ? "Longest Message: \"" + longest.getPayload() + "\"" : "Could not determine the longest message.";
     }
 
     /**
      * (POE 2c) Searches for a message by its ID.
      */
     public String searchMessageById(String id) {
-        for (Message msg : allMessages) {
-            if (msg.getId().equals(id)) {
-                return String.format("--- Message Found ---\nRecipient: %s\nMessage: \"%s\"",
-                    msg.getRecipient(), msg.getPayload());
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            for (Message msg : allMessages) {
+                if (msg.getId().equals(id)) {
+                    return String.format("--- Message Found ---\nRecipient: %s\nMessage: \"%s\"",
+                        msg.getRecipient(), msg.getPayload());
+                }
+            }
+            MessageArchive.Summary archived = archiveSummary();
+            if (archived != null && archived.mightContainId(id)) {
+                try {
+                    Message msg = store.getArchive().findById(id);
+                    if (msg != null) {
+                        return String.format("--- Message Found (archived) ---\nRecipient: %s\nMessage: \"%s\"",
+                            msg.getRecipient(), msg.getPayload());
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error reading the message archive: " + e.getMessage());
+                }
             }
+            return "No message found with ID: " + id;
+        } finally {
+            finishReport(event, "searchId", SEARCH_ID_LATENCY, started);
         }
-        return "No message found with ID: " + id;
     }
 
     /**
      * (POE 2d) Searches for all messages sent to a particular recipient.
      */
     public String searchMessagesByRecipient(String recipientCell) {
-        StringBuilder report = new StringBuilder("--- Messages for " + recipientCell + " ---\n");
-        boolean found = false;
-        for (Message msg : allMessages) {
-            if (msg.getRecipient().equals(recipientCell) && (msg.isSent() || msg.isStored())) {
-                report.append(String.format("Status: %s >> Message: \"%s\"\n", 
-                    msg.isSent() ? "Sent" : "Stored", msg.getPayload()));
-                found = true;
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            StringBuilder report = new StringBuilder("--- Messages for " + recipientCell + " ---\n");
+            boolean found = false;
+            List<Message> candidates = allMessages;
+            MessageArchive.Summary archived = archiveSummary();
+            if (archived != null && archived.mightContainRecipient(recipientCell)) {
+                try {
+                    ArrayList<Message> both = new ArrayList<>(store.getArchive().findByRecipient(recipientCell));
+                    both.addAll(allMessages);
+                    candidates = both;
+                } catch (IOException e) {
+                    System.err.println("Error reading the message archive: " + e.getMessage());
+                }
             }
+            for (Message msg : candidates) {
+                if (msg.getRecipient().equals(recipientCell) && (msg.isSent() || msg.isStored())) {
+                    report.append(String.format("Status: %s >> Message: \"%s\"\n", 
+                        msg.isSent() ? "Sent" : "Stored", msg.getPayload()));
+                    found = true;
+                }
+            }
+            if (!found) {
+                return "No messages found for recipient: " + recipientCell;
+            }
+            return report.toString();
+        } finally {
+            finishReport(event, "searchRecipient", SEARCH_RECIPIENT_LATENCY, started);
         }
-        if (!found) {
-            return "No messages found for recipient: " + recipientCell;
-        }
-        return report.toString();
     }
 
     /**
      * (POE 2e) Deletes a message using its hash.
-     * This method removes the message from the internal list.
+     * This method removes the message from the internal list and from every index this report
+     * manager answers from. A message found in the archive instead is deleted from the archive
+     * straight away and the reply ends with DELETED_FROM_ARCHIVE.
      */
     public String deleteMessageByHash(String hash) {
-        for (int i = 0; i < allMessages.size(); i++) {
-            Message msg = allMessages.get(i);
-            if (msg.getHash() != null && msg.getHash().equalsIgnoreCase(hash)) {
-                String deletedPayload = msg.getPayload();
-                allMessages.remove(i);
-                // Important: After deleting, we must save the changes.
-                // The UI will call MessageManager.saveAllMessages(this.allMessages).
-                return "Message \"" + deletedPayload + "\" successfully deleted.";
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            for (int i = 0; i < allMessages.size(); i++) {
+                Message msg = allMessages.get(i);
+                if (msg.getHash() != null && msg.getHash().equalsIgnoreCase(hash)) {
+                    String deletedPayload = msg.getPayload();
+                    allMessages.remove(i);
+                    if (indexes != null) {
+                        indexes.onMessageDeleted(msg.getHash());
+                    }
+                    // Important: After deleting, we must save the changes.
+                    // The UI will call MessageManager.saveAllMessages(this.allMessages).
+                    return "Message \"" + deletedPayload + "\" successfully deleted.";
+                }
+            }
+            MessageArchive.Summary archived = archiveSummary();
+            if (archived != null && archived.mightContainHash(hash)) {
+                try {
+                    Message deleted = store.deleteArchived(hash);
+                    if (deleted != null) {
+                        return "Message \"" + deleted.getPayload() + "\" " + DELETED_FROM_ARCHIVE;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error deleting from the message archive: " + e.getMessage());
+                }
             }
+            return "Message with hash '" + hash + "' not found for deletion.";
+        } finally {
+            finishReport(event, "deleteHash", DELETE_HASH_LATENCY, started);
         }
-        return "Message with hash '" + hash + "' not found for deletion.";
     }
 
     /**
      * (POE 2f) Displays a full report of all sent messages.
      */
     public String generateFullReport() {
-        StringBuilder report = new StringBuilder("--- Full Sent Message Report ---\n");
-        ArrayList<Message> sent = getSentMessages();
-        if (sent.isEmpty()) {
-            return "No sent messages to report.";
-        }
-        for (Message msg : sent) {
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            StringBuilder report = new StringBuilder("--- Full Sent Message Report ---\n");
+            ArrayList<Message> sent = getSentMessages();
+            if (sent.isEmpty()) {
+                return "No sent messages to report.";
+            }
+            for (Message msg : sent) {
+                report.append("---------------------------------\n");
+                report.append("Message Hash: ").append(msg.getHash()).append("\n");
+                report.append("Recipient: ").append(msg.getRecipient()).append("\n");
+                report.append("Message: \"").append(msg.getPayload()).append("\"\n");
+            }
             report.append("---------------------------------\n");
-            report.append("Message Hash: ").append(msg.getHash()).append("\n");
-            report.append("Recipient: ").append(msg.getRecipient()).append("\n");
-            report.append("Message: \"").append(msg.getPayload()).append("\"\n");
+            return report.toString();
+        } finally {
+            finishReport(event, "full", FULL_REPORT_LATENCY, started);
+        }
+    }
+
+    /**
+     * Gets one page of the conversation between two cell numbers, newest first.
+     * If no indexes were supplied, they are built from the message list on first use.
+     *
+     * @param beforeIndex The cursor from the previous page, or 0 for the newest page.
+     */
+    public ConversationIndex.Page getConversationPage(String cellA, String cellB, int beforeIndex, int pageSize) {
+        ConversationIndex.Page page = indexes().getConversations().getPage(cellA, cellB, beforeIndex, pageSize);
+        MessageArchive.Summary archived = archiveSummary();
+        if (page.hasMore() || archived == null || !archived.mightContainConversation(cellA, cellB)) {
+            return page;
+        }
+
+        // The hot messages ran out, carry on into the archive
+        List<Message> messages = page.getMessages();
+        int oldest = messages.isEmpty() ? beforeIndex : messages.get(messages.size() - 1).getIndex();
+        int room = pageSize - messages.size();
+        if (room <= 0) {
+            // The next page starts in the archive
+            return new ConversationIndex.Page(messages, oldest);
+        }
+        try {
+            // One more than fits tells us whether there is another page
+            List<Message> older = store.getArchive().getConversationBefore(cellA, cellB, oldest, room + 1);
+            if (older.isEmpty()) {
+                return page;
+            }
+            ArrayList<Message> combined = new ArrayList<>(messages);
+            combined.addAll(older.subList(0, Math.min(room, older.size())));
+            int nextCursor = older.size() > room ? combined.get(combined.size() - 1).getIndex() : 0;
+            return new ConversationIndex.Page(combined, nextCursor);
+        } catch (IOException e) {
+            System.err.println("Error reading the message archive: " + e.getMessage());
+            return page;
+        }
+    }
+
+    /**
+     * Displays one page of the conversation between two cell numbers, newest first.
+     */
+    public String displayConversation(String cellA, String cellB, int beforeIndex, int pageSize) {
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            ConversationIndex.Page page = getConversationPage(cellA, cellB, beforeIndex, pageSize);
+            if (page.getMessages().isEmpty()) {
+                return beforeIndex > 0 ? "No older messages." : "No messages between " + cellA + " and " + cellB;
+            }
+            StringBuilder report = new StringBuilder("--- Conversation " + cellA + " <-> " + cellB + " ---\n");
+            for (Message msg : page.getMessages()) {
+                report.append(String.format("#%d %s -> %s%s: \"%s\"\n", msg.getIndex(), msg.getSender(),
+                    msg.getRecipient(), msg.isStored() ? " (Stored)" : "", msg.getPayload()));
+            }
+            if (page.hasMore()) {
+                report.append("Older messages: continue from cursor ").append(page.getNextCursor()).append("\n");
+            }
+            return report.toString();
+        } finally {
+            finishReport(event, "conversation", CONVERSATION_LATENCY, started);
+        }
+    }
+
+    private TimeIndex timeline() {
+        return indexes().getTimeline();
+    }
+
+    /**
+     * @return The sent or stored archived messages in the window, or an empty list if the summary rules them out.
+     */
+    private List<Message> archivedBetween(long fromMillis, long toMillis) {
+        MessageArchive.Summary archived = archiveSummary();
+        if (archived == null || !archived.mightContainTime(fromMillis, toMillis)) {
+            return new ArrayList<>();
         }
-        report.append("---------------------------------\n");
-        return report.toString();
+        try {
+            return store.getArchive().findBetween(fromMillis, toMillis);
+        } catch (IOException e) {
+            System.err.println("Error reading the message archive: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Displays the sent and stored messages from fromMillis (inclusive) to toMillis (exclusive), oldest first.
+     * At most WINDOW_REPORT_LIMIT are listed. Messages saved before timestamps were kept never match.
+     */
+    public String getMessagesInWindow(long fromMillis, long toMillis) {
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            String window = TIME_FORMAT.format(Instant.ofEpochMilli(fromMillis)) + " to "
+                    + TIME_FORMAT.format(Instant.ofEpochMilli(toMillis));
+            // Archived messages are older than every hot message, so they come first
+            List<Message> archived = archivedBetween(fromMillis, toMillis);
+            int total = archived.size() + timeline().count(fromMillis, toMillis);
+            if (total == 0) {
+                return "No messages from " + window + ".";
+            }
+            ArrayList<Message> listed = new ArrayList<>(archived.subList(0, Math.min(archived.size(), WINDOW_REPORT_LIMIT)));
+            listed.addAll(timeline().getRange(fromMillis, toMillis, WINDOW_REPORT_LIMIT - listed.size()));
+
+            StringBuilder report = new StringBuilder("--- Messages from " + window + " (" + total + ") ---\n");
+            for (Message msg : listed) {
+                report.append(String.format("%s %s -> %s (%s): \"%s\"\n",
+                    TIME_FORMAT.format(Instant.ofEpochMilli(msg.getTimestamp())), msg.getSender(),
+                    msg.getRecipient(), msg.isSent() ? "Sent" : "Stored", msg.getPayload()));
+            }
+            if (total > listed.size()) {
+                report.append("... and ").append(total - listed.size()).append(" more.\n");
+            }
+            return report.toString();
+        } finally {
+            finishReport(event, "window", WINDOW_LATENCY, started);
+        }
+    }
+
+    /**
+     * Displays how many messages were sent in each minute from fromMillis (inclusive) to toMillis
+     * (exclusive), with the total and the busiest minute. Minutes with nothing sent are left out.
+     */
+    public String getThroughputPerMinute(long fromMillis, long toMillis) {
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            if (toMillis <= fromMillis) {
+                return "The window must end after it starts.";
+            }
+            if (toMillis - fromMillis > MAX_THROUGHPUT_WINDOW_MILLIS) {
+                return "The window is too long, the most is 7 days.";
+            }
+            TimeIndex.Throughput throughput = timeline().getThroughput(fromMillis, toMillis);
+            for (Message msg : archivedBetween(fromMillis, toMillis)) {
+                if (msg.isSent()) {
+                    throughput.add(msg.getTimestamp());
+                }
+            }
+            long total = throughput.getTotal();
+            String window = TIME_FORMAT.format(Instant.ofEpochMilli(fromMillis)) + " to "
+                    + TIME_FORMAT.format(Instant.ofEpochMilli(toMillis));
+            if (total == 0) {
+                return "No messages were sent from " + window + ".";
+            }
+
+            StringBuilder report = new StringBuilder("--- Sent Messages per Minute, " + window + " ---\n");
+            int peak = 0;
+            for (int minute = 0; minute < throughput.getMinutes(); minute++) {
+                int count = throughput.getCount(minute);
+                if (count > 0) {
+                    report.append(String.format("%s  %6d\n",
+                        MINUTE_FORMAT.format(Instant.ofEpochMilli(throughput.getMinuteStart(minute))), count));
+                }
+                if (count > throughput.getCount(peak)) {
+                    peak = minute;
+                }
+            }
+            report.append(String.format("Total: %d in %d minutes (%.2f per minute). Busiest minute: %s with %d.\n",
+                total, throughput.getMinutes(), (double) total / throughput.getMinutes(),
+                MINUTE_FORMAT.format(Instant.ofEpochMilli(throughput.getMinuteStart(peak))), throughput.getCount(peak)));
+            return report.toString();
+        } finally {
+            finishReport(event, "throughput", THROUGHPUT_LATENCY, started);
+        }
+    }
+
+    /**
+     * @param sender The sender whose distinct recipients are wanted, or null for none.
+     * @return The sketches of the messages in memory, combined with the archive's if anything is archived.
+     */
+    private MessageSketches sketches(String sender) {
+        MessageSketches hot = indexes().getSketches();
+        MessageArchive.Summary archived = archiveSummary();
+        if (archived == null || archived.getSentCount() == 0) {
+            return hot;
+        }
+        return hot.combinedWith(archived.getSketches(), sender);
+    }
+
+    /**
+     * Displays about how many distinct people a sender has sent to, or with no sender, how many
+     * distinct senders and recipients there are overall. Answered from sketches in constant time,
+     * archived messages included through the archive summary's sketches.
+     */
+    public String getDistinctRecipients(String sender) {
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            MessageSketches analytics = sketches(sender == null || sender.isEmpty() ? null : sender);
+            if (sender == null || sender.isEmpty()) {
+                return String.format("--- Distinct Senders and Recipients ---\n"
+                        + "Sent messages: %d\nDistinct senders: about %d\nDistinct recipients: about %d\n"
+                        + "Exact for small counts, otherwise within %.1f%% (one standard error).\n",
+                    analytics.getSentCount(), analytics.getDistinctSenders(), analytics.getDistinctRecipients(),
+                    analytics.getDistinctError() * 100);
+            }
+            long distinct = analytics.getDistinctRecipients(sender);
+            if (distinct == 0) {
+                return "No sent messages from " + sender + ".";
+            }
+            return String.format("%s has sent to about %d distinct recipients.\n"
+                    + "Exact for small counts, otherwise within %.1f%% (one standard error).\n",
+                sender, distinct, analytics.getPerSenderDistinctError() * 100);
+        } finally {
+            finishReport(event, "distinct", DISTINCT_LATENCY, started);
+        }
+    }
+
+    /**
+     * Displays percentiles of the sent payload lengths. They are exact, from a count per length.
+     */
+    public String getPayloadLengthPercentiles() {
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            MessageSketches analytics = sketches(null);
+            if (analytics.getSentCount() == 0) {
+                return "No sent messages to measure.";
+            }
+            StringBuilder report = new StringBuilder("--- Sent Message Lengths (characters) ---\n");
+            for (double percentile : new double[] {50, 90, 95, 99, 100}) {
+                report.append(String.format("p%-4s %3d\n", percentile == 100 ? "max" : String.valueOf((int) percentile),
+                    analytics.getLengthPercentile(percentile)));
+            }
+            report.append("Over ").append(analytics.getSentCount()).append(" sent messages.\n");
+            return report.toString();
+        } finally {
+            finishReport(event, "lengths", LENGTHS_LATENCY, started);
+        }
+    }
+
+    /**
+     * Displays the recipients of the most sent messages with their estimated counts. Counts are
+     * never too low and are at most the shown bound too high with the shown probability.
+     */
+    public String getTopRecipients(int limit) {
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            MessageSketches analytics = sketches(null);
+            List<Map.Entry<String, Long>> top = analytics.getTopRecipients(limit);
+            if (top.isEmpty()) {
+                return "No sent messages to rank.";
+            }
+            StringBuilder report = new StringBuilder("--- Top Recipients ---\n");
+            int rank = 1;
+            for (Map.Entry<String, Long> entry : top) {
+                report.append(String.format("%2d. %s  about %d messages\n", rank++, entry.getKey(), entry.getValue()));
+            }
+            report.append(String.format("Counts may be up to %d too high (%.1f%% chance of more).\n",
+                analytics.getRecipientErrorBound(), analytics.getRecipientErrorProbability() * 100));
+            return report.toString();
+        } finally {
+            finishReport(event, "topRecipients", TOP_RECIPIENTS_LATENCY, started);
+        }
+    }
+
+    /**
+     * Gets one page of the cell numbers starting with a prefix, with their message counts.
+     * If no indexes were supplied, they are built from the message list on first use.
+     *
+     * @param after The cursor from the previous page, or null for the first page.
+     */
+    public NumberPrefixIndex.Page getNumberPage(String prefix, String after, int pageSize) {
+        return indexes().getNumbers().getPage(prefix, after, pageSize);
+    }
+
+    /**
+     * Displays one page of the sender and recipient cell numbers starting with a prefix (e.g. "+2782"),
+     * in number order, with how many messages each has sent and received. Answered from an index
+     * in well under a millisecond; archived messages are not counted.
+     */
+    public String searchNumbersByPrefix(String prefix, String after, int pageSize) {
+        long started = System.nanoTime();
+        JfrEvents.ReportEvent event = new JfrEvents.ReportEvent();
+        event.begin();
+        try {
+            if (!NumberPrefixIndex.isValidPrefix(prefix)) {
+                return "A number prefix is +27 followed by up to 9 digits, e.g. +2782.";
+            }
+            NumberPrefixIndex.Page page = getNumberPage(prefix, after, pageSize);
+            if (page.getMatching() == 0) {
+                return "No numbers start with " + prefix + ".";
+            }
+            if (page.getEntries().isEmpty()) {
+                return "No more numbers start with " + prefix + ".";
+            }
+            StringBuilder report = new StringBuilder("--- Numbers starting with " + prefix + " ("
+                    + page.getMatching() + ") ---\n");
+            // Padded by hand: String.format would take most of the report's time
+            for (NumberPrefixIndex.Entry entry : page.getEntries()) {
+                report.append(entry.getNumber()).append("  sent ");
+                appendPadded(report, entry.getSent(), 6).append("  received ");
+                appendPadded(report, entry.getReceived(), 6).append('\n');
+            }
+            if (page.hasMore()) {
+                report.append("More numbers: continue after ").append(page.getNextCursor()).append("\n");
+            }
+            return report.toString();
+        } finally {
+            finishReport(event, "numberPrefix", NUMBER_PREFIX_LATENCY, started);
+        }
+    }
+
+    private static StringBuilder appendPadded(StringBuilder report, int value, int width) {
+        String digits = Integer.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            report.append(' ');
+        }
+        return report.append(digits);
+    }
+
+    /**
+     * Creates an exporter over the messages as they are now, archived ones included. It copies the
+     * message list's references, not the messages, so call it on the thread that changes the list
+     * and run the export on any other.
+     */
+    public MessageExporter newExporter() {
+        return new MessageExporter(new ArrayList<>(allMessages), store == null ? null : store.getArchive());
     }
 }
@@ -2,11 +2,36 @@ package chitchat;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * A dedicated JFrame for displaying reports as required by POE Part 3.
  *
+ * With a shared store, the report on display is run again when the store publishes a change that
+ * can alter it, so it stays live while this and other instances send and delete messages. A report
+ * over some of the messages (e.g. one recipient's) has a scope, and is only run again for an
+ * addition in its scope, a deletion of a message it counted, or a reload.
+ *
+ * Export writes all messages, or the report on display, to a CSV or JSON-lines file in the
+ * background. A report that lists messages exports every message it selects, even those past
+ * the ones it shows; other reports export their text a line at a time.
+ *
  * @author Kitso Litelu (Created by me for Finale)
  * @version 2025-06-13
  */
@@ -18,14 +43,41 @@ public class ReportsUI extends JFrame {
     private static final Color TEXT_COLOR = new Color(230, 230, 255);
     private static final Color FIELD_BG_COLOR = new Color(40, 43, 84);
 
+    private static final int TOP_RECIPIENTS = 10;
+    private static final int NUMBER_PAGE_SIZE = 50;
+
     private ReportManager reportManager;
     private ArrayList<Message> allMessages; // Keep a reference to update it after deletion
     private JTextArea reportArea;
+    // Writes a deletion from the list, by default straight to the store or messages.json
+    private Consumer<String> deletionSaver = this::saveDeletion;
+    private final MessageStore messageStore;
+    // The report on display, run again on changes; null for results that are not reports, e.g. a deletion
+    private Supplier<String> liveReport;
+    // The messages the report on display selects, or null if it does not list messages
+    private MessageExporter.Filter reportFilter;
+    // The messages whose changes can alter the report on display, or null for every message.
+    // Read on the stream's thread, which keeps scopeHashes (their hashes, upper case) in step.
+    private volatile Predicate<Message> reportScope;
+    private volatile Set<String> scopeHashes;
+    // Set by a RESET: the scope's hashes are collected again with the next run
+    private volatile boolean rescope;
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private ChangeStream.Subscription changes;
 
     public ReportsUI(ArrayList<Message> messages) {
+        this(messages, null, null);
+    }
+
+    /**
+     * @param indexes      Up to date indexes over the messages, or null to build them when needed.
+     * @param messageStore The shared store deletions are written to, or null to rewrite messages.json.
+     */
+    public ReportsUI(ArrayList<Message> messages, MessageIndexes indexes, MessageStore messageStore) {
         super("ChitChat - Reports");
         this.allMessages = messages;
-        this.reportManager = new ReportManager(messages);
+        this.messageStore = messageStore;
+        this.reportManager = new ReportManager(messages, indexes, messageStore);
 
         // Use DISPOSE_ON_CLOSE so it doesn't close the whole app
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -63,6 +115,14 @@ public class ReportsUI extends JFrame {
         JButton searchRecipientBtn = createStyledButton("Search by Recipient");
         JButton deleteHashBtn = createStyledButton("Delete by Hash");
         JButton fullReportBtn = createStyledButton("Display Full Report");
+        JButton conversationBtn = createStyledButton("View Conversation");
+        JButton windowBtn = createStyledButton("Messages in Time Window");
+        JButton throughputBtn = createStyledButton("Throughput per Minute");
+        JButton distinctBtn = createStyledButton("Distinct Recipients");
+        JButton lengthsBtn = createStyledButton("Message Length Percentiles");
+        JButton topRecipientsBtn = createStyledButton("Top Recipients");
+        JButton numberPrefixBtn = createStyledButton("Search by Number Prefix");
+        JButton exportBtn = createStyledButton("Export...");
 
         buttonPanel.add(sentDetailsBtn);
         buttonPanel.add(longestMsgBtn);
@@ -70,27 +130,72 @@ public class ReportsUI extends JFrame {
         buttonPanel.add(searchRecipientBtn);
         buttonPanel.add(deleteHashBtn);
         buttonPanel.add(fullReportBtn);
+        buttonPanel.add(conversationBtn);
+        buttonPanel.add(windowBtn);
+        buttonPanel.add(throughputBtn);
+        buttonPanel.add(distinctBtn);
+        buttonPanel.add(lengthsBtn);
+        buttonPanel.add(topRecipientsBtn);
+        buttonPanel.add(numberPrefixBtn);
+        buttonPanel.add(exportBtn);
 
         mainPanel.add(buttonPanel, BorderLayout.SOUTH);
         
         add(mainPanel);
 
         // --- Action Listeners ---
-        sentDetailsBtn.addActionListener(e -> reportArea.setText(reportManager.getSentMessagesDetails()));
-        longestMsgBtn.addActionListener(e -> reportArea.setText(reportManager.findLongestMessage()));
-        fullReportBtn.addActionListener(e -> reportArea.setText(reportManager.generateFullReport()));
+        sentDetailsBtn.addActionListener(e -> showReport(reportManager::getSentMessagesDetails, MessageExporter.Filter.all().sentOnly()));
+        longestMsgBtn.addActionListener(e -> showReport(reportManager::findLongestMessage));
+        fullReportBtn.addActionListener(e -> showReport(reportManager::generateFullReport, MessageExporter.Filter.all().sentOnly()));
+        lengthsBtn.addActionListener(e -> showReport(reportManager::getPayloadLengthPercentiles));
+        topRecipientsBtn.addActionListener(e -> showReport(() -> reportManager.getTopRecipients(TOP_RECIPIENTS)));
+
+        distinctBtn.addActionListener(e -> {
+            String sender = JOptionPane.showInputDialog(this, "Enter a sender's cell, or leave empty for everyone:", "Distinct Recipients", JOptionPane.PLAIN_MESSAGE);
+            if (sender != null) {
+                showReport(() -> reportManager.getDistinctRecipients(sender.trim()), null,
+                        sender.trim().isEmpty() ? null : MessageExporter.Filter.all().from(sender.trim()));
+            }
+        });
         
         searchIdBtn.addActionListener(e -> {
             String id = JOptionPane.showInputDialog(this, "Enter Message ID to search for:", "Search by ID", JOptionPane.PLAIN_MESSAGE);
             if (id != null && !id.trim().isEmpty()) {
-                reportArea.setText(reportManager.searchMessageById(id.trim()));
+                showReport(() -> reportManager.searchMessageById(id.trim()), MessageExporter.Filter.all().withId(id.trim()));
             }
         });
         
         searchRecipientBtn.addActionListener(e -> {
             String recipient = JOptionPane.showInputDialog(this, "Enter Recipient's Cell to search for:", "Search by Recipient", JOptionPane.PLAIN_MESSAGE);
             if (recipient != null && !recipient.trim().isEmpty()) {
-                reportArea.setText(reportManager.searchMessagesByRecipient(recipient.trim()));
+                showReport(() -> reportManager.searchMessagesByRecipient(recipient.trim()),
+                        MessageExporter.Filter.all().sentOrStored().to(recipient.trim()));
+            }
+        });
+
+        conversationBtn.addActionListener(e -> {
+            JTextField firstCell = new JTextField();
+            JTextField secondCell = new JTextField();
+            Object[] fields = {"First cell number:", firstCell, "Second cell number:", secondCell};
+            int choice = JOptionPane.showConfirmDialog(this, fields, "View Conversation", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (choice == JOptionPane.OK_OPTION && !firstCell.getText().trim().isEmpty() && !secondCell.getText().trim().isEmpty()) {
+                new ConversationUI(reportManager, firstCell.getText().trim(), secondCell.getText().trim()).setVisible(true);
+            }
+        });
+
+        windowBtn.addActionListener(e -> {
+            long[] window = askForWindow("Messages in Time Window");
+            if (window != null) {
+                showReport(() -> reportManager.getMessagesInWindow(window[0], window[1]),
+                        MessageExporter.Filter.all().sentOrStored().window(window[0], window[1]));
+            }
+        });
+
+        throughputBtn.addActionListener(e -> {
+            long[] window = askForWindow("Throughput per Minute");
+            if (window != null) {
+                showReport(() -> reportManager.getThroughputPerMinute(window[0], window[1]), null,
+                        MessageExporter.Filter.all().window(window[0], window[1]));
             }
         });
 
@@ -98,15 +203,239 @@ public class ReportsUI extends JFrame {
             String hash = JOptionPane.showInputDialog(this, "Enter Message Hash to delete:", "Delete by Hash", JOptionPane.PLAIN_MESSAGE);
             if (hash != null && !hash.trim().isEmpty()) {
                 String result = reportManager.deleteMessageByHash(hash.trim());
+                liveReport = null;
+                reportFilter = null;
+                reportScope = null;
                 reportArea.setText(result);
                 // If deletion was successful, we must save the updated message list to the file.
-                if (result.contains("successfully deleted")) {
-                    MessageManager.saveAllMessages(this.allMessages);
+                // The archive writes its own deletions and the message list is unchanged.
+                if (result.contains("successfully deleted") && !result.endsWith(ReportManager.DELETED_FROM_ARCHIVE)) {
+                    deletionSaver.accept(hash.trim());
+                }
+            }
+        });
+
+        numberPrefixBtn.addActionListener(e -> {
+            JTextField prefix = new JTextField("+27");
+            JTextField after = new JTextField();
+            Object[] fields = {"Number prefix, e.g. +2782:", prefix, "Continue after (optional):", after};
+            int choice = JOptionPane.showConfirmDialog(this, fields, "Search by Number Prefix", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (choice == JOptionPane.OK_OPTION) {
+                String cursor = after.getText().trim().isEmpty() ? null : after.getText().trim();
+                showReport(() -> reportManager.searchNumbersByPrefix(prefix.getText().trim(), cursor, NUMBER_PAGE_SIZE));
+            }
+        });
+
+        exportBtn.addActionListener(e -> export());
+
+        if (messageStore != null) {
+            changes = messageStore.getChangeStream().subscribe("reports", ChangeStream.DEFAULT_QUEUE_CAPACITY, this::onStoreChange);
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    changes.close();
                 }
+            });
+        }
+    }
+
+    private void showReport(Supplier<String> report) {
+        showReport(report, null, null);
+    }
+
+    /**
+     * @param filter The messages the report lists, for export and as its scope, or null if it does not list messages.
+     */
+    private void showReport(Supplier<String> report, MessageExporter.Filter filter) {
+        showReport(report, filter, filter);
+    }
+
+    /**
+     * @param scope The messages whose changes can alter the report, or null for every message.
+     */
+    private void showReport(Supplier<String> report, MessageExporter.Filter filter, Predicate<Message> scope) {
+        liveReport = report;
+        reportFilter = filter;
+        setScope(scope);
+        reportArea.setText(report.get());
+        reportArea.setCaretPosition(0);
+    }
+
+    /**
+     * Sets the report's scope and collects the hashes of the messages in it. On the event thread.
+     */
+    private void setScope(Predicate<Message> scope) {
+        if (scope == null || messageStore == null) {
+            reportScope = null;
+            return;
+        }
+        Set<String> hashes = ConcurrentHashMap.newKeySet();
+        for (Message message : allMessages) {
+            if (message.getHash() != null && scope.test(message)) {
+                hashes.add(message.getHash().toUpperCase(Locale.ROOT));
+            }
+        }
+        scopeHashes = hashes;
+        reportScope = scope;
+    }
+
+    /**
+     * Runs the report on display again if the change can alter it. On the stream's thread.
+     */
+    private void onStoreChange(ChangeStream.Change change) {
+        Predicate<Message> scope = reportScope;
+        if (change.getType() == ChangeStream.Type.RESET) {
+            rescope = true;
+            refreshLater();
+            return;
+        }
+        if (scope == null) {
+            refreshLater();
+            return;
+        }
+        Message message = change.getMessage();
+        if (message != null && message.getHash() != null && scope.test(message)) {
+            scopeHashes.add(message.getHash().toUpperCase(Locale.ROOT));
+            refreshLater();
+        } else if (change.getType() == ChangeStream.Type.DELETED && change.getHash() != null
+                && scopeHashes.remove(change.getHash().toUpperCase(Locale.ROOT))) {
+            refreshLater();
+        }
+    }
+
+    /**
+     * Runs the report on display again on the event thread. A burst of changes only queues one run,
+     * and it runs after the event that wrote them has applied them to the message list.
+     */
+    private void refreshLater() {
+        if (!refreshPending.compareAndSet(false, true)) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            refreshPending.set(false);
+            if (rescope) {
+                rescope = false;
+                setScope(reportScope);
+            }
+            if (liveReport != null) {
+                int caret = reportArea.getCaretPosition();
+                reportArea.setText(liveReport.get());
+                reportArea.setCaretPosition(Math.min(caret, reportArea.getDocument().getLength()));
             }
         });
     }
     
+    /**
+     * Asks what to export and where, then exports on a background thread behind a progress monitor
+     * that can cancel it.
+     */
+    private void export() {
+        String[] choices = liveReport == null ? new String[] {"All Messages"} : new String[] {"All Messages", "Current Report"};
+        int choice = JOptionPane.showOptionDialog(this, "What would you like to export?", "Export",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, choices, choices[0]);
+        if (choice < 0) {
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export as .csv or .jsonl");
+        chooser.setSelectedFile(new File("chitchat-export.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        MessageExporter.Format format = MessageExporter.Format.forFileName(file.getFileName().toString());
+
+        // Everything the export reads is taken now, on the EDT; the list may change while it runs
+        boolean reportText = choice == 1 && reportFilter == null;
+        String text = reportText ? reportArea.getText() : null;
+        MessageExporter.Filter filter = choice == 1 ? reportFilter : MessageExporter.Filter.all();
+        MessageExporter exporter = reportText ? null : reportManager.newExporter();
+
+        ProgressMonitor monitor = new ProgressMonitor(this, "Exporting to " + file.getFileName(), null, 0, 100);
+        SwingWorker<Long, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                if (reportText) {
+                    return MessageExporter.exportLines(text, format, file);
+                }
+                return exporter.export(filter, format, file,
+                        (scanned, total, exported) -> setProgress((int) Math.min(100, scanned * 100 / Math.max(1, total))));
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    long written = get();
+                    JOptionPane.showMessageDialog(ReportsUI.this, "Exported " + written + (reportText ? " lines" : " messages")
+                            + " to " + file + ".", "Export", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    if (!(cause instanceof InterruptedIOException)) {
+                        System.err.println("Error exporting messages: " + cause.getMessage());
+                        JOptionPane.showMessageDialog(ReportsUI.this, "The export failed: " + cause.getMessage(),
+                                "Export", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }
+        };
+        worker.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                monitor.setProgress((Integer) event.getNewValue());
+                if (monitor.isCanceled()) {
+                    worker.cancel(true);
+                }
+            }
+        });
+        worker.execute();
+    }
+
+    /**
+     * Asks for a window of time, the last hour by default.
+     *
+     * @return The start and end in epoch milliseconds, or null if cancelled.
+     */
+    private long[] askForWindow(String title) {
+        long now = System.currentTimeMillis();
+        JSpinner fromSpinner = new JSpinner(new SpinnerDateModel(new Date(now - 60 * 60 * 1000), null, null, Calendar.MINUTE));
+        JSpinner toSpinner = new JSpinner(new SpinnerDateModel(new Date(now), null, null, Calendar.MINUTE));
+        fromSpinner.setEditor(new JSpinner.DateEditor(fromSpinner, "yyyy-MM-dd HH:mm"));
+        toSpinner.setEditor(new JSpinner.DateEditor(toSpinner, "yyyy-MM-dd HH:mm"));
+        Object[] fields = {"From:", fromSpinner, "To:", toSpinner};
+        int choice = JOptionPane.showConfirmDialog(this, fields, title, JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION) {
+            return null;
+        }
+        return new long[] {((Date) fromSpinner.getValue()).getTime(), ((Date) toSpinner.getValue()).getTime()};
+    }
+
+    /**
+     * Writes a deletion to the shared store, picking up what other instances wrote first,
+     * or rewrites messages.json when there is no store.
+     */
+    private void saveDeletion(String hash) {
+        if (messageStore == null) {
+            MessageManager.saveAllMessages(this.allMessages);
+            return;
+        }
+        try {
+            messageStore.delete(hash).applyTo(this.allMessages);
+        } catch (IOException e) {
+            System.err.println("Error saving the deletion: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sets how a deletion through this window is written, given the deleted message's hash, e.g. on
+     * the caller's own store thread so the EDT does not wait for the store.
+     */
+    public void setDeletionSaver(Consumer<String> deletionSaver) {
+        this.deletionSaver = deletionSaver;
+    }
+
     private JButton createStyledButton(String text) {
         JButton button = new JButton(text);
         button.setFont(new Font("SansSerif", Font.BOLD, 14));
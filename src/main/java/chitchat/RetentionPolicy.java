@@ -0,0 +1,139 @@
+package chitchat;
+
+import java.util.List;
+
+/**
+ * Decides which messages stay in the hot tier (messages.json, loaded at startup) and which move
+ * to the cold MessageArchive.
+ *
+ * The oldest messages are always the ones archived, so the archive holds a prefix of the history
+ * and the hot tier the rest, both in their original order. Messages are moved in batches: nothing
+ * is archived until at least the batch size is due, so a steady trickle of new messages does not
+ * rewrite the archive on every compaction.
+ *
+ * Configured with -Dchitchat.retention=count:N (keep the newest N messages hot) or
+ * age:N (keep messages within N indexes of the newest hot), optionally followed by ",batch:B".
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public final class RetentionPolicy {
+
+    /** Keeps every message hot, as before archiving existed. */
+    public static final RetentionPolicy KEEP_ALL = new RetentionPolicy(Kind.ALL, 0, 0);
+
+    static final int DEFAULT_BATCH = 1000;
+
+    private enum Kind { ALL, COUNT, AGE }
+
+    private final Kind kind;
+    private final int limit;
+    private final int batch;
+
+    private RetentionPolicy(Kind kind, int limit, int batch) {
+        this.kind = kind;
+        this.limit = limit;
+        this.batch = batch;
+    }
+
+    /**
+     * Keeps the newest messages hot.
+     *
+     * @param count How many messages stay hot.
+     * @param batch How many messages must be due before any are archived.
+     */
+    public static RetentionPolicy keepNewest(int count, int batch) {
+        if (count < 0 || batch < 1) {
+            throw new IllegalArgumentException("The count must not be negative and the batch must be at least 1");
+        }
+        return new RetentionPolicy(Kind.COUNT, count, batch);
+    }
+
+    /**
+     * Keeps messages whose index is within the given distance of the newest index.
+     * Once a message is archived, every message before it in the list is archived too.
+     *
+     * @param age   How many indexes back from the newest message stay hot.
+     * @param batch How many messages must be due before any are archived.
+     */
+    public static RetentionPolicy keepIndexesWithin(int age, int batch) {
+        if (age < 0 || batch < 1) {
+            throw new IllegalArgumentException("The age must not be negative and the batch must be at least 1");
+        }
+        return new RetentionPolicy(Kind.AGE, age, batch);
+    }
+
+    /**
+     * @return The policy given by -Dchitchat.retention, or KEEP_ALL if none is set.
+     */
+    public static RetentionPolicy fromSystemProperty() {
+        String setting = System.getProperty("chitchat.retention");
+        return setting == null || setting.isBlank() ? KEEP_ALL : parse(setting);
+    }
+
+    /**
+     * Parses "count:N" or "age:N", optionally followed by ",batch:B".
+     */
+    static RetentionPolicy parse(String setting) {
+        int batch = DEFAULT_BATCH;
+        String[] parts = setting.trim().split(",");
+        try {
+            if (parts.length > 1) {
+                if (!parts[1].trim().startsWith("batch:")) {
+                    throw new IllegalArgumentException("Unknown retention option: " + parts[1]);
+                }
+                batch = Integer.parseInt(parts[1].trim().substring("batch:".length()));
+            }
+            String rule = parts[0].trim();
+            if (rule.startsWith("count:")) {
+                return keepNewest(Integer.parseInt(rule.substring("count:".length())), batch);
+            }
+            if (rule.startsWith("age:")) {
+                return keepIndexesWithin(Integer.parseInt(rule.substring("age:".length())), batch);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Retention limits must be numbers: " + setting, e);
+        }
+        throw new IllegalArgumentException("Retention must be count:N or age:N, not " + setting);
+    }
+
+    /**
+     * @param messages The hot messages, oldest first.
+     * @return How many messages from the start of the list should move to the archive; 0 if fewer than a batch.
+     */
+    public int archiveCount(List<Message> messages) {
+        int due;
+        switch (kind) {
+            case COUNT:
+                due = Math.max(0, messages.size() - limit);
+                break;
+            case AGE:
+                int newest = 0;
+                for (Message message : messages) {
+                    newest = Math.max(newest, message.getIndex());
+                }
+                // Everything up to the last message that is too old
+                due = 0;
+                for (int i = messages.size() - 1; i >= 0; i--) {
+                    int index = messages.get(i).getIndex();
+                    if (index > 0 && index <= newest - limit) {
+                        due = i + 1;
+                        break;
+                    }
+                }
+                break;
+            default:
+                due = 0;
+        }
+        return due >= batch ? due : 0;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case COUNT: return "count:" + limit + ",batch:" + batch;
+            case AGE: return "age:" + limit + ",batch:" + batch;
+            default: return "keep all";
+        }
+    }
+}
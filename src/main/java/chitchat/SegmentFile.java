@@ -0,0 +1,554 @@
+package chitchat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A read-optimised, block-compressed file of messages.
+ *
+ * Messages are written in a compact binary form in blocks of a fixed number of messages, and each
+ * block is compressed on its own with raw DEFLATE at BEST_SPEED. A block index at the end of the
+ * file records where every block starts, its sizes, its CRC-32 and the range of message indexes
+ * in it, so one message is read by decompressing only its block and blocks that cannot hold
+ * a message index are never touched.
+ *
+ * Layout (all numbers big-endian):
+ *   header   int magic "CCSG", int version, int messages per block
+ *   blocks   compressed records: flags (a byte in version 1, a short since version 2), index,
+ *            delivery time (long, only if its flag is set), creation and send times (two longs,
+ *            only if their flag is set), then id, sender, recipient, payload and hash (UTF, each
+ *            only if not null)
+ *   index    per block: long offset, int compressed length, int length, int count,
+ *            int lowest index, int highest index, int CRC-32 of the uncompressed block
+ *   trailer  long index offset, int block count, int magic
+ *
+ * A SegmentFile is not thread-safe.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public final class SegmentFile implements Closeable {
+
+    /** Message files with this suffix are stored as segments instead of JSON. */
+    public static final String FILE_SUFFIX = ".seg";
+    public static final int DEFAULT_MESSAGES_PER_BLOCK = 256;
+
+    private static final int MAGIC = 0x43435347; // "CCSG"
+    private static final int VERSION = 2;
+    // Version 1 files, with one byte of flags and no delivery times, are still read
+    private static final int V1 = 1;
+    private static final int HEADER_LENGTH = 12;
+    private static final int INDEX_ENTRY_LENGTH = 32;
+    private static final int TRAILER_LENGTH = 16;
+
+    // Bits of the per-message flags
+    private static final int SENT = 1;
+    private static final int STORED = 2;
+    private static final int DISREGARDED = 4;
+    private static final int NULL_FIELDS_SHIFT = 3; // then one bit per nullable string field
+    private static final int DELIVER_AT = 1 << 8;    // a scheduled message, its delivery time follows the index
+    private static final int TIMESTAMPS = 1 << 9;    // the creation and send times follow the delivery time
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int messagesPerBlock;
+    private final int version;
+    private final long[] offsets;
+    private final int[] compressedLengths;
+    private final int[] lengths;
+    private final int[] counts;
+    private final int[] minIndexes;
+    private final int[] maxIndexes;
+    private final int[] checksums;
+    private final int size;
+    private final Inflater inflater = new Inflater(true);
+
+    // The last block decompressed, since lookups tend to stay close together
+    private int cachedBlock = -1;
+    private byte[] cachedBlockBytes;
+
+    private SegmentFile(Path file, FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        long fileSize = channel.size();
+        if (fileSize < HEADER_LENGTH + TRAILER_LENGTH) {
+            throw new IOException(file + " is too short to be a segment file");
+        }
+        ByteBuffer header = read(0, HEADER_LENGTH);
+        if (header.getInt() != MAGIC) {
+            throw new IOException(file + " is not a segment file");
+        }
+        version = header.getInt();
+        if (version != VERSION && version != V1) {
+            throw new IOException(file + " has unsupported segment version " + version);
+        }
+        messagesPerBlock = header.getInt();
+
+        ByteBuffer trailer = read(fileSize - TRAILER_LENGTH, TRAILER_LENGTH);
+        long indexOffset = trailer.getLong();
+        int blockCount = trailer.getInt();
+        if (trailer.getInt() != MAGIC || blockCount < 0
+                || indexOffset + (long) blockCount * INDEX_ENTRY_LENGTH != fileSize - TRAILER_LENGTH) {
+            throw new IOException(file + " has a damaged block index (was it written completely?)");
+        }
+
+        offsets = new long[blockCount];
+        compressedLengths = new int[blockCount];
+        lengths = new int[blockCount];
+        counts = new int[blockCount];
+        minIndexes = new int[blockCount];
+        maxIndexes = new int[blockCount];
+        checksums = new int[blockCount];
+        ByteBuffer index = read(indexOffset, blockCount * INDEX_ENTRY_LENGTH);
+        int total = 0;
+        for (int i = 0; i < blockCount; i++) {
+            offsets[i] = index.getLong();
+            compressedLengths[i] = index.getInt();
+            lengths[i] = index.getInt();
+            counts[i] = index.getInt();
+            minIndexes[i] = index.getInt();
+            maxIndexes[i] = index.getInt();
+            checksums[i] = index.getInt();
+            total += counts[i];
+        }
+        size = total;
+    }
+
+    /**
+     * Opens a segment file and reads its block index. The blocks are read on demand.
+     */
+    public static SegmentFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new SegmentFile(file, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if the file exists and starts like a segment file.
+     */
+    public static boolean isSegmentFile(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // keep reading until all four bytes are in
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the messages to a new segment file, replacing the file if it exists.
+     *
+     * @return The size of the file in bytes.
+     */
+    public static long write(Path file, List<Message> messages) throws IOException {
+        return write(file, messages, DEFAULT_MESSAGES_PER_BLOCK);
+    }
+
+    /**
+     * Writes the messages to a new segment file, replacing the file if it exists.
+     *
+     * @param messagesPerBlock How many messages are compressed together. Larger blocks compress
+     *                         better but a single lookup has to decompress more.
+     * @return The size of the file in bytes.
+     */
+    public static long write(Path file, List<Message> messages, int messagesPerBlock) throws IOException {
+        try (Writer writer = new Writer(file, messagesPerBlock)) {
+            for (Message message : messages) {
+                writer.add(message);
+            }
+            writer.finish();
+            return writer.getBytesWritten();
+        }
+    }
+
+    /**
+     * Writes a segment file one message at a time, so the messages never have to be in one list.
+     * The file is only readable once finish() has written the block index.
+     */
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final int messagesPerBlock;
+        private final ByteArrayOutputStream block;
+        private final DataOutputStream records;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        private final CRC32 crc = new CRC32();
+        private byte[] compressed = new byte[64 * 1024];
+        private ByteBuffer index = ByteBuffer.allocate(64 * INDEX_ENTRY_LENGTH);
+        private long position;
+        private int blockCount;
+        private int inBlock;
+        private int minIndex = Integer.MAX_VALUE;
+        private int maxIndex = Integer.MIN_VALUE;
+        private boolean finished;
+
+        /**
+         * Creates or truncates the file and writes the header.
+         */
+        public Writer(Path file, int messagesPerBlock) throws IOException {
+            if (messagesPerBlock < 1) {
+                throw new IllegalArgumentException("A block needs at least one message");
+            }
+            this.messagesPerBlock = messagesPerBlock;
+            this.block = new ByteArrayOutputStream(messagesPerBlock * 160);
+            this.records = new DataOutputStream(block);
+            this.channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION).putInt(messagesPerBlock);
+            position = writeFully(channel, header.flip(), 0);
+        }
+
+        public void add(Message message) throws IOException {
+            writeMessage(records, message);
+            minIndex = Math.min(minIndex, message.getIndex());
+            maxIndex = Math.max(maxIndex, message.getIndex());
+            if (++inBlock == messagesPerBlock) {
+                flushBlock();
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            records.flush();
+            byte[] raw = block.toByteArray();
+            crc.reset();
+            crc.update(raw);
+
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            if (compressed.length < raw.length + 64) {
+                // Incompressible data grows by a few bytes per 16 KB; size the buffer for one pass
+                compressed = new byte[raw.length + raw.length / 8 + 64];
+            }
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+                if (compressedLength == compressed.length && !deflater.finished()) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+            }
+
+            if (!index.hasRemaining()) {
+                index = ByteBuffer.allocate(index.capacity() * 2).put(index.flip());
+            }
+            index.putLong(position).putInt(compressedLength).putInt(raw.length).putInt(inBlock)
+                    .putInt(minIndex).putInt(maxIndex).putInt((int) crc.getValue());
+            position += writeFully(channel, ByteBuffer.wrap(compressed, 0, compressedLength), position);
+            blockCount++;
+            block.reset();
+            inBlock = 0;
+            minIndex = Integer.MAX_VALUE;
+            maxIndex = Integer.MIN_VALUE;
+        }
+
+        /**
+         * Writes the last partial block, the block index and the trailer.
+         */
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (inBlock > 0) {
+                flushBlock();
+            }
+            long indexOffset = position;
+            position += writeFully(channel, index.flip(), position);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH).putLong(indexOffset).putInt(blockCount).putInt(MAGIC);
+            position += writeFully(channel, trailer.flip(), position);
+            finished = true;
+        }
+
+        /** @return The size of the file so far in bytes. */
+        public long getBytesWritten() {
+            return position;
+        }
+
+        /**
+         * Forces the written bytes to the storage device.
+         */
+        public void sync() throws IOException {
+            channel.force(true);
+        }
+
+        /**
+         * Closes the file. A writer closed without finish() leaves a file that will not open.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                deflater.end();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + length - buffer.remaining());
+        }
+        return length;
+    }
+
+    private static void writeMessage(DataOutputStream out, Message message) throws IOException {
+        String[] fields = {message.getId(), message.getSender(), message.getRecipient(), message.getPayload(), message.getHash()};
+        int flags = (message.isSent() ? SENT : 0) | (message.isStored() ? STORED : 0) | (message.isDisregarded() ? DISREGARDED : 0);
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == null) {
+                flags |= 1 << (NULL_FIELDS_SHIFT + i);
+            }
+        }
+        if (message.getDeliverAt() > 0) {
+            flags |= DELIVER_AT;
+        }
+        boolean timestamps = message.getCreatedAt() > 0 || message.getSentAt() > 0;
+        if (timestamps) {
+            flags |= TIMESTAMPS;
+        }
+        out.writeShort(flags);
+        out.writeInt(message.getIndex());
+        if (message.getDeliverAt() > 0) {
+            out.writeLong(message.getDeliverAt());
+        }
+        if (timestamps) {
+            out.writeLong(message.getCreatedAt());
+            out.writeLong(message.getSentAt());
+        }
+        for (String field : fields) {
+            if (field != null) {
+                out.writeUTF(field);
+            }
+        }
+    }
+
+    private int readFlags(DataInputStream in) throws IOException {
+        return version == V1 ? in.readUnsignedByte() : in.readUnsignedShort();
+    }
+
+    private void skipMessage(DataInputStream in) throws IOException {
+        int flags = readFlags(in);
+        in.readInt();
+        if ((flags & DELIVER_AT) != 0) {
+            in.readLong();
+        }
+        if ((flags & TIMESTAMPS) != 0) {
+            in.skipNBytes(16);
+        }
+        for (int i = 0; i < 5; i++) {
+            if ((flags & (1 << (NULL_FIELDS_SHIFT + i))) == 0) {
+                in.skipNBytes(in.readUnsignedShort());
+            }
+        }
+    }
+
+    private Message readMessage(DataInputStream in, PayloadStore payloads) throws IOException {
+        int flags = readFlags(in);
+        int index = in.readInt();
+        long deliverAt = (flags & DELIVER_AT) != 0 ? in.readLong() : 0;
+        long createdAt = 0;
+        long sentAt = 0;
+        if ((flags & TIMESTAMPS) != 0) {
+            createdAt = in.readLong();
+            sentAt = in.readLong();
+        }
+        String[] fields = new String[5];
+        for (int i = 0; i < fields.length; i++) {
+            if ((flags & (1 << (NULL_FIELDS_SHIFT + i))) == 0) {
+                fields[i] = in.readUTF();
+            }
+        }
+        String payload = payloads == null ? fields[3] : payloads.intern(fields[3]);
+        Message message = new Message(fields[0], fields[1], fields[2], payload, index, fields[4],
+                (flags & SENT) != 0, (flags & STORED) != 0, (flags & DISREGARDED) != 0);
+        message.setDeliverAt(deliverAt);
+        message.setTimestamps(createdAt, sentAt);
+        return message;
+    }
+
+    /** @return The number of messages in the file. */
+    public int size() {
+        return size;
+    }
+
+    /** @return The number of compressed blocks. */
+    public int getBlockCount() {
+        return offsets.length;
+    }
+
+    /** @return The number of messages compressed together in each block but the last. */
+    public int getMessagesPerBlock() {
+        return messagesPerBlock;
+    }
+
+    /**
+     * Reads the message at a position, decompressing only the block that holds it.
+     *
+     * @param position 0 for the first message in the file.
+     */
+    public Message get(int position) throws IOException {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+        }
+        // Skip the records before it rather than decoding the whole block
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(blockBytes(position / messagesPerBlock)));
+        for (int i = position % messagesPerBlock; i > 0; i--) {
+            skipMessage(in);
+        }
+        return readMessage(in, null);
+    }
+
+    /**
+     * Finds the first message with the given message index, reading only blocks whose
+     * index range includes it.
+     *
+     * @return The message, or null if there is none.
+     */
+    public Message findByIndex(int messageIndex) throws IOException {
+        for (int block = 0; block < offsets.length; block++) {
+            if (messageIndex < minIndexes[block] || messageIndex > maxIndexes[block]) {
+                continue;
+            }
+            for (Message message : decodeBlock(block, null)) {
+                if (message.getIndex() == messageIndex) {
+                    return message;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads every message in order.
+     *
+     * @param payloads Shares repeated payloads between messages, or null.
+     */
+    public ArrayList<Message> readAll(PayloadStore payloads) throws IOException {
+        ArrayList<Message> messages = new ArrayList<>(size);
+        for (int block = 0; block < offsets.length; block++) {
+            messages.addAll(decodeBlock(block, payloads));
+        }
+        return messages;
+    }
+
+    /**
+     * Hands every message to the consumer in order, decompressing one block at a time,
+     * so the whole file is never on the heap at once.
+     */
+    public void forEach(Consumer<Message> consumer) throws IOException {
+        for (int block = 0; block < offsets.length; block++) {
+            decodeBlock(block, null).forEach(consumer);
+        }
+    }
+
+    private byte[] blockBytes(int block) throws IOException {
+        if (block != cachedBlock) {
+            cachedBlockBytes = inflateBlock(block);
+            cachedBlock = block;
+        }
+        return cachedBlockBytes;
+    }
+
+    private List<Message> decodeBlock(int block, PayloadStore payloads) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(blockBytes(block)));
+        ArrayList<Message> messages = new ArrayList<>(counts[block]);
+        try {
+            for (int i = 0; i < counts[block]; i++) {
+                messages.add(readMessage(in, payloads));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Block " + block + " of " + file + " holds fewer messages than its index says", e);
+        }
+        return messages;
+    }
+
+    /**
+     * Reads and decompresses one block, checking it against the length and CRC-32 in the index.
+     */
+    private byte[] inflateBlock(int block) throws IOException {
+        ByteBuffer compressed = read(offsets[block], compressedLengths[block]);
+        byte[] raw = new byte[lengths[block]];
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, compressedLengths[block]);
+        try {
+            int length = 0;
+            while (length < raw.length) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != raw.length) {
+                throw new IOException("Block " + block + " of " + file + " is shorter than its index says");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Block " + block + " of " + file + " is damaged", e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        if ((int) crc.getValue() != checksums[block]) {
+            throw new IOException("Block " + block + " of " + file + " fails its checksum");
+        }
+        return raw;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(file + " ends before byte " + (position + length));
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    /**
+     * Converts a messages.json file to a segment file.
+     *
+     * Usage: SegmentFile <messages.json> <messages.seg>
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: SegmentFile <messages.json> <messages.seg>");
+            System.exit(2);
+        }
+        ArrayList<Message> messages = MessageManager.loadAllMessages(args[0]);
+        long bytes = write(Path.of(args[1]), messages);
+        System.out.printf("Wrote %d messages to %s: %,d KB (was %,d KB)%n", messages.size(), args[1],
+                bytes / 1024, Files.size(Path.of(args[0])) / 1024);
+    }
+}
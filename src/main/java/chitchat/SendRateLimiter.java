@@ -0,0 +1,227 @@
+package chitchat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A per-sender token bucket on the send path, so one sender cannot flood the store.
+ *
+ * Each sender's bucket is a single AtomicLong holding its "theoretical arrival time"
+ * (the generic cell rate algorithm, equivalent to a token bucket), updated with one CAS per send.
+ * Buckets live in a ConcurrentHashMap keyed by cell number, whose reads are lock-free and whose
+ * bins are striped, so senders never contend with each other.
+ *
+ * Configured through system properties when using shared():
+ *   chitchat.rateLimit.perSecond   sustained sends per second per sender (default 5)
+ *   chitchat.rateLimit.burst       sends allowed back to back (default 20)
+ *   chitchat.rateLimit.mode        REJECT or DELAY (default REJECT)
+ *   chitchat.rateLimit.maxDelayMs  longest wait in DELAY mode before rejecting (default 1000)
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class SendRateLimiter {
+
+    /**
+     * What to do with a send over the limit.
+     */
+    public enum Mode {
+        /** Refuse it immediately. */
+        REJECT,
+        /** Put it off until a free slot, up to maxDelayMillis away (see acquire()). */
+        DELAY
+    }
+
+    private static SendRateLimiter sharedInstance;
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final Mode mode;
+    private final long maxDelayNanos;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * One sender's bucket and throttle counters.
+     */
+    private static final class Bucket {
+        final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);  // no sends yet
+        final LongAdder allowed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder delayed = new LongAdder();
+        final LongAdder delayNanos = new LongAdder();
+    }
+
+    /**
+     * Throttle metrics for one sender.
+     */
+    public static final class Stats {
+        private final long allowed;
+        private final long rejected;
+        private final long delayed;
+        private final long delayNanos;
+
+        Stats(long allowed, long rejected, long delayed, long delayNanos) {
+            this.allowed = allowed;
+            this.rejected = rejected;
+            this.delayed = delayed;
+            this.delayNanos = delayNanos;
+        }
+
+        public long getAllowed() { return allowed; }
+        public long getRejected() { return rejected; }
+        public long getDelayed() { return delayed; }
+        public long getDelayNanos() { return delayNanos; }
+
+        @Override
+        public String toString() {
+            return String.format("allowed %d, rejected %d, delayed %d (%d ms total)",
+                    allowed, rejected, delayed, delayNanos / 1_000_000);
+        }
+    }
+
+    /**
+     * @param permitsPerSecond Sustained sends per second per sender.
+     * @param burst            How many sends may go back to back before throttling starts.
+     * @param mode             Whether excess sends are rejected or delayed.
+     * @param maxDelayMillis   In DELAY mode, the longest a send may wait before it is rejected.
+     */
+    public SendRateLimiter(double permitsPerSecond, int burst, Mode mode, long maxDelayMillis) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate must be positive and burst at least 1");
+        }
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        this.mode = mode;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+    }
+
+    /**
+     * Returns the limiter shared by the chat window and the servers, configured from system properties.
+     */
+    public static synchronized SendRateLimiter shared() {
+        if (sharedInstance == null) {
+            double perSecond = Double.parseDouble(System.getProperty("chitchat.rateLimit.perSecond", "5"));
+            int burst = Integer.getInteger("chitchat.rateLimit.burst", 20);
+            Mode mode = Mode.valueOf(System.getProperty("chitchat.rateLimit.mode", "REJECT").toUpperCase());
+            long maxDelay = Long.getLong("chitchat.rateLimit.maxDelayMs", 1000L);
+            sharedInstance = new SendRateLimiter(perSecond, burst, mode, maxDelay);
+            SendRateLimiter limiter = sharedInstance;
+            MetricsRegistry.shared().gauge("rateLimit.throttledSenders", () -> limiter.getThrottledSenders().size());
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * A decision on one send: go now, go once a reserved slot comes up, or refused.
+     */
+    public static final class Permit {
+        private static final Permit NOW = new Permit(0, null);
+
+        private final long waitNanos;
+        private final String rejection;
+
+        Permit(long waitNanos, String rejection) {
+            this.waitNanos = waitNanos;
+            this.rejection = rejection;
+        }
+
+        /** A permit to go now, for requests that are not rate limited. */
+        public static Permit now() { return NOW; }
+
+        public boolean isRejected() { return rejection != null; }
+
+        /** The status string for the user, or null if the send may go ahead. */
+        public String getRejection() { return rejection; }
+
+        /** How long the send must wait for its slot, 0 if it may go now. */
+        public long getWaitNanos() { return waitNanos; }
+    }
+
+    /**
+     * Checks whether the sender may send now, never waiting.
+     * In DELAY mode a send that would have to wait is refused with how long to wait, as in REJECT
+     * mode, so callers that cannot put a send off (e.g. the chat window) never block.
+     *
+     * @param sender The sender's cell number.
+     * @return null if the send may go ahead, otherwise a status string for the user.
+     */
+    public String checkSend(String sender) {
+        return checkSend(sender, System.nanoTime());
+    }
+
+    String checkSend(String sender, long now) {
+        return acquire(sender, now, false).getRejection();
+    }
+
+    /**
+     * Reserves the sender's next slot without waiting for it. In DELAY mode a send over the limit
+     * gets the slot after the ones already taken, and the caller runs it once getWaitNanos() has
+     * passed (e.g. from a timer), so a delayed sender never holds up the thread it arrived on.
+     *
+     * @param sender The sender's cell number.
+     */
+    public Permit acquire(String sender) {
+        return acquire(sender, System.nanoTime());
+    }
+
+    Permit acquire(String sender, long now) {
+        return acquire(sender, now, mode == Mode.DELAY);
+    }
+
+    private Permit acquire(String sender, long now, boolean mayWait) {
+        Bucket bucket = buckets.get(sender);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(sender, key -> new Bucket());
+        }
+
+        AtomicLong arrival = bucket.theoreticalArrival;
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long waitNanos = next - now - burstNanos;
+            if (waitNanos > 0 && (!mayWait || waitNanos > maxDelayNanos)) {
+                bucket.rejected.increment();
+                return new Permit(0, "Failed: Too many messages, please wait "
+                        + Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)) + " ms before sending again.");
+            }
+            if (arrival.compareAndSet(current, next)) {
+                bucket.allowed.increment();
+                if (waitNanos <= 0) {
+                    return Permit.NOW;
+                }
+                bucket.delayed.increment();
+                bucket.delayNanos.add(waitNanos);
+                return new Permit(waitNanos, null);
+            }
+        }
+    }
+
+    /**
+     * @return Throttle metrics for one sender (all zero if they have never sent).
+     */
+    public Stats getStats(String sender) {
+        Bucket bucket = buckets.get(sender);
+        if (bucket == null) {
+            return new Stats(0, 0, 0, 0);
+        }
+        return new Stats(bucket.allowed.sum(), bucket.rejected.sum(), bucket.delayed.sum(), bucket.delayNanos.sum());
+    }
+
+    /**
+     * @return Throttle metrics for every sender that has been rejected or delayed at least once.
+     */
+    public Map<String, Stats> getThrottledSenders() {
+        HashMap<String, Stats> throttled = new HashMap<>();
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            Stats stats = getStats(entry.getKey());
+            if (stats.getRejected() > 0 || stats.getDelayed() > 0) {
+                throttled.put(entry.getKey(), stats);
+            }
+        }
+        return throttled;
+    }
+}
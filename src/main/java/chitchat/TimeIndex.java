@@ -0,0 +1,218 @@
+package chitchat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Orders messages by Message.getTimestamp(), so the messages in a window of time are found with
+ * a binary search on a primitive array of times instead of scanning every message.
+ * Sent and stored messages with a timestamp are indexed; disregarded messages and messages saved
+ * before timestamps were kept are not.
+ *
+ * Messages nearly always arrive in time order, so adding one is an append; one that arrives out
+ * of order (e.g. from another instance with a slower clock) is inserted in place.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class TimeIndex {
+
+    public static final long MINUTE_MILLIS = 60_000;
+
+    private long[] times = new long[16];
+    private Message[] messages = new Message[16];
+    private int size;
+
+    /**
+     * The number of messages sent in each minute of a window.
+     */
+    public static final class Throughput {
+        private final long startMillis;
+        private final int[] counts;
+
+        Throughput(long startMillis, int[] counts) {
+            this.startMillis = startMillis;
+            this.counts = counts;
+        }
+
+        /** The start of the first minute, on a minute boundary. */
+        public long getStartMillis() { return startMillis; }
+
+        /** The number of minutes covered. */
+        public int getMinutes() { return counts.length; }
+
+        /** The number of messages sent in the given minute, counting from 0. */
+        public int getCount(int minute) { return counts[minute]; }
+
+        /** When the given minute starts, in epoch milliseconds. */
+        public long getMinuteStart(int minute) { return startMillis + minute * MINUTE_MILLIS; }
+
+        /**
+         * Counts one more message sent at the given time, e.g. an archived one, if it is in the window.
+         */
+        void add(long timeMillis) {
+            long minute = Math.floorDiv(timeMillis - startMillis, MINUTE_MILLIS);
+            if (minute >= 0 && minute < counts.length) {
+                counts[(int) minute]++;
+            }
+        }
+
+        public long getTotal() {
+            long total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Rebuilds the index from a full message list.
+     */
+    public synchronized void build(List<Message> messageList) {
+        size = 0;
+        ensureCapacity(messageList.size());
+        boolean ordered = true;
+        for (Message message : messageList) {
+            if (indexed(message)) {
+                ordered &= size == 0 || times[size - 1] <= message.getTimestamp();
+                times[size] = message.getTimestamp();
+                messages[size++] = message;
+            }
+        }
+        if (!ordered) {
+            sort();
+        }
+        Arrays.fill(messages, size, messages.length, null);
+    }
+
+    /**
+     * Adds a newly sent or stored message.
+     */
+    public synchronized void onMessageAdded(Message message) {
+        if (!indexed(message)) {
+            return;
+        }
+        ensureCapacity(size + 1);
+        long time = message.getTimestamp();
+        int position = size == 0 || times[size - 1] <= time ? size : firstAtOrAfter(time + 1);
+        System.arraycopy(times, position, times, position + 1, size - position);
+        System.arraycopy(messages, position, messages, position + 1, size - position);
+        times[position] = time;
+        messages[position] = message;
+        size++;
+    }
+
+    /**
+     * Takes a deleted message out of the index.
+     */
+    public synchronized void onMessageDeleted(Message message) {
+        if (!indexed(message)) {
+            return;
+        }
+        long time = message.getTimestamp();
+        for (int position = firstAtOrAfter(time); position < size && times[position] == time; position++) {
+            if (messages[position] == message) {
+                System.arraycopy(times, position + 1, times, position, size - position - 1);
+                System.arraycopy(messages, position + 1, messages, position, size - position - 1);
+                messages[--size] = null;
+                return;
+            }
+        }
+    }
+
+    /** @return The number of indexed messages. */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of indexed messages from fromMillis (inclusive) to toMillis (exclusive).
+     */
+    public synchronized int count(long fromMillis, long toMillis) {
+        return toMillis <= fromMillis ? 0 : firstAtOrAfter(toMillis) - firstAtOrAfter(fromMillis);
+    }
+
+    /**
+     * Returns the messages from fromMillis (inclusive) to toMillis (exclusive), oldest first.
+     *
+     * @param limit The maximum number returned, from the start of the window.
+     */
+    public synchronized List<Message> getRange(long fromMillis, long toMillis, int limit) {
+        if (toMillis <= fromMillis || limit <= 0) {
+            return new ArrayList<>();
+        }
+        int start = firstAtOrAfter(fromMillis);
+        int end = Math.min(firstAtOrAfter(toMillis), start + limit);
+        return new ArrayList<>(Arrays.asList(messages).subList(start, end));
+    }
+
+    /**
+     * Counts the sent messages in each minute from the minute holding fromMillis up to toMillis.
+     */
+    public synchronized Throughput getThroughput(long fromMillis, long toMillis) {
+        long start = Math.floorDiv(fromMillis, MINUTE_MILLIS) * MINUTE_MILLIS;
+        if (toMillis <= fromMillis) {
+            return new Throughput(start, new int[0]);
+        }
+        long minutes = Math.floorDiv(toMillis - 1 - start, MINUTE_MILLIS) + 1;
+        if (minutes > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The window is too long to count by the minute");
+        }
+        int[] counts = new int[(int) minutes];
+        int end = firstAtOrAfter(toMillis);
+        for (int i = firstAtOrAfter(fromMillis); i < end; i++) {
+            if (messages[i].isSent()) {
+                counts[(int) ((times[i] - start) / MINUTE_MILLIS)]++;
+            }
+        }
+        return new Throughput(start, counts);
+    }
+
+    private static boolean indexed(Message message) {
+        return (message.isSent() || message.isStored()) && message.getTimestamp() > 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > times.length) {
+            int grown = Math.max(capacity, times.length + (times.length >> 1));
+            times = Arrays.copyOf(times, grown);
+            messages = Arrays.copyOf(messages, grown);
+        }
+    }
+
+    /**
+     * Sorts by time, keeping list order for equal times.
+     */
+    private void sort() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        long[] oldTimes = Arrays.copyOf(times, size);
+        Message[] oldMessages = Arrays.copyOf(messages, size);
+        Arrays.sort(order, (a, b) -> Long.compare(oldTimes[a], oldTimes[b]));
+        for (int i = 0; i < size; i++) {
+            times[i] = oldTimes[order[i]];
+            messages[i] = oldMessages[order[i]];
+        }
+    }
+
+    /**
+     * Binary search for the first position whose time is at least the given time.
+     */
+    private int firstAtOrAfter(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,211 @@
+package chitchat;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel: timers are scheduled, cancelled and expired in O(1), however many
+ * are pending, instead of the O(log n) of a priority queue or a scan over every pending item.
+ *
+ * Time is counted in ticks of a fixed length. The wheel has LEVELS levels of SLOTS slots each; a
+ * slot on level L covers SLOTS^L ticks. A timer goes into the lowest level whose span reaches its
+ * deadline, and each time the current tick crosses a slot boundary on a higher level, that slot's
+ * timers are moved down to where they now belong. Level 0 then holds the timers due on each of the
+ * next SLOTS ticks, and expiring a tick only touches that tick's slot. Deadlines beyond the top
+ * level's span wait in its furthest slot and are placed again when it is reached.
+ *
+ * Each slot is a doubly linked list of its timers, so cancelling is unlinking a node. While the
+ * lower levels are empty, advancing jumps straight to the next boundary where something can
+ * happen, so a long gap between calls does not cost one step per tick.
+ * A TimingWheel is not thread-safe.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+    // The furthest tick the top level can hold, relative to the current tick
+    private static final long MAX_SPAN = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /**
+     * A scheduled item, returned by schedule() so it can be cancelled.
+     */
+    public static final class Timer<T> {
+        private final T item;
+        private final long deadlineMillis;
+        private final long tick;
+        private Timer<T> previous;
+        private Timer<T> next;
+        private int level = -1;
+        private int slot;
+
+        private Timer(T item, long deadlineMillis, long tick) {
+            this.item = item;
+            this.deadlineMillis = deadlineMillis;
+            this.tick = tick;
+        }
+
+        public T getItem() { return item; }
+        public long getDeadlineMillis() { return deadlineMillis; }
+
+        /** @return true until the timer expires or is cancelled. */
+        public boolean isPending() { return level >= 0; }
+    }
+
+    private final long tickMillis;
+    @SuppressWarnings("unchecked")
+    private final Timer<T>[][] slots = (Timer<T>[][]) new Timer<?>[LEVELS][SLOTS];
+    private final int[] levelSizes = new int[LEVELS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis The length of a tick; timers expire up to one tick late.
+     * @param nowMillis  The current time, in the same clock later passed to advanceTo().
+     */
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("A tick must be at least one millisecond");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Schedules an item. A deadline that has already passed expires on the next tick.
+     */
+    public Timer<T> schedule(T item, long deadlineMillis) {
+        // Round up, so a timer never expires before its deadline
+        long tick = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), currentTick + 1);
+        Timer<T> timer = new Timer<>(item, deadlineMillis, tick);
+        insert(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * @return true if the timer was pending and will now never expire.
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (timer == null || !timer.isPending()) {
+            return false;
+        }
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Expires every timer whose tick has been reached by the given time, in deadline order by tick.
+     *
+     * @param expired Receives each expired item. It may schedule or cancel other timers.
+     */
+    public void advanceTo(long nowMillis, Consumer<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                // Nothing can expire on the way, so skip straight there
+                currentTick = targetTick;
+                return;
+            }
+            // Nothing is below this level, so nothing happens until its next slot boundary
+            int level = 0;
+            while (level < LEVELS - 1 && levelSizes[level] == 0) {
+                level++;
+            }
+            if (level > 0) {
+                long boundary = ((currentTick >>> (SLOT_BITS * level)) + 1) << (SLOT_BITS * level);
+                if (boundary > targetTick) {
+                    currentTick = targetTick;
+                    return;
+                }
+                currentTick = boundary - 1;
+            }
+            currentTick++;
+            cascade();
+            Timer<T> timer = slots[0][(int) (currentTick & SLOT_MASK)];
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                unlink(timer);
+                size--;
+                expired.accept(timer.item);
+                timer = next;
+            }
+        }
+    }
+
+    /** @return The number of pending timers. */
+    public int size() {
+        return size;
+    }
+
+    /** @return The length of a tick in milliseconds. */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Moves the timers of every higher-level slot the current tick has just reached down the wheel.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            long levelMask = (1L << (SLOT_BITS * level)) - 1;
+            if ((currentTick & levelMask) != 0) {
+                return;
+            }
+            int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            Timer<T> timer = slots[level][slot];
+            slots[level][slot] = null;
+            while (timer != null) {
+                levelSizes[level]--;
+                Timer<T> next = timer.next;
+                timer.previous = null;
+                timer.next = null;
+                insert(timer);
+                timer = next;
+            }
+        }
+    }
+
+    private void insert(Timer<T> timer) {
+        long delta = timer.tick - currentTick;
+        long placedTick = timer.tick;
+        if (delta > MAX_SPAN) {
+            placedTick = currentTick + MAX_SPAN;
+            delta = MAX_SPAN;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) ((placedTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        Timer<T> head = slots[level][slot];
+        timer.next = head;
+        timer.previous = null;
+        if (head != null) {
+            head.previous = timer;
+        }
+        slots[level][slot] = timer;
+        levelSizes[level]++;
+        timer.level = level;
+        timer.slot = slot;
+    }
+
+    private void unlink(Timer<T> timer) {
+        levelSizes[timer.level]--;
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            slots[timer.level][timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.level = -1;
+    }
+}
@@ -3,30 +3,68 @@ package chitchat;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 public class UserManager {
     private ArrayList<RegistrationLogin> users;
     private static final String USERS_FILE = "users.json";
+    static final String USERNAME_TAKEN = "Username is already taken, please choose another username.\n";
+
+    // The shared directory used by the login screens, loaded once per process
+    private static UserManager sharedInstance;
+
+    private final String usersFile;
+    // Lookup by username, and the raw record each user was loaded from (to detect changed entries)
+    private final HashMap<String, RegistrationLogin> usersByName = new HashMap<>();
+    private final HashMap<String, String> loadedRecords = new HashMap<>();
+    // File state at the last load or save, used to notice external changes
+    private long loadedModified = -1;
+    private long loadedLength = -1;
 
     public UserManager() {
+        this(USERS_FILE);
+    }
+
+    UserManager(String usersFile) {
+        this.usersFile = usersFile;
         users = new ArrayList<>();
         loadUsers();
     }
 
+    /**
+     * Returns the shared user directory, loading users.json the first time it is needed.
+     * @return The process-wide UserManager
+     */
+    public static synchronized UserManager getInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new UserManager();
+        }
+        return sharedInstance;
+    }
+
     /**
      * Registers a new user and saves to JSON.
+     * Users registered by other processes are loaded first, so they are kept when saving
+     * and their usernames cannot be taken again.
      * @param regLogin The RegistrationLogin instance to register
      * @return Feedback from registration
      */
-    public String registerUser(RegistrationLogin regLogin, String username, String password, 
+    public synchronized String registerUser(RegistrationLogin regLogin, String username, String password,
                               String cellphone, String firstName, String lastName) {
+        refreshIfChanged();
+        if (username != null && usersByName.containsKey(username)) {
+            return USERNAME_TAKEN;
+        }
         String feedback = regLogin.registerUser(username, password, cellphone, firstName, lastName);
         if (regLogin.isRegistered()) {
             users.add(regLogin);
+            usersByName.put(regLogin.getUserName(), regLogin);
+            loadedRecords.put(regLogin.getUserName(), toJson(regLogin).toJSONString());
             saveUsers();
         }
         return feedback;
@@ -37,40 +75,85 @@ public class UserManager {
      * @param username The username to search for
      * @return The RegistrationLogin instance or null if not found
      */
-    public RegistrationLogin findUser(String username) {
-        for (RegistrationLogin user : users) {
-            if (user.getUserName() != null && user.getUserName().equals(username)) {
-                return user;
-            }
+    public synchronized RegistrationLogin findUser(String username) {
+        if (username == null) {
+            return null;
+        }
+        return usersByName.get(username);
+    }
+
+    /**
+     * Reloads users.json if another process has changed it since it was last read or written.
+     * Only a file stat is done when nothing changed, and only changed records are re-validated.
+     * @return true if the file had changed and was reloaded
+     */
+    public synchronized boolean refreshIfChanged() {
+        File file = new File(usersFile);
+        if (file.lastModified() == loadedModified && file.length() == loadedLength) {
+            return false;
         }
-        return null;
+        loadUsers();
+        return true;
     }
 
     /**
      * Loads users from users.json into the users list.
+     * Users whose record is unchanged since the last load are kept as they are.
      */
     @SuppressWarnings("unchecked")
     private void loadUsers() {
+        JfrEvents.UsersLoadEvent event = new JfrEvents.UsersLoadEvent();
+        event.begin();
+        int revalidated = 0;
+        File file = new File(usersFile);
+        loadedModified = file.lastModified();
+        loadedLength = file.length();
+
         JSONParser parser = new JSONParser();
-        try (FileReader reader = new FileReader(USERS_FILE)) {
+        ArrayList<RegistrationLogin> reloaded = new ArrayList<>();
+        HashMap<String, RegistrationLogin> reloadedByName = new HashMap<>();
+        HashMap<String, String> reloadedRecords = new HashMap<>();
+        try (FileReader reader = new FileReader(file)) {
             JSONArray usersArray = (JSONArray) parser.parse(reader);
             for (Object obj : usersArray) {
                 JSONObject userJson = (JSONObject) obj;
-                RegistrationLogin user = new RegistrationLogin();
-                String feedback = user.registerUser(
-                    (String) userJson.get("username"),
-                    (String) userJson.get("password"),
-                    (String) userJson.get("cellphone"),
-                    (String) userJson.get("firstName"),
-                    (String) userJson.get("lastName")
-                );
+                String username = (String) userJson.get("username");
+                String record = userJson.toJSONString();
+
+                RegistrationLogin user = usersByName.get(username);
+                if (user == null || !record.equals(loadedRecords.get(username)) || reloadedByName.containsKey(username)) {
+                    // New or changed record, validate it again
+                    user = new RegistrationLogin();
+                    revalidated++;
+                    user.registerUser(
+                        username,
+                        (String) userJson.get("password"),
+                        (String) userJson.get("cellphone"),
+                        (String) userJson.get("firstName"),
+                        (String) userJson.get("lastName")
+                    );
+                }
                 if (user.isRegistered()) {
-                    users.add(user);
+                    reloaded.add(user);
+                    reloadedByName.putIfAbsent(username, user);
+                    reloadedRecords.putIfAbsent(username, record);
                 }
             }
         } catch (Exception e) {
             // File doesn't exist or is empty, start with empty list
         }
+        users = reloaded;
+        usersByName.clear();
+        usersByName.putAll(reloadedByName);
+        loadedRecords.clear();
+        loadedRecords.putAll(reloadedRecords);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = usersFile;
+            event.userCount = users.size();
+            event.revalidated = revalidated;
+            event.commit();
+        }
     }
 
     /**
@@ -78,22 +161,40 @@ public class UserManager {
      */
     @SuppressWarnings("unchecked")
     private void saveUsers() {
+        JfrEvents.UsersSaveEvent event = new JfrEvents.UsersSaveEvent();
+        event.begin();
         JSONArray usersArray = new JSONArray();
         for (RegistrationLogin user : users) {
             if (user.isRegistered()) {
-                JSONObject userJson = new JSONObject();
-                userJson.put("username", user.getUserName());
-                userJson.put("password", user.getPassword());
-                userJson.put("cellphone", user.getCellPhoneNumber());
-                userJson.put("firstName", user.getFirstName());
-                userJson.put("lastName", user.getLastName());
-                usersArray.add(userJson);
+                usersArray.add(toJson(user));
             }
         }
-        try (FileWriter file = new FileWriter(USERS_FILE)) {
+        try (FileWriter file = new FileWriter(usersFile)) {
             file.write(usersArray.toJSONString());
         } catch (IOException e) {
             e.printStackTrace();
         }
+        // Our own write is not an external change
+        File file = new File(usersFile);
+        loadedModified = file.lastModified();
+        loadedLength = file.length();
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = usersFile;
+            event.userCount = usersArray.size();
+            event.bytesWritten = loadedLength;
+            event.commit();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject toJson(RegistrationLogin user) {
+        JSONObject userJson = new JSONObject();
+        userJson.put("username", user.getUserName());
+        userJson.put("password", user.getPassword());
+        userJson.put("cellphone", user.getCellPhoneNumber());
+        userJson.put("firstName", user.getFirstName());
+        userJson.put("lastName", user.getLastName());
+        return userJson;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+package chitchat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A headless ChitChat server that uses plain blocking sockets with one virtual thread per connection.
+ * It speaks the same ChatProtocol and serves the same ChatService as NioChatServer,
+ * so the two designs can be compared directly.
+ *
+ * @author Kitso Litelu
+ * @version 2025-06-13
+ */
+public class VirtualThreadChatServer implements Closeable {
+
+    private final ChatService service;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile boolean running;
+
+    /**
+     * Binds the server socket. Use port 0 to pick a free port.
+     */
+    public VirtualThreadChatServer(ChatService service, int port) throws IOException {
+        this.service = service;
+        this.serverSocket = new ServerSocket(port, 1024);
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Runs the accept loop on a new daemon thread.
+     */
+    public Thread start() {
+        Thread thread = new Thread(this::run, "chitchat-vt-server");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Accepts connections on the calling thread until close() is called.
+     */
+    public void run() {
+        running = true;
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.submit(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Serves one connection on its own virtual thread, blocking on reads.
+     */
+    private void serve(Socket socket) {
+        ChatService.Session session = service.openSession();
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                ChatProtocol.Frame request = ChatProtocol.read(in);
+                ChatProtocol.Frame response;
+                SendRateLimiter.Permit permit = service.admit(session, request);
+                if (permit.isRejected()) {
+                    response = new ChatProtocol.Frame(ChatProtocol.STATUS_ERROR, permit.getRejection());
+                } else {
+                    // A delayed send waits on this connection's own virtual thread, which holds up no one else
+                    TimeUnit.NANOSECONDS.sleep(permit.getWaitNanos());
+                    response = service.handleAdmitted(session, request);
+                }
+                ChatProtocol.write(out, response.getCode(), response.getFields());
+            }
+        } catch (EOFException | SocketException e) {
+            // Client disconnected
+        } catch (IOException e) {
+            System.err.println("Connection error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            // Shutting down
+            Thread.currentThread().interrupt();
+        } finally {
+            service.closeSession(session);
+        }
+    }
+
+    /**
+     * Stops accepting connections. Open connections end when their clients disconnect.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        connections.shutdown();
+    }
+}
@@ -0,0 +1,54 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for BulkSender broadcasts.
+ */
+public class BulkSenderTest {
+
+    private static final String SENDER = "+27000000000";
+
+    @Test
+    void testValidRecipientsGetContiguousIndexes() {
+        BulkSender.Result result = BulkSender.send(SENDER,
+            List.of("+27834557896", "bad-number", "+27838884567", "+27834557896", "bad-number", "+27834557896"),
+            "Office closed today", 10);
+
+        assertEquals(2, result.getMessages().size());
+        assertEquals(10, result.getMessages().get(0).getIndex());
+        assertEquals(11, result.getMessages().get(1).getIndex());
+        for (Message msg : result.getMessages()) {
+            assertTrue(msg.isSent());
+            assertEquals(msg.createMessageHash(), msg.getHash(), "Each message should carry its own hash.");
+        }
+        // Every copy that was not sent is counted, not one per distinct recipient
+        assertEquals(List.of("bad-number: Failed: Invalid recipient number.",
+                "+27834557896: Skipped: Duplicate recipient.",
+                "bad-number: Failed: Invalid recipient number.",
+                "+27834557896: Skipped: Duplicate recipient."),
+            result.getFailures().stream().map(BulkSender.Failure::toString).toList());
+        assertTrue(result.summary().startsWith("Broadcast: 2 sent, 4 failed"), result.summary());
+    }
+
+    @Test
+    void testInvalidPayloadFailsEveryRecipient() {
+        BulkSender.Result result = BulkSender.send(SENDER, List.of("+27834557896", "+27838884567"), "a".repeat(251), 1);
+        assertTrue(result.getMessages().isEmpty());
+        assertEquals(2, result.getFailures().size());
+        assertEquals("+27838884567", result.getFailures().get(1).getRecipient());
+        assertEquals("Failed: Message is too long (max 250 chars).", result.getFailures().get(1).getReason());
+    }
+
+    @Test
+    void testReadRecipientsFromFile(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("recipients.txt");
+        Files.writeString(file, "# staff\n+27834557896, +27838884567\n\n+27834484567\n");
+        assertEquals(List.of("+27834557896", "+27838884567", "+27834484567"), BulkSender.readRecipients(file));
+    }
+}
@@ -0,0 +1,139 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the change stream MessageStore publishes.
+ */
+public class ChangeStreamTest {
+
+    private static final String SENDER = "+27834557896";
+    private static final String RECIPIENT = "+27838884567";
+
+    @TempDir
+    Path tempDir;
+
+    private String messagesFile() {
+        return tempDir.resolve("messages.json").toString();
+    }
+
+    private static Message sent(String payload, int index) {
+        Message message = new Message(SENDER, RECIPIENT, payload);
+        message.sendMessage(index);
+        return message;
+    }
+
+    private static ChangeStream.Change next(LinkedBlockingQueue<ChangeStream.Change> received) throws InterruptedException {
+        ChangeStream.Change change = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(change, "Timed out waiting for a change.");
+        return change;
+    }
+
+    @Test
+    void testStoreWritesArePublishedInOrder() throws Exception {
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            LinkedBlockingQueue<ChangeStream.Change> received = new LinkedBlockingQueue<>();
+            store.getChangeStream().subscribe("test", 16, received::add);
+            store.load();
+
+            Message hello = sent("Hello", 1);
+            Message draft = new Message(SENDER, RECIPIENT, "Later");
+            draft.storeMessage(2);
+            store.append(List.of(hello, draft));
+            store.delete(hello.getHash());
+
+            ChangeStream.Change reset = next(received);
+            assertEquals(ChangeStream.Type.RESET, reset.getType());
+            ChangeStream.Change appended = next(received);
+            assertEquals(ChangeStream.Type.APPENDED, appended.getType());
+            assertSame(hello, appended.getMessage());
+            ChangeStream.Change stored = next(received);
+            assertEquals(ChangeStream.Type.STORED, stored.getType());
+            assertEquals(draft.getHash(), stored.getHash());
+            ChangeStream.Change deleted = next(received);
+            assertEquals(ChangeStream.Type.DELETED, deleted.getType());
+            assertEquals(hello.getHash(), deleted.getHash());
+            assertNull(deleted.getMessage());
+
+            assertEquals(reset.getSequence() + 3, deleted.getSequence());
+            assertEquals(deleted.getSequence(), store.getChangeStream().getSequence());
+        }
+    }
+
+    @Test
+    void testOtherInstancesChangesArePublishedByPoll() throws Exception {
+        try (MessageStore first = new MessageStore(messagesFile());
+             MessageStore second = new MessageStore(messagesFile())) {
+            first.load();
+            second.load();
+            LinkedBlockingQueue<ChangeStream.Change> received = new LinkedBlockingQueue<>();
+            first.getChangeStream().subscribe("test", 16, received::add);
+
+            Message hello = sent("Hello from two", 1);
+            second.append(List.of(hello));
+            assertTrue(received.isEmpty(), "Nothing is published before the store reads it.");
+
+            first.poll();
+            assertEquals(ChangeStream.Type.APPENDED, next(received).getType());
+            second.delete(hello.getHash());
+            first.poll();
+            ChangeStream.Change deleted = next(received);
+            assertEquals(ChangeStream.Type.DELETED, deleted.getType());
+            assertEquals(hello.getHash(), deleted.getHash());
+
+            second.compact();
+            first.poll();
+            assertEquals(ChangeStream.Type.RESET, next(received).getType());
+        }
+    }
+
+    @Test
+    void testSlowSubscriberIsResetInsteadOfBlockingWriters() throws Exception {
+        try (ChangeStream stream = new ChangeStream(20)) {
+            CountDownLatch release = new CountDownLatch(1);
+            LinkedBlockingQueue<ChangeStream.Change> received = new LinkedBlockingQueue<>();
+            ChangeStream.Subscription slow = stream.subscribe("slow", 2, change -> {
+                received.add(change);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            LinkedBlockingQueue<ChangeStream.Change> fast = new LinkedBlockingQueue<>();
+            stream.subscribe("fast", 100, fast::add);
+
+            stream.added(sent("Message 1", 1));
+            assertEquals(1, next(received).getSequence());
+            // The subscriber is stuck on the first change, so its queue fills up
+            for (int i = 2; i <= 10; i++) {
+                stream.added(sent("Message " + i, i));
+            }
+            assertTrue(slow.getResets() > 0);
+            assertTrue(slow.getBacklog() <= 2);
+            release.countDown();
+
+            // The slow subscriber is told to rebuild and is then given the rest in order
+            ChangeStream.Change change = next(received);
+            while (change.getType() != ChangeStream.Type.RESET) {
+                change = next(received);
+            }
+            long last = change.getSequence();
+            while (last < 10) {
+                change = next(received);
+                assertEquals(last + 1, change.getSequence());
+                last = change.getSequence();
+            }
+            for (int i = 1; i <= 10; i++) {
+                assertEquals(i, next(fast).getSequence(), "A subscriber that keeps up misses nothing.");
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package chitchat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the headless server and its framed protocol.
+ */
+public class ChatServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private NioChatServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        UserManager users = new UserManager(tempDir.resolve("users.json").toString());
+        ChatService service = new ChatService(users, new ArrayList<>(), false, null);
+        server = new NioChatServer(service, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void testRegisterLoginSendAndReport() throws Exception {
+        try (ChatClient client = new ChatClient("localhost", server.getPort())) {
+            assertTrue(client.register("kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu").isOk());
+            assertFalse(client.register("kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu").isOk(),
+                "Registering the same username twice should fail.");
+
+            ChatProtocol.Frame login = client.login("kyl_1", "Passw0rd!");
+            assertTrue(login.isOk());
+            assertEquals("Welcome Kitso Litelu,\nit is great to see you.", login.field(0));
+
+            ChatProtocol.Frame sent = client.send("+27834557896", "Did you get the cake?");
+            assertTrue(sent.isOk());
+            assertEquals("Message sent successfully!", sent.field(0));
+
+            ChatProtocol.Frame report = client.call(ChatProtocol.OP_REPORT_SEARCH_ID, sent.field(1));
+            assertTrue(report.field(0).contains("Did you get the cake?"), "The sent message should be searchable by ID.");
+        }
+    }
+
+    @Test
+    void testRequestsNeedLogin() throws Exception {
+        try (ChatClient client = new ChatClient("localhost", server.getPort())) {
+            ChatProtocol.Frame response = client.send("+27834557896", "Hello");
+            assertFalse(response.isOk());
+            assertEquals("Failed: Please log in first.", response.field(0));
+            assertEquals("Failed: Please log in first.", client.call(ChatProtocol.OP_STATS).field(0));
+        }
+    }
+
+    @Test
+    void testInvalidMessageIsRejected() throws Exception {
+        try (ChatClient client = new ChatClient("localhost", server.getPort())) {
+            client.register("kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu");
+            client.login("kyl_1", "Passw0rd!");
+            ChatProtocol.Frame response = client.send("invalid-number", "Hello");
+            assertFalse(response.isOk());
+            assertEquals("Failed: Invalid recipient number.", response.field(0));
+        }
+    }
+
+    @Test
+    void testLoadGeneratorCompletesAllRequests() throws Exception {
+        LoadGenerator.Result result = LoadGenerator.run("localhost", server.getPort(), 8, 50);
+        assertEquals(400, result.requests());
+        assertEquals(0, result.errors());
+        assertTrue(result.percentileMicros(99) > 0);
+    }
+
+    @Test
+    void testVirtualThreadServerSpeaksTheSameProtocol() throws Exception {
+        UserManager users = new UserManager(tempDir.resolve("vt-users.json").toString());
+        ChatService service = new ChatService(users, new ArrayList<>(), false, null);
+        try (VirtualThreadChatServer vtServer = new VirtualThreadChatServer(service, 0)) {
+            vtServer.start();
+            LoadGenerator.Result result = LoadGenerator.run("localhost", vtServer.getPort(), 8, 50);
+            assertEquals(400, result.requests());
+            assertEquals(0, result.errors());
+            assertEquals(400, service.messageCount(), "Every sent message should reach the shared service.");
+        }
+    }
+
+    @Test
+    void testDelayedSendWaitsWithoutHoldingUpOtherConnections() throws Exception {
+        UserManager users = new UserManager(tempDir.resolve("delay-users.json").toString());
+        SendRateLimiter limiter = new SendRateLimiter(2, 1, SendRateLimiter.Mode.DELAY, 1000);
+        ChatService service = new ChatService(users, new ArrayList<>(), false, limiter);
+        try (NioChatServer delayServer = new NioChatServer(service, 0);
+             ChatClient throttled = new ChatClient("localhost", delayServer.getPort());
+             ChatClient other = new ChatClient("localhost", delayServer.getPort())) {
+            delayServer.start();
+            throttled.register("kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu");
+            throttled.login("kyl_1", "Passw0rd!");
+            other.register("kyl_2", "Passw0rd!", "+27834557896", "Lerato", "Mokoena");
+            other.login("kyl_2", "Passw0rd!");
+            assertTrue(throttled.send("+27834557896", "First").isOk());
+
+            long started = System.nanoTime();
+            CompletableFuture<ChatProtocol.Frame> delayed = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return throttled.send("+27834557896", "Second");
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+            Thread.sleep(50);
+            assertTrue(other.send("+27123456789", "Meanwhile").isOk());
+            assertFalse(delayed.isDone(), "Another connection should be answered while the delayed send waits.");
+
+            assertTrue(delayed.get(5, TimeUnit.SECONDS).isOk(), "The delayed send should go through, not be rejected.");
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            assertTrue(elapsedMillis >= 450, "The send should wait for its slot, about 500 ms, but took " + elapsedMillis + " ms.");
+            assertEquals(1, limiter.getStats("+27123456789").getDelayed());
+            assertEquals(3, service.messageCount());
+        }
+    }
+}
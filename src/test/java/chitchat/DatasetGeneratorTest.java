@@ -0,0 +1,62 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the synthetic dataset generator.
+ */
+public class DatasetGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testGeneratedUsersPassRegistrationRules() throws Exception {
+        Path users = tempDir.resolve("users.json");
+        new DatasetGenerator(42).writeUsers(users, 300);
+
+        UserManager manager = new UserManager(users.toString());
+        for (int i = 0; i < 300; i++) {
+            RegistrationLogin user = manager.findUser(DatasetGenerator.username(i));
+            assertNotNull(user, "Generated user " + i + " should load as a valid user.");
+            assertEquals(DatasetGenerator.cellNumber(i), user.getCellPhoneNumber());
+        }
+    }
+
+    @Test
+    void testGeneratedMessagesLoadWithCorrectHashes() throws Exception {
+        Path messages = tempDir.resolve("messages.json");
+        new DatasetGenerator(42).writeMessages(messages, 2000, 50);
+
+        ArrayList<Message> loaded = MessageManager.loadAllMessages(messages.toString());
+        assertEquals(2000, loaded.size());
+        int sent = 0, stored = 0, disregarded = 0;
+        for (Message msg : loaded) {
+            assertEquals(1, msg.checkCellNumber(msg.getSender()), "Sender should be a valid +27 number.");
+            assertEquals(1, msg.checkCellNumber(msg.getRecipient()), "Recipient should be a valid +27 number.");
+            assertTrue(msg.getPayload().length() <= Message.MAX_PAYLOAD_LENGTH);
+            if (msg.isDisregarded()) {
+                disregarded++;
+                assertEquals("", msg.getHash());
+            } else {
+                if (msg.isSent()) sent++; else stored++;
+                assertEquals(msg.createMessageHash(), msg.getHash());
+            }
+        }
+        assertTrue(sent > stored && stored > disregarded && disregarded > 0, "All three kinds should be present.");
+    }
+
+    @Test
+    void testSameSeedProducesSameFile() throws Exception {
+        Path first = tempDir.resolve("first.json");
+        Path second = tempDir.resolve("second.json");
+        new DatasetGenerator(7).writeMessages(first, 500, 20);
+        new DatasetGenerator(7).writeMessages(second, 500, 20);
+        assertEquals(-1L, Files.mismatch(first, second));
+    }
+}
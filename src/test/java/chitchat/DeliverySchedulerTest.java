@@ -0,0 +1,152 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for "Send Later": scheduling, delivery and schedules surviving a restart.
+ */
+public class DeliverySchedulerTest {
+
+    private static final String SENDER = "+27123456789";
+    private static final String RECIPIENT = "+27834557896";
+
+    @TempDir
+    Path tempDir;
+
+    private String messagesFile() {
+        return tempDir.resolve("messages.json").toString();
+    }
+
+    private ChatService.Session loggedIn(ChatService service) {
+        ChatService.Session session = new ChatService.Session();
+        service.handle(session, new ChatProtocol.Frame(ChatProtocol.OP_REGISTER, "kyl_1", "Passw0rd!", SENDER, "Kitso", "Litelu"));
+        assertTrue(service.handle(session, new ChatProtocol.Frame(ChatProtocol.OP_LOGIN, "kyl_1", "Passw0rd!")).isOk());
+        return session;
+    }
+
+    private static ChatProtocol.Frame sendLater(ChatService service, ChatService.Session session, String payload, long deliverAt) {
+        return service.handle(session, new ChatProtocol.Frame(ChatProtocol.OP_SEND_LATER, RECIPIENT, payload, String.valueOf(deliverAt)));
+    }
+
+    @Test
+    void testScheduledMessageIsSentWhenDue() {
+        UserManager users = new UserManager(tempDir.resolve("users.json").toString());
+        ArrayList<Message> messages = new ArrayList<>();
+        ChatService service = new ChatService(users, messages, false, null);
+        ChatService.Session session = loggedIn(service);
+        long now = System.currentTimeMillis();
+
+        ChatProtocol.Frame scheduled = sendLater(service, session, "Happy birthday!", now + 60_000);
+        assertTrue(scheduled.isOk(), scheduled.field(0));
+        assertFalse(sendLater(service, session, "", now + 60_000).isOk(), "It is validated like a send.");
+        assertEquals(1, service.scheduledCount());
+        assertTrue(messages.get(0).isScheduled());
+
+        service.deliverDue(now + 59_000);
+        assertTrue(messages.get(0).isStored(), "Not due yet.");
+
+        service.deliverDue(now + 60_100);
+        assertEquals(1, messages.size());
+        Message sent = messages.get(0);
+        assertTrue(sent.isSent());
+        assertEquals(scheduled.field(1), sent.getId(), "The sent copy keeps the message id.");
+        assertEquals(0, sent.getDeliverAt());
+        assertEquals(sent.createMessageHash(), sent.getHash());
+        assertEquals(0, service.scheduledCount());
+    }
+
+    @Test
+    void testDeletedScheduledMessageIsNotSent() {
+        UserManager users = new UserManager(tempDir.resolve("users.json").toString());
+        ArrayList<Message> messages = new ArrayList<>();
+        ChatService service = new ChatService(users, messages, false, null);
+        ChatService.Session session = loggedIn(service);
+        long now = System.currentTimeMillis();
+
+        ChatProtocol.Frame scheduled = sendLater(service, session, "Never mind", now + 1_000);
+        service.handle(session, new ChatProtocol.Frame(ChatProtocol.OP_REPORT_DELETE_HASH, scheduled.field(2)));
+        assertEquals(0, service.scheduledCount());
+        service.deliverDue(now + 5_000);
+        assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    void testSchedulesSurviveARestartAndAreDeliveredOnce() throws Exception {
+        UserManager users = new UserManager(tempDir.resolve("users.json").toString());
+        long now = System.currentTimeMillis();
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            ChatService service = new ChatService(users, store, null);
+            ChatService.Session session = loggedIn(service);
+            assertTrue(sendLater(service, session, "See you tomorrow", now + 3_600_000).isOk());
+            assertTrue(sendLater(service, session, "See you next year", now + 365L * 24 * 3_600_000).isOk());
+            service.flush();
+            store.compact();
+        }
+
+        // Two instances start from the same history; each schedules both messages
+        try (MessageStore firstStore = new MessageStore(messagesFile());
+             MessageStore secondStore = new MessageStore(messagesFile())) {
+            ChatService first = new ChatService(users, firstStore, null);
+            ChatService second = new ChatService(users, secondStore, null);
+            assertEquals(2, first.scheduledCount());
+            assertEquals(2, second.scheduledCount());
+
+            first.deliverDue(now + 3_700_000);
+            second.deliverDue(now + 3_700_000);
+            assertEquals(1, first.scheduledCount());
+        }
+
+        List<Message> all = new MessageStore(messagesFile()).load();
+        assertEquals(2, all.size(), "The message is replaced, not copied, and only delivered once.");
+        assertEquals(1, all.stream().filter(Message::isSent).count());
+        assertEquals(1, all.stream().filter(Message::isScheduled).count());
+    }
+
+    @Test
+    void testReplacingMatchesByHashAndKeepsTheRestInOrder() {
+        ArrayList<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            Message message = new Message(SENDER, RECIPIENT, "Message " + i);
+            if (i == 2 || i == 4) {
+                message.scheduleMessage(i, 1_000);
+            } else {
+                message.sendMessage(i);
+            }
+            messages.add(message);
+        }
+        Message second = messages.get(1);
+        Message fourth = messages.get(3);
+        // The second was reloaded since it was scheduled, so the list holds an equal copy, not the same message
+        Message reloaded = new Message(second.getId(), SENDER, RECIPIENT, second.getPayload(), 2, second.getHash(), false, true, false);
+        messages.set(1, reloaded);
+
+        List<Message> due = DeliveryScheduler.stillScheduled(List.of(second, fourth, messages.get(0)), messages::contains);
+        assertEquals(List.of(fourth), due, "Only a scheduled message still in the list is kept.");
+
+        Message secondCopy = DeliveryScheduler.deliveredCopy(second, 6);
+        Message fourthCopy = DeliveryScheduler.deliveredCopy(fourth, 7);
+        assertEquals(2, DeliveryScheduler.replaceDelivered(messages, List.of(second, fourth), List.of(secondCopy, fourthCopy)));
+        assertEquals(List.of("Message 1", "Message 3", "Message 5", "Message 2", "Message 4"),
+                messages.stream().map(Message::getPayload).toList());
+        assertSame(fourthCopy, messages.get(4));
+        assertEquals(0, DeliveryScheduler.replaceDelivered(messages, List.of(fourth), List.of(fourthCopy)));
+    }
+
+    @Test
+    void testDeliveryTimeIsKeptInSegmentFiles() throws Exception {
+        Message message = new Message(SENDER, RECIPIENT, "Later");
+        message.scheduleMessage(1, 1_750_000_000_000L);
+        Path segment = tempDir.resolve("messages" + SegmentFile.FILE_SUFFIX);
+        SegmentFile.write(segment, List.of(message, new Message(SENDER, RECIPIENT, "Plain")));
+        try (SegmentFile file = SegmentFile.open(segment)) {
+            assertEquals(1_750_000_000_000L, file.get(0).getDeliverAt());
+            assertTrue(file.get(0).isScheduled());
+            assertEquals(0, file.get(1).getDeliverAt());
+        }
+    }
+}
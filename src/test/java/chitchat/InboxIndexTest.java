@@ -0,0 +1,124 @@
+package chitchat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the per-recipient InboxIndex.
+ */
+public class InboxIndexTest {
+
+    private static final String SENDER = "+27000000000";
+    private static final String RECIPIENT = "+27838884567";
+
+    @TempDir
+    Path tempDir;
+
+    private ArrayList<Message> messages;
+    private InboxIndex inbox;
+
+    @BeforeEach
+    void setUp() {
+        messages = new ArrayList<>();
+        add(RECIPIENT, "First", true);
+        add(RECIPIENT, "Stored only", false);
+        add("+27834557896", "Someone else", true);
+        add(RECIPIENT, "Second", true);
+        inbox = new InboxIndex(cursorsFile());
+        inbox.build(messages);
+    }
+
+    private String cursorsFile() {
+        return tempDir.resolve("inbox_cursors.json").toString();
+    }
+
+    private Message add(String recipient, String payload, boolean send) {
+        Message msg = new Message(SENDER, recipient, payload);
+        if (send) {
+            msg.sendMessage(messages.size() + 1);
+        } else {
+            msg.storeMessage(messages.size() + 1);
+        }
+        messages.add(msg);
+        return msg;
+    }
+
+    @Test
+    void testOnlySentMessagesAreDelivered() {
+        assertEquals(2, inbox.size(RECIPIENT), "Stored messages should not appear in the inbox.");
+        assertEquals(2, inbox.unreadCount(RECIPIENT));
+        assertEquals(0, inbox.size("+27999999999"));
+    }
+
+    @Test
+    void testNewestFirstPaging() {
+        List<Message> page = inbox.getNewest(RECIPIENT, 0, 1);
+        assertEquals(1, page.size());
+        assertEquals("Second", page.get(0).getPayload());
+        assertEquals("First", inbox.getNewest(RECIPIENT, 1, 10).get(0).getPayload());
+    }
+
+    @Test
+    void testNewMessagesAreUnreadAfterMarkAllRead() {
+        inbox.markAllRead(RECIPIENT);
+        assertEquals(0, inbox.unreadCount(RECIPIENT));
+
+        Message msg = add(RECIPIENT, "Third", true);
+        inbox.onMessageAdded(msg);
+        assertEquals(1, inbox.unreadCount(RECIPIENT));
+        assertTrue(inbox.isUnread(RECIPIENT, 0));
+        assertFalse(inbox.isUnread(RECIPIENT, 1));
+    }
+
+    @Test
+    void testDeletingKeepsTheRestOfTheInboxAndReadCursor() {
+        inbox.markAllRead(RECIPIENT);
+        Message third = add(RECIPIENT, "Third", true);
+        inbox.onMessageAdded(third);
+
+        // Deleting from the front of the list moves every later message down a position
+        Message first = messages.remove(0);
+        inbox.onMessageDeleted(first);
+        assertEquals(2, inbox.size(RECIPIENT));
+        assertEquals(1, inbox.unreadCount(RECIPIENT), "A read message was deleted, the unread one is still unread.");
+        List<Message> page = inbox.getNewest(RECIPIENT, 0, 10);
+        assertEquals("Third", page.get(0).getPayload());
+        assertEquals("Second", page.get(1).getPayload());
+        assertTrue(inbox.isUnread(RECIPIENT, 0));
+
+        inbox.onMessageDeleted(third);
+        assertEquals(0, inbox.unreadCount(RECIPIENT));
+        assertEquals("Second", inbox.getNewest(RECIPIENT, 0, 10).get(0).getPayload());
+    }
+
+    @Test
+    void testReadCursorSurvivesRebuild() {
+        inbox.markAllRead(RECIPIENT);
+        add(RECIPIENT, "Third", true);
+
+        InboxIndex reopened = new InboxIndex(cursorsFile());
+        reopened.build(messages);
+        assertEquals(3, reopened.size(RECIPIENT));
+        assertEquals(1, reopened.unreadCount(RECIPIENT), "Only the message after the saved cursor should be unread.");
+    }
+
+    @Test
+    void testCursorsAreReplacedWholeAndATruncatedFileIsIgnored() throws Exception {
+        inbox.markAllRead(RECIPIENT);
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(Path.of(cursorsFile())), files.toList(), "No temporary file should be left behind.");
+        }
+
+        Files.writeString(Path.of(cursorsFile()), "{\"" + RECIPIENT + "\":");
+        InboxIndex reopened = new InboxIndex(cursorsFile());
+        reopened.build(messages);
+        assertEquals(2, reopened.unreadCount(RECIPIENT), "A damaged cursor file should leave every message unread.");
+    }
+}
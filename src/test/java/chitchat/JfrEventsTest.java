@@ -0,0 +1,62 @@
+package chitchat;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the custom Flight Recorder events.
+ */
+public class JfrEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPersistenceAndReportEventsAreRecorded() throws Exception {
+        String messagesFile = tempDir.resolve("messages.json").toString();
+        ArrayList<Message> messages = new ArrayList<>();
+        Message message = new Message("+27834557896", "+27838884567", "Did you get the cake?");
+        message.sendMessage(1);
+        messages.add(message);
+
+        Path dump = tempDir.resolve("test.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(JfrEvents.MessagesSaveEvent.class);
+            recording.enable(JfrEvents.MessagesLoadEvent.class);
+            recording.enable(JfrEvents.ReportEvent.class);
+            recording.start();
+            MessageManager.saveAllMessages(messages, messagesFile);
+            new ReportManager(MessageManager.loadAllMessages(messagesFile)).generateFullReport();
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        RecordedEvent save = find(events, "chitchat.MessagesSave");
+        assertEquals(1, save.getInt("messageCount"));
+        assertTrue(save.getLong("bytesWritten") > 0);
+        assertEquals(1, find(events, "chitchat.MessagesLoad").getInt("messageCount"));
+        assertEquals("full", find(events, "chitchat.Report").getString("report"));
+    }
+
+    @Test
+    void testBundledSettingsCanStartARecording() throws Exception {
+        try (Recording recording = JfrEvents.startRecording(tempDir.resolve("settings.jfr"))) {
+            assertEquals("true", recording.getSettings().get("chitchat.Login#enabled"));
+            assertEquals("1 ms", recording.getSettings().get("chitchat.Report#threshold"));
+            recording.setDumpOnExit(false);
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).findFirst()
+                .orElseThrow(() -> new AssertionError("No " + name + " event was recorded."));
+    }
+}
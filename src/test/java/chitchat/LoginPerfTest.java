@@ -0,0 +1,45 @@
+package chitchat;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Time and allocation budgets for 100k logins against generated users.
+ * Run with mvn -P perf test.
+ */
+public class LoginPerfTest {
+
+    private static final int USERS = 10_000;
+    private static final int LOGINS = 100_000;
+
+    @TempDir
+    static Path dataDir;
+
+    private static UserManager userManager;
+
+    @BeforeAll
+    static void generateUsers() throws Exception {
+        Path usersFile = dataDir.resolve("users.json");
+        new DatasetGenerator(5121).writeUsers(usersFile, USERS);
+        userManager = new UserManager(usersFile.toString());
+    }
+
+    @Test
+    void testHundredThousandLogins() {
+        PerfBudget.assertWithinBudget("login", 3, () -> {
+            int granted = 0;
+            for (int i = 0; i < LOGINS; i++) {
+                RegistrationLogin user = userManager.findUser(DatasetGenerator.username(i % USERS));
+                // The wrong password every tenth attempt, so both outcomes are measured
+                String password = i % 10 == 0 ? "Wrong!123" : user.getPassword();
+                if (user.loginUser(user.getUserName(), password)) {
+                    granted++;
+                }
+            }
+            assertEquals(LOGINS - LOGINS / 10, granted);
+        });
+    }
+}
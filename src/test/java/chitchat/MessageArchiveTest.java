@@ -0,0 +1,165 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for archiving old messages with a RetentionPolicy.
+ */
+public class MessageArchiveTest {
+
+    private static final String SENDER = "+27834557896";
+    private static final String RECIPIENT = "+27838884567";
+    private static final String OTHER = "+27830000000";
+
+    @TempDir
+    Path tempDir;
+
+    private String messagesFile() {
+        return tempDir.resolve("messages.json").toString();
+    }
+
+    private static Message sent(String recipient, String payload, int index) {
+        Message message = new Message(SENDER, recipient, payload);
+        message.sendMessage(index);
+        return message;
+    }
+
+    /**
+     * Writes 30 sent messages, every third one to OTHER, and returns them in order.
+     */
+    private ArrayList<Message> writeHistory() {
+        ArrayList<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            messages.add(sent(i % 3 == 0 ? OTHER : RECIPIENT, "Message number " + i, i));
+        }
+        // The longest message is old, so only the archive summary knows it
+        messages.set(1, sent(RECIPIENT, "The longest message of them all, sent long ago", 2));
+        MessageManager.saveAllMessages(messages, messagesFile());
+        return messages;
+    }
+
+    @Test
+    void testParseRetention() {
+        assertEquals("count:500,batch:1000", RetentionPolicy.parse("count:500").toString());
+        assertEquals("age:100,batch:10", RetentionPolicy.parse(" age:100 , batch:10 ").toString());
+        assertThrows(IllegalArgumentException.class, () -> RetentionPolicy.parse("size:10"));
+        assertThrows(IllegalArgumentException.class, () -> RetentionPolicy.parse("count:ten"));
+
+        ArrayList<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            messages.add(sent(RECIPIENT, "Message " + i, i));
+        }
+        assertEquals(20, RetentionPolicy.keepNewest(10, 5).archiveCount(messages));
+        assertEquals(0, RetentionPolicy.keepNewest(10, 25).archiveCount(messages), "Less than a batch is due.");
+        assertEquals(25, RetentionPolicy.keepIndexesWithin(5, 1).archiveCount(messages));
+        assertEquals(0, RetentionPolicy.KEEP_ALL.archiveCount(messages));
+    }
+
+    @Test
+    void testLoadArchivesOldMessagesAndReportsStillSeeThem() throws Exception {
+        ArrayList<Message> history = writeHistory();
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            store.setRetentionPolicy(RetentionPolicy.keepNewest(10, 5));
+            ArrayList<Message> hot = store.load();
+            assertEquals(10, hot.size());
+            assertEquals(21, hot.get(0).getIndex());
+            assertEquals(10, MessageManager.loadAllMessages(messagesFile()).size(), "messages.json keeps only hot messages.");
+
+            MessageArchive.Summary summary = store.getArchive().getSummary();
+            assertEquals(20, summary.getMessageCount());
+            assertEquals(1, summary.getMinIndex());
+            assertEquals(20, summary.getMaxIndex());
+            assertEquals(30, store.getMaxIndex());
+
+            ReportManager reports = new ReportManager(hot, null, store);
+            String full = reports.getSentMessagesDetails();
+            for (Message message : history) {
+                assertTrue(full.contains(message.getPayload()), "Missing " + message.getPayload());
+            }
+            assertTrue(reports.findLongestMessage().contains("sent long ago"));
+            assertTrue(reports.searchMessageById(history.get(4).getId()).contains("Message number 5"));
+            assertTrue(reports.searchMessageById(history.get(24).getId()).contains("Message number 25"));
+            String toOther = reports.searchMessagesByRecipient(OTHER);
+            assertTrue(toOther.contains("Message number 3\"") && toOther.contains("Message number 30"));
+
+            // The sketch reports combine the archive summary's sketches, read back from its file
+            assertEquals(20, new MessageArchive(messagesFile()).getSummary().getSketches().getSentCount());
+            assertTrue(reports.getPayloadLengthPercentiles().contains("Over 30 sent messages."), reports.getPayloadLengthPercentiles());
+            String top = reports.getTopRecipients(2);
+            assertTrue(top.contains(RECIPIENT + "  about 20 messages") && top.contains(OTHER + "  about 10 messages"), top);
+            assertTrue(reports.getDistinctRecipients(SENDER).contains("about 2 distinct"));
+        }
+    }
+
+    @Test
+    void testConversationPagesContinueIntoTheArchive() throws Exception {
+        writeHistory();
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            store.setRetentionPolicy(RetentionPolicy.keepNewest(10, 5));
+            ReportManager reports = new ReportManager(store.load(), null, store);
+
+            // 20 messages to RECIPIENT: 6 hot and 14 archived, so the second page spans both tiers
+            List<Integer> seen = new ArrayList<>();
+            int cursor = 0;
+            do {
+                ConversationIndex.Page page = reports.getConversationPage(SENDER, RECIPIENT, cursor, 6);
+                page.getMessages().forEach(message -> seen.add(message.getIndex()));
+                cursor = page.getNextCursor();
+            } while (cursor > 0);
+
+            assertEquals(20, seen.size());
+            for (int i = 1; i < seen.size(); i++) {
+                assertTrue(seen.get(i) < seen.get(i - 1), "Pages go from newest to oldest.");
+            }
+            assertEquals(1, seen.get(seen.size() - 1));
+        }
+    }
+
+    @Test
+    void testDeleteArchivedMessage() throws Exception {
+        ArrayList<Message> history = writeHistory();
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            store.setRetentionPolicy(RetentionPolicy.keepNewest(10, 5));
+            ArrayList<Message> hot = store.load();
+            ReportManager reports = new ReportManager(hot, null, store);
+
+            String result = reports.deleteMessageByHash(history.get(3).getHash());
+            assertTrue(result.endsWith(ReportManager.DELETED_FROM_ARCHIVE), result);
+            assertEquals(10, hot.size(), "The hot list is unchanged.");
+            assertEquals(19, store.getArchive().getSummary().getMessageCount());
+            assertNull(store.getArchive().findByHash(history.get(3).getHash()));
+            assertTrue(reports.deleteMessageByHash(history.get(3).getHash()).contains("not found"));
+            assertTrue(reports.getPayloadLengthPercentiles().contains("Over 29 sent messages."));
+        }
+    }
+
+    @Test
+    void testSummarySkipsTheArchiveAndLeftoverCopiesAreDropped() throws Exception {
+        ArrayList<Message> history = writeHistory();
+        MessageArchive archive = new MessageArchive(messagesFile());
+        archive.append(history.subList(0, 20));
+
+        MessageArchive.Summary summary = archive.getSummary();
+        assertTrue(summary.mightContainId(history.get(0).getId()));
+        assertTrue(summary.mightContainConversation(RECIPIENT, SENDER));
+        assertFalse(summary.mightContainRecipient("+27999999999"));
+        assertTrue(archive.findByRecipient("+27999999999").isEmpty());
+
+        // A missing summary is rebuilt from the segment
+        Files.delete(Path.of(messagesFile() + ".archive.json"));
+        assertEquals(20, new MessageArchive(messagesFile()).getSummary().getMessageCount());
+
+        // messages.json still holds everything, as if compaction stopped after archiving
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            ArrayList<Message> hot = store.load();
+            assertEquals(10, hot.size());
+            assertEquals(21, hot.get(0).getIndex());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package chitchat;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for exporting messages and reports to CSV and JSON lines.
+ */
+public class MessageExporterTest {
+
+    private static final String SENDER = "+27834557896";
+    private static final String RECIPIENT = "+27838884567";
+    private static final String OTHER = "+27830000000";
+
+    @TempDir
+    Path tempDir;
+
+    private static Message sent(String recipient, String payload, int index) {
+        Message message = new Message(SENDER, recipient, payload);
+        message.sendMessage(index);
+        return message;
+    }
+
+    @Test
+    void testCsvQuotesCellsAndFilters() throws Exception {
+        ArrayList<Message> messages = new ArrayList<>();
+        messages.add(sent(RECIPIENT, "Hello, \"friend\"\nSee you", 1));
+        messages.add(sent(OTHER, "Not for the recipient", 2));
+        Message stored = new Message(SENDER, RECIPIENT, "Draft");
+        stored.storeMessage(3);
+        messages.add(stored);
+
+        Path file = tempDir.resolve("out.csv");
+        MessageExporter exporter = new MessageExporter(messages, null);
+        assertEquals(1, exporter.export(MessageExporter.Filter.all().sentOnly().to(RECIPIENT),
+                MessageExporter.Format.CSV, file, null));
+        String csv = Files.readString(file, StandardCharsets.UTF_8);
+        assertTrue(csv.startsWith(MessageExporter.CSV_HEADER + "\n"));
+        assertTrue(csv.contains(",sent," + SENDER + "," + RECIPIENT + ",\"Hello, \"\"friend\"\"\nSee you\","), csv);
+        assertFalse(csv.contains("Draft"));
+
+        assertEquals(3, exporter.export(MessageExporter.Filter.all(), MessageExporter.Format.CSV, file, null));
+        assertEquals(2, exporter.export(MessageExporter.Filter.all().containing("FOR THE"), MessageExporter.Format.CSV, file, null)
+                + exporter.export(MessageExporter.Filter.all().containing("draft"), MessageExporter.Format.CSV, file, null));
+        assertEquals(2, exporter.export(MessageExporter.Filter.all().conversation(RECIPIENT, SENDER),
+                MessageExporter.Format.CSV, file, null));
+        assertFalse(Files.exists(tempDir.resolve("out.csv.part")));
+    }
+
+    @Test
+    void testJsonLinesIncludeArchivedMessagesInOrder() throws Exception {
+        ArrayList<Message> history = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            history.add(sent(i % 3 == 0 ? OTHER : RECIPIENT, "Message number " + i, i));
+        }
+        String messagesFile = tempDir.resolve("messages.json").toString();
+        MessageManager.saveAllMessages(history, messagesFile);
+        try (MessageStore store = new MessageStore(messagesFile)) {
+            store.setRetentionPolicy(RetentionPolicy.keepNewest(10, 5));
+            ArrayList<Message> hot = store.load();
+            ReportManager reports = new ReportManager(hot, null, store);
+
+            Path file = tempDir.resolve("out.jsonl");
+            ArrayList<long[]> updates = new ArrayList<>();
+            long written = reports.newExporter().export(MessageExporter.Filter.all(), MessageExporter.Format.JSONL, file,
+                    (scanned, total, exported) -> updates.add(new long[] {scanned, total, exported}));
+            assertEquals(30, written);
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            assertEquals(30, lines.size());
+            JSONParser parser = new JSONParser();
+            for (int i = 0; i < lines.size(); i++) {
+                Message message = MessageManager.fromJson((JSONObject) parser.parse(lines.get(i)));
+                assertEquals(history.get(i).getHash(), message.getHash());
+                assertEquals(i + 1, message.getIndex());
+            }
+            long[] last = updates.get(updates.size() - 1);
+            assertArrayEquals(new long[] {30, 30, 30}, last);
+
+            // Only OTHER's messages, and the archive is skipped when its summary rules out the recipient
+            assertEquals(10, reports.newExporter().export(MessageExporter.Filter.all().to(OTHER),
+                    MessageExporter.Format.JSONL, file, null));
+            assertEquals(0, reports.newExporter().export(MessageExporter.Filter.all().to("+27000000000"),
+                    MessageExporter.Format.JSONL, file, null));
+        }
+    }
+
+    @Test
+    void testReportTextAndCancelledExports() throws Exception {
+        Path file = tempDir.resolve("report.csv");
+        assertEquals(2, MessageExporter.exportLines("--- Top Recipients ---\n 1. " + RECIPIENT + ", about 2",
+                MessageExporter.Format.CSV, file));
+        assertEquals(List.of("line", "--- Top Recipients ---", "\" 1. " + RECIPIENT + ", about 2\""),
+                Files.readAllLines(file, StandardCharsets.UTF_8));
+
+        ArrayList<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= MessageExporter.PROGRESS_INTERVAL * 2; i++) {
+            messages.add(sent(RECIPIENT, "Message " + i, i));
+        }
+        Path cancelled = tempDir.resolve("cancelled.csv");
+        Files.writeString(cancelled, "previous export");
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedIOException.class, () -> new MessageExporter(messages, null)
+                    .export(MessageExporter.Filter.all(), MessageExporter.Format.CSV, cancelled, null));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals("previous export", Files.readString(cancelled), "A cancelled export leaves the file as it was.");
+        assertFalse(Files.exists(tempDir.resolve("cancelled.csv.part")));
+    }
+}
@@ -0,0 +1,115 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for importing message dumps from other systems.
+ */
+public class MessageImporterTest {
+
+    private static final String SENDER = "+27834557896";
+    private static final String RECIPIENT = "+27838884567";
+
+    @TempDir
+    Path tempDir;
+
+    private String messagesFile() {
+        return tempDir.resolve("messages.json").toString();
+    }
+
+    @Test
+    void testReadCsvRecordHandlesQuotes() throws Exception {
+        BufferedReader reader = new BufferedReader(new StringReader("a,\"b, \"\"c\"\"\nd\",\r\n\"\"\n"));
+        assertEquals(List.of("a", "b, \"c\"\nd", ""), MessageImporter.readCsvRecord(reader));
+        assertEquals(List.of(""), MessageImporter.readCsvRecord(reader));
+        assertNull(MessageImporter.readCsvRecord(reader));
+    }
+
+    @Test
+    void testCsvImportValidatesAndNumbersInBatches() throws Exception {
+        Path dump = tempDir.resolve("dump.csv");
+        StringBuilder csv = new StringBuilder("From,To,Message,Status,Timestamp\n");
+        for (int i = 1; i <= 25; i++) {
+            csv.append(SENDER).append(',').append(RECIPIENT).append(",\"Hello, number ").append(i).append("\",sent,")
+                    .append(1_700_000_000_000L + i).append('\n');
+        }
+        csv.append("0834557896,").append(RECIPIENT).append(",Bad sender,sent,\n");
+        csv.append(SENDER).append(",+2783,Bad recipient,,\n");
+        csv.append(SENDER).append(',').append(RECIPIENT).append(",").append("x".repeat(Message.MAX_PAYLOAD_LENGTH + 1)).append(",,\n");
+        csv.append(SENDER).append(',').append(RECIPIENT).append(",Keep this for later,stored,\n");
+        csv.append(SENDER).append(',').append(RECIPIENT).append(",Ignore me,disregarded,\n");
+        Files.writeString(dump, csv, StandardCharsets.UTF_8);
+
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            store.load();
+            store.append(List.of(sent("Already here", 1)));
+            MessageImporter.Result result = new MessageImporter(store, 4).importFile(dump);
+            assertEquals(26, result.getImported());
+            assertEquals(4, result.getRejected());
+            assertEquals("Failed: Invalid sender number.", result.getRejections().get(26L));
+            assertEquals("Failed: Invalid recipient number.", result.getRejections().get(27L));
+            assertEquals("Failed: Message is too long (max 250 chars).", result.getRejections().get(28L));
+            assertEquals("Skipped: Disregarded message.", result.getRejections().get(30L));
+            assertEquals(27, store.getMaxIndex());
+        }
+
+        ArrayList<Message> loaded;
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            loaded = store.load();
+        }
+        assertEquals(27, loaded.size());
+        for (int i = 0; i < loaded.size(); i++) {
+            Message message = loaded.get(i);
+            assertEquals(i + 1, message.getIndex());
+            assertTrue(message.checkMessageID());
+            assertEquals(message.createMessageHash(), message.getHash());
+        }
+        Message first = loaded.get(1);
+        assertEquals("Hello, number 1", first.getPayload());
+        assertTrue(first.isSent());
+        assertEquals(1_700_000_000_001L, first.getSentAt());
+        assertTrue(loaded.get(26).isStored());
+    }
+
+    @Test
+    void testExportedJsonLinesImportAgain() throws Exception {
+        ArrayList<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            messages.add(sent("Message " + i, i));
+        }
+        Path dump = tempDir.resolve("dump.jsonl");
+        new MessageExporter(messages, null).export(MessageExporter.Filter.all(), MessageExporter.Format.JSONL, dump, null);
+        Files.writeString(dump, "not json\n", StandardCharsets.UTF_8, java.nio.file.StandardOpenOption.APPEND);
+
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            store.load();
+            MessageImporter.Result result = new MessageImporter(store).importFile(dump);
+            assertEquals(10, result.getImported());
+            assertEquals("Failed: Not valid JSON.", result.getRejections().get(11L));
+        }
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            ArrayList<Message> loaded = store.load();
+            assertEquals(10, loaded.size());
+            for (int i = 0; i < loaded.size(); i++) {
+                assertEquals(messages.get(i).getId(), loaded.get(i).getId());
+                assertEquals(messages.get(i).getHash(), loaded.get(i).getHash());
+                assertEquals(messages.get(i).getSentAt(), loaded.get(i).getSentAt());
+            }
+        }
+    }
+
+    private static Message sent(String payload, int index) {
+        Message message = new Message(SENDER, RECIPIENT, payload);
+        message.sendMessage(index);
+        return message;
+    }
+}
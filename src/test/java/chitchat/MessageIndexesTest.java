@@ -0,0 +1,93 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the indexes kept up to date from a store's change stream.
+ */
+public class MessageIndexesTest {
+
+    private static final String SENDER = "+27834557896";
+    private static final String RECIPIENT = "+27838884567";
+
+    @TempDir
+    Path tempDir;
+
+    private String messagesFile() {
+        return tempDir.resolve("messages.json").toString();
+    }
+
+    private static Message sent(String payload, int index) {
+        Message message = new Message(SENDER, RECIPIENT, payload);
+        message.sendMessage(index);
+        return message;
+    }
+
+    private void assertSameAsRebuilt(List<Message> messages, MessageIndexes indexes) {
+        MessageIndexes rebuilt = new MessageIndexes(new InboxIndex(tempDir.resolve("rebuilt.json").toString()));
+        rebuilt.build(messages);
+        assertEquals(rebuilt.getConversations().getPage(SENDER, RECIPIENT, 0, 100).getMessages(),
+                indexes.getConversations().getPage(SENDER, RECIPIENT, 0, 100).getMessages());
+        assertEquals(rebuilt.getTimeline().getRange(0, Long.MAX_VALUE, 100), indexes.getTimeline().getRange(0, Long.MAX_VALUE, 100));
+        assertEquals(rebuilt.getSketches().getSentCount(), indexes.getSketches().getSentCount());
+        assertEquals(rebuilt.getNumbers().size(), indexes.getNumbers().size());
+        assertEquals(rebuilt.getInbox().getNewest(RECIPIENT, 0, 100), indexes.getInbox().getNewest(RECIPIENT, 0, 100));
+    }
+
+    @Test
+    void testListenerFollowsEveryStoreChange() throws Exception {
+        try (MessageStore first = new MessageStore(messagesFile());
+             MessageStore second = new MessageStore(messagesFile())) {
+            MessageIndexes indexes = new MessageIndexes(new InboxIndex(tempDir.resolve("cursors.json").toString()));
+            first.getChangeStream().listen(indexes);
+            ArrayList<Message> messages = first.load();
+            second.load();
+
+            second.append(List.of(sent("One from the other", 1), sent("Two from the other", 2)));
+            // Our message's index is taken, so it is renumbered before it is published
+            Message ours = sent("Ours", 1);
+            first.append(List.of(ours)).applyTo(messages);
+            messages.add(ours);
+            assertEquals(3, ours.getIndex());
+            assertSameAsRebuilt(messages, indexes);
+
+            first.delete(messages.get(0).getHash()).applyTo(messages);
+            MessageStore.removeByHash(messages, messages.get(0).getHash());
+            second.delete(ours.getHash());
+            first.poll().applyTo(messages);
+            assertEquals(1, messages.size());
+            assertSameAsRebuilt(messages, indexes);
+
+            second.append(List.of(sent("Three from the other", 4)));
+            second.compact();
+            first.poll().applyTo(messages);
+            assertEquals(2, messages.size());
+            assertSameAsRebuilt(messages, indexes);
+        }
+    }
+
+    @Test
+    void testRenumberedMessageMovesAndIsFoundByItsNewHash() {
+        MessageIndexes indexes = new MessageIndexes();
+        Message early = sent("Early", 1);
+        Message later = sent("Later", 2);
+        indexes.build(List.of(early, later));
+        indexes.onMessageAdded(later);
+        assertEquals(2, indexes.getSketches().getSentCount(), "A message added twice is only counted once.");
+
+        String oldHash = early.getHash();
+        early.renumber(3);
+        indexes.onMessageRenumbered(early, oldHash);
+        assertEquals(List.of(early, later), indexes.getConversations().getPage(SENDER, RECIPIENT, 0, 10).getMessages());
+
+        assertNull(indexes.onMessageDeleted(oldHash));
+        assertSame(early, indexes.onMessageDeleted(early.getHash().toLowerCase()));
+        assertEquals(List.of(later), indexes.getConversations().getPage(SENDER, RECIPIENT, 0, 10).getMessages());
+        assertEquals(1, indexes.getSketches().getSentCount());
+    }
+}
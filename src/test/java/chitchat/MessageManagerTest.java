@@ -0,0 +1,89 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for how MessageManager writes snapshots and recovers damaged ones.
+ */
+public class MessageManagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path messagesFile() {
+        return tempDir.resolve("messages.json");
+    }
+
+    private static ArrayList<Message> messages(int count) {
+        ArrayList<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Message message = new Message("+27834557896", "+27838884567", "Snapshot message number " + i);
+            message.sendMessage(i);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    @Test
+    void testSnapshotRoundTripWithTrailer() throws Exception {
+        MessageManager.saveAllMessages(messages(50), messagesFile().toString());
+        String text = Files.readString(messagesFile(), StandardCharsets.UTF_8);
+        assertTrue(text.matches("(?s)\\[.*\\{\"snapshot\":1,\"messages\":50,\"crc32\":\"[0-9a-f]{8}\"}]"), text);
+
+        ArrayList<Message> loaded = MessageManager.loadAllMessages(messagesFile().toString());
+        assertEquals(50, loaded.size());
+        assertEquals("Snapshot message number 50", loaded.get(49).getPayload());
+        assertFalse(Files.exists(tempDir.resolve("messages.json" + MessageManager.DAMAGED_SUFFIX)));
+
+        MessageManager.saveAllMessages(new ArrayList<>(), messagesFile().toString());
+        assertTrue(MessageManager.loadAllMessages(messagesFile().toString()).isEmpty());
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count(), "No temporary files should be left behind.");
+        }
+    }
+
+    @Test
+    void testTruncatedSnapshotIsSalvagedAndKept() throws Exception {
+        MessageManager.saveAllMessages(messages(50), messagesFile().toString());
+        byte[] bytes = Files.readAllBytes(messagesFile());
+        // What a rewrite in place left behind when the JVM died part way
+        Files.write(messagesFile(), Arrays.copyOf(bytes, bytes.length / 2));
+
+        ArrayList<Message> salvaged = MessageManager.loadAllMessages(messagesFile().toString());
+        assertTrue(salvaged.size() > 20 && salvaged.size() < 30, "Got " + salvaged.size());
+        assertEquals("Snapshot message number 1", salvaged.get(0).getPayload());
+        Path copy = tempDir.resolve("messages.json" + MessageManager.DAMAGED_SUFFIX);
+        assertEquals(bytes.length / 2, Files.size(copy), "The damaged file should be kept as it was.");
+    }
+
+    @Test
+    void testChecksumMismatchAndEmptyFileAreNotAFreshStart() throws Exception {
+        MessageManager.saveAllMessages(messages(10), messagesFile().toString());
+        String text = Files.readString(messagesFile(), StandardCharsets.UTF_8);
+        Files.writeString(messagesFile(), text.replace("number 7", "number 8"), StandardCharsets.UTF_8);
+
+        // Still valid JSON, so every message parses, but the damage is reported and kept
+        assertEquals(10, MessageManager.loadAllMessages(messagesFile().toString()).size());
+        Path copy = tempDir.resolve("messages.json" + MessageManager.DAMAGED_SUFFIX);
+        assertTrue(Files.exists(copy));
+        Files.delete(copy);
+
+        Files.write(messagesFile(), new byte[0]);
+        assertTrue(MessageManager.loadAllMessages(messagesFile().toString()).isEmpty());
+        assertTrue(Files.exists(copy), "An empty messages.json is damage, not a new history.");
+
+        // A file written before snapshots had a trailer still loads
+        Files.writeString(messagesFile(), "[" + MessageManager.toJson(messages(1).get(0)).toJSONString() + "]");
+        Files.delete(copy);
+        assertEquals(1, MessageManager.loadAllMessages(messagesFile().toString()).size());
+        assertFalse(Files.exists(copy));
+    }
+}
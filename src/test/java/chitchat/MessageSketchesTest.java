@@ -0,0 +1,162 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the analytics sketches and the reports answered from them.
+ */
+public class MessageSketchesTest {
+
+    private static final String SENDER = "+27834557896";
+
+    private static String cell(int n) {
+        return String.format("+27%09d", n);
+    }
+
+    private static Message sent(String sender, String recipient, String payload, int index) {
+        Message message = new Message(sender, recipient, payload);
+        message.sendMessage(index);
+        return message;
+    }
+
+    @Test
+    void testHyperLogLogIsExactWhenSmallAndCloseWhenLarge() {
+        HyperLogLog small = new HyperLogLog(10);
+        for (int i = 0; i < 100; i++) {
+            small.add(cell(i % 50));
+        }
+        assertEquals(50, small.estimate());
+
+        HyperLogLog first = new HyperLogLog(14);
+        HyperLogLog second = new HyperLogLog(14);
+        for (int i = 0; i < 200_000; i++) {
+            first.add(cell(i));
+            second.add(cell(i + 100_000));
+        }
+        double error = 3 * first.getStandardError();
+        assertEquals(200_000, first.estimate(), 200_000 * error);
+        first.merge(second);
+        assertEquals(300_000, first.estimate(), 300_000 * error, "A merge counts the union.");
+        assertThrows(IllegalArgumentException.class, () -> first.merge(new HyperLogLog(10)));
+    }
+
+    @Test
+    void testCountMinNeverUnderestimatesAndFindsHeavyHitters() {
+        CountMinSketch sketch = new CountMinSketch(CountMinSketch.DEFAULT_WIDTH, 10);
+        HashMap<String, Long> exact = new HashMap<>();
+        Random random = new Random(5121);
+        for (int i = 0; i < 100_000; i++) {
+            // Roughly Zipf: a few recipients get most of the messages
+            String key = cell((int) Math.pow(random.nextDouble(), 4) * 20_000);
+            sketch.add(key);
+            exact.merge(key, 1L, Long::sum);
+        }
+        int tooFar = 0;
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            long estimate = sketch.estimate(entry.getKey());
+            assertTrue(estimate >= entry.getValue());
+            if (estimate - entry.getValue() > sketch.getErrorBound()) {
+                tooFar++;
+            }
+        }
+        assertTrue(tooFar <= exact.size() * 0.05, tooFar + " estimates beyond the bound");
+
+        List<String> truth = exact.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(5).map(Map.Entry::getKey).toList();
+        List<String> found = sketch.getHeavyHitters(10).stream().map(Map.Entry::getKey).toList();
+        assertTrue(found.containsAll(truth), "Top five " + truth + " in " + found);
+
+        CountMinSketch other = new CountMinSketch(CountMinSketch.DEFAULT_WIDTH, 10);
+        other.add("+27000000001", 1_000_000);
+        sketch.merge(other);
+        assertEquals("+27000000001", sketch.getHeavyHitters(1).get(0).getKey());
+        assertEquals(1_100_000, sketch.getTotal());
+    }
+
+    @Test
+    void testLengthPercentilesAreExact() {
+        ArrayList<Message> messages = new ArrayList<>();
+        Random random = new Random(42);
+        int[] lengths = new int[1_000];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = 1 + random.nextInt(Message.MAX_PAYLOAD_LENGTH);
+            messages.add(sent(SENDER, cell(i % 7), "x".repeat(lengths[i]), i + 1));
+        }
+        Message stored = new Message(SENDER, cell(1), "Not counted");
+        stored.storeMessage(1_001);
+        messages.add(stored);
+        MessageSketches sketches = new MessageSketches();
+        sketches.build(messages);
+
+        Arrays.sort(lengths);
+        assertEquals(1_000, sketches.getSentCount());
+        assertEquals(lengths[499], sketches.getLengthPercentile(50));
+        assertEquals(lengths[989], sketches.getLengthPercentile(99));
+        assertEquals(lengths[999], sketches.getLengthPercentile(100));
+        assertEquals(lengths[0], sketches.getLengthPercentile(0));
+        assertEquals(7, sketches.getDistinctRecipients(SENDER));
+        assertEquals(0, sketches.getDistinctRecipients(cell(1)));
+    }
+
+    @Test
+    void testReportsAndMergedSketches() {
+        ArrayList<Message> messages = new ArrayList<>();
+        messages.add(sent(SENDER, "+27838884567", "Did you get the cake?", 1));
+        messages.add(sent(SENDER, "+27838884567", "It is dinner time!", 2));
+        messages.add(sent(SENDER, "+27834484567", "Ok", 3));
+        ReportManager reports = new ReportManager(messages);
+
+        assertTrue(reports.getDistinctRecipients(SENDER).contains("about 2 distinct"));
+        String overall = reports.getDistinctRecipients("");
+        assertTrue(overall.contains("Distinct senders: about 1") && overall.contains("Distinct recipients: about 2"), overall);
+        assertTrue(reports.getDistinctRecipients("+27000000000").startsWith("No sent messages"));
+        String top = reports.getTopRecipients(5);
+        assertTrue(top.indexOf("+27838884567") < top.indexOf("+27834484567"), top);
+        assertTrue(top.contains("about 2 messages"));
+        assertTrue(reports.getPayloadLengthPercentiles().contains("max   21"), reports.getPayloadLengthPercentiles());
+        assertEquals("No sent messages to rank.", new ReportManager(new ArrayList<>()).getTopRecipients(5));
+
+        MessageSketches other = new MessageSketches();
+        other.onMessageAdded(sent("+27830000000", "+27834484567", "Hello", 4));
+        MessageSketches both = new MessageSketches();
+        both.build(messages);
+        both.merge(other);
+        assertEquals(4, both.getSentCount());
+        assertEquals(2, both.getDistinctSenders());
+        assertEquals(2, both.getDistinctRecipients());
+        assertEquals(2, both.getTopRecipients(1).get(0).getValue());
+    }
+
+    @Test
+    void testEncodedSketchesReadBackAndCombine() throws Exception {
+        MessageSketches sketches = new MessageSketches();
+        for (int i = 0; i < 3000; i++) {
+            sketches.onMessageAdded(sent(cell(i % 40), cell(1000 + i % 2500), "x".repeat(1 + i % 100), i + 1));
+        }
+        MessageSketches decoded = MessageSketches.decode(sketches.encode());
+        assertEquals(sketches.getSentCount(), decoded.getSentCount());
+        assertEquals(sketches.getDistinctSenders(), decoded.getDistinctSenders());
+        assertEquals(sketches.getDistinctRecipients(), decoded.getDistinctRecipients());
+        assertEquals(sketches.getDistinctRecipients(cell(0)), decoded.getDistinctRecipients(cell(0)));
+        assertEquals(sketches.getLengthPercentile(90), decoded.getLengthPercentile(90));
+        assertEquals(sketches.getTopRecipients(5), decoded.getTopRecipients(5));
+        assertThrows(IOException.class, () -> MessageSketches.decode("not sketches"));
+
+        MessageSketches other = new MessageSketches();
+        other.onMessageAdded(sent(cell(0), cell(9999), "Hello", 3001));
+        MessageSketches combined = decoded.combinedWith(other, cell(0));
+        assertEquals(3001, combined.getSentCount());
+        assertEquals(sketches.getDistinctRecipients(cell(0)) + 1, combined.getDistinctRecipients(cell(0)), 2);
+        assertEquals(0, combined.getDistinctRecipients(cell(1)), "Only the given sender is combined.");
+        assertEquals(3000, decoded.getSentCount(), "Combining leaves both parts as they were.");
+    }
+}
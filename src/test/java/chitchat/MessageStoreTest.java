@@ -0,0 +1,218 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the multi-instance MessageStore.
+ */
+public class MessageStoreTest {
+
+    private static final String RECIPIENT = "+27838884567";
+
+    @TempDir
+    Path tempDir;
+
+    private String messagesFile() {
+        return tempDir.resolve("messages.json").toString();
+    }
+
+    private static Message sent(String sender, String payload, int index) {
+        Message message = new Message(sender, RECIPIENT, payload);
+        message.sendMessage(index);
+        return message;
+    }
+
+    @Test
+    void testInstancesSeeEachOthersAppendsAndDeletes() throws Exception {
+        try (MessageStore first = new MessageStore(messagesFile());
+             MessageStore second = new MessageStore(messagesFile())) {
+            ArrayList<Message> firstList = first.load();
+            ArrayList<Message> secondList = second.load();
+
+            Message hello = sent("+27834557896", "Hello from one", 1);
+            assertTrue(first.append(List.of(hello)).isEmpty());
+            firstList.add(hello);
+
+            // Both picked index 1; the second instance's message is renumbered after the first's
+            Message reply = sent("+27830000000", "Hello from two", 1);
+            MessageStore.Changes changes = second.append(List.of(reply));
+            assertEquals(1, changes.getAdded().size());
+            assertEquals("Hello from one", changes.getAdded().get(0).getPayload());
+            assertEquals(2, reply.getIndex());
+            assertEquals(reply.createMessageHash(), reply.getHash());
+            changes.applyTo(secondList);
+            secondList.add(reply);
+
+            changes = first.poll();
+            assertEquals(List.of("Hello from two"), List.of(changes.getAdded().get(0).getPayload()));
+            changes.applyTo(firstList);
+            assertTrue(first.poll().isEmpty(), "Nothing new should be read twice.");
+
+            second.delete(hello.getHash());
+            assertTrue(first.poll().applyTo(firstList), "A deletion moves positions.");
+            assertEquals(1, firstList.size());
+            assertEquals("Hello from two", firstList.get(0).getPayload());
+        }
+
+        // messages.json itself was never rewritten, but a fresh load sees everything
+        assertEquals(1, new MessageStore(messagesFile()).load().size());
+    }
+
+    @Test
+    void testServiceDeletesByTheHashItReturnedAfterARenumber() throws Exception {
+        UserManager users = new UserManager(tempDir.resolve("users.json").toString());
+        try (MessageStore first = new MessageStore(messagesFile());
+             MessageStore second = new MessageStore(messagesFile())) {
+            ChatService service = new ChatService(users, first, null);
+            second.load();
+            ChatService.Session session = new ChatService.Session();
+            service.handle(session, new ChatProtocol.Frame(ChatProtocol.OP_REGISTER, "kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu"));
+            service.handle(session, new ChatProtocol.Frame(ChatProtocol.OP_LOGIN, "kyl_1", "Passw0rd!"));
+
+            ChatProtocol.Frame response = service.handle(session, new ChatProtocol.Frame(ChatProtocol.OP_SEND, RECIPIENT, "Did you get the cake?"));
+            String returnedHash = response.field(2);
+            // The other instance takes index 1 before the batch is written, so ours is renumbered
+            second.append(List.of(sent("+27834557896", "Hello from two", 1)));
+            service.flush();
+
+            ChatProtocol.Frame deleted = service.handle(session, new ChatProtocol.Frame(ChatProtocol.OP_REPORT_DELETE_HASH, returnedHash));
+            assertTrue(deleted.field(0).contains("successfully deleted"), deleted.field(0));
+            service.flush();
+        }
+
+        ArrayList<Message> all = new MessageStore(messagesFile()).load();
+        assertEquals(List.of("Hello from two"), all.stream().map(Message::getPayload).toList());
+    }
+
+    @Test
+    void testCompactionMakesOthersReloadOnce() throws Exception {
+        try (MessageStore first = new MessageStore(messagesFile());
+             MessageStore second = new MessageStore(messagesFile())) {
+            first.load();
+            second.load();
+            first.append(List.of(sent("+27834557896", "Before compaction", 1)));
+            first.compact();
+
+            assertEquals(1, MessageManager.loadAllMessages(messagesFile()).size(),
+                "Compaction should fold the journal into messages.json.");
+            MessageStore.Changes changes = second.poll();
+            assertTrue(changes.isReload());
+            assertEquals(1, changes.getReloaded().size());
+            assertTrue(second.poll().isEmpty());
+        }
+    }
+
+    @Test
+    void testTornRecordIsIgnoredAndOverwritten() throws Exception {
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            store.load();
+            store.append(List.of(sent("+27834557896", "Complete", 1)));
+            // A writer that died half way through a record
+            Files.write(Path.of(messagesFile() + ".journal"), "{\"op\":\"add\",\"id\":\"12".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+            assertTrue(store.poll().isEmpty());
+            store.append(List.of(sent("+27834557896", "After the crash", 2)));
+        }
+        ArrayList<Message> reloaded = new MessageStore(messagesFile()).load();
+        assertEquals(2, reloaded.size());
+        assertEquals("After the crash", reloaded.get(1).getPayload());
+    }
+
+    @Test
+    void testDamagedRecordIsKeptAndStopsWrites() throws Exception {
+        Path journal = Path.of(messagesFile() + ".journal");
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            store.load();
+            store.append(List.of(sent("+27834557896", "Intact", 1)));
+            store.append(List.of(sent("+27834557896", "Flipped on disk", 2)));
+            store.append(List.of(sent("+27834557896", "Written after", 3)));
+        }
+        // Damage a complete record without touching its length or newline
+        String text = Files.readString(journal, StandardCharsets.UTF_8);
+        Files.writeString(journal, text.replace("Flipped on disk", "Flipped on d1sk"), StandardCharsets.UTF_8);
+        byte[] damaged = Files.readAllBytes(journal);
+
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            ArrayList<Message> recovered = store.load();
+            assertEquals(List.of("Intact"), recovered.stream().map(Message::getPayload).toList());
+            assertArrayEquals(damaged, Files.readAllBytes(journal), "Damage before the end is not a torn tail to cut off.");
+            assertArrayEquals(damaged, Files.readAllBytes(Path.of(journal + MessageManager.DAMAGED_SUFFIX)));
+            assertThrows(java.io.IOException.class, () -> store.append(List.of(sent("+27834557896", "Refused", 4))));
+            assertThrows(java.io.IOException.class, store::compact);
+        }
+        assertArrayEquals(damaged, Files.readAllBytes(journal), "Nothing may be written over the records after the damage.");
+    }
+
+    @Test
+    void testJournalIsFoldedIntoSnapshotOnceOverThreshold() throws Exception {
+        Path journal = Path.of(messagesFile() + ".journal");
+        try (MessageStore store = new MessageStore(messagesFile())) {
+            store.setSnapshotThreshold(2048);
+            store.load();
+            for (int i = 1; i <= 200; i++) {
+                store.append(List.of(sent("+27834557896", "Message number " + i, i)));
+                assertTrue(Files.size(journal) < 4096, "The journal should stay near the threshold.");
+            }
+        }
+        assertTrue(MessageManager.loadAllMessages(messagesFile()).size() > 150,
+                "Most messages should already be in the snapshot.");
+        assertEquals(200, new MessageStore(messagesFile()).load().size());
+    }
+
+    @Test
+    void testTwoProcessesAppendingConcurrently() throws Exception {
+        int perProcess = 100;
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classPath = System.getProperty("java.class.path");
+        ArrayList<Process> processes = new ArrayList<>();
+        for (String sender : new String[] {"+27834557896", "+27830000000"}) {
+            processes.add(new ProcessBuilder(javaBin, "-cp", classPath, AppendingProcess.class.getName(),
+                    messagesFile(), sender, String.valueOf(perProcess))
+                    .redirectErrorStream(true)
+                    .redirectOutput(tempDir.resolve(sender + ".log").toFile())
+                    .start());
+        }
+        for (Process process : processes) {
+            assertTrue(process.waitFor(60, TimeUnit.SECONDS), "The appending process should finish.");
+            assertEquals(0, process.exitValue());
+        }
+
+        ArrayList<Message> all = new MessageStore(messagesFile()).load();
+        assertEquals(2 * perProcess, all.size(), "No process should lose the other's messages.");
+        HashSet<Integer> indexes = new HashSet<>();
+        for (Message message : all) {
+            assertTrue(indexes.add(message.getIndex()), "Index " + message.getIndex() + " is used twice.");
+            assertEquals(message.createMessageHash(), message.getHash());
+        }
+    }
+
+    /**
+     * Run in a child JVM: loads the store and appends messages one at a time, polling in between
+     * like a chat window does.
+     */
+    public static final class AppendingProcess {
+        public static void main(String[] args) throws Exception {
+            try (MessageStore store = new MessageStore(args[0])) {
+                ArrayList<Message> messages = store.load();
+                for (int i = 0; i < Integer.parseInt(args[2]); i++) {
+                    store.poll().applyTo(messages);
+                    Message message = sent(args[1], "Message " + i + " from " + args[1], messages.size() + 1);
+                    store.append(List.of(message)).applyTo(messages);
+                    messages.add(message);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the metrics registry and latency histograms.
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    void testPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new MetricsRegistry(false).histogram("test");
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.0, histogram.getP50Micros(), 500 * 0.125);
+        assertEquals(990.0, histogram.getP99Micros(), 990 * 0.125);
+        assertEquals(1000.0, histogram.getMaxMicros());
+        assertEquals(500.5, histogram.getMeanMicros(), 0.001);
+    }
+
+    @Test
+    void testBucketsCoverEveryValue() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.upperBoundOf(bucket) >= value, "Bucket for " + value + " should contain it.");
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.upperBoundOf(bucket - 1) < value, "Previous bucket should not contain " + value);
+            }
+        }
+    }
+
+    @Test
+    void testMetricsAreCreatedOnceByName() {
+        MetricsRegistry registry = new MetricsRegistry(false);
+        registry.counter("sent").increment();
+        registry.counter("sent").add(2);
+        registry.gauge("open", () -> 4);
+        registry.gauge("open", () -> 5);
+
+        assertSame(registry.histogram("send"), registry.histogram("send"));
+        assertEquals(3L, registry.getCounterValues().get("sent"));
+        assertEquals(5L, registry.getGaugeValues().get("open"));
+        assertTrue(registry.generateReport().contains("sent"));
+    }
+
+    @Test
+    void testSendIsRecordedInSharedRegistry() {
+        LatencyHistogram send = MetricsRegistry.shared().histogram("send");
+        long before = send.getCount();
+        new Message("+27834557896", "+27838884567", "Hi there").sendMessage(1);
+        assertEquals(before + 1, send.getCount());
+    }
+}
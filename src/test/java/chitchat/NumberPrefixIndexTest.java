@@ -0,0 +1,94 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the cell number prefix index and the report answered from it.
+ */
+public class NumberPrefixIndexTest {
+
+    private static Message sent(String sender, String recipient, int index) {
+        Message message = new Message(sender, recipient, "Hello");
+        message.sendMessage(index);
+        return message;
+    }
+
+    @Test
+    void testValidPrefixes() {
+        assertTrue(NumberPrefixIndex.isValidPrefix(""));
+        assertTrue(NumberPrefixIndex.isValidPrefix("+2"));
+        assertTrue(NumberPrefixIndex.isValidPrefix("+2782"));
+        assertTrue(NumberPrefixIndex.isValidPrefix("+27821234567"));
+        assertFalse(NumberPrefixIndex.isValidPrefix("+278212345678"));
+        assertFalse(NumberPrefixIndex.isValidPrefix("082"));
+        assertFalse(NumberPrefixIndex.isValidPrefix("+27 82"));
+        assertFalse(NumberPrefixIndex.isValidPrefix(null));
+        assertEquals("+27000000042", NumberPrefixIndex.cell(42));
+        assertEquals(42, NumberPrefixIndex.key("+27000000042"));
+        assertEquals(-1, NumberPrefixIndex.key("0834557896"));
+    }
+
+    @Test
+    void testPrefixPagesMatchAScan() {
+        ArrayList<Message> messages = new ArrayList<>();
+        TreeMap<String, int[]> expected = new TreeMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            String sender = NumberPrefixIndex.cell(820_000_000 + (i % 37) * 1_013);
+            String recipient = NumberPrefixIndex.cell(i % 3 == 0 ? 710_000_000 + i : 820_000_000 + (i % 101) * 977);
+            messages.add(sent(sender, recipient, i + 1));
+            expected.computeIfAbsent(sender, number -> new int[2])[0]++;
+            expected.computeIfAbsent(recipient, number -> new int[2])[1]++;
+        }
+        Message disregarded = new Message(NumberPrefixIndex.cell(829_999_999), NumberPrefixIndex.cell(829_999_998), "Never");
+        disregarded.disregardMessage();
+        messages.add(disregarded);
+
+        NumberPrefixIndex index = new NumberPrefixIndex();
+        // Half built at once, half added one at a time, which must come to the same thing
+        index.build(messages.subList(0, 1_000));
+        messages.subList(1_000, messages.size()).forEach(index::onMessageAdded);
+        assertEquals(expected.size(), index.size());
+
+        for (String prefix : List.of("+27", "+2782", "+27820", "+2771", "+27820001", "+2799")) {
+            List<String> matching = expected.keySet().stream().filter(number -> number.startsWith(prefix)).toList();
+            ArrayList<String> paged = new ArrayList<>();
+            String cursor = null;
+            do {
+                NumberPrefixIndex.Page page = index.getPage(prefix, cursor, 25);
+                assertEquals(matching.size(), page.getMatching());
+                for (NumberPrefixIndex.Entry entry : page.getEntries()) {
+                    paged.add(entry.getNumber());
+                    int[] counts = expected.get(entry.getNumber());
+                    assertEquals(counts[0], entry.getSent(), entry.getNumber());
+                    assertEquals(counts[1], entry.getReceived(), entry.getNumber());
+                }
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            assertEquals(matching, paged, prefix);
+        }
+        assertThrows(IllegalArgumentException.class, () -> index.getPage("082", null, 10));
+    }
+
+    @Test
+    void testSearchNumbersByPrefixReport() {
+        ArrayList<Message> messages = new ArrayList<>();
+        messages.add(sent("+27834557896", "+27838884567", 1));
+        messages.add(sent("+27834557896", "+27838884567", 2));
+        messages.add(sent("+27838884567", "+27721234567", 3));
+        ReportManager reports = new ReportManager(messages);
+
+        String report = reports.searchNumbersByPrefix("+2783", null, 1);
+        assertTrue(report.startsWith("--- Numbers starting with +2783 (2) ---"), report);
+        assertTrue(report.contains("+27834557896  sent      2  received      0"), report);
+        assertTrue(report.endsWith("More numbers: continue after +27834557896\n"), report);
+        assertTrue(reports.searchNumbersByPrefix("+2783", "+27834557896", 1)
+                .contains("+27838884567  sent      1  received      2"));
+        assertEquals("No more numbers start with +2783.", reports.searchNumbersByPrefix("+2783", "+27838884567", 1));
+        assertEquals("No numbers start with +2790.", reports.searchNumbersByPrefix("+2790", null, 10));
+        assertTrue(reports.searchNumbersByPrefix("082", null, 10).startsWith("A number prefix is"));
+    }
+}
@@ -0,0 +1,112 @@
+package chitchat;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for payload deduplication in PayloadStore and messages.json.
+ */
+public class PayloadStoreTest {
+
+    private static final String SENDER = "+27834557896";
+    private static final String RECIPIENT = "+27838884567";
+    private static final String NOTICE = "The office is closed on Friday for the public holiday";
+
+    @TempDir
+    Path tempDir;
+
+    private static Message sent(String payload, int index) {
+        Message message = new Message(SENDER, RECIPIENT, payload);
+        message.sendMessage(index);
+        return message;
+    }
+
+    @Test
+    void testInternSharesEqualPayloads() {
+        PayloadStore store = new PayloadStore();
+        String first = store.intern(new String(NOTICE));
+        String second = store.intern(new String(NOTICE));
+        assertSame(first, second);
+        assertNotSame(first, store.intern("Something else"));
+        assertEquals(2, store.size());
+        assertEquals(1, store.getDuplicateCount());
+        assertEquals(1.5, store.getDedupRatio(), 1e-9);
+        assertSame(first, store.get(PayloadStore.hash64(NOTICE)));
+    }
+
+    @Test
+    void testCollidingPayloadsAreNeverMerged() {
+        // Every payload gets the same hash, so only the content comparison tells them apart
+        PayloadStore store = new PayloadStore(payload -> 42L);
+        String owner = store.intern("First text");
+        String other = store.intern(new String("Second text"));
+        assertEquals("Second text", other);
+        assertSame(owner, store.intern(new String("First text")));
+        assertEquals(1, store.getCollisionCount());
+        assertEquals("First text", store.get(42L));
+    }
+
+    @Test
+    void testCollidingPayloadIsWrittenInFull() {
+        PayloadStore writing = new PayloadStore(payload -> 42L);
+        ArrayList<JSONObject> records = new ArrayList<>();
+        for (String payload : new String[] {NOTICE, NOTICE + " and Monday", NOTICE, NOTICE + " and Monday"}) {
+            String line = MessageManager.toJson(sent(payload, records.size() + 1), writing).toJSONString();
+            records.add((JSONObject) JSONValue.parse(line));
+        }
+        assertNull(records.get(0).get("payloadRef"));
+        assertNull(records.get(1).get("payloadRef"), "A colliding payload must not be written as a reference.");
+        assertEquals("2a", records.get(2).get("payloadRef"));
+        assertNull(records.get(3).get("payloadRef"));
+
+        PayloadStore reading = new PayloadStore(payload -> 42L);
+        for (int i = 0; i < records.size(); i++) {
+            String expected = i % 2 == 0 ? NOTICE : NOTICE + " and Monday";
+            assertEquals(expected, MessageManager.fromJson(records.get(i), reading).getPayload());
+        }
+    }
+
+    @Test
+    void testMessagesFileStoresRepeatedPayloadsOnce() throws Exception {
+        String file = tempDir.resolve("messages.json").toString();
+        ArrayList<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            messages.add(sent(i % 10 == 0 ? "Reply " + i : NOTICE, i));
+        }
+        MessageManager.saveAllMessages(messages, file);
+
+        String json = Files.readString(Path.of(file), StandardCharsets.UTF_8);
+        assertEquals(1, json.split(NOTICE, -1).length - 1, "The repeated payload should be written once.");
+
+        ArrayList<Message> loaded = MessageManager.loadAllMessages(file);
+        assertEquals(50, loaded.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(messages.get(i).getPayload(), loaded.get(i).getPayload());
+            assertEquals(messages.get(i).getHash(), loaded.get(i).getHash());
+        }
+        assertSame(loaded.get(0).getPayload(), loaded.get(1).getPayload());
+    }
+
+    @Test
+    void testFileWithoutReferencesStillLoads() throws Exception {
+        Path file = tempDir.resolve("messages.json");
+        new DatasetGenerator(7, 0.8).writeMessages(file, 500, 20);
+        assertFalse(Files.readString(file).contains("payloadRef"));
+
+        ArrayList<Message> loaded = MessageManager.loadAllMessages(file.toString());
+        assertEquals(500, loaded.size());
+        PayloadStore shared = new PayloadStore();
+        for (Message message : loaded) {
+            assertSame(message.getPayload(), shared.intern(message.getPayload()),
+                "Equal payloads should already share one String after loading.");
+        }
+        assertTrue(shared.getDedupRatio() > 1.5, "Most payloads of a broadcast-heavy dataset repeat.");
+    }
+}
@@ -0,0 +1,95 @@
+package chitchat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures an operation's time and allocation and checks them against budgets for the *PerfTest suite.
+ *
+ * Budgets are read from perf-budgets.properties as &lt;name&gt;.maxMillis and &lt;name&gt;.maxAllocatedMB,
+ * and any of them can be overridden with a system property prefixed with "perf.", e.g. -Dperf.load.maxMillis=5000.
+ * Allocation is counted on the calling thread through com.sun.management.ThreadMXBean.
+ */
+final class PerfBudget {
+
+    private static final Properties BUDGETS = new Properties();
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static {
+        try (InputStream in = PerfBudget.class.getResourceAsStream("/perf-budgets.properties")) {
+            if (in != null) {
+                BUDGETS.load(in);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read perf-budgets.properties", e);
+        }
+    }
+
+    private PerfBudget() {
+    }
+
+    /**
+     * The best (smallest) time and allocation seen over the measured runs.
+     */
+    static final class Measurement {
+        final long nanos;
+        final long allocatedBytes;
+
+        Measurement(long nanos, long allocatedBytes) {
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        long millis() { return nanos / 1_000_000; }
+        long allocatedMB() { return allocatedBytes / (1024 * 1024); }
+    }
+
+    /**
+     * Runs the operation once to warm up, then the given number of times, and keeps the best run.
+     */
+    static Measurement measure(int runs, Runnable operation) {
+        operation.run();
+        long bestNanos = Long.MAX_VALUE;
+        long bestAllocated = Long.MAX_VALUE;
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < runs; i++) {
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+            long started = System.nanoTime();
+            operation.run();
+            long nanos = System.nanoTime() - started;
+            long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            bestNanos = Math.min(bestNanos, nanos);
+            bestAllocated = Math.min(bestAllocated, allocated);
+        }
+        return new Measurement(bestNanos, bestAllocated);
+    }
+
+    /**
+     * Measures the operation and fails if it is over its time or allocation budget.
+     */
+    static Measurement assertWithinBudget(String name, int runs, Runnable operation) {
+        Measurement measurement = measure(runs, operation);
+        long maxMillis = budget(name + ".maxMillis");
+        long maxAllocatedMB = budget(name + ".maxAllocatedMB");
+        System.out.printf("Perf: %-24s %7d ms (budget %d)  %7d MB allocated (budget %d)%n",
+                name, measurement.millis(), maxMillis, measurement.allocatedMB(), maxAllocatedMB);
+
+        assertTrue(measurement.millis() <= maxMillis,
+                name + " took " + measurement.millis() + " ms, over its budget of " + maxMillis + " ms.");
+        assertTrue(measurement.allocatedMB() <= maxAllocatedMB,
+                name + " allocated " + measurement.allocatedMB() + " MB, over its budget of " + maxAllocatedMB + " MB.");
+        return measurement;
+    }
+
+    private static long budget(String key) {
+        String value = System.getProperty("perf." + key, BUDGETS.getProperty(key));
+        if (value == null) {
+            fail("No budget configured for " + key + " in perf-budgets.properties.");
+        }
+        return Long.parseLong(value.trim());
+    }
+}
@@ -0,0 +1,48 @@
+package chitchat;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Time and allocation budgets for MessageManager on 1M generated messages.
+ * Run with mvn -P perf test.
+ */
+public class PersistencePerfTest {
+
+    private static final int MESSAGES = 1_000_000;
+    private static final int USERS = 10_000;
+
+    @TempDir
+    static Path dataDir;
+
+    private static String messagesFile;
+
+    @BeforeAll
+    static void generateMessages() throws Exception {
+        messagesFile = dataDir.resolve("messages.json").toString();
+        new DatasetGenerator(5121).writeMessages(Path.of(messagesFile), MESSAGES, USERS);
+    }
+
+    @Test
+    void testLoadMillionMessages() {
+        PerfBudget.assertWithinBudget("load", 2, () -> {
+            assertEquals(MESSAGES, MessageManager.loadAllMessages(messagesFile).size());
+        });
+    }
+
+    @Test
+    void testSaveAfterOneAppend() {
+        ArrayList<Message> messages = MessageManager.loadAllMessages(messagesFile);
+        String saveFile = dataDir.resolve("saved.json").toString();
+        PerfBudget.assertWithinBudget("saveAfterAppend", 2, () -> {
+            Message message = new Message("+27834557896", "+27838884567", "One more for the budget");
+            message.sendMessage(messages.size() + 1);
+            messages.add(message);
+            MessageManager.saveAllMessages(messages, saveFile);
+        });
+    }
+}
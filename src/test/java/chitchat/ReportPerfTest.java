@@ -0,0 +1,65 @@
+package chitchat;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Time and allocation budgets for ReportManager over 1M generated messages.
+ * Run with mvn -P perf test.
+ */
+public class ReportPerfTest {
+
+    private static final int MESSAGES = 1_000_000;
+    private static final int USERS = 10_000;
+
+    private static ArrayList<Message> messages;
+    private static ReportManager reportManager;
+
+    @BeforeAll
+    static void generateMessages() {
+        messages = new ArrayList<>(MESSAGES);
+        new DatasetGenerator(5121).forEachMessage(MESSAGES, USERS, messages::add);
+        reportManager = new ReportManager(messages);
+    }
+
+    @Test
+    void testFullReport() {
+        PerfBudget.assertWithinBudget("report.full", 3, () -> assertFalse(reportManager.generateFullReport().isEmpty()));
+    }
+
+    @Test
+    void testSentDetails() {
+        PerfBudget.assertWithinBudget("report.sentDetails", 3,
+                () -> assertFalse(reportManager.getSentMessagesDetails().isEmpty()));
+    }
+
+    @Test
+    void testLongestMessage() {
+        PerfBudget.assertWithinBudget("report.longest", 3,
+                () -> assertTrue(reportManager.findLongestMessage().startsWith("Longest Message")));
+    }
+
+    @Test
+    void testSearchByMissingId() {
+        // A miss scans every message
+        PerfBudget.assertWithinBudget("report.searchId", 3,
+                () -> assertTrue(reportManager.searchMessageById("no-such-id").startsWith("No message found")));
+    }
+
+    @Test
+    void testSearchByRecipient() {
+        String busiest = DatasetGenerator.cellNumber(0);
+        PerfBudget.assertWithinBudget("report.searchRecipient", 3,
+                () -> assertTrue(reportManager.searchMessagesByRecipient(busiest).startsWith("--- Messages for")));
+    }
+
+    @Test
+    void testSearchByNumberPrefix() {
+        // Building the index is not timed, the report is answered from it
+        reportManager.searchNumbersByPrefix("+27", null, 1);
+        PerfBudget.assertWithinBudget("report.numberPrefix", 3,
+                () -> assertTrue(reportManager.searchNumbersByPrefix("+2780", null, 50).startsWith("--- Numbers starting with")));
+    }
+}
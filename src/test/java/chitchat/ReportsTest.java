@@ -110,6 +110,29 @@ public class ReportsTest {
         assertEquals("Message with hash '" + hashOfMessage2.toUpperCase() + "' not found for deletion.", secondAttempt);
     }
     
+    @Test
+    void testDeletedMessageLeavesEveryIndex() {
+        // Answer one report from each index first, so they are built before the deletion
+        assertEquals(3, reportManager.getConversationPage(userCell, "+27838884567", 0, 10).getMessages().size());
+        assertTrue(reportManager.searchNumbersByPrefix("+2783", null, 10).contains("+27834557896"));
+        assertTrue(reportManager.getDistinctRecipients(null).contains("Sent messages: 2\n"));
+        long now = System.currentTimeMillis();
+        assertTrue(reportManager.getMessagesInWindow(now - 60_000, now + 60_000).contains("Did you get the cake?"));
+
+        String cake = testMessages.get(0).getHash();
+        String late = testMessages.get(1).getHash();
+        reportManager.deleteMessageByHash(cake);
+        reportManager.deleteMessageByHash(late);
+
+        assertEquals(2, reportManager.getConversationPage(userCell, "+27838884567", 0, 10).getMessages().size());
+        assertFalse(reportManager.searchNumbersByPrefix("+2783", null, 10).contains("+27834557896"),
+                "A number left with no messages should be dropped.");
+        assertTrue(reportManager.getDistinctRecipients(null).contains("Sent messages: 1\n"));
+        assertTrue(reportManager.getTopRecipients(5).contains("+27838884567"));
+        assertFalse(reportManager.getTopRecipients(5).contains("+27834557896"));
+        assertFalse(reportManager.getMessagesInWindow(now - 60_000, now + 60_000).contains("Did you get the cake?"));
+    }
+
     @Test
     void testDisplayFullReport() {
         String report = reportManager.generateFullReport();
@@ -125,4 +148,25 @@ public class ReportsTest {
         
         assertFalse(report.contains("Where are you?"), "Full report should not contain stored messages.");
     }
+
+    @Test
+    void testConversationPagesAreNewestFirstWithCursor() {
+        // userCell <-> +27838884567 has msg2 (stored), msg4 (sent) and msg5 (stored)
+        ConversationIndex.Page first = reportManager.getConversationPage("+27838884567", userCell, 0, 2);
+        assertEquals(2, first.getMessages().size());
+        assertEquals("Ok, I am leaving without you.", first.getMessages().get(0).getPayload());
+        assertEquals("It is dinner time!", first.getMessages().get(1).getPayload());
+        assertTrue(first.hasMore(), "There should be an older page.");
+
+        ConversationIndex.Page second = reportManager.getConversationPage(userCell, "+27838884567", first.getNextCursor(), 2);
+        assertEquals(1, second.getMessages().size());
+        assertEquals("Where are you? You are late! I have asked you to be on time.", second.getMessages().get(0).getPayload());
+        assertFalse(second.hasMore());
+    }
+
+    @Test
+    void testConversationExcludesDisregardedMessages() {
+        String report = reportManager.displayConversation(userCell, "+27834484567", 0, 10);
+        assertEquals("No messages between " + userCell + " and +27834484567", report);
+    }
 }
@@ -0,0 +1,106 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for block-compressed SegmentFile storage.
+ */
+public class SegmentFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static ArrayList<Message> generated(int count) {
+        ArrayList<Message> messages = new ArrayList<>();
+        new DatasetGenerator(11).forEachMessage(count, 50, messages::add);
+        return messages;
+    }
+
+    private static void assertSameMessage(Message expected, Message actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getSender(), actual.getSender());
+        assertEquals(expected.getRecipient(), actual.getRecipient());
+        assertEquals(expected.getPayload(), actual.getPayload());
+        assertEquals(expected.getIndex(), actual.getIndex());
+        assertEquals(expected.getHash(), actual.getHash());
+        assertEquals(expected.isSent(), actual.isSent());
+        assertEquals(expected.isStored(), actual.isStored());
+        assertEquals(expected.isDisregarded(), actual.isDisregarded());
+    }
+
+    @Test
+    void testRoundTripAndLookupByPositionAndIndex() throws Exception {
+        ArrayList<Message> messages = generated(1000);
+        // Fields loaded from an old or hand-edited file can be missing
+        messages.add(new Message("0123456789", "+27834557896", null, "No recipient", 5000, null, false, true, false));
+        Path file = tempDir.resolve("messages.seg");
+        SegmentFile.write(file, messages, 64);
+
+        try (SegmentFile segment = SegmentFile.open(file)) {
+            assertEquals(messages.size(), segment.size());
+            assertEquals(16, segment.getBlockCount());
+            ArrayList<Message> all = segment.readAll(null);
+            for (int i = 0; i < messages.size(); i++) {
+                assertSameMessage(messages.get(i), all.get(i));
+            }
+            assertSameMessage(messages.get(777), segment.get(777));
+            assertSameMessage(messages.get(0), segment.get(0));
+            assertSameMessage(messages.get(1000), segment.findByIndex(5000));
+            Message sent = messages.stream().filter(Message::isSent).skip(300).findFirst().orElseThrow();
+            assertSameMessage(sent, segment.findByIndex(sent.getIndex()));
+            assertNull(segment.findByIndex(99_999));
+            assertThrows(IndexOutOfBoundsException.class, () -> segment.get(messages.size()));
+        }
+        assertTrue(Files.size(file) < Files.size(writeJson(messages)) / 3, "Segments should be far smaller than JSON.");
+    }
+
+    private Path writeJson(ArrayList<Message> messages) {
+        Path json = tempDir.resolve("messages.json");
+        MessageManager.saveAllMessages(messages, json.toString());
+        return json;
+    }
+
+    @Test
+    void testMessageManagerUsesSegmentsForSegFiles() throws Exception {
+        ArrayList<Message> messages = generated(300);
+        Path file = tempDir.resolve("messages.seg");
+        MessageManager.saveAllMessages(messages, file.toString());
+        assertTrue(SegmentFile.isSegmentFile(file));
+        assertFalse(SegmentFile.isSegmentFile(writeJson(messages)));
+
+        ArrayList<Message> loaded = MessageManager.loadAllMessages(file.toString());
+        assertEquals(messages.size(), loaded.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertSameMessage(messages.get(i), loaded.get(i));
+        }
+    }
+
+    @Test
+    void testDamagedBlockIsDetected() throws Exception {
+        Path file = tempDir.resolve("messages.seg");
+        SegmentFile.write(file, generated(500), 100);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0x55, 0x55, 0x55, 0x55}), 40);
+        }
+        try (SegmentFile segment = SegmentFile.open(file)) {
+            assertThrows(IOException.class, () -> segment.get(3));
+            // Other blocks are still readable
+            assertNotNull(segment.get(450));
+        }
+
+        // A file cut short loses its block index
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+        assertThrows(IOException.class, () -> SegmentFile.open(file));
+    }
+}
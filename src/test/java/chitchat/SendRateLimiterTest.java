@@ -0,0 +1,75 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the per-sender SendRateLimiter.
+ */
+public class SendRateLimiterTest {
+
+    private static final String SENDER = "+27000000000";
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void testBurstIsAllowedThenRejected() {
+        SendRateLimiter limiter = new SendRateLimiter(1, 3, SendRateLimiter.Mode.REJECT, 0);
+        long now = 10 * SECOND;
+        assertNull(limiter.checkSend(SENDER, now));
+        assertNull(limiter.checkSend(SENDER, now));
+        assertNull(limiter.checkSend(SENDER, now));
+
+        String status = limiter.checkSend(SENDER, now);
+        assertEquals("Failed: Too many messages, please wait 1000 ms before sending again.", status);
+        assertEquals(3, limiter.getStats(SENDER).getAllowed());
+        assertEquals(1, limiter.getStats(SENDER).getRejected());
+    }
+
+    @Test
+    void testTokensRefillOverTime() {
+        SendRateLimiter limiter = new SendRateLimiter(2, 1, SendRateLimiter.Mode.REJECT, 0);
+        long now = 10 * SECOND;
+        assertNull(limiter.checkSend(SENDER, now));
+        assertNotNull(limiter.checkSend(SENDER, now + SECOND / 4), "Half a token has refilled, not a whole one.");
+        assertNull(limiter.checkSend(SENDER, now + SECOND / 2), "One token refills every half second.");
+    }
+
+    @Test
+    void testSendersAreLimitedIndependently() {
+        SendRateLimiter limiter = new SendRateLimiter(1, 1, SendRateLimiter.Mode.REJECT, 0);
+        long now = 10 * SECOND;
+        assertNull(limiter.checkSend(SENDER, now));
+        assertNotNull(limiter.checkSend(SENDER, now));
+        assertNull(limiter.checkSend("+27834557896", now), "Another sender should not be throttled.");
+        assertEquals(1, limiter.getThrottledSenders().size());
+    }
+
+    @Test
+    void testDelayModeReservesALaterSlotInsteadOfRejecting() {
+        SendRateLimiter limiter = new SendRateLimiter(10, 1, SendRateLimiter.Mode.DELAY, 250);
+        long now = 10 * SECOND;
+        assertEquals(0, limiter.acquire(SENDER, now).getWaitNanos());
+
+        SendRateLimiter.Permit second = limiter.acquire(SENDER, now);
+        assertFalse(second.isRejected(), "A short wait should be delayed, not rejected.");
+        assertEquals(SECOND / 10, second.getWaitNanos());
+        assertEquals(2 * SECOND / 10, limiter.acquire(SENDER, now).getWaitNanos(), "Each delayed send queues behind the last.");
+        assertTrue(limiter.acquire(SENDER, now).isRejected(), "A wait over maxDelayMillis should be rejected.");
+
+        SendRateLimiter.Stats stats = limiter.getStats(SENDER);
+        assertEquals(3, stats.getAllowed());
+        assertEquals(2, stats.getDelayed());
+        assertEquals(1, stats.getRejected());
+        assertEquals(3 * SECOND / 10, stats.getDelayNanos());
+    }
+
+    @Test
+    void testCheckSendNeverWaitsInDelayMode() {
+        SendRateLimiter limiter = new SendRateLimiter(10, 1, SendRateLimiter.Mode.DELAY, 1000);
+        long now = 10 * SECOND;
+        assertNull(limiter.checkSend(SENDER, now));
+        assertEquals("Failed: Too many messages, please wait 100 ms before sending again.", limiter.checkSend(SENDER, now));
+        assertEquals(0, limiter.getStats(SENDER).getDelayed());
+        assertEquals(0, limiter.acquire(SENDER, now + SECOND / 10).getWaitNanos(), "A refused send should not take a slot.");
+    }
+}
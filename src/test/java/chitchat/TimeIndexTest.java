@@ -0,0 +1,158 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for message timestamps, the TimeIndex and the time window reports.
+ */
+public class TimeIndexTest {
+
+    private static final String SENDER = "+27834557896";
+    private static final String RECIPIENT = "+27838884567";
+    // 2025-06-13 10:00:00 UTC, on a minute boundary
+    private static final long START = 1_749_808_800_000L;
+    private static final long MINUTE = TimeIndex.MINUTE_MILLIS;
+
+    @TempDir
+    Path tempDir;
+
+    private static Message sentAt(String payload, int index, long time) {
+        Message message = new Message(SENDER, RECIPIENT, payload);
+        message.sendMessage(index);
+        message.setTimestamps(time, time);
+        return message;
+    }
+
+    @Test
+    void testSendingAndStoringRecordTheirTimes() {
+        long before = System.currentTimeMillis();
+        Message sent = new Message(SENDER, RECIPIENT, "Did you get the cake?");
+        assertTrue(sent.getCreatedAt() >= before);
+        assertEquals(0, sent.getSentAt());
+        sent.sendMessage(1);
+        assertTrue(sent.getSentAt() >= sent.getCreatedAt());
+        assertEquals(sent.getSentAt(), sent.getTimestamp());
+
+        Message stored = new Message(SENDER, RECIPIENT, "Where are you?");
+        stored.storeMessage(2);
+        assertEquals(0, stored.getSentAt());
+        assertEquals(stored.getCreatedAt(), stored.getTimestamp());
+    }
+
+    @Test
+    void testTimestampsArePersistedAndOlderFilesStillLoad() throws IOException {
+        Message message = sentAt("It is dinner time!", 1, START);
+        message.setTimestamps(START - 5_000, START);
+        String jsonFile = tempDir.resolve("messages.json").toString();
+        MessageManager.saveAllMessages(new ArrayList<>(List.of(message)), jsonFile);
+        Message loaded = MessageManager.loadAllMessages(jsonFile).get(0);
+        assertEquals(START - 5_000, loaded.getCreatedAt());
+        assertEquals(START, loaded.getSentAt());
+
+        Path segment = tempDir.resolve("messages" + SegmentFile.FILE_SUFFIX);
+        SegmentFile.write(segment, List.of(message, new Message("1234567890", SENDER, RECIPIENT, "Old", 2, "12:2:OLD", true, false, false)));
+        try (SegmentFile file = SegmentFile.open(segment)) {
+            assertEquals(START - 5_000, file.get(0).getCreatedAt());
+            assertEquals(START, file.get(0).getSentAt());
+            assertEquals(0, file.get(1).getTimestamp());
+        }
+
+        // A file written before timestamps were kept
+        Path oldFile = tempDir.resolve("old.json");
+        Files.writeString(oldFile, "[{\"id\":\"1234567890\",\"sender\":\"" + SENDER + "\",\"recipient\":\"" + RECIPIENT
+                + "\",\"payload\":\"Hello\",\"index\":1,\"hash\":\"12:1:HELLO\",\"sent\":true,\"stored\":false,\"disregarded\":false}]");
+        Message old = MessageManager.loadAllMessages(oldFile.toString()).get(0);
+        assertEquals(0, old.getTimestamp());
+        TimeIndex index = new TimeIndex();
+        index.build(List.of(old));
+        assertEquals(0, index.size(), "Messages without a time are not indexed.");
+    }
+
+    @Test
+    void testRangesAreFoundInTimeOrder() {
+        ArrayList<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            messages.add(sentAt("Message " + i, i + 1, START + i * 10_000L));
+        }
+        // One from a slower clock lands in the middle
+        messages.add(sentAt("Late", 101, START + 55_000));
+        TimeIndex index = new TimeIndex();
+        index.build(messages);
+        assertEquals(101, index.size());
+
+        assertEquals(7, index.count(START, START + MINUTE), "Six on the minute and the late one.");
+        List<Message> range = index.getRange(START + 50_000, START + 70_000, 10);
+        assertEquals(List.of("Message 5", "Late", "Message 6"), range.stream().map(Message::getPayload).toList());
+        assertEquals(2, index.getRange(START, START + MINUTE, 2).size());
+        assertEquals(0, index.count(START + MINUTE, START));
+
+        Message added = sentAt("Added", 102, START + 1_000);
+        index.onMessageAdded(added);
+        assertSame(added, index.getRange(START + 1, START + 2_000, 5).get(0));
+
+        TimeIndex.Throughput throughput = index.getThroughput(START + 30_000, START + 3 * MINUTE);
+        assertEquals(START, throughput.getStartMillis());
+        assertEquals(3, throughput.getMinutes());
+        assertEquals(4, throughput.getCount(0), "From 30s: 30, 40, 50 and the late one at 55.");
+        assertEquals(6, throughput.getCount(1));
+        assertEquals(6, throughput.getCount(2));
+    }
+
+    @Test
+    void testWindowAndThroughputReports() {
+        ArrayList<Message> messages = new ArrayList<>();
+        messages.add(sentAt("Did you get the cake?", 1, START));
+        messages.add(sentAt("It is dinner time!", 2, START + 30_000));
+        messages.add(sentAt("Ok, I am leaving without you.", 3, START + 2 * MINUTE));
+        Message stored = new Message(SENDER, RECIPIENT, "Where are you?");
+        stored.storeMessage(4);
+        stored.setTimestamps(START + 10_000, 0);
+        messages.add(stored);
+        ReportManager reports = new ReportManager(messages);
+
+        String window = reports.getMessagesInWindow(START, START + MINUTE);
+        assertTrue(window.contains("(3)"), window);
+        assertTrue(window.indexOf("cake") < window.indexOf("Where are you?") && window.indexOf("Where are you?") < window.indexOf("dinner"));
+        assertTrue(window.contains("(Stored)"));
+        assertFalse(window.contains("leaving"));
+        assertTrue(reports.getMessagesInWindow(START - MINUTE, START).startsWith("No messages"));
+
+        String throughput = reports.getThroughputPerMinute(START, START + 3 * MINUTE);
+        assertTrue(throughput.contains("Total: 3 in 3 minutes"), throughput);
+        assertEquals(2, throughput.lines().filter(line -> line.matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2} +\\d+")).count(),
+                "Only minutes with sends are listed.");
+        assertTrue(reports.getThroughputPerMinute(START, START - 1).contains("must end after"));
+        assertTrue(reports.getThroughputPerMinute(START, START + ReportManager.MAX_THROUGHPUT_WINDOW_MILLIS + 1).contains("too long"));
+    }
+
+    @Test
+    void testWindowReportsIncludeArchivedMessages() throws IOException {
+        ArrayList<Message> history = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            history.add(sentAt("Message number " + i, i, START + i * MINUTE));
+        }
+        String messagesFile = tempDir.resolve("messages.json").toString();
+        MessageManager.saveAllMessages(history, messagesFile);
+        try (MessageStore store = new MessageStore(messagesFile)) {
+            store.setRetentionPolicy(RetentionPolicy.keepNewest(10, 5));
+            ArrayList<Message> hot = store.load();
+            MessageArchive.Summary summary = store.getArchive().getSummary();
+            assertEquals(START + MINUTE, summary.getMinTime());
+            assertEquals(START + 20 * MINUTE, summary.getMaxTime());
+            assertFalse(summary.mightContainTime(START + 21 * MINUTE, START + 40 * MINUTE));
+
+            ReportManager reports = new ReportManager(hot, null, store);
+            String window = reports.getMessagesInWindow(START + 18 * MINUTE, START + 23 * MINUTE);
+            assertTrue(window.contains("(5)"), window);
+            assertTrue(window.indexOf("Message number 18") < window.indexOf("Message number 22"));
+            assertTrue(reports.getThroughputPerMinute(START, START + 31 * MINUTE).contains("Total: 30"));
+        }
+    }
+}
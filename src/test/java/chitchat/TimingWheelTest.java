@@ -0,0 +1,80 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the hierarchical TimingWheel.
+ */
+public class TimingWheelTest {
+
+    private static final long START = 1_750_000_000_000L;
+
+    @Test
+    void testTimersExpireOnTheirTickAndNotBefore() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, START);
+        wheel.schedule("soon", START + 250);
+        wheel.schedule("overdue", START - 5_000);
+        wheel.schedule("later", START + 1_000);
+        List<String> expired = new ArrayList<>();
+
+        wheel.advanceTo(START + 100, expired::add);
+        assertEquals(List.of("overdue"), expired, "A passed deadline expires on the next tick.");
+        wheel.advanceTo(START + 299, expired::add);
+        assertEquals(List.of("overdue"), expired, "Deadlines round up to the next tick.");
+        wheel.advanceTo(START + 300, expired::add);
+        assertEquals(List.of("overdue", "soon"), expired);
+        wheel.advanceTo(START + 999, expired::add);
+        assertEquals(2, expired.size(), "Nothing may expire before its deadline.");
+        wheel.advanceTo(START + 1_000, expired::add);
+        assertEquals(List.of("overdue", "soon", "later"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testCancelledTimerNeverExpires() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, START);
+        TimingWheel.Timer<String> cancelled = wheel.schedule("cancelled", START + 50);
+        wheel.schedule("kept", START + 50);
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled), "A timer can only be cancelled once.");
+        List<String> expired = new ArrayList<>();
+        wheel.advanceTo(START + 1_000, expired::add);
+        assertEquals(List.of("kept"), expired);
+        assertFalse(cancelled.isPending());
+    }
+
+    @Test
+    void testRandomDeadlinesAcrossEveryLevelExpireInOrder() {
+        // 1 ms ticks, deadlines from now to beyond the top level's span of 2^36 ticks
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 0);
+        Random random = new Random(5121);
+        int count = 20_000;
+        for (int i = 0; i < count; i++) {
+            long deadline = random.nextInt(4) == 0
+                    ? (long) (random.nextDouble() * (1L << 38))
+                    : random.nextInt(1 << (6 * (1 + random.nextInt(4))));
+            wheel.schedule(deadline, deadline);
+        }
+        long[] last = {-1};
+        int[] expired = {0};
+        long now = 0;
+        // Jump ahead unevenly, checking nothing is early and everything due has expired
+        while (wheel.size() > 0) {
+            now += 1 + (long) (random.nextDouble() * (now < 1 << 24 ? 5_000 : 1L << 30));
+            long reached = now;
+            wheel.advanceTo(now, deadline -> {
+                assertTrue(deadline <= reached, "Expired early: " + deadline + " at " + reached);
+                // A deadline of 0 has already passed, so it shares tick 1 with a deadline of 1
+                long tick = Math.max(deadline, 1);
+                assertTrue(tick >= last[0], "Out of order: " + deadline + " after " + last[0]);
+                last[0] = tick;
+                expired[0]++;
+            });
+        }
+        assertEquals(count, expired[0]);
+    }
+}
@@ -0,0 +1,86 @@
+package chitchat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the shared, cached UserManager.
+ */
+public class UserManagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String usersFile() {
+        return tempDir.resolve("users.json").toString();
+    }
+
+    @Test
+    void testRegisteredUserCanBeFound() {
+        UserManager manager = new UserManager(usersFile());
+        manager.registerUser(new RegistrationLogin(), "kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu");
+
+        RegistrationLogin user = manager.findUser("kyl_1");
+        assertNotNull(user, "A registered user should be found by username.");
+        assertTrue(user.loginUser("kyl_1", "Passw0rd!"));
+        assertNull(manager.findUser("nobody"));
+    }
+
+    @Test
+    void testOwnSaveIsNotTreatedAsExternalChange() {
+        UserManager manager = new UserManager(usersFile());
+        manager.registerUser(new RegistrationLogin(), "kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu");
+
+        assertFalse(manager.refreshIfChanged(), "Saving our own users should not trigger a reload.");
+    }
+
+    @Test
+    void testExternalChangeIsPickedUpAndUnchangedUsersAreKept() throws Exception {
+        UserManager manager = new UserManager(usersFile());
+        manager.registerUser(new RegistrationLogin(), "kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu");
+        RegistrationLogin before = manager.findUser("kyl_1");
+
+        // Another instance registers a second user
+        UserManager other = new UserManager(usersFile());
+        other.registerUser(new RegistrationLogin(), "ann_2", "Passw0rd!", "+27987654321", "Ann", "Smith");
+        new File(usersFile()).setLastModified(System.currentTimeMillis() + 2000);
+
+        assertTrue(manager.refreshIfChanged(), "An external write should be detected.");
+        assertNotNull(manager.findUser("ann_2"), "The externally added user should be loaded.");
+        assertSame(before, manager.findUser("kyl_1"), "Unchanged users should not be rebuilt.");
+    }
+
+    @Test
+    void testRegisteringKeepsOtherProcessesUsersAndRejectsTakenNames() throws Exception {
+        UserManager manager = new UserManager(usersFile());
+        manager.registerUser(new RegistrationLogin(), "kyl_1", "Passw0rd!", "+27123456789", "Kitso", "Litelu");
+
+        // Another instance registers a user this one has not loaded yet
+        UserManager other = new UserManager(usersFile());
+        other.registerUser(new RegistrationLogin(), "ann_2", "Passw0rd!", "+27987654321", "Ann", "Smith");
+        new File(usersFile()).setLastModified(System.currentTimeMillis() + 2000);
+
+        RegistrationLogin taken = new RegistrationLogin();
+        assertEquals(UserManager.USERNAME_TAKEN,
+            manager.registerUser(taken, "ann_2", "Passw0rd!", "+27111111111", "Other", "Ann"));
+        assertFalse(taken.isRegistered());
+        manager.registerUser(new RegistrationLogin(), "bob_3", "Passw0rd!", "+27222222222", "Bob", "Jones");
+
+        UserManager reloaded = new UserManager(usersFile());
+        assertNotNull(reloaded.findUser("kyl_1"));
+        assertEquals("+27987654321", reloaded.findUser("ann_2").getCellPhoneNumber());
+        assertNotNull(reloaded.findUser("bob_3"), "Saving must not drop users added by another process.");
+    }
+
+    @Test
+    void testInvalidRecordIsSkipped() throws Exception {
+        Files.writeString(Path.of(usersFile()),
+            "[{\"username\":\"toolong_name\",\"password\":\"Passw0rd!\",\"cellphone\":\"+27123456789\",\"firstName\":\"A\",\"lastName\":\"B\"}]");
+        UserManager manager = new UserManager(usersFile());
+        assertNull(manager.findUser("toolong_name"), "Records that fail validation should not be loaded.");
+    }
+}